@@ -26,18 +26,19 @@ import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsMediaNextCom
 import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsMediaPauseCommandItem;
 import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsMediaPlayCommandItem;
 import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsMediaPreviousCommandItem;
-import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceAllItem;
-import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceEnqueuedItem;
 import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsStopItem;
 import com.willblaschko.android.alexa.interfaces.speaker.AvsAdjustVolumeItem;
 import com.willblaschko.android.alexa.interfaces.speaker.AvsSetMuteItem;
 import com.willblaschko.android.alexa.interfaces.speaker.AvsSetVolumeItem;
 import com.willblaschko.android.alexa.interfaces.speechrecognizer.AvsExpectSpeechItem;
 import com.willblaschko.android.alexa.interfaces.speechsynthesizer.AvsSpeakItem;
+import com.willblaschko.android.alexa.system.DirectiveSequencer;
 import com.willblaschko.android.alexavoicelibrary.actions.BaseListenerFragment;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
 import static com.willblaschko.android.alexavoicelibrary.global.Constants.PRODUCT_ID;
 
@@ -57,7 +58,8 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
 
     private AlexaManager alexaManager;
     private AlexaAudioPlayer audioPlayer;
-    private List<AvsItem> avsQueue = new ArrayList<>();
+    private DirectiveSequencer sequencer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private long startTime = 0;
 
@@ -71,6 +73,10 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
     @Override
     protected void onStop() {
         super.onStop();
+        if(sequencer != null){
+            //nothing left to come back to
+            sequencer.clear();
+        }
         if(audioPlayer != null){
             audioPlayer.stop();
         }
@@ -92,6 +98,12 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
         return requestCallback;
     }
 
+    @Override
+    public void bargeIn(Runnable startCapture) {
+        //stop talking and drop the request in flight before we start listening again
+        alexaManager.bargeIn(audioPlayer, sequencer, startCapture);
+    }
+
 
 
 
@@ -99,6 +111,13 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
     private void initAlexaAndroid(){
         //get our AlexaManager instance for convenience
         alexaManager = AlexaManager.getInstance(this, PRODUCT_ID);
+        //the rest of the setup runs in the background, see how long it took once it's done
+        alexaManager.whenInitialized(new Runnable() {
+            @Override
+            public void run() {
+                Log.i(TAG, "Startup:\n" + alexaManager.getStartupTracer());
+            }
+        });
 
         //instantiate our audio player
         audioPlayer = AlexaAudioPlayer.getInstance(this);
@@ -106,6 +125,14 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
         //Remove the current item and check for more items once we've finished playing
         audioPlayer.addCallback(alexaAudioPlayerCallback);
 
+        //runs the items Alexa sends back one after the other, on the main thread like the audio player
+        sequencer = new DirectiveSequencer(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        }, itemHandler);
+
         //open our downchannel
         //alexaManager.sendOpenDownchannelDirective(requestCallback);
 
@@ -115,7 +142,7 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
     }
 
     //Our callback that deals with removing played items in our media player and then checking to see if more items exist
-    private AlexaAudioPlayer.Callback alexaAudioPlayerCallback = new AlexaAudioPlayer.Callback() {
+    private AlexaAudioPlayer.Callback alexaAudioPlayerCallback = new AlexaAudioPlayer.ProgressReportCallback() {
 
         private boolean almostDoneFired = false;
         private boolean playbackStartedFired = false;
@@ -151,12 +178,23 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
             }
         }
 
+        @Override
+        public void progressReportDelayElapsed(AvsItem item, long offsetInMilliseconds) {
+            alexaManager.sendProgressReportDelayElapsedEvent(item, offsetInMilliseconds, null);
+            Log.i(TAG, "Sending ProgressReportDelayElapsedEvent");
+        }
+
+        @Override
+        public void progressReportIntervalElapsed(AvsItem item, long offsetInMilliseconds) {
+            alexaManager.sendProgressReportIntervalElapsedEvent(item, offsetInMilliseconds, null);
+            Log.i(TAG, "Sending ProgressReportIntervalElapsedEvent");
+        }
+
         @Override
         public void itemComplete(AvsItem completedItem) {
             almostDoneFired = false;
             playbackStartedFired = false;
-            avsQueue.remove(completedItem);
-            checkQueue();
+            sequencer.complete(completedItem);
             if(completedItem instanceof AvsPlayContentItem || completedItem == null){
                 return;
             }
@@ -174,6 +212,8 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
         @Override
         public void dataError(AvsItem item, Exception e) {
             e.printStackTrace();
+            //it's not going to play, move on
+            sequencer.complete(item);
         }
 
 
@@ -227,6 +267,11 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
 
         @Override
         public void failure(Exception error) {
+            if(error instanceof CancellationException){
+                //a barge-in dropped it, the new request has the state now
+                Log.i(TAG, "Event Cancelled");
+                return;
+            }
             error.printStackTrace();
             Log.i(TAG, "Event Error");
             setState(STATE_FINISHED);
@@ -251,143 +296,125 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseList
      * @param response a List<AvsItem> returned from the mAlexaManager.sendTextRequest() call in sendVoiceToAlexa()
      */
     private void handleResponse(AvsResponse response){
-        boolean checkAfter = (avsQueue.size() == 0);
         if(response != null){
-            //if we have a clear queue item in the list, we need to clear the current queue before proceeding
-            //iterate backwards to avoid changing our array positions and getting all the nasty errors that come
-            //from doing that
-            for(int i = response.size() - 1; i >= 0; i--){
-                if(response.get(i) instanceof AvsReplaceAllItem || response.get(i) instanceof AvsReplaceEnqueuedItem){
-                    //clear our queue
-                    avsQueue.clear();
-                    //remove item
-                    response.remove(i);
-                }
-            }
             Log.i(TAG, "Adding "+response.size()+" items to our queue");
             if(BuildConfig.DEBUG){
                 for (int i = 0; i < response.size(); i++){
                     Log.i(TAG, "\tAdding: "+response.get(i).getToken());
                 }
             }
-            avsQueue.addAll(response);
-        }
-        if(checkAfter) {
-            checkQueue();
+            //ReplaceAll/ReplaceEnqueued items clear the content queue in there
+            sequencer.enqueue(response);
         }
+        //prepare what comes next while the current item plays, so there's no gap between them
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                prefetchUpcoming();
+            }
+        });
     }
 
-
     /**
-     * Check our current queue of items, and if we have more to parse (once we've reached a play or listen callback) then proceed to the
-     * next item in our list.
-     *
-     * We're handling the AvsReplaceAllItem in handleResponse() because it needs to clear everything currently in the queue, before
-     * the new items are added to the list, it should have no function here.
+     * Get the audio player going on the items that are up next, in the order the sequencer will hand them out
      */
-    private void checkQueue() {
-
-        //if we're out of things, hang up the phone and move on
-        if (avsQueue.size() == 0) {
-            setState(STATE_FINISHED);
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    long totalTime = System.currentTimeMillis() - startTime;
-                    Toast.makeText(BaseActivity.this, "Total interaction time: "+totalTime+" miliseconds", Toast.LENGTH_LONG).show();
-                    Log.i(TAG, "Total interaction time: "+totalTime+" miliseconds");
-                }
-            });
-            return;
+    private void prefetchUpcoming(){
+        List<AvsItem> upcoming = new ArrayList<>();
+        for(DirectiveSequencer.Channel channel : DirectiveSequencer.Channel.values()){
+            upcoming.addAll(sequencer.getQueued(channel));
         }
+        audioPlayer.prefetch(upcoming);
+    }
 
-        final AvsItem current = avsQueue.get(0);
-
-        Log.i(TAG, "Item type " + current.getClass().getName());
+    /**
+     * Handle the items of our responses, one at a time, as they come out of the sequencer. Items that play audio
+     * keep going until the audio player tells us they're complete.
+     */
+    private DirectiveSequencer.ItemHandler itemHandler = new DirectiveSequencer.ItemHandler() {
+        @Override
+        public boolean handleItem(final AvsItem current, DirectiveSequencer.Channel channel) {
+            Log.i(TAG, "Item type " + current.getClass().getName());
 
-        if (current instanceof AvsPlayRemoteItem) {
-            //play a URL
-            if (!audioPlayer.isPlaying()) {
+            boolean playing = false;
+            if (current instanceof AvsPlayRemoteItem) {
+                //play a URL
                 audioPlayer.playItem((AvsPlayRemoteItem) current);
-            }
-        } else if (current instanceof AvsPlayContentItem) {
-            //play a URL
-            if (!audioPlayer.isPlaying()) {
+                playing = true;
+            } else if (current instanceof AvsPlayContentItem) {
+                //play a URL
                 audioPlayer.playItem((AvsPlayContentItem) current);
-            }
-        } else if (current instanceof AvsSpeakItem) {
-            //play a sound file
-            if (!audioPlayer.isPlaying()) {
+                playing = true;
+            } else if (current instanceof AvsSpeakItem) {
+                //play a sound file
                 audioPlayer.playItem((AvsSpeakItem) current);
+                setState(STATE_SPEAKING);
+                playing = true;
+            } else if (current instanceof AvsStopItem) {
+                //stop our play
+                audioPlayer.stop();
+            } else if (current instanceof AvsExpectSpeechItem) {
+                //listen for user input
+                audioPlayer.stop();
+                //drop the rest right away, the interaction isn't over so don't go idle either
+                sequencer.clearQueued(false);
+                startListening();
+            } else if (current instanceof AvsSetVolumeItem) {
+                //set our volume
+                setVolume(((AvsSetVolumeItem) current).getVolume());
+            } else if(current instanceof AvsAdjustVolumeItem){
+                //adjust the volume
+                adjustVolume(((AvsAdjustVolumeItem) current).getAdjustment());
+            } else if(current instanceof AvsSetMuteItem){
+                //mute/unmute the device
+                setMute(((AvsSetMuteItem) current).isMute());
+            }else if(current instanceof AvsMediaPlayCommandItem){
+                //fake a hardware "play" press
+                sendMediaButton(BaseActivity.this, KeyEvent.KEYCODE_MEDIA_PLAY);
+                Log.i(TAG, "Media play command issued");
+            }else if(current instanceof AvsMediaPauseCommandItem){
+                //fake a hardware "pause" press
+                sendMediaButton(BaseActivity.this, KeyEvent.KEYCODE_MEDIA_PAUSE);
+                Log.i(TAG, "Media pause command issued");
+            }else if(current instanceof AvsMediaNextCommandItem){
+                //fake a hardware "next" press
+                sendMediaButton(BaseActivity.this, KeyEvent.KEYCODE_MEDIA_NEXT);
+                Log.i(TAG, "Media next command issued");
+            }else if(current instanceof AvsMediaPreviousCommandItem){
+                //fake a hardware "previous" press
+                sendMediaButton(BaseActivity.this, KeyEvent.KEYCODE_MEDIA_PREVIOUS);
+                Log.i(TAG, "Media previous command issued");
+            }else if(current instanceof AvsResponseException){
+                new AlertDialog.Builder(BaseActivity.this)
+                        .setTitle("Error")
+                        .setMessage(((AvsResponseException) current).getDirective().getPayload().getCode() + ": " + ((AvsResponseException) current).getDirective().getPayload().getDescription())
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
             }
-            setState(STATE_SPEAKING);
-        } else if (current instanceof AvsStopItem) {
-            //stop our play
-            audioPlayer.stop();
-            avsQueue.remove(current);
-        } else if (current instanceof AvsReplaceAllItem) {
-            //clear all items
-            //mAvsItemQueue.clear();
-            audioPlayer.stop();
-            avsQueue.remove(current);
-        } else if (current instanceof AvsReplaceEnqueuedItem) {
-            //clear all items
-            //mAvsItemQueue.clear();
-            avsQueue.remove(current);
-        } else if (current instanceof AvsExpectSpeechItem) {
-
-            //listen for user input
+            if(playing){
+                //get the items after the new current one ready
+                prefetchUpcoming();
+            }
+            return playing;
+        }
+
+        @Override
+        public void cancelItem(AvsItem item, DirectiveSequencer.Channel channel) {
+            //cleared by a ReplaceAll
             audioPlayer.stop();
-            avsQueue.clear();
-            startListening();
-        } else if (current instanceof AvsSetVolumeItem) {
-            //set our volume
-            setVolume(((AvsSetVolumeItem) current).getVolume());
-            avsQueue.remove(current);
-        } else if(current instanceof AvsAdjustVolumeItem){
-            //adjust the volume
-            adjustVolume(((AvsAdjustVolumeItem) current).getAdjustment());
-            avsQueue.remove(current);
-        } else if(current instanceof AvsSetMuteItem){
-            //mute/unmute the device
-            setMute(((AvsSetMuteItem) current).isMute());
-            avsQueue.remove(current);
-        }else if(current instanceof AvsMediaPlayCommandItem){
-            //fake a hardware "play" press
-            sendMediaButton(this, KeyEvent.KEYCODE_MEDIA_PLAY);
-            Log.i(TAG, "Media play command issued");
-            avsQueue.remove(current);
-        }else if(current instanceof AvsMediaPauseCommandItem){
-            //fake a hardware "pause" press
-            sendMediaButton(this, KeyEvent.KEYCODE_MEDIA_PAUSE);
-            Log.i(TAG, "Media pause command issued");
-            avsQueue.remove(current);
-        }else if(current instanceof AvsMediaNextCommandItem){
-            //fake a hardware "next" press
-            sendMediaButton(this, KeyEvent.KEYCODE_MEDIA_NEXT);
-            Log.i(TAG, "Media next command issued");
-            avsQueue.remove(current);
-        }else if(current instanceof AvsMediaPreviousCommandItem){
-            //fake a hardware "previous" press
-            sendMediaButton(this, KeyEvent.KEYCODE_MEDIA_PREVIOUS);
-            Log.i(TAG, "Media previous command issued");
-            avsQueue.remove(current);
-        }else if(current instanceof AvsResponseException){
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    new AlertDialog.Builder(BaseActivity.this)
-                            .setTitle("Error")
-                            .setMessage(((AvsResponseException) current).getDirective().getPayload().getCode() + ": " + ((AvsResponseException) current).getDirective().getPayload().getDescription())
-                            .setPositiveButton(android.R.string.ok, null)
-                            .show();
-                }
-            });
+        }
 
-            avsQueue.remove(current);
-            checkQueue();
+        @Override
+        public void onIdle() {
+            //if we're out of things, hang up the phone and move on
+            setState(STATE_FINISHED);
+            long totalTime = System.currentTimeMillis() - startTime;
+            Toast.makeText(BaseActivity.this, "Total interaction time: "+totalTime+" miliseconds", Toast.LENGTH_LONG).show();
+            Log.i(TAG, "Total interaction time: "+totalTime+" miliseconds");
+            if(BuildConfig.DEBUG){
+                Log.i(TAG, "Sequencer: " + sequencer.getMetrics());
+            }
         }
-    }
+    };
 
     protected abstract void startListening();
 
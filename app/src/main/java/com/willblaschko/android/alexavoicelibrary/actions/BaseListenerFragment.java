@@ -48,6 +48,17 @@ public abstract class BaseListenerFragment extends Fragment {
         return null;
     }
 
+    /**
+     * Interrupt whatever Alexa is saying or working on and run startCapture right after
+     */
+    protected void bargeIn(Runnable startCapture){
+        if(getActivity() != null && getActivity() instanceof AvsListenerInterface){
+            ((AvsListenerInterface) getActivity()).bargeIn(startCapture);
+        }else{
+            startCapture.run();
+        }
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -73,6 +84,7 @@ public abstract class BaseListenerFragment extends Fragment {
 
     public interface AvsListenerInterface{
         AsyncCallback<AvsResponse, Exception> getRequestCallback();
+        void bargeIn(Runnable startCapture);
     }
 
     protected void loadFragment(Fragment fragment){
@@ -19,6 +19,7 @@ import com.willblaschko.android.recorderview.RecorderView;
 
 import java.io.IOException;
 
+import ee.ioc.phon.android.speechutils.AudioBus;
 import ee.ioc.phon.android.speechutils.AudioRecorder;
 import ee.ioc.phon.android.speechutils.RawAudioRecorder;
 import okio.BufferedSink;
@@ -35,6 +36,7 @@ public class SendAudioActionFragment extends BaseListenerFragment {
     private final static int MY_PERMISSIONS_REQUEST_RECORD_AUDIO = 1;
     private static final int AUDIO_RATE = 16000;
     private RawAudioRecorder recorder;
+    private AudioBus.Subscription uploadSubscription;
     private RecorderView recorderView;
 
     @Nullable
@@ -51,7 +53,13 @@ public class SendAudioActionFragment extends BaseListenerFragment {
             @Override
             public void onClick(View v) {
                 if(recorder == null) {
-                    startListening();
+                    //a tap while Alexa is talking cuts her off
+                    bargeIn(new Runnable() {
+                        @Override
+                        public void run() {
+                            startListening();
+                        }
+                    });
                 }else{
                     stopListening();
                 }
@@ -107,6 +115,8 @@ public class SendAudioActionFragment extends BaseListenerFragment {
         if(recorder == null){
             recorder = new RawAudioRecorder(AUDIO_RATE);
         }
+        //the upload gets its own cursor into the recording, a gap in the audio would break recognition so disconnect on overrun
+        uploadSubscription = recorder.getAudioBus().subscribe("upload", AudioBus.OverrunPolicy.DISCONNECT);
         recorder.start();
         alexaManager.sendAudioRequest(requestBody, getRequestCallback());
     }
@@ -114,6 +124,8 @@ public class SendAudioActionFragment extends BaseListenerFragment {
     private DataRequestBody requestBody = new DataRequestBody() {
         @Override
         public void writeTo(BufferedSink sink) throws IOException {
+            AudioBus.Subscription subscription = uploadSubscription;
+            byte[] audio = new byte[AUDIO_RATE / 10];
             while (recorder != null && recorder.getState() != AudioRecorder.State.ERROR && !recorder.isPausing()) {
                 if(recorder != null) {
                     final float rmsdb = recorder.getRmsdb();
@@ -125,21 +137,27 @@ public class SendAudioActionFragment extends BaseListenerFragment {
                             }
                         });
                     }
-                    if(sink != null && recorder != null) {
-                        sink.write(recorder.consumeRecording());
+                    //waits up to 25ms for new audio
+                    int read;
+                    try {
+                        read = subscription.read(audio, 0, audio.length, 25);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                        break;
+                    }
+                    if(read < 0){
+                        break;
+                    }
+                    if(sink != null) {
+                        sink.write(audio, 0, read);
                     }
                     if(BuildConfig.DEBUG){
                         Log.i(TAG, "Received audio");
                         Log.i(TAG, "RMSDB: " + rmsdb);
                     }
                 }
-
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
             }
+            subscription.close();
             stopListening();
         }
 
@@ -9,13 +9,21 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.willblaschko.android.alexa.audioencoder.AudioEncoder;
+import com.willblaschko.android.alexa.audioencoder.AudioEncoderFactory;
+import com.willblaschko.android.alexa.audioplayer.AlexaAudioPlayer;
+import com.willblaschko.android.alexa.audioplayer.cache.AudioCacheManager;
 import com.willblaschko.android.alexa.callbacks.AsyncCallback;
 import com.willblaschko.android.alexa.callbacks.AuthorizationCallback;
+import com.willblaschko.android.alexa.callbacks.DirectiveListener;
+import com.willblaschko.android.alexa.connection.ClientUtil;
 import com.willblaschko.android.alexa.data.Event;
 import com.willblaschko.android.alexa.interfaces.AvsException;
 import com.willblaschko.android.alexa.interfaces.AvsItem;
@@ -28,13 +36,26 @@ import com.willblaschko.android.alexa.interfaces.speechrecognizer.SpeechSendText
 import com.willblaschko.android.alexa.interfaces.speechrecognizer.SpeechSendVoice;
 import com.willblaschko.android.alexa.interfaces.speechsynthesizer.AvsSpeakItem;
 import com.willblaschko.android.alexa.requestbody.DataRequestBody;
+import com.willblaschko.android.alexa.requestbody.EncodedDataRequestBody;
 import com.willblaschko.android.alexa.service.DownChannelService;
 import com.willblaschko.android.alexa.system.AndroidSystemHandler;
+import com.willblaschko.android.alexa.system.DirectiveDispatcher;
+import com.willblaschko.android.alexa.system.DirectiveSequencer;
+import com.willblaschko.android.alexa.system.StagedInitializer;
+import com.willblaschko.android.alexa.system.StartupTracer;
 import com.willblaschko.android.alexa.utility.Util;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Single;
 import io.reactivex.SingleEmitter;
@@ -60,34 +81,126 @@ public class AlexaManager {
     private static final String TAG = "AlexaManager";
     private static final String KEY_URL_ENDPOINT = "url_endpoint";
 
+    //startup stages, see the constructor
+    private static final String STAGE_PREFERENCES = "preferences";
+    private static final String STAGE_AUTHORIZATION = "authorization";
+    private static final String STAGE_CONNECTION = "connection";
+    private static final String STAGE_AUDIO_CACHE = "audio cache";
+    private static final String STAGE_DOWN_CHANNEL = "down channel";
+    //done once all of the above are
+    private static final String STAGE_INITIALIZED = "initialized";
+    //how often a request that's waiting for a stage logs that it still is
+    private static final long STAGE_TIMEOUT_SECONDS = 10;
+
     private static AlexaManager mInstance;
     private static AndroidSystemHandler mAndroidSystemHandler;
-    private AuthorizationManager mAuthorizationManager;
-    private SpeechSendVoice mSpeechSendVoice;
-    private SpeechSendText mSpeechSendText;
-    private SpeechSendAudio mSpeechSendAudio;
+    //set by the authorization stage
+    private volatile AuthorizationManager mAuthorizationManager;
+    //set and cleared on request threads, cancelled from others
+    private volatile SpeechSendVoice mSpeechSendVoice;
+    private volatile SpeechSendText mSpeechSendText;
+    private volatile SpeechSendAudio mSpeechSendAudio;
     private VoiceHelper mVoiceHelper;
-    private String urlEndpoint;
+    //set by the preferences stage
+    private volatile String urlEndpoint;
     private Context mContext;
+    private final StartupTracer mStartupTracer = new StartupTracer();
+    private final StagedInitializer mInitializer;
+    //bumped by bargeIn(), Recognize requests started before that are dropped instead of sent
+    private volatile int mRecognizeGeneration = 0;
+    private final BargeInMetrics mBargeInMetrics = new BargeInMetrics();
+    private final DirectiveDispatcher mDirectiveDispatcher = new DirectiveDispatcher();
 
+    /**
+     * Only what's needed right away happens here, on the calling (usually main) thread. The preferences, the
+     * Amazon authorization manager, the TLS client and the down channel are set up in background stages, whatever
+     * needs one of them waits for its stage. See {@link #getStartupTracer()} for how long all of it took.
+     */
     private AlexaManager(Context context, String productId) {
+        long start = mStartupTracer.begin();
         mContext = context.getApplicationContext();
         if (productId == null) {
             productId = context.getString(R.string.alexa_product_id);
         }
-        urlEndpoint = Util.getPreferences(context).getString(KEY_URL_ENDPOINT, context.getString(R.string.alexa_api));
-
-        mAuthorizationManager = new AuthorizationManager(mContext, productId);
+        final String finalProductId = productId;
         mAndroidSystemHandler = AndroidSystemHandler.getInstance(context);
-        Intent stickyIntent = new Intent(context, DownChannelService.class);
-        context.startService(stickyIntent);
 
-        if (!Util.getPreferences(mContext).contains(IDENTIFIER)) {
-            Util.getPreferences(mContext)
-                    .edit()
-                    .putString(IDENTIFIER, createCodeVerifier(30))
-                    .apply();
-        }
+        mInitializer = new StagedInitializer(createMainExecutor(), createStartupExecutor(), mStartupTracer)
+                .addStage(STAGE_PREFERENCES, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        //the first read loads the whole file from disk
+                        urlEndpoint = Util.getPreferences(mContext).getString(KEY_URL_ENDPOINT, mContext.getString(R.string.alexa_api));
+                        if (!Util.getPreferences(mContext).contains(IDENTIFIER)) {
+                            Util.getPreferences(mContext)
+                                    .edit()
+                                    .putString(IDENTIFIER, createCodeVerifier(30))
+                                    .apply();
+                        }
+                    }
+                })
+                .addStage(STAGE_AUTHORIZATION, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        //reads and checks the API key, and the stored tokens
+                        mAuthorizationManager = new AuthorizationManager(mContext, finalProductId);
+                        TokenManager.doesTokenExists(mContext);
+                    }
+                }, STAGE_PREFERENCES)
+                .addStage(STAGE_CONNECTION, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        //the TLS setup is slow on older devices
+                        ClientUtil.getTLS12OkHttpClient();
+                    }
+                })
+                .addStage(STAGE_AUDIO_CACHE, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        AudioCacheManager.getInstance(mContext);
+                    }
+                })
+                .addStage(STAGE_DOWN_CHANNEL, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        mContext.startService(new Intent(mContext, DownChannelService.class));
+                    }
+                }, STAGE_AUTHORIZATION, STAGE_CONNECTION)
+                .addStage(STAGE_INITIALIZED, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        //nothing to do, only waits for the rest
+                    }
+                }, STAGE_PREFERENCES, STAGE_AUTHORIZATION, STAGE_CONNECTION, STAGE_AUDIO_CACHE, STAGE_DOWN_CHANNEL);
+        mInitializer.start();
+        mStartupTracer.end("AlexaManager()", start);
+    }
+
+    private static Executor createMainExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * A couple of threads that go away once startup is done
+     */
+    private static Executor createStartupExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AlexaStartup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -117,11 +230,62 @@ public class AlexaManager {
         return mInstance;
     }
 
+    /**
+     * Waits for the authorization stage if it isn't done yet
+     *
+     * @throws IllegalStateException if the authorization manager couldn't be created, e.g. the API key is bad
+     */
     public AuthorizationManager getAuthorizationManager() {
+        awaitStage(STAGE_AUTHORIZATION);
+        if (mAuthorizationManager == null) {
+            throw new IllegalStateException("The authorization manager failed to initialize, see the startup log");
+        }
         return mAuthorizationManager;
     }
 
+    /**
+     * @return when what happened during startup, {@link StartupTracer#toJson()} exports it
+     */
+    public StartupTracer getStartupTracer() {
+        return mStartupTracer;
+    }
+
+    /**
+     * Run something once all of the startup stages are done, on the main thread
+     */
+    public void whenInitialized(Runnable runnable) {
+        mInitializer.whenDone(STAGE_INITIALIZED, runnable);
+    }
+
+    /**
+     * Block until a startup stage is done, it usually is. Doesn't give up, whoever calls this needs what the stage
+     * sets up, stages that fail count as done.
+     */
+    private void awaitStage(String stage) {
+        if (mInitializer.isDone(stage)) {
+            return;
+        }
+        long start = mStartupTracer.begin();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (mInitializer.await(stage, STAGE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    break;
+                }
+                Log.w(TAG, "Still waiting for startup stage " + stage);
+            } catch (InterruptedException e) {
+                //finish waiting, the interrupt is passed on below
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        mStartupTracer.end("waiting for " + stage, start);
+    }
+
     public void setUrlEndpoint(String url) {
+        awaitStage(STAGE_PREFERENCES);
         urlEndpoint = url;
         Util.getPreferences(mContext)
                 .edit()
@@ -167,7 +331,7 @@ public class AlexaManager {
         return Single.create(new SingleOnSubscribe<Boolean>() {
             @Override
             public void subscribe(final SingleEmitter<Boolean> emitter) {
-                mAuthorizationManager.checkLoggedIn(mContext, new AsyncCallback<Boolean, Throwable>() {
+                getAuthorizationManager().checkLoggedIn(mContext, new AsyncCallback<Boolean, Throwable>() {
                     @Override public void start() { }
                     @Override public void success(Boolean result) {
                         emitter.onSuccess(result);
@@ -186,7 +350,7 @@ public class AlexaManager {
      * @return
      */
     public Boolean isLoggedIn() {
-        return mAuthorizationManager.isLoggedIn();
+        return getAuthorizationManager().isLoggedIn();
     }
 
     /**
@@ -196,7 +360,7 @@ public class AlexaManager {
      */
     public void logIn(@Nullable final AuthorizationCallback callback) {
         //check if we're already logged in
-        mAuthorizationManager.checkLoggedIn(mContext, new AsyncCallback<Boolean, Throwable>() {
+        getAuthorizationManager().checkLoggedIn(mContext, new AsyncCallback<Boolean, Throwable>() {
             @Override
             public void start() { }
 
@@ -209,7 +373,7 @@ public class AlexaManager {
                     }
                 } else {
                     //otherwise start the authorization process
-                    mAuthorizationManager.authorizeUser(callback);
+                    getAuthorizationManager().authorizeUser(callback);
                 }
             }
 
@@ -233,6 +397,7 @@ public class AlexaManager {
      */
     public void logOut() {
         TokenManager.removeTokens(mContext);
+        getAuthorizationManager().invalidateLoginState();
     }
 
 
@@ -247,6 +412,20 @@ public class AlexaManager {
     }
 
 
+    /**
+     * Synthesize the speech for text requests that are likely to be sent, e.g. canned commands, in the background,
+     * so {@link #sendTextRequest(String, AsyncCallback)} doesn't have to wait for the text to speech engine for them.
+     *
+     * @param texts the texts, as they'll be handed to {@link #sendTextRequest(String, AsyncCallback)}
+     */
+    public void preloadTextRequests(List<String> texts) {
+        List<String> spoken = new ArrayList<>();
+        for (String text : texts) {
+            spoken.add(SpeechSendText.getSpokenText(text));
+        }
+        getVoiceHelper().preloadSpeech(spoken);
+    }
+
     /**
      * Send a text string request to the AVS server, this is run through Text-To-Speech to create the raw audio file needed by the AVS server.
      * This allows the developer to pre/post-pend or send any arbitrary text to the server, versus the startRecording()/stopRecording() combination which
@@ -256,49 +435,18 @@ public class AlexaManager {
      * @param callback the state change callback
      */
     public void sendTextRequest(final String text, @Nullable final AsyncCallback<AvsResponse, Exception> callback) {
+        final int generation = mRecognizeGeneration;
+        if (getAuthorizationManager().isKnownLoggedIn()) {
+            //we know we're logged in, go straight to the token
+            sendTextRequestLoggedIn(text, callback, generation);
+            return;
+        }
         //check if the user is already logged in
-        mAuthorizationManager.checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
+        getAuthorizationManager().checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
             @Override
             public void success(Boolean result) {
                 if (result) {
-                    //if the user is logged in
-
-                    //set our URL
-                    final String url = getEventsUrl();
-                    //do this off the main thread
-                    new AsyncTask<Void, Void, AvsResponse>() {
-                        @Override
-                        protected AvsResponse doInBackground(Void... params) {
-                            //get our access token
-                            TokenManager.getAccessToken(mAuthorizationManager.getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
-                                @Override
-                                public void onSuccess(String token) {
-
-                                    try {
-                                        getSpeechSendText().sendText(mContext, url, token, text, new AsyncEventHandler(AlexaManager.this, callback));
-                                    } catch (Exception e) {
-                                        e.printStackTrace();
-                                        //bubble up the error
-                                        if (callback != null) {
-                                            callback.failure(e);
-                                        }
-                                    }
-                                }
-
-                                @Override
-                                public void onFailure(Throwable e) {
-
-                                }
-                            });
-                            return null;
-                        }
-
-
-                        @Override
-                        protected void onPostExecute(AvsResponse avsResponse) {
-                            super.onPostExecute(avsResponse);
-                        }
-                    }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    sendTextRequestLoggedIn(text, callback, generation);
                 } else {
                     //if the user is not logged in, log them in and then call the function again
                     logIn(new ImplAuthorizationCallback<AvsResponse>(callback) {
@@ -316,6 +464,102 @@ public class AlexaManager {
         });
     }
 
+    /**
+     * {@link #sendTextRequest(String, AsyncCallback)} once we know the user is logged in
+     */
+    private void sendTextRequestLoggedIn(final String text, @Nullable final AsyncCallback<AvsResponse, Exception> callback, final int generation) {
+        //set our URL
+        final String url = getEventsUrl();
+        //do this off the main thread
+        new AsyncTask<Void, Void, AvsResponse>() {
+            @Override
+            protected AvsResponse doInBackground(Void... params) {
+                //get our access token
+                TokenManager.getAccessToken(getAuthorizationManager().getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
+                    @Override
+                    public void onSuccess(String token) {
+                        if (isBargedIn(generation)) {
+                            reportBargedIn(callback);
+                            return;
+                        }
+                        try {
+                            getSpeechSendText().sendText(mContext, url, token, text, new AsyncEventHandler(AlexaManager.this, callback, generation));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            //bubble up the error
+                            if (callback != null) {
+                                callback.failure(e);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        //the refresh failed, don't take the login for granted anymore
+                        getAuthorizationManager().invalidateLoginState();
+                        if (callback != null) {
+                            callback.failure(new Exception(e));
+                        }
+                    }
+                });
+                return null;
+            }
+
+
+            @Override
+            protected void onPostExecute(AvsResponse avsResponse) {
+                super.onPostExecute(avsResponse);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    /**
+     * Send a list of text requests, at most concurrency of them at once, for load and regression testing. Each one has
+     * its own {@link SpeechSendText}, so this doesn't get in the way of {@link #sendTextRequest(String, AsyncCallback)}.
+     * The responses aren't acted upon, the callback gets them along with how long each one took, see
+     * {@link TextQueryBatch.Result}. The user has to be logged in already.
+     *
+     * @param texts       the arbitrary texts that we want to send to the AVS server
+     * @param concurrency how many requests are in flight at most
+     * @param urlEndpoint the AVS endpoint to send them to, null for {@link #getUrlEndpoint()}
+     * @param callback    gets the results in the order of the texts, on a background thread
+     */
+    public void sendTextRequests(final List<String> texts, final int concurrency, @Nullable final String urlEndpoint,
+                                 @NonNull final AsyncCallback<List<TextQueryBatch.Result>, Exception> callback) {
+        callback.start();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String url = getEventsUrl(urlEndpoint != null ? urlEndpoint : getUrlEndpoint());
+                final TextQueryBatch batch = new TextQueryBatch(mContext, url, concurrency, TextQueryBatch.DEFAULT_TIMEOUT_MILLIS);
+                TokenManager.getAccessToken(getAuthorizationManager().getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
+                    @Override
+                    public void onSuccess(final String token) {
+                        //comes in on the main thread
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    callback.success(batch.run(token, texts));
+                                } catch (InterruptedException e) {
+                                    callback.failure(e);
+                                }
+                                callback.complete();
+                            }
+                        }, "TextQueryBatch").start();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable e) {
+                        getAuthorizationManager().invalidateLoginState();
+                        callback.failure(new Exception(e));
+                        callback.complete();
+                    }
+                });
+            }
+        }).start();
+    }
 
     /**
      * Send raw audio data to the Alexa servers, this is a more advanced option to bypass other issues (like only one item being able to use the mic at a time).
@@ -332,6 +576,23 @@ public class AlexaManager {
         }, callback);
     }
 
+    /**
+     * Send raw audio data to the Alexa servers, compressed with the supplied encoder on the way out.
+     * See {@link AudioEncoderFactory#createPreferred()} for the smallest format AVS accepts on this device.
+     *
+     * @param data     16kHz 16-bit mono PCM that we want to send to the AVS server
+     * @param encoder  the upload encoder
+     * @param callback the state change callback
+     */
+    public void sendAudioRequest(final byte[] data, AudioEncoder encoder, @Nullable final AsyncCallback<AvsResponse, Exception> callback) {
+        sendAudioRequest(new EncodedDataRequestBody(encoder) {
+            @Override
+            protected void writePcmTo(PcmWriter writer) throws IOException {
+                writer.write(data, 0, data.length);
+            }
+        }, callback);
+    }
+
     /**
      * Send streamed raw audio data to the Alexa servers, this is a more advanced option to bypass other issues (like only one item being able to use the mic at a time).
      *
@@ -339,52 +600,18 @@ public class AlexaManager {
      * @param callback    the state change callback
      */
     public void sendAudioRequest(final DataRequestBody requestBody, @Nullable final AsyncCallback<AvsResponse, Exception> callback) {
+        final int generation = mRecognizeGeneration;
+        if (getAuthorizationManager().isKnownLoggedIn()) {
+            //we know we're logged in, go straight to the token
+            sendAudioRequestLoggedIn(requestBody, callback, generation);
+            return;
+        }
         //check if the user is already logged in
-        mAuthorizationManager.checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
-
+        getAuthorizationManager().checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
             @Override
             public void success(Boolean result) {
                 if (result) {
-                    //if the user is logged in
-
-                    //set our URL
-                    final String url = getEventsUrl();
-                    //get our access token
-                    TokenManager.getAccessToken(mAuthorizationManager.getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
-                        @Override
-                        public void onSuccess(final String token) {
-                            //do this off the main thread
-                            try {
-                                Runnable runnable = new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        try {
-                                            getSpeechSendAudio().sendAudio(url, token, requestBody, new AsyncEventHandler(AlexaManager.this, callback));
-                                        } catch (IOException e) {
-                                            e.printStackTrace();
-                                            //bubble up the error
-                                            if (callback != null) {
-                                                callback.failure(e);
-                                            }
-                                        }
-                                    }
-                                };
-
-                                Thread thread = new Thread(runnable);
-                                thread.start();
-
-                            } catch (RejectedExecutionException e) {
-                                e.printStackTrace();
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-
-                        @Override
-                        public void onFailure(Throwable e) {
-                            e.printStackTrace();
-                        }
-                    });
+                    sendAudioRequestLoggedIn(requestBody, callback, generation);
                 } else {
                     //if the user is not logged in, log them in and then call the function again
                     logIn(new ImplAuthorizationCallback<AvsResponse>(callback) {
@@ -400,20 +627,176 @@ public class AlexaManager {
         });
     }
 
-    public void cancelAudioRequest() {
-        //check if the user is already logged in
-        mAuthorizationManager.checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
+    /**
+     * {@link #sendAudioRequest(DataRequestBody, AsyncCallback)} once we know the user is logged in
+     */
+    private void sendAudioRequestLoggedIn(final DataRequestBody requestBody, @Nullable final AsyncCallback<AvsResponse, Exception> callback, final int generation) {
+        //set our URL
+        final String url = getEventsUrl();
+        //get our access token
+        TokenManager.getAccessToken(getAuthorizationManager().getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
             @Override
-            public void success(Boolean result) {
-                if (result) {
-                    //if the user is logged in
-                    getSpeechSendAudio().cancelRequest();
+            public void onSuccess(final String token) {
+                //do this off the main thread
+                try {
+                    Runnable runnable = new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isBargedIn(generation)) {
+                                reportBargedIn(callback);
+                                return;
+                            }
+                            try {
+                                getSpeechSendAudio().sendAudio(url, token, requestBody, new AsyncEventHandler(AlexaManager.this, callback, generation));
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                                //bubble up the error
+                                if (callback != null) {
+                                    callback.failure(e);
+                                }
+                            }
+                        }
+                    };
+
+                    Thread thread = new Thread(runnable);
+                    thread.start();
+
+                } catch (RejectedExecutionException e) {
+                    e.printStackTrace();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                e.printStackTrace();
+                //the refresh failed, don't take the login for granted anymore
+                getAuthorizationManager().invalidateLoginState();
+                if (callback != null) {
+                    callback.failure(new Exception(e));
                 }
             }
+        });
+    }
+
+    /**
+     * Cancel the audio request that's in flight, right away, there's nothing to check with the server for that
+     */
+    public void cancelAudioRequest() {
+        SpeechSendAudio speechSendAudio = mSpeechSendAudio;
+        if (speechSendAudio != null) {
+            speechSendAudio.cancelRequest();
+        }
+    }
 
+    /**
+     * Interrupt Alexa because the user started talking (wake word, tap): stop what's playing, cancel the Recognize
+     * request that's in flight (or still waiting for its token), drop the dialog and content items that are
+     * queued and start capturing again. Alerts are left alone.
+     * <p>
+     * None of this waits for the network. The queues are flushed and startCapture is run as one task on the
+     * sequencer's executor, so nothing that was queued before is handed out between the two, without a sequencer
+     * startCapture runs on the calling thread. Timings are logged and collected in {@link #getBargeInMetrics()}.
+     *
+     * @param player       the player to stop, can be null
+     * @param sequencer    the sequencer to flush, can be null
+     * @param startCapture starts recording the new request, can be null
+     */
+    public void bargeIn(@Nullable AlexaAudioPlayer player, @Nullable final DirectiveSequencer sequencer,
+                        @Nullable final Runnable startCapture) {
+        final long start = System.nanoTime();
+        //requests that haven't made it to the network yet won't anymore
+        mRecognizeGeneration++;
+        if (player != null) {
+            player.stop();
+        }
+        final long stopped = System.nanoTime();
+        SpeechSendAudio speechSendAudio = mSpeechSendAudio;
+        if (speechSendAudio != null) {
+            speechSendAudio.cancelRequest();
+        }
+        SpeechSendVoice speechSendVoice = mSpeechSendVoice;
+        if (speechSendVoice != null) {
+            speechSendVoice.cancelRequest();
+        }
+        SpeechSendText speechSendText = mSpeechSendText;
+        if (speechSendText != null) {
+            speechSendText.cancelRequest();
+        }
+        final long cancelled = System.nanoTime();
+        if (sequencer == null) {
+            runCapture(startCapture, start, stopped, cancelled, cancelled, cancelled);
+            return;
+        }
+        sequencer.execute(new Runnable() {
+            @Override
+            public void run() {
+                long waited = System.nanoTime();
+                //the player is stopped, so is whatever content was playing, the dialog goes on with the capture
+                sequencer.clearNow(false, DirectiveSequencer.Channel.DIALOG, DirectiveSequencer.Channel.CONTENT);
+                runCapture(startCapture, start, stopped, cancelled, waited, System.nanoTime());
+            }
         });
     }
 
+    private void runCapture(@Nullable Runnable startCapture, long start, long stopped, long cancelled, long waited,
+                            long flushed) {
+        if (startCapture != null) {
+            startCapture.run();
+        }
+        long captured = System.nanoTime();
+        mBargeInMetrics.add(stopped - start, cancelled - stopped, waited - cancelled, flushed - waited, captured - flushed);
+        Log.i(TAG, "Barge-in took " + (captured - start) / 1000 + "us: stop " + (stopped - start) / 1000
+                + "us, cancel " + (cancelled - stopped) / 1000 + "us, wait " + (waited - cancelled) / 1000
+                + "us, flush " + (flushed - waited) / 1000 + "us, capture " + (captured - flushed) / 1000 + "us");
+    }
+
+    public BargeInMetrics getBargeInMetrics() {
+        return mBargeInMetrics;
+    }
+
+    /**
+     * Get told about the directives of a type that come in over the down channel. The listener is only weakly
+     * referenced, keep a reference to it for as long as it should be called, and remove it when it shouldn't.
+     *
+     * @param type     the directives it wants, subclasses included, {@link AvsItem} for all of them
+     * @param listener the listener
+     * @param executor where it's called, e.g. {@link DirectiveDispatcher#mainThread()}
+     */
+    public <T extends AvsItem> void addDirectiveListener(Class<T> type, DirectiveListener<? super T> listener, Executor executor) {
+        mDirectiveDispatcher.addListener(type, listener, executor);
+    }
+
+    public void removeDirectiveListener(DirectiveListener<?> listener) {
+        mDirectiveDispatcher.removeListener(listener);
+    }
+
+    /**
+     * @return what hands the down channel directives to the {@link DirectiveListener}s
+     */
+    public DirectiveDispatcher getDirectiveDispatcher() {
+        return mDirectiveDispatcher;
+    }
+
+    private boolean isBargedIn(int generation) {
+        if (generation != mRecognizeGeneration) {
+            Log.i(TAG, "Dropping a request that was interrupted by a barge-in");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fail a request that was dropped because of a barge-in, so its callback isn't left waiting
+     */
+    private static void reportBargedIn(@Nullable AsyncCallback<AvsResponse, Exception> callback) {
+        if (callback != null) {
+            callback.failure(new CancellationException("Interrupted by a barge-in"));
+            callback.complete();
+        }
+    }
+
     /**
      * Send a confirmation to the Alexa server that the device volume has been changed in response to a directive
      * See: {@link #sendEvent(String, AsyncCallback)}
@@ -504,6 +887,34 @@ public class AlexaManager {
         sendEvent(event, callback);
     }
 
+    /**
+     * Send an event to indicate that the progressReportDelayInMilliseconds of a Play directive has elapsed
+     *
+     * @param item     our playback item
+     * @param milliseconds the current offset
+     * @param callback
+     */
+    public void sendProgressReportDelayElapsedEvent(AvsItem item, long milliseconds, final AsyncCallback<AvsResponse, Exception> callback) {
+        if (item == null) {
+            return;
+        }
+        sendEvent(Event.getProgressReportDelayElapsedEvent(item.getToken(), milliseconds), callback);
+    }
+
+    /**
+     * Send an event for every progressReportIntervalInMilliseconds of playback of a Play directive
+     *
+     * @param item     our playback item
+     * @param milliseconds the current offset
+     * @param callback
+     */
+    public void sendProgressReportIntervalElapsedEvent(AvsItem item, long milliseconds, final AsyncCallback<AvsResponse, Exception> callback) {
+        if (item == null) {
+            return;
+        }
+        sendEvent(Event.getProgressReportIntervalElapsedEvent(item.getToken(), milliseconds), callback);
+    }
+
     /**
      * Send a generic event to the AVS server, this is generated using {@link com.willblaschko.android.alexa.data.Event.Builder}
      *
@@ -511,36 +922,17 @@ public class AlexaManager {
      * @param callback
      */
     public void sendEvent(final String event, final AsyncCallback<AvsResponse, Exception> callback) {
+        if (getAuthorizationManager().isKnownLoggedIn()) {
+            //we know we're logged in, go straight to the token
+            sendEventLoggedIn(event, callback);
+            return;
+        }
         //check if the user is already logged in
-        mAuthorizationManager.checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
-
+        getAuthorizationManager().checkLoggedIn(mContext, new ImplCheckLoggedInCallback() {
             @Override
             public void success(Boolean result) {
                 if (result) {
-                    //if the user is logged in
-
-                    //set our URL
-                    final String url = getEventsUrl();
-                    //get our access token
-                    TokenManager.getAccessToken(mAuthorizationManager.getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
-                        @Override
-                        public void onSuccess(final String token) {
-                            Runnable runnable = new Runnable() {
-                                @Override
-                                public void run() {
-                                    Log.i(TAG, event);
-                                    new GenericSendEvent(url, token, event, new AsyncEventHandler(AlexaManager.this, callback));
-                                }
-                            };
-                            Thread thread = new Thread(runnable);
-                            thread.start();
-                        }
-
-                        @Override
-                        public void onFailure(Throwable e) {
-
-                        }
-                    });
+                    sendEventLoggedIn(event, callback);
                 } else {
                     //if the user is not logged in, log them in and then call the function again
                     logIn(new ImplAuthorizationCallback<AvsResponse>(callback) {
@@ -556,11 +948,44 @@ public class AlexaManager {
         });
     }
 
+    /**
+     * {@link #sendEvent(String, AsyncCallback)} once we know the user is logged in
+     */
+    private void sendEventLoggedIn(final String event, final AsyncCallback<AvsResponse, Exception> callback) {
+        //set our URL
+        final String url = getEventsUrl();
+        //get our access token
+        TokenManager.getAccessToken(getAuthorizationManager().getAmazonAuthorizationManager(), mContext, new TokenManager.TokenCallback() {
+            @Override
+            public void onSuccess(final String token) {
+                Runnable runnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.i(TAG, event);
+                        new GenericSendEvent(url, token, event, new AsyncEventHandler(AlexaManager.this, callback));
+                    }
+                };
+                Thread thread = new Thread(runnable);
+                thread.start();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                //the refresh failed, don't take the login for granted anymore
+                getAuthorizationManager().invalidateLoginState();
+                if (callback != null) {
+                    callback.failure(new Exception(e));
+                }
+            }
+        });
+    }
+
     private boolean isAudioPlayItem(AvsItem item) {
         return item != null && (item instanceof AvsPlayAudioItem || !(item instanceof AvsSpeakItem));
     }
 
     public String getUrlEndpoint() {
+        awaitStage(STAGE_PREFERENCES);
         return urlEndpoint;
     }
 
@@ -572,8 +997,12 @@ public class AlexaManager {
     }
 
     public String getEventsUrl() {
+        return getEventsUrl(getUrlEndpoint());
+    }
+
+    private String getEventsUrl(String urlEndpoint) {
         return new StringBuilder()
-                .append(getUrlEndpoint())
+                .append(urlEndpoint)
                 .append("/")
                 .append(mContext.getString(R.string.alexa_api_version))
                 .append("/")
@@ -595,12 +1024,19 @@ public class AlexaManager {
 
         AsyncCallback<AvsResponse, Exception> callback;
         AlexaManager manager;
+        //the barge-in generation of a Recognize request, -1 for other events
+        int generation = -1;
 
         public AsyncEventHandler(AlexaManager manager, AsyncCallback<AvsResponse, Exception> callback) {
             this.callback = callback;
             this.manager = manager;
         }
 
+        public AsyncEventHandler(AlexaManager manager, AsyncCallback<AvsResponse, Exception> callback, int generation) {
+            this(manager, callback);
+            this.generation = generation;
+        }
+
         @Override
         public void start() {
             if (callback != null) {
@@ -610,6 +1046,14 @@ public class AlexaManager {
 
         @Override
         public void success(Call currentCall) {
+            if (generation >= 0 && manager.isBargedIn(generation)) {
+                //interrupted while the request was being prepared, complete() follows
+                currentCall.cancel();
+                if (callback != null) {
+                    callback.failure(new CancellationException("Interrupted by a barge-in"));
+                }
+                return;
+            }
             try {
                 Response response = currentCall.execute();
 
@@ -628,10 +1072,9 @@ public class AlexaManager {
                     callback.success(items);
                 }
             } catch (IOException | AvsException e) {
-                if (!currentCall.isCanceled()) {
-                    if (callback != null) {
-                        callback.failure(e);
-                    }
+                if (callback != null) {
+                    //cancelled by a barge-in or cancelAudioRequest()
+                    callback.failure(currentCall.isCanceled() ? new CancellationException("Request cancelled") : e);
                 }
             }
         }
@@ -36,6 +36,8 @@ public class AuthorizationManager {
     private AmazonAuthorizationManager mAuthManager;
     private static final String[] APP_SCOPES= {"alexa:all"};
     private AuthorizationCallback mCallback;
+    //what checkLoggedIn() or the last login found, null if we don't know (anymore)
+    private volatile Boolean mLoggedIn;
 
 
     public static final String CODE_VERIFIER = "code_verifier";
@@ -54,6 +56,8 @@ public class AuthorizationManager {
 
         try {
             mAuthManager = new AmazonAuthorizationManager(mContext, Bundle.EMPTY);
+            //keep the access token fresh, requests shouldn't have to wait for a refresh
+            TokenManager.startTokenRefresh(mAuthManager, mContext);
         }catch(IllegalArgumentException e){
             //This error will be thrown if the main project doesn't have the assets/api_key.txt file in it--this contains the security credentials from Amazon
             Util.showAuthToast(mContext, "APIKey is incorrect or does not exist.");
@@ -68,19 +72,41 @@ public class AuthorizationManager {
      * @param callback
      */
     public void checkLoggedIn(Context context, final AsyncCallback<Boolean, Throwable> callback){
+        if(isKnownLoggedIn()){
+            callback.success(true);
+            return;
+        }
         TokenManager.getAccessToken(mAuthManager, context, new TokenManager.TokenCallback() {
             @Override
             public void onSuccess(String token) {
+                mLoggedIn = true;
                 callback.success(true);
             }
 
             @Override
             public void onFailure(Throwable e) {
+                mLoggedIn = false;
                 callback.success(false);
             }
         });
     }
 
+    /**
+     * @return true if we know the user is logged in and requests can go straight to {@link TokenManager}, false if
+     * {@link #checkLoggedIn(Context, AsyncCallback)} has to find out
+     */
+    public boolean isKnownLoggedIn(){
+        //the tokens are in memory, this doesn't touch the disk
+        return Boolean.TRUE.equals(mLoggedIn) && TokenManager.doesTokenExists(mContext);
+    }
+
+    /**
+     * Forget what we know about the login, after a logout or a failed token refresh
+     */
+    public void invalidateLoginState(){
+        mLoggedIn = null;
+    }
+
     /**
      *
      * @return
@@ -144,6 +170,7 @@ public class AuthorizationManager {
             TokenManager.getAccessToken(mContext, authCode, getCodeVerifier(), mAuthManager, new TokenManager.TokenResponseCallback() {
                 @Override
                 public void onSuccess(TokenManager.TokenResponse response) {
+                    mLoggedIn = response.access_token != null;
 
                     if(mCallback != null){
                         mCallback.onSuccess();
@@ -0,0 +1,89 @@
+package com.willblaschko.android.alexa;
+
+/**
+ * How long {@link AlexaManager#bargeIn} took, step by step, over all barge-ins so far. Times are in microseconds.
+ */
+public class BargeInMetrics {
+
+    private long mCount = 0;
+    private long mLastTotal = 0;
+    private long mMaxTotal = 0;
+    private long mSumTotal = 0;
+    private long mLastStop = 0;
+    private long mLastCancel = 0;
+    private long mLastWait = 0;
+    private long mLastFlush = 0;
+    private long mLastCapture = 0;
+
+    synchronized void add(long stopNanos, long cancelNanos, long waitNanos, long flushNanos, long captureNanos) {
+        mLastStop = stopNanos / 1000;
+        mLastCancel = cancelNanos / 1000;
+        mLastWait = waitNanos / 1000;
+        mLastFlush = flushNanos / 1000;
+        mLastCapture = captureNanos / 1000;
+        mLastTotal = mLastStop + mLastCancel + mLastWait + mLastFlush + mLastCapture;
+        mMaxTotal = Math.max(mMaxTotal, mLastTotal);
+        mSumTotal += mLastTotal;
+        mCount++;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return from the call until the new capture was started, for the last barge-in
+     */
+    public synchronized long getLastLatency() {
+        return mLastTotal;
+    }
+
+    public synchronized long getAverageLatency() {
+        return mCount == 0 ? 0 : mSumTotal / mCount;
+    }
+
+    public synchronized long getMaxLatency() {
+        return mMaxTotal;
+    }
+
+    /**
+     * @return time spent stopping the player, the last time
+     */
+    public synchronized long getLastStopTime() {
+        return mLastStop;
+    }
+
+    /**
+     * @return time spent cancelling the Recognize request, the last time
+     */
+    public synchronized long getLastCancelTime() {
+        return mLastCancel;
+    }
+
+    /**
+     * @return time spent waiting for the sequencer to get to the flush, the last time
+     */
+    public synchronized long getLastWaitTime() {
+        return mLastWait;
+    }
+
+    /**
+     * @return time spent flushing the queues, the last time
+     */
+    public synchronized long getLastFlushTime() {
+        return mLastFlush;
+    }
+
+    /**
+     * @return time spent starting the capture, the last time
+     */
+    public synchronized long getLastCaptureStartTime() {
+        return mLastCapture;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BargeInMetrics{count=" + mCount + ", last=" + mLastTotal + "us, avg=" + getAverageLatency()
+                + "us, max=" + mMaxTotal + "us}";
+    }
+}
@@ -0,0 +1,282 @@
+package com.willblaschko.android.alexa;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.willblaschko.android.alexa.callbacks.AsyncCallback;
+import com.willblaschko.android.alexa.interfaces.AvsException;
+import com.willblaschko.android.alexa.interfaces.AvsResponse;
+import com.willblaschko.android.alexa.interfaces.response.ResponseParser;
+import com.willblaschko.android.alexa.interfaces.speechrecognizer.SpeechSendText;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+import static com.willblaschko.android.alexa.interfaces.response.ResponseParser.getBoundary;
+
+/**
+ * Sends a list of text requests to AVS, a few at a time, each with a {@link SpeechSendText} of its own, and reports
+ * how each one went and where its time went. Meant for regression and capacity checks: the responses aren't handed
+ * to the {@link com.willblaschko.android.alexa.system.AndroidSystemHandler}, nothing is played.
+ *
+ * See {@link AlexaManager#sendTextRequests(List, int, String, AsyncCallback)}.
+ */
+public class TextQueryBatch {
+
+    private static final String TAG = "TextQueryBatch";
+
+    //a single query that takes longer than this is cancelled
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60 * 1000;
+
+    private final SenderFactory mSenders;
+    private final int mConcurrency;
+    private final long mTimeoutMillis;
+
+    /**
+     * @param url         the events URL the queries go to
+     * @param concurrency how many queries are in flight at most
+     */
+    TextQueryBatch(Context context, String url, int concurrency, long timeoutMillis) {
+        this(new SpeechSendTextFactory(context.getApplicationContext(), url), concurrency, timeoutMillis);
+    }
+
+    /**
+     * @param senders makes a {@link Sender} for each query
+     */
+    TextQueryBatch(SenderFactory senders, int concurrency, long timeoutMillis) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+        }
+        mSenders = senders;
+        mConcurrency = concurrency;
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Run all of the queries, blocks until they're done
+     *
+     * @return a result for each text, in the same order
+     */
+    List<Result> run(final String accessToken, List<String> texts) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mConcurrency, Math.max(texts.size(), 1)));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (final String text : texts) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return runQuery(accessToken, text);
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Result result = new Result(texts.get(i));
+                    result.mError = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    results.add(result);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result runQuery(String accessToken, String text) throws InterruptedException {
+        final Result result = new Result(text);
+        final Sender sender = mSenders.create();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.currentTimeMillis();
+
+        try {
+            sender.send(accessToken, text, new AsyncCallback<Call, Exception>() {
+                @Override
+                public void start() {
+
+                }
+
+                @Override
+                public void success(Call call) {
+                    long prepared = System.currentTimeMillis();
+                    result.mPrepareMillis = prepared - start;
+                    try {
+                        Response response = call.execute();
+                        long received = System.currentTimeMillis();
+                        result.mResponseCode = response.code();
+                        result.mResponseMillis = received - prepared;
+
+                        result.mResponse = response.code() == HttpURLConnection.HTTP_NO_CONTENT ? new AvsResponse() :
+                                ResponseParser.parseResponse(response.body().byteStream(), getBoundary(response));
+                        response.body().close();
+                        result.mParseMillis = System.currentTimeMillis() - received;
+                    } catch (IOException | AvsException e) {
+                        result.mError = e;
+                    }
+                }
+
+                @Override
+                public void failure(Exception error) {
+                    result.mError = error;
+                }
+
+                @Override
+                public void complete() {
+                    done.countDown();
+                }
+            });
+        } catch (IOException e) {
+            result.mError = e;
+            done.countDown();
+        }
+
+        if (!done.await(mTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            sender.cancel();
+            result.mError = new IOException("No response after " + mTimeoutMillis + "ms");
+        }
+        result.mTotalMillis = System.currentTimeMillis() - start;
+        if (result.mError != null) {
+            Log.w(TAG, "Query failed: " + text, result.mError);
+        }
+        return result;
+    }
+
+    /**
+     * Sends one query, like {@link SpeechSendText}
+     */
+    interface Sender {
+        /**
+         * @param callback gets the call to execute, complete() once it's done with it
+         */
+        void send(String accessToken, String text, AsyncCallback<Call, Exception> callback) throws IOException;
+
+        /**
+         * Give up on the query, from another thread
+         */
+        void cancel();
+    }
+
+    interface SenderFactory {
+        Sender create();
+    }
+
+    private static class SpeechSendTextFactory implements SenderFactory {
+        private final Context mContext;
+        private final String mUrl;
+
+        SpeechSendTextFactory(Context context, String url) {
+            mContext = context;
+            mUrl = url;
+        }
+
+        @Override
+        public Sender create() {
+            final SpeechSendText speechSendText = new SpeechSendText();
+            return new Sender() {
+                @Override
+                public void send(String accessToken, String text, AsyncCallback<Call, Exception> callback) throws IOException {
+                    speechSendText.sendText(mContext, mUrl, accessToken, text, callback);
+                }
+
+                @Override
+                public void cancel() {
+                    speechSendText.cancelRequest();
+                }
+            };
+        }
+    }
+
+    /**
+     * How a query went. Where the time goes depends on the platform: from API 24 the speech is synthesized while
+     * it's uploaded, so it's part of the response time, before that it's part of the prepare time.
+     */
+    public static class Result {
+        private final String mText;
+        private volatile AvsResponse mResponse;
+        private volatile Exception mError;
+        private volatile int mResponseCode = -1;
+        private volatile long mPrepareMillis = -1;
+        private volatile long mResponseMillis = -1;
+        private volatile long mParseMillis = -1;
+        private volatile long mTotalMillis = -1;
+
+        Result(String text) {
+            mText = text;
+        }
+
+        public String getText() {
+            return mText;
+        }
+
+        public boolean isSuccessful() {
+            return mError == null && mResponse != null;
+        }
+
+        /**
+         * @return the parsed directives, null if it failed
+         */
+        public AvsResponse getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * @return why it failed, null if it didn't
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * @return the HTTP status, -1 if there was no response
+         */
+        public int getResponseCode() {
+            return mResponseCode;
+        }
+
+        /**
+         * @return from the start until the request was ready to go, -1 if it never was
+         */
+        public long getPrepareMillis() {
+            return mPrepareMillis;
+        }
+
+        /**
+         * @return from sending the request until the response headers came in, -1 if they didn't
+         */
+        public long getResponseMillis() {
+            return mResponseMillis;
+        }
+
+        /**
+         * @return reading and parsing the response body, -1 if it wasn't
+         */
+        public long getParseMillis() {
+            return mParseMillis;
+        }
+
+        public long getTotalMillis() {
+            return mTotalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return (isSuccessful() ? "OK " : "FAILED ") + mResponseCode + " \"" + mText + "\" total " + mTotalMillis
+                    + "ms (prepare " + mPrepareMillis + "ms, response " + mResponseMillis + "ms, parse " + mParseMillis
+                    + "ms)" + (mError != null ? " " + mError : "");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.willblaschko.android.alexa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps our tokens in memory, so handing out a valid access token doesn't touch the SharedPreferences or take a
+ * lock, and keeps track of the refresh that's going on, so everyone who finds the token expired waits for the same
+ * refresh instead of starting their own.
+ *
+ * Thread-safe.
+ */
+class TokenHolder {
+
+    private volatile Tokens mTokens;
+    private volatile boolean mLoaded = false;
+
+    //callbacks waiting for the refresh in flight, null if there is none
+    private List<TokenManager.TokenCallback> mWaiters;
+    //bumped by clear(), a refresh that was started before doesn't get to store its tokens
+    private int mGeneration = 0;
+    private int mRefreshGeneration;
+
+    /**
+     * @return the tokens we have, null if there are none
+     */
+    Tokens get() {
+        return mTokens;
+    }
+
+    /**
+     * @return true once {@link #load(Tokens)} (or anything else that sets the tokens) was called
+     */
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Start out with what was stored, ignored if we have tokens already
+     */
+    synchronized void load(Tokens stored) {
+        if (!mLoaded) {
+            mTokens = stored;
+            mLoaded = true;
+        }
+    }
+
+    synchronized void set(Tokens tokens) {
+        mTokens = tokens;
+        mLoaded = true;
+    }
+
+    /**
+     * Forget the tokens, a refresh that's in flight won't bring them back
+     */
+    synchronized void clear() {
+        mTokens = null;
+        mLoaded = true;
+        mGeneration++;
+    }
+
+    /**
+     * Wait for a refresh
+     *
+     * @return true if there is no refresh in flight and the caller has to start one, false if the callback was
+     * added to the one that's going already
+     */
+    synchronized boolean joinRefresh(TokenManager.TokenCallback callback) {
+        if (mWaiters != null) {
+            mWaiters.add(callback);
+            return false;
+        }
+        mWaiters = new ArrayList<>();
+        mWaiters.add(callback);
+        mRefreshGeneration = mGeneration;
+        return true;
+    }
+
+    /**
+     * @return true if there is a refresh in flight
+     */
+    synchronized boolean isRefreshing() {
+        return mWaiters != null;
+    }
+
+    /**
+     * The refresh is done, store its tokens unless we were cleared in the meantime
+     *
+     * @param tokens the new tokens, null if the refresh failed
+     * @return the callbacks that waited for it, each has to be told
+     */
+    synchronized List<TokenManager.TokenCallback> finishRefresh(Tokens tokens) {
+        if (tokens != null && mRefreshGeneration == mGeneration) {
+            mTokens = tokens;
+            mLoaded = true;
+        }
+        List<TokenManager.TokenCallback> waiters = mWaiters;
+        mWaiters = null;
+        return waiters != null ? waiters : new ArrayList<TokenManager.TokenCallback>();
+    }
+
+    static class Tokens {
+        final String mAccessToken;
+        final String mRefreshToken;
+        //in milliseconds since the epoch
+        final long mExpires;
+
+        Tokens(String accessToken, String refreshToken, long expires) {
+            mAccessToken = accessToken;
+            mRefreshToken = refreshToken;
+            mExpires = expires;
+        }
+
+        /**
+         * @return true if the access token can still be used at the given time
+         */
+        boolean isValid(long now) {
+            return mAccessToken != null && mExpires > now;
+        }
+    }
+}
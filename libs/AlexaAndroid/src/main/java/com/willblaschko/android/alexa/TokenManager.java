@@ -33,8 +33,10 @@ public class TokenManager {
 
     private final static String TAG = "TokenManager";
 
-    private static String REFRESH_TOKEN;
-    private static String ACCESS_TOKEN;
+    //what's in the preferences, in memory, and the refresh in flight
+    private static final TokenHolder sTokens = new TokenHolder();
+    //keeps the token fresh ahead of its expiry, null until started
+    private static TokenRefreshScheduler sRefreshScheduler;
 
     private final static String ARG_GRANT_TYPE = "grant_type";
     private final static String ARG_CODE = "code";
@@ -129,20 +131,21 @@ public class TokenManager {
      * @param callback the TokenCallback where we return our tokens when successful
      */
     public static void getAccessToken(@NonNull AmazonAuthorizationManager authorizationManager, @NonNull Context context, @NonNull TokenCallback callback) {
-        SharedPreferences preferences = Util.getPreferences(context.getApplicationContext());
+        TokenHolder.Tokens tokens = getTokens(context);
         //if we have an access token
-        if(preferences.contains(PREF_ACCESS_TOKEN)){
+        if(tokens != null && tokens.mAccessToken != null){
 
-            if(preferences.getLong(PREF_TOKEN_EXPIRES, 0) > System.currentTimeMillis()){
+            if(tokens.isValid(System.currentTimeMillis())){
                 //if it's not expired, return the existing token
-                callback.onSuccess(preferences.getString(PREF_ACCESS_TOKEN, null));
+                callback.onSuccess(tokens.mAccessToken);
                 return;
             }else{
                 //if it is expired but we have a refresh token, get a new token
-                if(preferences.contains(PREF_REFRESH_TOKEN)){
-                    getRefreshToken(authorizationManager, context, callback, preferences.getString(PREF_REFRESH_TOKEN, ""));
+                if(tokens.mRefreshToken != null){
+                    refreshAccessToken(authorizationManager, context, callback);
                     return;
                 }
+                callback.onFailure(new IllegalStateException("Token expired and no refresh token found."));
             }
         } else {
             callback.onFailure(new IllegalStateException("User is not logged in and no refresh token found."));
@@ -155,18 +158,92 @@ public class TokenManager {
      * @return
      */
     public static Boolean doesTokenExists(@NonNull Context context) {
-        SharedPreferences preferences = Util.getPreferences(context.getApplicationContext());
-        return preferences.contains(PREF_ACCESS_TOKEN);
+        TokenHolder.Tokens tokens = getTokens(context);
+        return tokens != null && tokens.mAccessToken != null;
     }
 
     /**
-     * Get a new refresh token from the Amazon server to replace the expired access token that we currently have
+     * Refresh the access token, whether it's expired or not
+     * @param authorizationManager our AuthManager
+     * @param context local/application context
+     * @param callback called on the main thread with the new token
+     */
+    static void refreshAccessToken(@NonNull AmazonAuthorizationManager authorizationManager, @NonNull Context context, @NonNull TokenCallback callback) {
+        TokenHolder.Tokens tokens = getTokens(context);
+        if(tokens == null || tokens.mRefreshToken == null){
+            callback.onFailure(new IllegalStateException("User is not logged in and no refresh token found."));
+            return;
+        }
+        //everyone who needs a new token waits for the same refresh
+        if(sTokens.joinRefresh(callback)) {
+            try {
+                getRefreshToken(authorizationManager, context, tokens.mRefreshToken);
+            } catch (RuntimeException e) {
+                //don't leave the others waiting forever
+                finishRefresh(new Handler(Looper.getMainLooper()), null, e);
+            }
+        }
+    }
+
+    /**
+     * Refresh the access token in the background a while before it expires, so requests never have to wait for
+     * the refresh. Failed refreshes are retried with a backoff and when the network comes back.
+     * @param authorizationManager our AuthManager
+     * @param context local/application context
+     */
+    public static synchronized void startTokenRefresh(@NonNull AmazonAuthorizationManager authorizationManager, @NonNull Context context) {
+        if(sRefreshScheduler == null){
+            sRefreshScheduler = new TokenRefreshScheduler(context, authorizationManager);
+        }
+        sRefreshScheduler.start();
+    }
+
+    public static synchronized void stopTokenRefresh() {
+        if(sRefreshScheduler != null){
+            sRefreshScheduler.stop();
+        }
+    }
+
+    /**
+     * @param marginMillis how long before its expiry the token is refreshed by {@link #startTokenRefresh(AmazonAuthorizationManager, Context)}
+     */
+    public static synchronized void setTokenRefreshMargin(long marginMillis) {
+        if(sRefreshScheduler != null){
+            sRefreshScheduler.setMargin(marginMillis);
+        }
+    }
+
+    private static synchronized void rescheduleTokenRefresh() {
+        if(sRefreshScheduler != null){
+            sRefreshScheduler.reschedule();
+        }
+    }
+
+    /**
+     * @return our tokens, read from the SharedPreferences the first time only
+     */
+    static TokenHolder.Tokens getTokens(Context context) {
+        if (!sTokens.isLoaded()) {
+            SharedPreferences preferences = Util.getPreferences(context.getApplicationContext());
+            if (preferences.contains(PREF_ACCESS_TOKEN)) {
+                sTokens.load(new TokenHolder.Tokens(preferences.getString(PREF_ACCESS_TOKEN, null),
+                        preferences.getString(PREF_REFRESH_TOKEN, null),
+                        preferences.getLong(PREF_TOKEN_EXPIRES, 0)));
+            } else {
+                sTokens.load(null);
+            }
+        }
+        return sTokens.get();
+    }
+
+    /**
+     * Get a new refresh token from the Amazon server to replace the expired access token that we currently have,
+     * the callbacks that joined the refresh are told how it went
      * @param authorizationManager
      * @param context
-     * @param callback
      * @param refreshToken the refresh token we have stored in local cache (sharedPreferences)
      */
-    private static void getRefreshToken(@NonNull AmazonAuthorizationManager authorizationManager, @NonNull final Context context, @NonNull final TokenCallback callback, String refreshToken){
+    private static void getRefreshToken(@NonNull AmazonAuthorizationManager authorizationManager, @NonNull final Context context, final String refreshToken){
         String url = context.getString(R.string.alexa_auth_url);
 
         //set up our arguments for the api call, these will be the call headers
@@ -189,15 +266,8 @@ public class TokenManager {
             @Override
             public void onFailure(Call call, final IOException e) {
                 e.printStackTrace();
-                if(callback != null){
-                    //bubble up error
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onFailure(e);
-                        }
-                    });
-                }
+                //bubble up error
+                finishRefresh(handler, null, e);
             }
 
             @Override
@@ -208,35 +278,77 @@ public class TokenManager {
                 }
 
                 //get our tokens back
-                final TokenResponse tokenResponse = new Gson().fromJson(s, TokenResponse.class);
-                //save our tokens
-                saveTokens(context, tokenResponse);
+                TokenResponse tokenResponse = null;
+                try {
+                    tokenResponse = new Gson().fromJson(s, TokenResponse.class);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                if(tokenResponse == null || tokenResponse.access_token == null){
+                    //nobody may be left waiting
+                    finishRefresh(handler, null, new IOException("Token refresh failed: " + response.code()));
+                    return;
+                }
+                if(tokenResponse.refresh_token == null){
+                    tokenResponse.refresh_token = refreshToken;
+                }
                 //we have new tokens!
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        callback.onSuccess(tokenResponse.access_token);
-                    }
-                });
+                TokenHolder.Tokens tokens = toTokens(tokenResponse);
+                finishRefresh(handler, tokens, null);
+                //save our tokens, in the background
+                if(sTokens.get() == tokens) {
+                    persistTokens(context, tokens);
+                    rescheduleTokenRefresh();
+                }
             }
         });
     }
 
+    /**
+     * Tell everyone who waited for the refresh, on the main thread
+     */
+    private static void finishRefresh(Handler handler, final TokenHolder.Tokens tokens, final Exception error){
+        for (final TokenCallback callback : sTokens.finishRefresh(tokens)) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (tokens != null) {
+                        callback.onSuccess(tokens.mAccessToken);
+                    } else {
+                        callback.onFailure(error);
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Save our new tokens in SharePreferences so we can access them at a later point
      * @param context
      * @param tokenResponse
      */
     private static void saveTokens(Context context, TokenResponse tokenResponse){
-        REFRESH_TOKEN = tokenResponse.refresh_token;
-        ACCESS_TOKEN = tokenResponse.access_token;
+        TokenHolder.Tokens tokens = toTokens(tokenResponse);
+        sTokens.set(tokens);
+        persistTokens(context, tokens);
+        rescheduleTokenRefresh();
+    }
 
-        SharedPreferences.Editor preferences = Util.getPreferences(context.getApplicationContext()).edit();
-        preferences.putString(PREF_ACCESS_TOKEN, ACCESS_TOKEN);
-        preferences.putString(PREF_REFRESH_TOKEN, REFRESH_TOKEN);
+    private static TokenHolder.Tokens toTokens(TokenResponse tokenResponse){
         //comes back in seconds, needs to be milis
-        preferences.putLong(PREF_TOKEN_EXPIRES, (System.currentTimeMillis() + tokenResponse.expires_in * 1000));
-        preferences.commit();
+        return new TokenHolder.Tokens(tokenResponse.access_token, tokenResponse.refresh_token,
+                System.currentTimeMillis() + tokenResponse.expires_in * 1000);
+    }
+
+    /**
+     * Write the tokens to the SharedPreferences, asynchronously, everyone reads them from memory
+     */
+    private static void persistTokens(Context context, TokenHolder.Tokens tokens){
+        SharedPreferences.Editor preferences = Util.getPreferences(context.getApplicationContext()).edit();
+        preferences.putString(PREF_ACCESS_TOKEN, tokens.mAccessToken);
+        preferences.putString(PREF_REFRESH_TOKEN, tokens.mRefreshToken);
+        preferences.putLong(PREF_TOKEN_EXPIRES, tokens.mExpires);
+        preferences.apply();
     }
 
     /**
@@ -245,12 +357,14 @@ public class TokenManager {
      * @param context {Context} : local/application context
      */
     public static void removeTokens(Context context) {
+        sTokens.clear();
         SharedPreferences.Editor preferences = Util.getPreferences(context.getApplicationContext()).edit();
         preferences.remove(PREF_ACCESS_TOKEN);
         preferences.remove(PREF_REFRESH_TOKEN);
         preferences.remove(PREF_TOKEN_EXPIRES);
         preferences.remove(AuthorizationManager.CODE_VERIFIER);
         preferences.apply();
+        rescheduleTokenRefresh();
     }
 
     public interface TokenResponseCallback {
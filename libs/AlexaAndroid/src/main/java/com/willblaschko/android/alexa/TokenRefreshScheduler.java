@@ -0,0 +1,329 @@
+package com.willblaschko.android.alexa;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.amazon.identity.auth.device.authorization.api.AmazonAuthorizationManager;
+
+/**
+ * Refreshes the access token a while before it expires, so requests don't have to wait for the refresh when they
+ * find it expired. Failed refreshes are retried with an exponential backoff, and right away once we're back online.
+ *
+ * Everything runs on the main thread. Handler delays don't count deep sleep, a refresh that's due while the device
+ * sleeps happens when it wakes up, or when the next request finds the token expired, whichever comes first.
+ *
+ * The tokens and the clock are behind {@link TokenSource} and {@link Clock}, so tests can run it without Android.
+ */
+class TokenRefreshScheduler {
+
+    private static final String TAG = "TokenRefreshScheduler";
+
+    static final long DEFAULT_MARGIN_MILLIS = 5 * 60 * 1000;
+    static final long MIN_BACKOFF_MILLIS = 5 * 1000;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    //null if connectivity isn't watched
+    private final Context mContext;
+    private final TokenSource mTokenSource;
+    private final Clock mClock;
+
+    private long mMargin = DEFAULT_MARGIN_MILLIS;
+    private int mFailures = 0;
+    //what our last refresh got us
+    private TokenHolder.Tokens mRefreshed;
+    private boolean mStarted = false;
+    private boolean mOnline = true;
+    private ConnectivityManager.NetworkCallback mNetworkCallback;
+
+    TokenRefreshScheduler(final Context context, final AmazonAuthorizationManager authManager) {
+        this(context.getApplicationContext(), new TokenSource() {
+            @Override
+            public TokenHolder.Tokens getTokens() {
+                return TokenManager.getTokens(context);
+            }
+
+            @Override
+            public void refresh(TokenManager.TokenCallback callback) {
+                TokenManager.refreshAccessToken(authManager, context, callback);
+            }
+        }, new HandlerClock());
+    }
+
+    /**
+     * @param context used to watch connectivity, null to leave that to {@link #onNetworkAvailable()} and
+     *                {@link #onNetworkLost(boolean)}
+     */
+    TokenRefreshScheduler(Context context, TokenSource tokenSource, Clock clock) {
+        mContext = context;
+        mTokenSource = tokenSource;
+        mClock = clock;
+    }
+
+    void start() {
+        mClock.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mStarted) {
+                    return;
+                }
+                mStarted = true;
+                registerNetworkCallback();
+                scheduleNow();
+            }
+        });
+    }
+
+    void stop() {
+        mClock.post(new Runnable() {
+            @Override
+            public void run() {
+                mStarted = false;
+                mClock.removeCallbacks(mRefresh);
+                unregisterNetworkCallback();
+            }
+        });
+    }
+
+    /**
+     * @param marginMillis how long before the expiry the token is refreshed
+     */
+    void setMargin(final long marginMillis) {
+        mClock.post(new Runnable() {
+            @Override
+            public void run() {
+                mMargin = marginMillis;
+                scheduleNow();
+            }
+        });
+    }
+
+    /**
+     * The tokens changed (login, logout, refresh), plan the next refresh
+     */
+    void reschedule() {
+        mClock.post(new Runnable() {
+            @Override
+            public void run() {
+                mFailures = 0;
+                scheduleNow();
+            }
+        });
+    }
+
+    private void scheduleNow() {
+        mClock.removeCallbacks(mRefresh);
+        if (!mStarted) {
+            return;
+        }
+        TokenHolder.Tokens tokens = mTokenSource.getTokens();
+        if (tokens == null || tokens.mRefreshToken == null) {
+            //not logged in, nothing to keep fresh
+            return;
+        }
+        long delay = delayUntilRefresh(mClock.now(), tokens.mExpires, mMargin);
+        if (delay == 0 && tokens == mRefreshed) {
+            //the margin is longer than the token lives, don't refresh in a loop
+            delay = MAX_BACKOFF_MILLIS;
+        }
+        Log.i(TAG, "Refreshing the token in " + (delay / 1000) + "s");
+        mClock.postDelayed(mRefresh, delay);
+    }
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            if (!mStarted) {
+                return;
+            }
+            if (!mOnline) {
+                //the network callback gets us going again
+                Log.i(TAG, "Offline, refreshing once we're back");
+                return;
+            }
+            mTokenSource.refresh(new TokenManager.TokenCallback() {
+                @Override
+                public void onSuccess(String token) {
+                    //called back on whatever thread did the refresh
+                    mClock.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mFailures = 0;
+                            mRefreshed = mTokenSource.getTokens();
+                            scheduleNow();
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(final Throwable e) {
+                    mClock.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mFailures++;
+                            long delay = backoffDelay(mFailures);
+                            Log.w(TAG, "Token refresh failed " + mFailures + " times, retrying in " + (delay / 1000) + "s", e);
+                            mClock.removeCallbacks(mRefresh);
+                            if (mStarted) {
+                                mClock.postDelayed(mRefresh, delay);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    };
+
+    /**
+     * A network came up, on the main thread
+     */
+    void onNetworkAvailable() {
+        boolean wasOffline = !mOnline;
+        mOnline = true;
+        if (wasOffline || mFailures > 0) {
+            //whatever failed may work now, don't wait out the backoff
+            mFailures = 0;
+            scheduleNow();
+        }
+    }
+
+    /**
+     * A network went away, on the main thread
+     *
+     * @param online whether another one is still connected
+     */
+    void onNetworkLost(boolean online) {
+        mOnline = online;
+    }
+
+    private void registerNetworkCallback() {
+        if (mContext == null) {
+            return;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null || mNetworkCallback != null) {
+            return;
+        }
+        mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                mClock.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNetworkAvailable();
+                    }
+                });
+            }
+
+            @Override
+            public void onLost(Network network) {
+                mClock.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ConnectivityManager manager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+                        onNetworkLost(manager != null && manager.getActiveNetworkInfo() != null
+                                && manager.getActiveNetworkInfo().isConnected());
+                    }
+                });
+            }
+        };
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        try {
+            connectivityManager.registerNetworkCallback(request, mNetworkCallback);
+        } catch (RuntimeException e) {
+            //no ACCESS_NETWORK_STATE or too many callbacks, backoff alone will do
+            Log.w(TAG, "Could not watch connectivity", e);
+            mNetworkCallback = null;
+        }
+    }
+
+    private void unregisterNetworkCallback() {
+        if (mNetworkCallback == null) {
+            return;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        try {
+            connectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not stop watching connectivity", e);
+        }
+        mNetworkCallback = null;
+        mOnline = true;
+    }
+
+    /**
+     * @return how long to wait before refreshing a token that expires at the given time, 0 if it's due
+     */
+    static long delayUntilRefresh(long now, long expires, long margin) {
+        return Math.max(0, expires - margin - now);
+    }
+
+    /**
+     * @param failures refreshes that failed in a row, at least 1
+     * @return how long to wait before the next try
+     */
+    static long backoffDelay(int failures) {
+        //don't shift into overflow
+        int shift = Math.min(Math.max(failures - 1, 0), 16);
+        return Math.min(MIN_BACKOFF_MILLIS << shift, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Where the tokens come from and how they're refreshed
+     */
+    interface TokenSource {
+        /**
+         * @return the current tokens, null if we're not logged in
+         */
+        TokenHolder.Tokens getTokens();
+
+        /**
+         * Refresh the access token, the callback can be called on any thread
+         */
+        void refresh(TokenManager.TokenCallback callback);
+    }
+
+    /**
+     * The time and the thread everything runs on
+     */
+    interface Clock {
+        long now();
+
+        void post(Runnable runnable);
+
+        void postDelayed(Runnable runnable, long delayMillis);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    private static class HandlerClock implements Clock {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package com.willblaschko.android.alexa;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.media.AudioFormat;
+import android.os.Build;
+import android.os.Bundle;
 import android.speech.tts.TextToSpeech;
 import android.speech.tts.UtteranceProgressListener;
+import android.util.Log;
+
+import com.willblaschko.android.alexa.audioencoder.PcmResampler;
+import com.willblaschko.android.alexa.audioplayer.cache.AudioCacheManager;
+import com.willblaschko.android.alexa.audioplayer.cache.SynthesizedSpeechCache;
+import com.willblaschko.android.alexa.requestbody.PipedDataRequestBody;
 
 import org.apache.commons.io.FileUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A helper class that utilizes the TextToSpeech engine built into Android to turn a string-based AVS intent
@@ -24,10 +38,26 @@ public class VoiceHelper{
 
     private static VoiceHelper mInstance;
     private Context mContext;
+    //the synthesized audio goes nowhere, we only want it from onAudioAvailable()
+    private static final File NO_FILE = new File("/dev/null");
+
+    private static final float PITCH = .8f;
+    private static final float SPEECH_RATE = 1.3f;
+    //what's cached, the same text is cached once for each
+    private static final String FORMAT_PCM = "pcm-16000-mono";
+    private static final String FORMAT_WAV = "wav";
+
     private TextToSpeech mTextToSpeech;
-    private boolean mIsIntialized = false;
+    //null until the engine told us how its init went
+    private Boolean mInitialized = null;
+    //waiting for the engine to be initialized, guarded by this
+    private final List<ReadyCallback> mWhenReady = new ArrayList<>();
 
-    Map<String, SpeechFromTextCallback> mCallbacks = new HashMap<>();
+    Map<String, SpeechFromTextCallback> mCallbacks = new ConcurrentHashMap<>();
+    Map<String, SpeechStream> mStreams = new ConcurrentHashMap<>();
+    private final SynthesizedSpeechCache mSpeechCache;
+    //utterance id -> cache key, for getSpeechFromText()
+    Map<String, String> mCacheKeys = new ConcurrentHashMap<>();
 
     /**
      * Initalize our TextToSpeech engine, use a few tricks to get it to use a smaller file size
@@ -37,9 +67,18 @@ public class VoiceHelper{
     private VoiceHelper(Context context){
         mContext = context.getApplicationContext();
         mTextToSpeech = new TextToSpeech(mContext, mInitListener);
-        mTextToSpeech.setPitch(.8f);
-        mTextToSpeech.setSpeechRate(1.3f);
+        mTextToSpeech.setPitch(PITCH);
+        mTextToSpeech.setSpeechRate(SPEECH_RATE);
         mTextToSpeech.setOnUtteranceProgressListener(mUtteranceProgressListener);
+        mSpeechCache = new SynthesizedSpeechCache(new File(mContext.getCacheDir(), SynthesizedSpeechCache.DIRECTORY),
+                SynthesizedSpeechCache.DEFAULT_MAX_MEMORY_BYTES, SynthesizedSpeechCache.DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * @return where the audio we made for earlier texts is kept
+     */
+    public SynthesizedSpeechCache getSpeechCache(){
+        return mSpeechCache;
     }
 
     /**
@@ -62,14 +101,44 @@ public class VoiceHelper{
     private TextToSpeech.OnInitListener mInitListener = new TextToSpeech.OnInitListener() {
         @Override
         public void onInit(int status) {
-            if(status == TextToSpeech.SUCCESS){
-                mIsIntialized = true;
-            }else{
+            List<ReadyCallback> waiting;
+            synchronized (VoiceHelper.this) {
+                mInitialized = status == TextToSpeech.SUCCESS;
+                waiting = new ArrayList<>(mWhenReady);
+                mWhenReady.clear();
+            }
+            if(status != TextToSpeech.SUCCESS){
                 new IllegalStateException("Unable to initialize Text to Speech engine").printStackTrace();
             }
+            for(ReadyCallback callback : waiting){
+                notifyReady(callback, status == TextToSpeech.SUCCESS);
+            }
         }
     };
 
+    /**
+     * Run the callback once the engine is initialized, right away if it is already
+     */
+    public void whenReady(ReadyCallback callback){
+        Boolean initialized;
+        synchronized (this) {
+            initialized = mInitialized;
+            if(initialized == null){
+                mWhenReady.add(callback);
+                return;
+            }
+        }
+        notifyReady(callback, initialized);
+    }
+
+    private void notifyReady(ReadyCallback callback, boolean initialized){
+        if(initialized){
+            callback.onReady(mTextToSpeech);
+        }else{
+            callback.onError(new IllegalStateException("Text to Speech engine is not initalized"));
+        }
+    }
+
     /**
      * Our TextToSpeech UtteranceProgress state changed listener
      * We keep track of when we're done and pass back the byte[] raw audio of the recorded speech
@@ -80,8 +149,51 @@ public class VoiceHelper{
 
         }
 
+        @Override
+        public void onBeginSynthesis(String utteranceId, int sampleRateInHz, int audioFormat, int channelCount) {
+            SpeechStream stream = mStreams.get(utteranceId);
+            if(stream == null){
+                return;
+            }
+            if(audioFormat != AudioFormat.ENCODING_PCM_16BIT){
+                failStream(utteranceId, new IOException("Unsupported Text to Speech audio format " + audioFormat));
+                return;
+            }
+            Log.i(TAG, "Streaming " + sampleRateInHz + "Hz " + channelCount + " channel speech");
+            stream.mResampler = new PcmResampler(sampleRateInHz, channelCount);
+        }
+
+        @Override
+        public void onAudioAvailable(String utteranceId, byte[] audio) {
+            SpeechStream stream = mStreams.get(utteranceId);
+            if(stream != null && stream.mResampler != null){
+                byte[] pcm = stream.mResampler.process(audio, 0, audio.length);
+                if(stream.mCaptured != null){
+                    stream.mCaptured.write(pcm, 0, pcm.length);
+                }
+                if(stream.mBody != null){
+                    stream.mBody.write(pcm);
+                }
+            }
+        }
+
         @Override
         public void onDone(String utteranceId) {
+            SpeechStream stream = mStreams.remove(utteranceId);
+            if(stream != null){
+                if(stream.mResampler == null){
+                    //never got any audio
+                    stream.fail(new IOException("Text to Speech engine produced no audio"));
+                    return;
+                }
+                if(stream.mBody != null){
+                    stream.mBody.finish();
+                }
+                if(stream.mCacheKey != null){
+                    mSpeechCache.put(stream.mCacheKey, stream.mCaptured.toByteArray());
+                }
+                return;
+            }
             //this allows us to keep track of multiple callbacks
             SpeechFromTextCallback callback = mCallbacks.get(utteranceId);
             if(callback != null){
@@ -89,6 +201,10 @@ public class VoiceHelper{
                 File cacheFile = getCacheFile(utteranceId);
                 try {
                     byte[] data = FileUtils.readFileToByteArray(cacheFile);
+                    String key = mCacheKeys.remove(utteranceId);
+                    if(key != null){
+                        mSpeechCache.put(key, data);
+                    }
                     callback.onSuccess(data);
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -110,10 +226,12 @@ public class VoiceHelper{
 
         @Override
         public void onError(String utteranceId, int errorCode) {
-            if(mCallbacks == null){
+            if(mStreams.containsKey(utteranceId)){
+                failStream(utteranceId, new IOException("Unable to process request, error code: "+errorCode));
                 return;
             }
-            SpeechFromTextCallback callback = mCallbacks.get(utteranceId);
+            SpeechFromTextCallback callback = mCallbacks.remove(utteranceId);
+            mCacheKeys.remove(utteranceId);
             if(callback != null){
                 //if we have a callback, bubble up the error
                 callback.onError(new Exception("Unable to process request, error code: "+errorCode));
@@ -126,46 +244,138 @@ public class VoiceHelper{
      * @param text the text to render
      * @param callback
      */
-    public void getSpeechFromText(String text, SpeechFromTextCallback callback){
+    public void getSpeechFromText(final String text, final SpeechFromTextCallback callback){
 
         //create a new unique ID
-        String utteranceId = AuthorizationManager.createCodeVerifier();
+        final String utteranceId = AuthorizationManager.createCodeVerifier();
 
         //add the callback to our list of callbacks
         mCallbacks.put(utteranceId, callback);
 
-        //get our TextToSpeech engine
-        TextToSpeech textToSpeech = getTextToSpeech();
+        //wait for our TextToSpeech engine
+        whenReady(new ReadyCallback() {
+            @Override
+            public void onReady(TextToSpeech textToSpeech) {
+                //made this before?
+                String key = getCacheKey(textToSpeech, FORMAT_WAV, text);
+                byte[] cached = mSpeechCache.get(key);
+                if(cached != null){
+                    mCallbacks.remove(utteranceId);
+                    callback.onSuccess(cached);
+                    return;
+                }
+                mCacheKeys.put(utteranceId, key);
 
-        //set up our arguments
-        HashMap<String, String> params = new HashMap<>();
-        params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
+                //set up our arguments
+                HashMap<String, String> params = new HashMap<>();
+                params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
 
-        //request an update from TTS
-        textToSpeech.synthesizeToFile(text, params, getCacheFile(utteranceId).toString());
+                //request an update from TTS
+                if(textToSpeech.synthesizeToFile(text, params, getCacheFile(utteranceId).toString()) != TextToSpeech.SUCCESS){
+                    mCallbacks.remove(utteranceId);
+                    mCacheKeys.remove(utteranceId);
+                    callback.onError(new IllegalStateException("Unable to queue Text to Speech"));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mCallbacks.remove(utteranceId);
+                callback.onError(e);
+            }
+        });
     }
 
     /**
-     * Get the TextToSpeech instance
-     * @return our TextToSpeech instance, if it's initialized
+     * @return true if {@link #streamSpeechFromText(String, PipedDataRequestBody)} works on this device
      */
-    private TextToSpeech getTextToSpeech(){
-        int count = 0;
+    public static boolean canStream(){
+        //onBeginSynthesis() and onAudioAvailable()
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
 
-        while(!mIsIntialized){
-            if(count < 100)
-            {
-                count++;
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+    /**
+     * Synthesize the text into the body as 16kHz mono PCM while it's being sent, no files are written or read.
+     * The body is finished or failed once the engine is done. Only works if {@link #canStream()}.
+     * Texts that were synthesized before come straight out of the {@link #getSpeechCache()}.
+     * @param text the text to render
+     * @param body where the audio goes
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    public void streamSpeechFromText(final String text, final PipedDataRequestBody body){
+        synthesize(text, new SpeechStream(body));
+    }
+
+    /**
+     * Synthesize the texts into the {@link #getSpeechCache()} in the background, unless they're in there already,
+     * so asking them later doesn't have to wait for the engine. Does nothing if not {@link #canStream()}.
+     * @param texts what will be asked, exactly as it will be handed to {@link #streamSpeechFromText(String, PipedDataRequestBody)}
+     */
+    public void preloadSpeech(final List<String> texts){
+        if(!canStream()){
+            return;
+        }
+        for(String text : texts){
+            synthesize(text, new SpeechStream(null));
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void synthesize(final String text, final SpeechStream stream){
+        final String utteranceId = AuthorizationManager.createCodeVerifier();
+        mStreams.put(utteranceId, stream);
+
+        whenReady(new ReadyCallback() {
+            @Override
+            public void onReady(TextToSpeech textToSpeech) {
+                String key = getCacheKey(textToSpeech, FORMAT_PCM, text);
+                byte[] cached = mSpeechCache.get(key);
+                if(cached != null){
+                    //no need for the engine
+                    mStreams.remove(utteranceId);
+                    if(stream.mBody != null){
+                        stream.mBody.write(cached);
+                        stream.mBody.finish();
+                    }
+                    return;
                 }
-            }else{
-                throw new IllegalStateException("Text to Speech engine is not initalized");
+                stream.mCacheKey = key;
+                stream.mCaptured = new ByteArrayOutputStream();
+
+                Bundle params = new Bundle();
+                params.putString(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
+                if(textToSpeech.synthesizeToFile(text, params, NO_FILE, utteranceId) != TextToSpeech.SUCCESS){
+                    failStream(utteranceId, new IOException("Unable to queue Text to Speech"));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                failStream(utteranceId, new IOException(e));
+            }
+        });
+    }
+
+    private void failStream(String utteranceId, IOException e){
+        SpeechStream stream = mStreams.remove(utteranceId);
+        if(stream != null){
+            stream.fail(e);
+        }
+    }
+
+    /**
+     * @return the cache key of the audio the engine makes for the text, with its current settings
+     */
+    private String getCacheKey(TextToSpeech textToSpeech, String format, String text){
+        String voice = null;
+        try {
+            if(textToSpeech.getVoice() != null){
+                voice = textToSpeech.getVoice().getName();
             }
+        } catch (RuntimeException e) {
+            //some engines don't do voices
         }
-        return mTextToSpeech;
+        return SynthesizedSpeechCache.keyFor(format, textToSpeech.getDefaultEngine(), voice, PITCH, SPEECH_RATE, text);
     }
 
     /**
@@ -177,9 +387,46 @@ public class VoiceHelper{
         return new File(getCacheDir(), utteranceId+".wav");
     }
 
-    //helper function to get the default cache dir for the app
+    //helper function to get the library's audio cache dir
     private File getCacheDir(){
-        return mContext.getCacheDir();
+        File dir = AudioCacheManager.getInstance(mContext).getDirectory();
+        if(!dir.isDirectory()){
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * An utterance that's being streamed
+     */
+    private static class SpeechStream {
+        //null if it's only synthesized for the cache
+        final PipedDataRequestBody mBody;
+        //set once the engine told us its format, only touched on its callback thread
+        volatile PcmResampler mResampler;
+        //where the audio goes in the cache, and what it is so far
+        volatile String mCacheKey;
+        volatile ByteArrayOutputStream mCaptured;
+
+        SpeechStream(PipedDataRequestBody body) {
+            mBody = body;
+        }
+
+        void fail(IOException e) {
+            if(mBody != null){
+                mBody.fail(e);
+            }else{
+                Log.w(TAG, "Could not preload speech", e);
+            }
+        }
+    }
+
+    /**
+     * Told once the TextToSpeech engine is ready, or failed to get ready
+     */
+    public interface ReadyCallback{
+        void onReady(TextToSpeech textToSpeech);
+        void onError(Exception e);
     }
 
     /**
@@ -0,0 +1,51 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import java.io.IOException;
+
+import okio.BufferedSink;
+
+/**
+ * An encoder stage that sits between the recorded audio and the Recognize request body sent by
+ * {@link com.willblaschko.android.alexa.interfaces.speechrecognizer.SpeechSendAudio}.
+ *
+ * Input is always signed 16-bit little endian mono PCM (what our recorders produce), output is whatever
+ * {@link #getFormat()} advertises in the SpeechRecognizer.Recognize payload.
+ *
+ * An encoder instance is stateful and handles a single stream at a time: {@link #start()}, any number of
+ * {@link #encode(byte[], int, int, BufferedSink)} calls, {@link #finish(BufferedSink)} and then {@link #release()}.
+ */
+public interface AudioEncoder {
+
+    /**
+     * @return the format string for the Recognize event payload, e.g. AUDIO_L16_RATE_16000_CHANNELS_1 or OPUS
+     */
+    String getFormat();
+
+    /**
+     * Reset the encoder state and prepare it for a new stream
+     * @throws IOException if the underlying codec could not be started
+     */
+    void start() throws IOException;
+
+    /**
+     * Encode a chunk of PCM audio, any encoded output that is ready is written to the sink
+     * @param pcm 16-bit little endian PCM
+     * @param offset start offset in bytes
+     * @param length number of bytes, does not need to be sample-aligned
+     * @param sink the request body sink
+     * @throws IOException if writing to the sink fails
+     */
+    void encode(byte[] pcm, int offset, int length, BufferedSink sink) throws IOException;
+
+    /**
+     * Flush any buffered audio to the sink, no more audio can be encoded after this call
+     * @param sink the request body sink
+     * @throws IOException if writing to the sink fails
+     */
+    void finish(BufferedSink sink) throws IOException;
+
+    /**
+     * Release any native resources held by the encoder, safe to call more than once
+     */
+    void release();
+}
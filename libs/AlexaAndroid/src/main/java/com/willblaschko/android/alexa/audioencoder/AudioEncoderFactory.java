@@ -0,0 +1,28 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+/**
+ * Picks the upload encoder for Recognize requests.
+ */
+public class AudioEncoderFactory {
+
+    private AudioEncoderFactory() {
+
+    }
+
+    /**
+     * @return the smallest format AVS accepts on this device, Opus when the platform has an encoder, raw PCM otherwise
+     */
+    public static AudioEncoder createPreferred() {
+        if (OpusAudioEncoder.isAvailable()) {
+            return new OpusAudioEncoder();
+        }
+        return new PcmAudioEncoder();
+    }
+
+    /**
+     * @return the uncompressed encoder, matches the original behavior of the library
+     */
+    public static AudioEncoder createPcm() {
+        return new PcmAudioEncoder();
+    }
+}
@@ -0,0 +1,472 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import java.io.IOException;
+
+import okio.BufferedSink;
+
+/**
+ * A small, pure-Java streaming FLAC encoder for 16-bit mono PCM. It only uses the fixed predictors (order 0-4)
+ * with a single Rice partition per subframe, plus constant subframes for digital silence, which gets most of
+ * the gain of a full FLAC encoder for speech at a fraction of the CPU cost.
+ *
+ * This does not depend on MediaCodec so it runs (and can be tested and benchmarked) off-device. Note that the
+ * AVS Recognize event only accepts L16 and OPUS, so this is meant for endpoints that accept FLAC (see
+ * {@link com.willblaschko.android.alexa.AlexaManager#setUrlEndpoint(String)}), not for the Amazon servers.
+ *
+ * All buffers are allocated up front, encoding a block does not allocate.
+ */
+public class FlacAudioEncoder implements AudioEncoder {
+
+    public static final String FORMAT = "AUDIO_FLAC_RATE_16000_CHANNELS_1";
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_RICE_PARAMETER = 14;
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc8 = ((crc8 & 0x80) != 0) ? ((crc8 << 1) ^ 0x07) : (crc8 << 1);
+                crc16 = ((crc16 & 0x8000) != 0) ? ((crc16 << 1) ^ 0x8005) : (crc16 << 1);
+            }
+            CRC8_TABLE[i] = crc8 & 0xff;
+            CRC16_TABLE[i] = crc16 & 0xffff;
+        }
+    }
+
+    private final int mSampleRate;
+    private final int mBlockSize;
+    private final int[] mBlock;
+    private final int[] mResidual;
+    private final BitWriter mWriter;
+
+    private int mBlockFill;
+    private int mPendingByte = -1;
+    private long mFrameNumber;
+    private long mSamplesEncoded;
+    private long mBytesWritten;
+
+    public FlacAudioEncoder() {
+        this(16000, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param sampleRate the sample rate of the incoming PCM
+     * @param blockSize number of samples per FLAC frame, between 16 and 65535
+     */
+    public FlacAudioEncoder(int sampleRate, int blockSize) {
+        if (blockSize < 16 || blockSize > 65535) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+        mSampleRate = sampleRate;
+        mBlockSize = blockSize;
+        mBlock = new int[blockSize];
+        mResidual = new int[blockSize];
+        //worst case is a verbatim subframe plus headers and padding
+        mWriter = new BitWriter(blockSize * 2 + 64);
+    }
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * @return the number of samples encoded since the last {@link #start()}
+     */
+    public long getSamplesEncoded() {
+        return mSamplesEncoded;
+    }
+
+    /**
+     * @return the number of FLAC bytes written since the last {@link #start()}, including the stream header
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    @Override
+    public void start() {
+        mBlockFill = 0;
+        mPendingByte = -1;
+        mFrameNumber = 0;
+        mSamplesEncoded = 0;
+        mBytesWritten = 0;
+    }
+
+    @Override
+    public void encode(byte[] pcm, int offset, int length, BufferedSink sink) throws IOException {
+        if (mFrameNumber == 0 && mBytesWritten == 0) {
+            writeStreamHeader(sink);
+        }
+        int end = offset + length;
+        int i = offset;
+        if (mPendingByte >= 0 && i < end) {
+            addSample(mPendingByte | (pcm[i++] << 8), sink);
+            mPendingByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            addSample((pcm[i] & 0xff) | (pcm[i + 1] << 8), sink);
+        }
+        if (i < end) {
+            mPendingByte = pcm[i] & 0xff;
+        }
+    }
+
+    @Override
+    public void finish(BufferedSink sink) throws IOException {
+        if (mFrameNumber == 0 && mBytesWritten == 0) {
+            writeStreamHeader(sink);
+        }
+        if (mBlockFill > 0) {
+            writeFrame(mBlockFill, sink);
+            mBlockFill = 0;
+        }
+        sink.flush();
+    }
+
+    @Override
+    public void release() {
+
+    }
+
+    private void addSample(int sample, BufferedSink sink) throws IOException {
+        //sign extend from 16 bits
+        mBlock[mBlockFill++] = (short) sample;
+        if (mBlockFill == mBlockSize) {
+            writeFrame(mBlockSize, sink);
+            mBlockFill = 0;
+        }
+    }
+
+    private void writeStreamHeader(BufferedSink sink) throws IOException {
+        BitWriter w = mWriter;
+        w.reset();
+        w.writeBits('f', 8);
+        w.writeBits('L', 8);
+        w.writeBits('a', 8);
+        w.writeBits('C', 8);
+        //metadata block header: last block, type STREAMINFO, 34 bytes
+        w.writeBits(1, 1);
+        w.writeBits(0, 7);
+        w.writeBits(34, 24);
+        //min/max block size
+        w.writeBits(mBlockSize, 16);
+        w.writeBits(mBlockSize, 16);
+        //min/max frame size, unknown
+        w.writeBits(0, 24);
+        w.writeBits(0, 24);
+        w.writeBits(mSampleRate, 20);
+        //channels - 1, bits per sample - 1
+        w.writeBits(0, 3);
+        w.writeBits(BITS_PER_SAMPLE - 1, 5);
+        //total samples (36 bits) and the MD5 signature are unknown while streaming
+        w.writeBits(0, 4);
+        w.writeBits(0, 32);
+        for (int i = 0; i < 4; i++) {
+            w.writeBits(0, 32);
+        }
+        sink.write(w.getBuffer(), 0, w.getByteLength());
+        mBytesWritten += w.getByteLength();
+    }
+
+    private void writeFrame(int count, BufferedSink sink) throws IOException {
+        BitWriter w = mWriter;
+        w.reset();
+
+        //frame header, fixed block size stream
+        w.writeBits(0x3ffe, 14);
+        w.writeBits(0, 1);
+        w.writeBits(0, 1);
+        int blockSizeCode = getBlockSizeCode(count);
+        w.writeBits(blockSizeCode, 4);
+        int sampleRateCode = getSampleRateCode(mSampleRate);
+        w.writeBits(sampleRateCode, 4);
+        //mono, 16 bits per sample, reserved bit
+        w.writeBits(0, 4);
+        w.writeBits(0x4, 3);
+        w.writeBits(0, 1);
+        writeUtf8(w, mFrameNumber);
+        if (blockSizeCode == 0x7) {
+            w.writeBits(count - 1, 16);
+        }
+        w.writeBits(crc8(w.getBuffer(), w.getByteLength()), 8);
+
+        writeSubframe(count);
+
+        w.padToByte();
+        int crc16 = crc16(w.getBuffer(), w.getByteLength());
+        w.writeBits(crc16, 16);
+
+        sink.write(w.getBuffer(), 0, w.getByteLength());
+        mBytesWritten += w.getByteLength();
+        mSamplesEncoded += count;
+        mFrameNumber++;
+    }
+
+    private void writeSubframe(int count) {
+        BitWriter w = mWriter;
+        int[] x = mBlock;
+
+        boolean constant = true;
+        for (int i = 1; i < count && constant; i++) {
+            constant = x[i] == x[0];
+        }
+        if (constant) {
+            w.writeBits(0, 8);
+            w.writeBits(x[0] & 0xffff, BITS_PER_SAMPLE);
+            return;
+        }
+
+        int order = getBestFixedOrder(count);
+        int residualCount = computeResidual(order, count);
+        int parameter = getBestRiceParameter(residualCount);
+        long fixedBits = 8 + order * BITS_PER_SAMPLE + 10 + getRiceBits(residualCount, parameter);
+        long verbatimBits = 8 + (long) count * BITS_PER_SAMPLE;
+
+        if (verbatimBits <= fixedBits) {
+            w.writeBits(0x02, 8);
+            for (int i = 0; i < count; i++) {
+                w.writeBits(x[i] & 0xffff, BITS_PER_SAMPLE);
+            }
+            return;
+        }
+
+        //zero bit, SUBFRAME_FIXED (001xxx with xxx = order), no wasted bits
+        w.writeBits((0x08 | order) << 1, 8);
+        for (int i = 0; i < order; i++) {
+            w.writeBits(x[i] & 0xffff, BITS_PER_SAMPLE);
+        }
+        //residual coding method 0 (4-bit Rice), partition order 0
+        w.writeBits(0, 2);
+        w.writeBits(0, 4);
+        w.writeBits(parameter, 4);
+        for (int i = 0; i < residualCount; i++) {
+            int r = mResidual[i];
+            int u = (r << 1) ^ (r >> 31);
+            w.writeZeros(u >>> parameter);
+            w.writeBits(1, 1);
+            if (parameter > 0) {
+                w.writeBits(u & ((1 << parameter) - 1), parameter);
+            }
+        }
+    }
+
+    /**
+     * Pick the fixed predictor order with the smallest sum of absolute residuals, as the reference encoder does
+     */
+    private int getBestFixedOrder(int count) {
+        int[] x = mBlock;
+        int maxOrder = Math.min(MAX_FIXED_ORDER, count - 1);
+        long e0 = 0, e1 = 0, e2 = 0, e3 = 0, e4 = 0;
+        for (int i = MAX_FIXED_ORDER; i < count; i++) {
+            int r0 = x[i];
+            int r1 = r0 - x[i - 1];
+            int r2 = r1 - (x[i - 1] - x[i - 2]);
+            int r3 = r2 - (x[i - 1] - 2 * x[i - 2] + x[i - 3]);
+            int r4 = r3 - (x[i - 1] - 3 * x[i - 2] + 3 * x[i - 3] - x[i - 4]);
+            e0 += Math.abs(r0);
+            e1 += Math.abs(r1);
+            e2 += Math.abs(r2);
+            e3 += Math.abs(r3);
+            e4 += Math.abs(r4);
+        }
+        long[] errors = {e0, e1, e2, e3, e4};
+        int best = 0;
+        for (int order = 1; order <= maxOrder; order++) {
+            if (errors[order] < errors[best]) {
+                best = order;
+            }
+        }
+        return best;
+    }
+
+    private int computeResidual(int order, int count) {
+        int[] x = mBlock;
+        int[] r = mResidual;
+        int n = 0;
+        for (int i = order; i < count; i++) {
+            switch (order) {
+                case 0:
+                    r[n++] = x[i];
+                    break;
+                case 1:
+                    r[n++] = x[i] - x[i - 1];
+                    break;
+                case 2:
+                    r[n++] = x[i] - 2 * x[i - 1] + x[i - 2];
+                    break;
+                case 3:
+                    r[n++] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                    break;
+                default:
+                    r[n++] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                    break;
+            }
+        }
+        return n;
+    }
+
+    private int getBestRiceParameter(int residualCount) {
+        if (residualCount == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < residualCount; i++) {
+            int r = mResidual[i];
+            sum += (r << 1) ^ (r >> 31);
+        }
+        long mean = sum / residualCount;
+        int estimate = 0;
+        while (estimate < MAX_RICE_PARAMETER && (1L << (estimate + 1)) <= mean) {
+            estimate++;
+        }
+        int best = estimate;
+        long bestBits = getRiceBits(residualCount, estimate);
+        for (int k = Math.max(0, estimate - 1); k <= Math.min(MAX_RICE_PARAMETER, estimate + 1); k++) {
+            long bits = getRiceBits(residualCount, k);
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    private long getRiceBits(int residualCount, int parameter) {
+        long bits = (long) residualCount * (parameter + 1);
+        for (int i = 0; i < residualCount; i++) {
+            int r = mResidual[i];
+            bits += ((r << 1) ^ (r >> 31)) >>> parameter;
+        }
+        return bits;
+    }
+
+    private static int getBlockSizeCode(int count) {
+        for (int k = 0; k < 8; k++) {
+            if (count == (256 << k)) {
+                return 8 + k;
+            }
+        }
+        return 0x7;
+    }
+
+    private static int getSampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 8000:
+                return 0x4;
+            case 16000:
+                return 0x5;
+            case 22050:
+                return 0x6;
+            case 24000:
+                return 0x7;
+            case 32000:
+                return 0x8;
+            case 44100:
+                return 0x9;
+            case 48000:
+                return 0xa;
+            default:
+                //read it from STREAMINFO
+                return 0x0;
+        }
+    }
+
+    private static void writeUtf8(BitWriter w, long value) {
+        if (value < 0x80) {
+            w.writeBits((int) value, 8);
+            return;
+        }
+        int bytes = 2;
+        while (bytes < 7 && value >= (1L << (5 * bytes + 1))) {
+            bytes++;
+        }
+        int shift = (bytes - 1) * 6;
+        int prefix = (0xff00 >> bytes) & 0xff;
+        w.writeBits(prefix | (int) (value >>> shift), 8);
+        while (shift > 0) {
+            shift -= 6;
+            w.writeBits(0x80 | (int) ((value >>> shift) & 0x3f), 8);
+        }
+    }
+
+    static int crc8(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xff];
+        }
+        return crc;
+    }
+
+    static int crc16(byte[] data, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+
+    /**
+     * MSB-first bit writer over a fixed byte array
+     */
+    private static class BitWriter {
+        private final byte[] mBuffer;
+        private int mBytePosition;
+        private long mAccumulator;
+        private int mAccumulatorBits;
+
+        BitWriter(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        void reset() {
+            mBytePosition = 0;
+            mAccumulator = 0;
+            mAccumulatorBits = 0;
+        }
+
+        void writeBits(int value, int bits) {
+            mAccumulator = (mAccumulator << bits) | (value & ((1L << bits) - 1));
+            mAccumulatorBits += bits;
+            while (mAccumulatorBits >= 8) {
+                mAccumulatorBits -= 8;
+                mBuffer[mBytePosition++] = (byte) (mAccumulator >>> mAccumulatorBits);
+            }
+        }
+
+        void writeZeros(int bits) {
+            while (bits > 24) {
+                writeBits(0, 24);
+                bits -= 24;
+            }
+            if (bits > 0) {
+                writeBits(0, bits);
+            }
+        }
+
+        void padToByte() {
+            if (mAccumulatorBits > 0) {
+                writeBits(0, 8 - mAccumulatorBits);
+            }
+        }
+
+        /**
+         * @return number of complete bytes written, only meaningful on a byte boundary
+         */
+        int getByteLength() {
+            return mBytePosition;
+        }
+
+        byte[] getBuffer() {
+            return mBuffer;
+        }
+    }
+}
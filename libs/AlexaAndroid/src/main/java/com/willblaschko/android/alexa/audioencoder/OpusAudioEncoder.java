@@ -0,0 +1,146 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import okio.BufferedSink;
+
+/**
+ * {@link AudioEncoder} backed by the platform Opus encoder (Android 10+). This is the compressed format AVS
+ * accepts for Recognize, 32kbps CBR is what Amazon expects for the OPUS format.
+ *
+ * Use {@link #isAvailable()} before creating one, or just go through {@link AudioEncoderFactory}.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+public class OpusAudioEncoder implements AudioEncoder {
+
+    private static final String TAG = "OpusAudioEncoder";
+
+    public static final String FORMAT = "OPUS";
+
+    private static final String MIME = MediaFormat.MIMETYPE_AUDIO_OPUS;
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BIT_RATE = 32000;
+    private static final long TIMEOUT_US = 10000;
+
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+    private MediaCodec mCodec;
+    private byte[] mOutput = new byte[4096];
+    private long mPresentationTimeUs;
+
+    /**
+     * @return true if this device has an Opus encoder we can use
+     */
+    public static boolean isAvailable() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return false;
+        }
+        MediaCodecList list = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        return list.findEncoderForFormat(createFormat()) != null;
+    }
+
+    private static MediaFormat createFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(MIME, SAMPLE_RATE, 1);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+        format.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+        return format;
+    }
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public void start() throws IOException {
+        release();
+        MediaFormat format = createFormat();
+        String name = new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format);
+        if (name == null) {
+            throw new IOException("No Opus encoder available");
+        }
+        mCodec = MediaCodec.createByCodecName(name);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        mPresentationTimeUs = 0;
+    }
+
+    @Override
+    public void encode(byte[] pcm, int offset, int length, BufferedSink sink) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+            if (index >= 0) {
+                ByteBuffer input = mCodec.getInputBuffer(index);
+                int size = Math.min(input.remaining(), end - offset);
+                input.put(pcm, offset, size);
+                mCodec.queueInputBuffer(index, 0, size, mPresentationTimeUs, 0);
+                mPresentationTimeUs += size * 1000000L / (SAMPLE_RATE * 2);
+                offset += size;
+            }
+            drain(sink, false);
+        }
+    }
+
+    @Override
+    public void finish(BufferedSink sink) throws IOException {
+        int index;
+        while ((index = mCodec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+            drain(sink, false);
+        }
+        mCodec.queueInputBuffer(index, 0, 0, mPresentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        drain(sink, true);
+        sink.flush();
+    }
+
+    private void drain(BufferedSink sink, boolean untilEndOfStream) throws IOException {
+        while (true) {
+            int index = mCodec.dequeueOutputBuffer(mInfo, TIMEOUT_US);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!untilEndOfStream) {
+                    return;
+                }
+                continue;
+            }
+            if (index < 0) {
+                //format or buffer changes, nothing to write
+                continue;
+            }
+            ByteBuffer output = mCodec.getOutputBuffer(index);
+            //the CSD (OpusHead) is not part of the AVS stream
+            if ((mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && mInfo.size > 0) {
+                if (mOutput.length < mInfo.size) {
+                    mOutput = new byte[mInfo.size];
+                }
+                output.position(mInfo.offset);
+                output.get(mOutput, 0, mInfo.size);
+                sink.write(mOutput, 0, mInfo.size);
+            }
+            mCodec.releaseOutputBuffer(index, false);
+            if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mCodec != null) {
+            try {
+                mCodec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Codec already stopped", e);
+            }
+            mCodec.release();
+            mCodec = null;
+        }
+    }
+}
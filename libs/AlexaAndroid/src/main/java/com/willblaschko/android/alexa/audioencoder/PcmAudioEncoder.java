@@ -0,0 +1,39 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import java.io.IOException;
+
+import okio.BufferedSink;
+
+/**
+ * Pass-through {@link AudioEncoder} that writes the raw 16kHz PCM as is, this is what the Recognize event
+ * has always advertised and what every AVS endpoint accepts.
+ */
+public class PcmAudioEncoder implements AudioEncoder {
+
+    public static final String FORMAT = "AUDIO_L16_RATE_16000_CHANNELS_1";
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void encode(byte[] pcm, int offset, int length, BufferedSink sink) throws IOException {
+        sink.write(pcm, offset, length);
+    }
+
+    @Override
+    public void finish(BufferedSink sink) {
+
+    }
+
+    @Override
+    public void release() {
+
+    }
+}
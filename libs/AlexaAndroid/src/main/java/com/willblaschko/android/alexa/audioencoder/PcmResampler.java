@@ -0,0 +1,115 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+/**
+ * Turns 16-bit little-endian PCM with any sample rate and channel count into the 16kHz mono that AVS wants,
+ * chunk by chunk, e.g. as a text to speech engine hands it out. Channels are averaged, the rate is converted by
+ * linear interpolation, which is plenty for speech recognition.
+ *
+ * Chunks don't have to end on a sample, what's left over is kept for the next one. Not thread-safe.
+ */
+public class PcmResampler {
+
+    public static final int OUTPUT_RATE = 16000;
+
+    private final int mChannels;
+    private final double mStep;
+    //no rate conversion needed
+    private final boolean mSameRate;
+
+    //bytes of an incomplete frame from the previous chunk
+    private final byte[] mLeftover;
+    private int mLeftoverLength = 0;
+
+    //index of the first sample of the current chunk, counted from the start
+    private long mBase = 0;
+    //where the next output sample is, in input samples
+    private double mPosition = 0;
+    private short mLast;
+
+    public PcmResampler(int inputRate, int channels) {
+        this(inputRate, channels, OUTPUT_RATE);
+    }
+
+    public PcmResampler(int inputRate, int channels, int outputRate) {
+        if (inputRate <= 0 || channels <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Bad format: " + inputRate + "Hz, " + channels + " channels");
+        }
+        mChannels = channels;
+        mStep = (double) inputRate / outputRate;
+        mSameRate = inputRate == outputRate;
+        mLeftover = new byte[2 * channels];
+    }
+
+    /**
+     * @return the converted audio, may be empty
+     */
+    public byte[] process(byte[] input, int offset, int length) {
+        int frameSize = 2 * mChannels;
+        int total = mLeftoverLength + length;
+        int frames = total / frameSize;
+        short[] samples = new short[frames];
+        int read = offset;
+        for (int frame = 0; frame < frames; frame++) {
+            int sum = 0;
+            for (int channel = 0; channel < mChannels; channel++) {
+                int lo = nextByte(input, read++, offset);
+                int hi = nextByte(input, read++, offset);
+                sum += (short) ((hi << 8) | (lo & 0xff));
+            }
+            samples[frame] = (short) (sum / mChannels);
+        }
+        //keep the incomplete frame
+        int rest = total - frames * frameSize;
+        byte[] carry = new byte[rest];
+        for (int i = 0; i < rest; i++) {
+            carry[i] = (byte) nextByte(input, read++, offset);
+        }
+        System.arraycopy(carry, 0, mLeftover, 0, rest);
+        mLeftoverLength = rest;
+
+        return mSameRate ? toBytes(samples, samples.length) : resample(samples);
+    }
+
+    /**
+     * The next byte of the leftover followed by the input
+     */
+    private int nextByte(byte[] input, int index, int offset) {
+        int position = index - offset;
+        if (position < mLeftoverLength) {
+            return mLeftover[position];
+        }
+        return input[offset + position - mLeftoverLength];
+    }
+
+    private byte[] resample(short[] samples) {
+        int count = samples.length;
+        if (count == 0) {
+            return new byte[0];
+        }
+        short[] output = new short[(int) (count / mStep) + 2];
+        int written = 0;
+        long end = mBase + count - 1;
+        //each output sample needs the input sample after it
+        while ((long) Math.floor(mPosition) + 1 <= end) {
+            long index = (long) Math.floor(mPosition);
+            double fraction = mPosition - index;
+            int i = (int) (index - mBase);
+            short a = i < 0 ? mLast : samples[i];
+            short b = samples[i + 1];
+            output[written++] = (short) Math.round(a + (b - a) * fraction);
+            mPosition += mStep;
+        }
+        mLast = samples[count - 1];
+        mBase += count;
+        return toBytes(output, written);
+    }
+
+    private static byte[] toBytes(short[] samples, int count) {
+        byte[] bytes = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return bytes;
+    }
+}
@@ -4,23 +4,35 @@ import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
-import android.os.AsyncTask;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.willblaschko.android.alexa.audioplayer.cache.AudioCacheManager;
+import com.willblaschko.android.alexa.audioplayer.cache.CachingMediaDataSource;
+import com.willblaschko.android.alexa.audioplayer.cache.RemoteAudioCache;
+import com.willblaschko.android.alexa.callbacks.AsyncCallback;
+import com.willblaschko.android.alexa.connection.ClientUtil;
 import com.willblaschko.android.alexa.interfaces.AvsItem;
 import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayContentItem;
 import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayRemoteItem;
 import com.willblaschko.android.alexa.interfaces.speechsynthesizer.AvsSpeakItem;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A class that abstracts the Android MediaPlayer and adds additional functionality to handle AvsItems
@@ -30,6 +42,11 @@ public class AlexaAudioPlayer {
 
     public static final String TAG = "AlexaAudioPlayer";
 
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+    public static final long DEFAULT_PREFETCH_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+    private static final String REMOTE_AUDIO_CACHE_DIR = "remote-audio";
+
     private static AlexaAudioPlayer mInstance;
 
     private MediaPlayer mMediaPlayer;
@@ -37,6 +54,30 @@ public class AlexaAudioPlayer {
     private AvsItem mItem;
     private final List<Callback> mCallbacks = new ArrayList<>();
     private Boolean alexaIsSpeacking = false;
+    //only used before Android M, where the speech has to go through a file
+    private File mSpeechFile;
+    private final AudioCacheManager mAudioCache;
+    private final PlayerFactory mPlayerFactory;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private PlaybackProgressScheduler mProgressScheduler;
+    private long mProgressTickInterval = 0;
+
+    //upcoming items prepared on players of their own, in play order
+    private final LinkedHashMap<AvsItem, Prefetch> mPrefetched = new LinkedHashMap<>();
+    //the prefetched player the current one hands over to via setNextMediaPlayer()
+    private Prefetch mChainedNext;
+    //the item the chained player started on its own, already playing by the time it's played
+    private AvsItem mHandedOverItem;
+    private int mPrefetchDepth = DEFAULT_PREFETCH_DEPTH;
+    private long mPrefetchMemoryLimit = DEFAULT_PREFETCH_MEMORY_LIMIT;
+    //remote streams are read through this from Android M on, null turns it off
+    private RemoteAudioCache mRemoteAudioCache;
+    private PlaylistResolver mPlaylistResolver;
+    //playlists being resolved, and the one we're going to play once it is
+    private final Set<AvsPlayRemoteItem> mResolving = new HashSet<>();
+    private AvsPlayRemoteItem mResolvingItem;
+    //shhh.mp3, opened once, MediaPlayer.setDataSource() takes its own copy of the descriptor
+    private AssetFileDescriptor mPausePrompt;
 
     /**
      * Create our new AlexaAudioPlayer
@@ -44,7 +85,24 @@ public class AlexaAudioPlayer {
      * @param context any context, we will get the application level to store locally
      */
     private AlexaAudioPlayer(Context context) {
-        mContext = context.getApplicationContext();
+        this(context.getApplicationContext(), AudioCacheManager.getInstance(context),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                        ? new RemoteAudioCache(new File(context.getApplicationContext().getCacheDir(), REMOTE_AUDIO_CACHE_DIR))
+                        : null,
+                new PlayerFactory() {
+                    @Override
+                    public MediaPlayer create() {
+                        return new MediaPlayer();
+                    }
+                });
+    }
+
+    AlexaAudioPlayer(Context context, AudioCacheManager audioCache, @Nullable RemoteAudioCache remoteAudioCache,
+                     PlayerFactory playerFactory) {
+        mContext = context;
+        mAudioCache = audioCache;
+        mRemoteAudioCache = remoteAudioCache;
+        mPlayerFactory = playerFactory;
     }
 
     /**
@@ -57,55 +115,204 @@ public class AlexaAudioPlayer {
     public static AlexaAudioPlayer getInstance(Context context) {
         if (mInstance == null) {
             mInstance = new AlexaAudioPlayer(context);
-            trimCache(context);
         }
         return mInstance;
     }
 
-    private static void trimCache(Context context) {
+    /**
+     * Return a reference to the MediaPlayer instance, if it does not exist,
+     * then create it and configure it to our needs
+     *
+     * @return Android native MediaPlayer
+     */
+    public MediaPlayer getMediaPlayer() {
+        if (mMediaPlayer == null) {
+            mMediaPlayer = createMediaPlayer();
+        }
+        return mMediaPlayer;
+    }
+
+    private MediaPlayer createMediaPlayer() {
+        MediaPlayer player = mPlayerFactory.create();
+        player.setWakeMode(mContext, PowerManager.PARTIAL_WAKE_LOCK);
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnCompletionListener(mCompletionListener);
+        player.setOnPreparedListener(mPreparedListener);
+        player.setOnErrorListener(mErrorListener);
+        return player;
+    }
+
+    /**
+     * Replace the disk cache remote AudioPlayer streams are read through (only used from Android M on), e.g. to
+     * change its size.
+     *
+     * @param cache the new cache, null to stream straight from the network
+     */
+    public void setRemoteAudioCache(@Nullable RemoteAudioCache cache) {
+        mRemoteAudioCache = cache;
+    }
+
+    /**
+     * @return the cache remote streams are read through, for its hit rate and bytes saved
+     */
+    @Nullable
+    public RemoteAudioCache getRemoteAudioCache() {
+        return mRemoteAudioCache;
+    }
+
+    /**
+     * How many upcoming items to prepare ahead of time, each one takes a MediaPlayer. The first one is chained to the
+     * current item with {@link MediaPlayer#setNextMediaPlayer(MediaPlayer)} so there is no gap between them.
+     *
+     * @param depth number of items, 0 turns prefetching off
+     */
+    public void setPrefetchDepth(int depth) {
+        mPrefetchDepth = Math.max(0, depth);
+    }
+
+    /**
+     * @param bytes max size of the speech audio held by prefetched players, remote streams are not counted
+     */
+    public void setPrefetchMemoryLimit(long bytes) {
+        mPrefetchMemoryLimit = Math.max(0, bytes);
+    }
+
+    /**
+     * Prepare the upcoming items while the current one plays. Call it whenever the queue changes, items that are
+     * no longer in it are let go.
+     *
+     * @param queue the items in play order, the one currently playing may be in there as well
+     */
+    public void prefetch(List<? extends AvsItem> queue) {
+        List<AvsItem> wanted = new ArrayList<>();
+        long bytes = 0;
+        for (AvsItem item : queue) {
+            if (wanted.size() >= mPrefetchDepth) {
+                break;
+            }
+            if (item == mItem) {
+                continue;
+            }
+            if (needsResolving(item)) {
+                //get the playlist out of the way now, the player is prepared once it's the next item again
+                resolvePlaylist((AvsPlayRemoteItem) item);
+                break;
+            }
+            if (!isPrefetchable(item)) {
+                //whatever comes after has to wait for this one anyway
+                break;
+            }
+            if (item instanceof AvsSpeakItem) {
+                bytes += ((AvsSpeakItem) item).getAudio().length;
+                if (bytes > mPrefetchMemoryLimit) {
+                    break;
+                }
+            }
+            wanted.add(item);
+        }
+
+        //drop what's not wanted anymore, keeping the order of the rest
+        Iterator<Map.Entry<AvsItem, Prefetch>> iterator = mPrefetched.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Prefetch prefetch = iterator.next().getValue();
+            if (!wanted.contains(prefetch.mItem)) {
+                iterator.remove();
+                releasePrefetch(prefetch);
+            }
+        }
+        LinkedHashMap<AvsItem, Prefetch> ordered = new LinkedHashMap<>();
+        for (AvsItem item : wanted) {
+            Prefetch prefetch = mPrefetched.get(item);
+            if (prefetch == null) {
+                prefetch = startPrefetch(item);
+            }
+            if (prefetch != null) {
+                ordered.put(item, prefetch);
+            }
+        }
+        mPrefetched.clear();
+        mPrefetched.putAll(ordered);
+        chainNext();
+    }
+
+    private static boolean isPrefetchable(AvsItem item) {
+        return (item instanceof AvsSpeakItem || item instanceof AvsPlayRemoteItem || item instanceof AvsPlayContentItem)
+                && !isPausePrompt(item);
+    }
+
+    private Prefetch startPrefetch(AvsItem item) {
+        Prefetch prefetch = new Prefetch(item, createMediaPlayer());
         try {
-            File dir = context.getCacheDir();
-            if (dir != null && dir.isDirectory()) {
-                deleteDir(dir);
+            prefetch.mSpeechFile = setDataSource(prefetch.mPlayer, item);
+            prefetch.mPlayer.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            //no harm done, it gets prepared the normal way when its turn comes
+            Log.w(TAG, "Could not prefetch " + item.getToken(), e);
+            releasePrefetch(prefetch);
+            return null;
+        }
+        return prefetch;
+    }
+
+    private void releasePrefetch(Prefetch prefetch) {
+        if (prefetch == mChainedNext) {
+            unchainNext();
+        }
+        prefetch.mPlayer.release();
+        mAudioCache.release(prefetch.mSpeechFile);
+    }
+
+    private void releasePrefetched() {
+        unchainNext();
+        for (Prefetch prefetch : mPrefetched.values()) {
+            releasePrefetch(prefetch);
+        }
+        mPrefetched.clear();
+    }
+
+    /**
+     * Let the current player hand over to the next prefetched item once it's prepared
+     */
+    private void chainNext() {
+        Prefetch next = mPrefetched.isEmpty() ? null : mPrefetched.values().iterator().next();
+        if (next == mChainedNext || mMediaPlayer == null || mItem == null || !alexaIsSpeacking) {
+            return;
+        }
+        unchainNext();
+        if (next != null && next.mPrepared) {
+            try {
+                mMediaPlayer.setNextMediaPlayer(next.mPlayer);
+                mChainedNext = next;
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                //current player not prepared yet, we try again once it is
             }
-        } catch (Exception e) {
-            // TODO: handle exception
         }
     }
 
-    private static boolean deleteDir(File dir) {
-        if (dir != null && dir.isDirectory()) {
-            String[] children = dir.list();
-            for (int i = 0; i < children.length; i++) {
-                boolean success = deleteDir(new File(dir, children[i]));
-                if (!success) {
-                    return false;
+    private void unchainNext() {
+        if (mChainedNext != null) {
+            if (mMediaPlayer != null) {
+                try {
+                    mMediaPlayer.setNextMediaPlayer(null);
+                } catch (IllegalStateException e) {
+                    //nothing to undo
                 }
             }
+            mChainedNext = null;
         }
-        if (dir != null) {
-            // The directory is now empty so delete it
-            return dir.delete();
-        }
-        return false;
     }
 
     /**
-     * Return a reference to the MediaPlayer instance, if it does not exist,
-     * then create it and configure it to our needs
-     *
-     * @return Android native MediaPlayer
+     * Make a prefetched player the current one, the old player is released
      */
-    public MediaPlayer getMediaPlayer() {
-        if (mMediaPlayer == null) {
-            mMediaPlayer = new MediaPlayer();
-            mMediaPlayer.setWakeMode(mContext, PowerManager.PARTIAL_WAKE_LOCK);
-            mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            mMediaPlayer.setOnCompletionListener(mCompletionListener);
-            mMediaPlayer.setOnPreparedListener(mPreparedListener);
-            mMediaPlayer.setOnErrorListener(mErrorListener);
+    private void swapIn(Prefetch prefetch) {
+        if (mMediaPlayer != null) {
+            mMediaPlayer.release();
         }
-        return mMediaPlayer;
+        releaseSpeechFile();
+        mMediaPlayer = prefetch.mPlayer;
+        mSpeechFile = prefetch.mSpeechFile;
+        mItem = prefetch.mItem;
     }
 
     /**
@@ -171,76 +378,54 @@ public class AlexaAudioPlayer {
      * @param item
      */
     private void play(AvsItem item) {
+        if (item == mHandedOverItem && item == mItem) {
+            //the last item handed over to it when it completed, starting over would leave a gap
+            mHandedOverItem = null;
+            return;
+        }
+        mHandedOverItem = null;
         if (isPlaying()) {
             Log.w(TAG, "Already playing an item, did you mean to play another?");
         }
         mItem = item;
+        mResolvingItem = null;
+        stopProgress();
         if (getMediaPlayer().isPlaying()) {
             //if we're playing, stop playing before we continue
             getMediaPlayer().stop();
         }
 
-        //reset our player
-        getMediaPlayer().reset();
+        if (needsResolving(item)) {
+            //play() is called again once we know what the playlist points at
+            unchainNext();
+            mResolvingItem = (AvsPlayRemoteItem) item;
+            resolvePlaylist(mResolvingItem);
+            return;
+        }
 
-        if (!TextUtils.isEmpty(mItem.getToken()) && mItem.getToken().contains("PausePrompt")) {
-            //a gross work around for a broke pause mp3 coming from Amazon, play the local mp3
-            try {
-                AssetFileDescriptor afd = mContext.getAssets().openFd("shhh.mp3");
-                getMediaPlayer().setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            } catch (IOException e) {
-                e.printStackTrace();
-                //bubble up our error
-                bubbleUpError(e);
-            }
-        } else if (mItem instanceof AvsPlayRemoteItem) {
-            //cast our item for easy access
-            AvsPlayRemoteItem playItem = (AvsPlayRemoteItem) item;
-            try {
-                //set stream
-                getMediaPlayer().setAudioStreamType(AudioManager.STREAM_MUSIC);
-                //play new url
-                getMediaPlayer().setDataSource(playItem.getUrl());
-            } catch (IOException e) {
-                e.printStackTrace();
-                //bubble up our error
-                bubbleUpError(e);
-            }
-        } else if (mItem instanceof AvsPlayContentItem) {
-            //cast our item for easy access
-            AvsPlayContentItem playItem = (AvsPlayContentItem) item;
-            try {
-                //set stream
-                getMediaPlayer().setAudioStreamType(AudioManager.STREAM_MUSIC);
-                //play new url
-                getMediaPlayer().setDataSource(mContext, playItem.getUri());
-            } catch (IOException e) {
-                e.printStackTrace();
-                //bubble up our error
-                bubbleUpError(e);
-            } catch (IllegalStateException e) {
-                e.printStackTrace();
-                //bubble up our error
-                bubbleUpError(e);
-            }
-        } else if (mItem instanceof AvsSpeakItem) {
-            //cast our item for easy access
-            AvsSpeakItem playItem = (AvsSpeakItem) item;
-            //write out our raw audio data to a file
-            File path = new File(mContext.getCacheDir(), System.currentTimeMillis() + ".mp3");
-            FileOutputStream fos = null;
-            try {
-                fos = new FileOutputStream(path);
-                fos.write(playItem.getAudio());
-                fos.close();
-                //play our newly-written file
-                getMediaPlayer().setDataSource(path.getPath());
-            } catch (IOException | IllegalStateException e) {
-                e.printStackTrace();
-                //bubble up our error
-                bubbleUpError(e);
+        Prefetch prefetch = mPrefetched.remove(item);
+        if (prefetch != null) {
+            //already prepared (or preparing) on a player of its own, swap it in
+            unchainNext();
+            swapIn(prefetch);
+            alexaIsSpeacking = true;
+            if (prefetch.mPrepared) {
+                mPreparedListener.onPrepared(mMediaPlayer);
             }
+            return;
+        }
+
+        //reset our player
+        unchainNext();
+        getMediaPlayer().reset();
+        releaseSpeechFile();
 
+        try {
+            mSpeechFile = setDataSource(getMediaPlayer(), item);
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            //bubble up our error
+            bubbleUpError(e);
         }
         //prepare our player, this will start once prepared because of mPreparedListener
         try {
@@ -251,13 +436,138 @@ public class AlexaAudioPlayer {
         }
     }
 
+    private static boolean needsResolving(AvsItem item) {
+        return item instanceof AvsPlayRemoteItem && ((AvsPlayRemoteItem) item).getResolvedUrl() == null
+                && PlaylistResolver.isPlaylistUrl(((AvsPlayRemoteItem) item).getUrl());
+    }
+
+    private PlaylistResolver getPlaylistResolver() {
+        if (mPlaylistResolver == null) {
+            mPlaylistResolver = new PlaylistResolver(ClientUtil.getTLS12OkHttpClient());
+        }
+        return mPlaylistResolver;
+    }
+
+    /**
+     * Resolve the playlist url of the item in the background and play it if it's the one we're waiting for by then.
+     * If resolving fails the MediaPlayer gets the playlist url itself, as it did before.
+     */
+    private void resolvePlaylist(final AvsPlayRemoteItem item) {
+        if (!mResolving.add(item)) {
+            return;
+        }
+        getPlaylistResolver().resolve(item.getUrl(), new AsyncCallback<String, Exception>() {
+            @Override
+            public void start() {
+
+            }
+
+            @Override
+            public void success(String result) {
+                done(result);
+            }
+
+            @Override
+            public void failure(Exception error) {
+                Log.w(TAG, "Could not resolve playlist " + item.getUrl(), error);
+                done(item.getUrl());
+            }
+
+            @Override
+            public void complete() {
+
+            }
+
+            private void done(final String url) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mResolving.remove(item);
+                        item.setResolvedUrl(url);
+                        if (mResolvingItem == item) {
+                            mResolvingItem = null;
+                            play(item);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Point the given player at the audio of an item, if it's an AvsPlayRemoteItem (url, usually), we set that url as
+     * the data source, if it's an AvsSpeakItem we hand over the raw audio
+     *
+     * @return the file the speech was written to (before Android M), which is ours to release, otherwise null
+     */
+    private File setDataSource(MediaPlayer player, AvsItem item) throws IOException {
+        if (isPausePrompt(item)) {
+            //a gross work around for a broke pause mp3 coming from Amazon, play the local mp3
+            if (mPausePrompt == null) {
+                mPausePrompt = mContext.getAssets().openFd("shhh.mp3");
+            }
+            player.setDataSource(mPausePrompt.getFileDescriptor(), mPausePrompt.getStartOffset(), mPausePrompt.getLength());
+        } else if (item instanceof AvsPlayRemoteItem) {
+            //set stream
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            String url = ((AvsPlayRemoteItem) item).getStreamUrl();
+            if (mRemoteAudioCache != null && canUseDataSource(url)) {
+                //whether it's cached is up to the headers of the response
+                player.setDataSource(new CachingMediaDataSource(mRemoteAudioCache, ClientUtil.getTLS12OkHttpClient(), url));
+            } else {
+                //play new url
+                player.setDataSource(url);
+            }
+        } else if (item instanceof AvsPlayContentItem) {
+            player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            player.setDataSource(mContext, ((AvsPlayContentItem) item).getUri());
+        } else if (item instanceof AvsSpeakItem) {
+            return setSpeechDataSource(player, item.getToken(), ((AvsSpeakItem) item).getAudio());
+        }
+        return null;
+    }
+
+    /**
+     * HTTP(S) streams can be read through a {@link CachingMediaDataSource}, HLS has to go to the MediaPlayer as a url
+     */
+    private static boolean canUseDataSource(String url) {
+        String scheme = Uri.parse(url).getScheme();
+        return ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))
+                && !PlaylistResolver.isPlaylistUrl(url);
+    }
+
+    private static boolean isPausePrompt(AvsItem item) {
+        return !TextUtils.isEmpty(item.getToken()) && item.getToken().contains("PausePrompt");
+    }
+
+    /**
+     * Hand the MP3 bytes of a Speak directive to the MediaPlayer. From Android M on they are read straight from
+     * memory, before that the MediaPlayer needs a file in the {@link AudioCacheManager}, which has to be released
+     * once we're done with it.
+     */
+    private File setSpeechDataSource(MediaPlayer player, String token, byte[] audio) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            player.setDataSource(new ByteArrayMediaDataSource(audio));
+            return null;
+        }
+        File path = mAudioCache.write(token, "mp3", audio);
+        //play our newly-written file
+        player.setDataSource(path.getPath());
+        return path;
+    }
+
+    private void releaseSpeechFile() {
+        mAudioCache.release(mSpeechFile);
+        mSpeechFile = null;
+    }
+
     /**
      * Check whether our MediaPlayer is currently playing
      *
      * @return true playing, false not
      */
     public boolean isPlaying() {
-        return getMediaPlayer().isPlaying();
+        return mResolvingItem != null || getMediaPlayer().isPlaying();
     }
 
     /**
@@ -265,6 +575,9 @@ public class AlexaAudioPlayer {
      */
     public void pause() {
         getMediaPlayer().pause();
+        if (mProgressScheduler != null) {
+            mProgressScheduler.pause();
+        }
     }
 
     /**
@@ -272,12 +585,19 @@ public class AlexaAudioPlayer {
      */
     public void play() {
         getMediaPlayer().start();
+        if (mProgressScheduler != null) {
+            mProgressScheduler.resume();
+        }
     }
 
     /**
      * A helper function to stop the MediaPlayer
      */
     public void stop() {
+        mResolvingItem = null;
+        mHandedOverItem = null;
+        stopProgress();
+        releasePrefetched();
         getMediaPlayer().stop();
     }
 
@@ -285,6 +605,10 @@ public class AlexaAudioPlayer {
      * A helper function to release the media player and remove it from memory
      */
     public void release() {
+        mResolvingItem = null;
+        mHandedOverItem = null;
+        stopProgress();
+        releasePrefetched();
         if (mMediaPlayer != null) {
             if (mMediaPlayer.isPlaying()) {
                 mMediaPlayer.stop();
@@ -293,6 +617,15 @@ public class AlexaAudioPlayer {
             mMediaPlayer.release();
         }
         mMediaPlayer = null;
+        releaseSpeechFile();
+        if (mPausePrompt != null) {
+            try {
+                mPausePrompt.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close the pause prompt", e);
+            }
+            mPausePrompt = null;
+        }
     }
 
     public void duck(float value) {
@@ -308,19 +641,122 @@ public class AlexaAudioPlayer {
     }
 
     /**
-     * If our callback is not null, post our player progress back to the controlling
-     * application so we can do "almost done" type of calls
+     * Also post a progress update every interval while playing, e.g. for a progress bar. Off (0) by default,
+     * AVS itself only needs the marks the {@link PlaybackProgressScheduler} fires anyway.
+     *
+     * @param interval in milliseconds, applies from the next item on
      */
-    private void postProgress(final float percent) {
-        synchronized (mCallbacks) {
-            for (Callback callback : mCallbacks) {
-                if (mMediaPlayer != null && callback != null) {
-                    callback.playerProgress(mItem, mMediaPlayer.getCurrentPosition(), percent);
+    public void setProgressTickInterval(long interval) {
+        mProgressTickInterval = interval;
+    }
+
+    /**
+     * Start firing the progress marks for the item that just started playing on the MediaPlayer
+     */
+    private void startProgress(final AvsItem item) {
+        stopProgress();
+        mProgressScheduler = new PlaybackProgressScheduler(new PlaybackProgressScheduler.PositionSource() {
+            @Override
+            public long getPositionMillis() {
+                return getPlayer().getCurrentPosition();
+            }
+
+            @Override
+            public long getDurationMillis() {
+                return getPlayer().getDuration();
+            }
+
+            private MediaPlayer getPlayer() {
+                MediaPlayer player = mMediaPlayer;
+                if (player == null) {
+                    throw new IllegalStateException("Player released");
                 }
+                return player;
+            }
+        }, new PlaybackProgressScheduler.Listener() {
+            @Override
+            public void onStarted(long positionMillis) {
+                postProgress(item, positionMillis, 0);
             }
+
+            @Override
+            public void onNearlyFinished(long positionMillis, float percent) {
+                postProgress(item, positionMillis, percent);
+            }
+
+            @Override
+            public void onProgressReportDelayElapsed(long positionMillis) {
+                postProgressReport(item, positionMillis, false);
+            }
+
+            @Override
+            public void onProgressReportIntervalElapsed(long positionMillis) {
+                postProgressReport(item, positionMillis, true);
+            }
+
+            @Override
+            public void onTick(long positionMillis, float percent) {
+                postProgress(item, positionMillis, percent);
+            }
+        });
+        if (item instanceof AvsPlayRemoteItem) {
+            AvsPlayRemoteItem remoteItem = (AvsPlayRemoteItem) item;
+            mProgressScheduler.setProgressReport(remoteItem.getProgressReportDelay(), remoteItem.getProgressReportInterval());
+        }
+        mProgressScheduler.setTickInterval(mProgressTickInterval);
+        mProgressScheduler.start();
+    }
+
+    private void stopProgress() {
+        if (mProgressScheduler != null) {
+            mProgressScheduler.stop();
+            mProgressScheduler = null;
         }
     }
 
+    /**
+     * Post our player progress back to the controlling application on the main thread,
+     * so we can do "almost done" type of calls
+     */
+    private void postProgress(final AvsItem item, final long offsetInMilliseconds, final float percent) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mItem != item) {
+                    return;
+                }
+                synchronized (mCallbacks) {
+                    for (Callback callback : mCallbacks) {
+                        callback.playerProgress(item, offsetInMilliseconds, percent);
+                    }
+                }
+            }
+        });
+    }
+
+    private void postProgressReport(final AvsItem item, final long offsetInMilliseconds, final boolean interval) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mItem != item) {
+                    return;
+                }
+                synchronized (mCallbacks) {
+                    for (Callback callback : mCallbacks) {
+                        if (!(callback instanceof ProgressReportCallback)) {
+                            continue;
+                        }
+                        if (interval) {
+                            ((ProgressReportCallback) callback).progressReportIntervalElapsed(item, offsetInMilliseconds);
+                        } else {
+                            ((ProgressReportCallback) callback).progressReportDelayElapsed(item, offsetInMilliseconds);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * A callback to keep track of the state of the MediaPlayer and various AvsItem states
      */
@@ -336,6 +772,16 @@ public class AlexaAudioPlayer {
         void dataError(AvsItem item, Exception e);
     }
 
+    /**
+     * A {@link Callback} that also wants the progressReport marks of Play directives, to send the
+     * ProgressReportDelayElapsed and ProgressReportIntervalElapsed events
+     */
+    public interface ProgressReportCallback extends Callback {
+        void progressReportDelayElapsed(AvsItem currentItem, long offsetInMilliseconds);
+
+        void progressReportIntervalElapsed(AvsItem currentItem, long offsetInMilliseconds);
+    }
+
     /**
      * Pass our Exception to all the Callbacks, handle it at the top level
      *
@@ -353,10 +799,32 @@ public class AlexaAudioPlayer {
     private MediaPlayer.OnCompletionListener mCompletionListener = new MediaPlayer.OnCompletionListener() {
         @Override
         public void onCompletion(MediaPlayer mp) {
-            alexaIsSpeacking = false;
+            if (mp != mMediaPlayer) {
+                return;
+            }
+            stopProgress();
+            AvsItem completedItem = mItem;
+            Prefetch next = mChainedNext;
+            if (next != null) {
+                //the platform already started the next player, it becomes the current one
+                mChainedNext = null;
+                mPrefetched.remove(next.mItem);
+                swapIn(next);
+                mHandedOverItem = next.mItem;
+            } else {
+                alexaIsSpeacking = false;
+                releaseSpeechFile();
+            }
             for (Callback callback : mCallbacks) {
-                callback.playerProgress(mItem, 1, 1);
-                callback.itemComplete(mItem);
+                callback.playerProgress(completedItem, 1, 1);
+                callback.itemComplete(completedItem);
+            }
+            if (next != null) {
+                for (Callback callback : mCallbacks) {
+                    callback.playerPrepared(next.mItem);
+                }
+                startProgress(next.mItem);
+                chainNext();
             }
         }
     };
@@ -367,31 +835,23 @@ public class AlexaAudioPlayer {
     private MediaPlayer.OnPreparedListener mPreparedListener = new MediaPlayer.OnPreparedListener() {
         @Override
         public void onPrepared(MediaPlayer mp) {
+            if (mp != mMediaPlayer) {
+                //a prefetched item, it waits for its turn
+                for (Prefetch prefetch : mPrefetched.values()) {
+                    if (prefetch.mPlayer == mp) {
+                        prefetch.mPrepared = true;
+                    }
+                }
+                chainNext();
+                return;
+            }
             for (Callback callback : mCallbacks) {
                 callback.playerPrepared(mItem);
-                callback.playerProgress(mItem, mMediaPlayer.getCurrentPosition(), 0);
             }
             mMediaPlayer.start();
-            new AsyncTask<Void, Void, Void>() {
-                @Override
-                protected Void doInBackground(Void... params) {
-                    try {
-                        while (getMediaPlayer() != null && getMediaPlayer().isPlaying()) {
-                            int pos = getMediaPlayer().getCurrentPosition();
-                            final float percent = (float) pos / (float) getMediaPlayer().getDuration();
-                            postProgress(percent);
-                            try {
-                                Thread.sleep(10);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    } catch (NullPointerException | IllegalStateException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                }
-            }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            //the scheduler posts the started progress and wakes up again only for the next mark
+            startProgress(mItem);
+            chainNext();
         }
     };
 
@@ -401,6 +861,22 @@ public class AlexaAudioPlayer {
     private MediaPlayer.OnErrorListener mErrorListener = new MediaPlayer.OnErrorListener() {
         @Override
         public boolean onError(MediaPlayer mp, int what, int extra) {
+            if (mp != mMediaPlayer) {
+                //a prefetched item failed, drop it so it gets another try (and reports errors) when it's played
+                Iterator<Prefetch> iterator = mPrefetched.values().iterator();
+                while (iterator.hasNext()) {
+                    Prefetch prefetch = iterator.next();
+                    if (prefetch.mPlayer == mp) {
+                        iterator.remove();
+                        releasePrefetch(prefetch);
+                    }
+                }
+                return true;
+            }
+            unchainNext();
+            mHandedOverItem = null;
+            releaseSpeechFile();
+            stopProgress();
             for (Callback callback : mCallbacks) {
                 boolean response = callback.playerError(mItem, what, extra);
                 alexaIsSpeacking = false;
@@ -420,4 +896,26 @@ public class AlexaAudioPlayer {
     public Boolean isAlexaSpeacking() {
         return alexaIsSpeacking;
     }
+
+    /**
+     * Creates the MediaPlayers, a seam for tests
+     */
+    interface PlayerFactory {
+        MediaPlayer create();
+    }
+
+    /**
+     * An upcoming item on a MediaPlayer of its own
+     */
+    private static class Prefetch {
+        final AvsItem mItem;
+        final MediaPlayer mPlayer;
+        File mSpeechFile;
+        boolean mPrepared = false;
+
+        Prefetch(AvsItem item, MediaPlayer player) {
+            mItem = item;
+            mPlayer = player;
+        }
+    }
 }
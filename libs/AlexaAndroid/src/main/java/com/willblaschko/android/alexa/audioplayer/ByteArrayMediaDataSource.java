@@ -0,0 +1,43 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+
+/**
+ * A {@link MediaDataSource} over audio that is already in memory, e.g. the MP3 part of a Speak directive.
+ * This lets the MediaPlayer read the bytes directly instead of us writing them to a file first.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class ByteArrayMediaDataSource extends MediaDataSource {
+
+    private volatile byte[] mData;
+
+    public ByteArrayMediaDataSource(byte[] data) {
+        mData = data;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        byte[] data = mData;
+        if (data == null || position >= data.length) {
+            //end of stream
+            return -1;
+        }
+        int length = (int) Math.min(size, data.length - position);
+        System.arraycopy(data, (int) position, buffer, offset, length);
+        return length;
+    }
+
+    @Override
+    public long getSize() {
+        byte[] data = mData;
+        return data == null ? -1 : data.length;
+    }
+
+    @Override
+    public void close() {
+        //the MediaPlayer is done with us, let go of the audio
+        mData = null;
+    }
+}
@@ -0,0 +1,249 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up only at the playback positions AVS cares about, instead of polling the player all the time:
+ * started, nearly finished ({@link #NEARLY_FINISHED_PERCENT} of the duration), the progressReport delay and
+ * interval marks of a Play directive and, if asked for, a low-rate tick for a progress bar. The finished mark comes
+ * from the player's own completion callback.
+ *
+ * The time to the next mark is worked out from the current position, and the position is checked again when we wake
+ * up, so a stalled stream makes us check again later but never fire early. {@link Listener#onNearlyFinished(long, float)}
+ * is only called once the position is past {@link #NEARLY_FINISHED_PERCENT}.
+ *
+ * All instances share one scheduler thread. Listener methods are called on that thread.
+ */
+public class PlaybackProgressScheduler {
+
+    public static final float NEARLY_FINISHED_PERCENT = .8f;
+
+    //a mark a few ms away is fired a few ms late rather than sleeping for less than this
+    private static final long MIN_WAIT_MILLIS = 10;
+
+    private static ScheduledExecutorService sSharedExecutor;
+
+    private final ScheduledExecutorService mExecutor;
+    private final PositionSource mSource;
+    private final Listener mListener;
+
+    private long mProgressReportDelay = 0;
+    private long mProgressReportInterval = 0;
+    private long mTickInterval = 0;
+
+    private ScheduledFuture<?> mFuture;
+    private boolean mRunning = false;
+    private boolean mStartedFired;
+    private boolean mNearlyFinishedFired;
+    private boolean mDelayFired;
+    private long mNextInterval;
+    private long mNextTick;
+    private int mWakeups;
+
+    public PlaybackProgressScheduler(PositionSource source, Listener listener) {
+        this(getSharedExecutor(), source, listener);
+    }
+
+    public PlaybackProgressScheduler(ScheduledExecutorService executor, PositionSource source, Listener listener) {
+        mExecutor = executor;
+        mSource = source;
+        mListener = listener;
+    }
+
+    /**
+     * The single daemon thread every player's scheduler runs on
+     */
+    public static synchronized ScheduledExecutorService getSharedExecutor() {
+        if (sSharedExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "PlaybackProgress");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            //pause/resume cancels a lot, don't keep the dead tasks in the queue
+            executor.setRemoveOnCancelPolicy(true);
+            sSharedExecutor = executor;
+        }
+        return sSharedExecutor;
+    }
+
+    /**
+     * @param delay    position of the single ProgressReportDelayElapsed mark, 0 for none
+     * @param interval period of the ProgressReportIntervalElapsed marks, 0 for none
+     */
+    public synchronized void setProgressReport(long delay, long interval) {
+        mProgressReportDelay = Math.max(0, delay);
+        mProgressReportInterval = Math.max(0, interval);
+    }
+
+    /**
+     * @param interval period of {@link Listener#onTick(long, float)}, 0 (the default) to turn it off
+     */
+    public synchronized void setTickInterval(long interval) {
+        mTickInterval = Math.max(0, interval);
+    }
+
+    /**
+     * Playback of a new item has started
+     */
+    public synchronized void start() {
+        cancel();
+        mStartedFired = false;
+        mNearlyFinishedFired = false;
+        mDelayFired = false;
+        mNextInterval = mProgressReportInterval;
+        mNextTick = 0;
+        mWakeups = 0;
+        mRunning = true;
+        schedule(0);
+    }
+
+    /**
+     * Playback was paused, nothing fires until {@link #resume()}
+     */
+    public synchronized void pause() {
+        mRunning = false;
+        cancel();
+    }
+
+    public synchronized void resume() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        schedule(0);
+    }
+
+    /**
+     * The item finished or was stopped
+     */
+    public synchronized void stop() {
+        mRunning = false;
+        cancel();
+    }
+
+    /**
+     * @return how often we woke up since {@link #start()}
+     */
+    public synchronized int getWakeups() {
+        return mWakeups;
+    }
+
+    private void cancel() {
+        if (mFuture != null) {
+            mFuture.cancel(false);
+            mFuture = null;
+        }
+    }
+
+    private void schedule(long delay) {
+        mFuture = mExecutor.schedule(mCheck, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable mCheck = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PlaybackProgressScheduler.this) {
+                if (!mRunning) {
+                    return;
+                }
+                mWakeups++;
+                long position;
+                long duration;
+                try {
+                    position = mSource.getPositionMillis();
+                    duration = mSource.getDurationMillis();
+                } catch (IllegalStateException e) {
+                    //the player went away under us
+                    mRunning = false;
+                    return;
+                }
+                long wait = fireDueMarks(position, duration);
+                if (mRunning && wait >= 0) {
+                    schedule(Math.max(MIN_WAIT_MILLIS, wait));
+                }
+            }
+        }
+    };
+
+    /**
+     * @return time until the next mark, or -1 if there is none left
+     */
+    private long fireDueMarks(long position, long duration) {
+        float percent = duration > 0 ? (float) position / duration : 0;
+        long due = position;
+        long next = Long.MAX_VALUE;
+
+        if (!mStartedFired) {
+            mStartedFired = true;
+            mListener.onStarted(position);
+        }
+        if (mTickInterval > 0) {
+            if (mNextTick <= due) {
+                mListener.onTick(position, percent);
+                mNextTick = position + mTickInterval;
+            }
+            next = Math.min(next, mNextTick);
+        }
+        if (mProgressReportDelay > 0 && !mDelayFired) {
+            if (mProgressReportDelay <= due) {
+                mDelayFired = true;
+                mListener.onProgressReportDelayElapsed(position);
+            } else {
+                next = Math.min(next, mProgressReportDelay);
+            }
+        }
+        if (mProgressReportInterval > 0) {
+            if (mNextInterval <= due) {
+                mListener.onProgressReportIntervalElapsed(position);
+                //skip marks we slept through rather than firing a burst
+                while (mNextInterval <= due) {
+                    mNextInterval += mProgressReportInterval;
+                }
+            }
+            next = Math.min(next, mNextInterval);
+        }
+        if (duration > 0 && !mNearlyFinishedFired) {
+            //strictly past it, so percent is always more than NEARLY_FINISHED_PERCENT
+            long mark = (long) (duration * NEARLY_FINISHED_PERCENT) + 1;
+            if (mark <= due && percent > NEARLY_FINISHED_PERCENT) {
+                mNearlyFinishedFired = true;
+                mListener.onNearlyFinished(position, percent);
+            } else {
+                next = Math.min(next, Math.max(mark, position + 1));
+            }
+        }
+        return next == Long.MAX_VALUE ? -1 : next - position;
+    }
+
+    /**
+     * Where the player is, e.g. a MediaPlayer's current position and duration
+     */
+    public interface PositionSource {
+        long getPositionMillis();
+
+        /**
+         * @return the duration, 0 or less if unknown (live streams)
+         */
+        long getDurationMillis();
+    }
+
+    public interface Listener {
+        void onStarted(long positionMillis);
+
+        void onNearlyFinished(long positionMillis, float percent);
+
+        void onProgressReportDelayElapsed(long positionMillis);
+
+        void onProgressReportIntervalElapsed(long positionMillis);
+
+        void onTick(long positionMillis, float percent);
+    }
+}
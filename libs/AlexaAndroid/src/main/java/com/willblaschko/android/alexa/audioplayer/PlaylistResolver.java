@@ -0,0 +1,352 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import android.util.Log;
+
+import com.willblaschko.android.alexa.callbacks.AsyncCallback;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Turns the playlist URLs that Play directives often point at (M3U, PLS, HLS) into a URL the MediaPlayer can
+ * start on right away.
+ *
+ * M3U and PLS entries are tried in parallel and the first entry (in playlist order) that answers wins, which is
+ * a lot faster than the MediaPlayer timing out on dead mirrors one after the other. Nested playlists are followed.
+ * HLS master playlists are resolved to their first (preferred) variant, the MediaPlayer plays the media playlist itself.
+ *
+ * Results are cached for a while, stations get played again and again.
+ */
+public class PlaylistResolver {
+
+    private static final String TAG = "PlaylistResolver";
+
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    private static final int MAX_CACHED = 32;
+    private static final int MAX_DEPTH = 3;
+    //entries we try at the same time
+    private static final int MAX_PARALLEL = 3;
+    private static final long PROBE_TIMEOUT_MILLIS = 8000;
+    private static final long MAX_PLAYLIST_BYTES = 256 * 1024;
+    private static final long SNIFF_BYTES = 16;
+
+    private final Fetcher mFetcher;
+    private final long mTtl;
+    private final ExecutorService mExecutor;
+    private final LinkedHashMap<String, CacheEntry> mCache = new LinkedHashMap<String, CacheEntry>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    public PlaylistResolver(OkHttpClient client) {
+        this(new HttpFetcher(client), DEFAULT_TTL_MILLIS);
+    }
+
+    PlaylistResolver(Fetcher fetcher, long ttlMillis) {
+        mFetcher = fetcher;
+        mTtl = ttlMillis;
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PlaylistResolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return true if the url looks like a playlist, by its extension
+     */
+    public static boolean isPlaylistUrl(String url) {
+        String path;
+        try {
+            path = new URI(url).getPath();
+        } catch (Exception e) {
+            return false;
+        }
+        if (path == null) {
+            return false;
+        }
+        path = path.toLowerCase(Locale.US);
+        return path.endsWith(".m3u") || path.endsWith(".m3u8") || path.endsWith(".pls");
+    }
+
+    /**
+     * @return the cached result for the url, null if there is none (or it's expired)
+     */
+    public synchronized String getCached(String url) {
+        CacheEntry entry = mCache.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.mExpires) {
+            mCache.remove(url);
+            return null;
+        }
+        return entry.mUrl;
+    }
+
+    public synchronized void clearCache() {
+        mCache.clear();
+    }
+
+    /**
+     * Resolve in the background, the callback is called on a background thread, failure() and complete() included
+     */
+    public void resolve(final String url, final AsyncCallback<String, Exception> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.start();
+                try {
+                    callback.success(resolve(url));
+                } catch (IOException | RuntimeException e) {
+                    //e.g. OkHttp rejecting a malformed URL, the caller falls back to the original either way
+                    callback.failure(e);
+                }
+                callback.complete();
+            }
+        });
+    }
+
+    /**
+     * Resolve on the calling thread, which does network I/O
+     *
+     * @return the URL to hand to the MediaPlayer, the url itself if it's not a playlist
+     */
+    public String resolve(String url) throws IOException {
+        String cached = getCached(url);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.currentTimeMillis();
+        String resolved = resolve(url, 0);
+        Log.i(TAG, "Resolved " + url + " to " + resolved + " in " + (System.currentTimeMillis() - start) + "ms");
+        synchronized (this) {
+            mCache.put(url, new CacheEntry(resolved, System.currentTimeMillis() + mTtl));
+        }
+        return resolved;
+    }
+
+    private String resolve(String url, int depth) throws IOException {
+        Page page = mFetcher.fetch(url);
+        if (page.mBody == null) {
+            //audio, this is what we were looking for
+            return page.mUrl;
+        }
+        if (depth >= MAX_DEPTH) {
+            throw new IOException("Playlists nested too deep at " + url);
+        }
+        String body = page.mBody;
+        //byte order mark
+        if (body.startsWith("\uFEFF")) {
+            body = body.substring(1);
+        }
+        if (body.trim().startsWith("#EXTM3U") && body.contains("#EXT-X-")) {
+            List<String> variants = parseHlsVariants(body, page.mUrl);
+            //a media playlist (no variants) is played as it is
+            return variants.isEmpty() ? page.mUrl : variants.get(0);
+        }
+        List<String> entries = body.trim().toLowerCase(Locale.US).startsWith("[playlist]")
+                ? parsePls(body, page.mUrl) : parseM3u(body, page.mUrl);
+        if (entries.isEmpty()) {
+            throw new IOException("Empty playlist " + url);
+        }
+        return resolveFirstWorking(entries, depth + 1);
+    }
+
+    /**
+     * Try the first few entries at the same time, take the first one (in playlist order) that works
+     */
+    private String resolveFirstWorking(List<String> entries, final int depth) throws IOException {
+        IOException lastError = null;
+        for (int batch = 0; batch < entries.size(); batch += MAX_PARALLEL) {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = batch; i < Math.min(entries.size(), batch + MAX_PARALLEL); i++) {
+                final String entry = entries.get(i);
+                futures.add(mExecutor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return resolve(entry, depth);
+                    }
+                }));
+            }
+            long deadline = System.currentTimeMillis() + PROBE_TIMEOUT_MILLIS;
+            try {
+                for (Future<String> future : futures) {
+                    try {
+                        String result = future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        if (result != null) {
+                            return result;
+                        }
+                    } catch (ExecutionException e) {
+                        lastError = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause() : new IOException(e.getCause());
+                    } catch (TimeoutException e) {
+                        lastError = new IOException("Timed out", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            } finally {
+                for (Future<String> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        throw lastError != null ? lastError : new IOException("No working entry");
+    }
+
+    /**
+     * @return the entries of an M3U/extended M3U playlist, as absolute URLs
+     */
+    static List<String> parseM3u(String body, String baseUrl) {
+        List<String> entries = new ArrayList<>();
+        for (String line : body.split("\r?\n")) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            addEntry(entries, baseUrl, line);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the FileN entries of a PLS playlist in N order, as absolute URLs
+     */
+    static List<String> parsePls(String body, String baseUrl) {
+        Map<Integer, String> files = new TreeMap<>();
+        for (String line : body.split("\r?\n")) {
+            line = line.trim();
+            int equals = line.indexOf('=');
+            if (equals < 0 || !line.toLowerCase(Locale.US).startsWith("file")) {
+                continue;
+            }
+            try {
+                files.put(Integer.parseInt(line.substring(4, equals).trim()), line.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                //not an entry
+            }
+        }
+        List<String> entries = new ArrayList<>();
+        for (String file : files.values()) {
+            addEntry(entries, baseUrl, file);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the variant URLs of an HLS master playlist in playlist order, empty for a media playlist
+     */
+    static List<String> parseHlsVariants(String body, String baseUrl) {
+        List<String> variants = new ArrayList<>();
+        boolean variantNext = false;
+        for (String line : body.split("\r?\n")) {
+            line = line.trim();
+            if (line.startsWith("#EXT-X-STREAM-INF")) {
+                variantNext = true;
+            } else if (line.length() > 0 && !line.startsWith("#") && variantNext) {
+                addEntry(variants, baseUrl, line);
+                variantNext = false;
+            }
+        }
+        return variants;
+    }
+
+    private static void addEntry(List<String> entries, String baseUrl, String entry) {
+        try {
+            entries.add(new URI(baseUrl).resolve(entry.replace(" ", "%20")).toString());
+        } catch (Exception e) {
+            Log.w(TAG, "Skipping bad playlist entry " + entry);
+        }
+    }
+
+    /**
+     * What's behind a URL, either a playlist (mBody) or audio (mBody is null)
+     */
+    static class Page {
+        final String mUrl;
+        final String mBody;
+
+        Page(String url, String body) {
+            mUrl = url;
+            mBody = body;
+        }
+    }
+
+    interface Fetcher {
+        /**
+         * @return the page, with the url after redirects
+         */
+        Page fetch(String url) throws IOException;
+    }
+
+    private static class HttpFetcher implements Fetcher {
+        private final OkHttpClient mClient;
+
+        HttpFetcher(OkHttpClient client) {
+            mClient = client;
+        }
+
+        @Override
+        public Page fetch(String url) throws IOException {
+            Response response = mClient.newCall(new Request.Builder().url(url).build()).execute();
+            try {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unexpected response " + response.code() + " for " + url);
+                }
+                String finalUrl = response.request().url().toString();
+                String type = response.header("Content-Type", "").toLowerCase(Locale.US);
+                boolean playlist = type.contains("mpegurl") || type.contains("scpls") || type.contains("x-scpls")
+                        || (isPlaylistUrl(finalUrl) && !type.startsWith("audio/"));
+                if (!playlist && !type.startsWith("audio/")) {
+                    //servers love text/plain and octet-stream, have a look at the first bytes
+                    String head = response.peekBody(SNIFF_BYTES).string().trim();
+                    playlist = head.startsWith("#EXTM3U") || head.toLowerCase(Locale.US).startsWith("[playlist]");
+                }
+                if (!playlist) {
+                    //audio, we don't want the stream itself, the connection is warmed up though
+                    return new Page(finalUrl, null);
+                }
+                ResponseBody body = response.peekBody(MAX_PLAYLIST_BYTES);
+                return new Page(finalUrl, body.string());
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    private static class CacheEntry {
+        final String mUrl;
+        final long mExpires;
+
+        CacheEntry(String url, long expires) {
+            mUrl = url;
+            mExpires = expires;
+        }
+    }
+}
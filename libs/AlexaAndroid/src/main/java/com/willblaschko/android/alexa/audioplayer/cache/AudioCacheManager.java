@@ -0,0 +1,264 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.willblaschko.android.alexa.utility.FileLruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Owns the directory the library writes its audio files to (speech for the MediaPlayer before Android M, text to
+ * speech output), instead of sharing, and wiping, the whole app cache directory.
+ *
+ * Files are named by the token of the item they belong to, so the same item is only written once. The directory
+ * is kept under a size and an age limit, the least recently used files go first. Trimming happens on a background
+ * thread, files that are in use are never deleted.
+ *
+ * Thread-safe.
+ */
+public class AudioCacheManager {
+
+    private static final String TAG = "AudioCacheManager";
+
+    public static final String DIRECTORY = "alexa-audio";
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000;
+
+    //tokens longer than this (or with odd characters in them) are hashed
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static AudioCacheManager mInstance;
+
+    private final File mDirectory;
+    //where older versions left their speech files, null if there is nothing to clean up
+    private final File mLegacyDirectory;
+    private long mMaxBytes;
+    private long mMaxAge;
+    //file name -> number of users
+    private final Map<String, Integer> mInUse = new HashMap<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Get the shared instance, the first call schedules a trim of what was left from earlier runs
+     */
+    public static synchronized AudioCacheManager getInstance(Context context) {
+        if (mInstance == null) {
+            File cacheDir = context.getApplicationContext().getCacheDir();
+            mInstance = new AudioCacheManager(new File(cacheDir, DIRECTORY), cacheDir, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+            mInstance.trim();
+        }
+        return mInstance;
+    }
+
+    AudioCacheManager(File directory, File legacyDirectory, long maxBytes, long maxAgeMillis) {
+        mDirectory = directory;
+        mLegacyDirectory = legacyDirectory;
+        mMaxBytes = maxBytes;
+        mMaxAge = maxAgeMillis;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @param maxBytes     size limit of the directory
+     * @param maxAgeMillis files that haven't been used for this long are deleted
+     */
+    public synchronized void setLimits(long maxBytes, long maxAgeMillis) {
+        mMaxBytes = maxBytes;
+        mMaxAge = maxAgeMillis;
+        trim();
+    }
+
+    /**
+     * @return the file for the given token, which may or may not exist yet
+     */
+    public File getFile(String token, String extension) {
+        return new File(mDirectory, fileNameFor(token) + "." + extension);
+    }
+
+    /**
+     * Write the audio of an item, unless it's there already, and mark the file as in use until {@link #release(File)}
+     *
+     * @return the file the audio is in
+     */
+    public File write(String token, String extension, byte[] audio) throws IOException {
+        File file = getFile(token, extension);
+        synchronized (this) {
+            if (file.isFile() && file.length() == audio.length) {
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                    throw new IOException("Could not create " + mDirectory);
+                }
+                File tmp = new File(mDirectory, file.getName() + TMP_SUFFIX);
+                FileOutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(audio);
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("Could not store " + file);
+                }
+            }
+            acquire(file);
+        }
+        trim();
+        return file;
+    }
+
+    /**
+     * Keep the file from being trimmed until it is released
+     */
+    public synchronized void acquire(File file) {
+        Integer count = mInUse.get(file.getName());
+        mInUse.put(file.getName(), count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Done with the file, it stays around until it is trimmed. Null is ignored.
+     */
+    public synchronized void release(File file) {
+        if (file == null) {
+            return;
+        }
+        Integer count = mInUse.get(file.getName());
+        if (count == null || count <= 1) {
+            mInUse.remove(file.getName());
+        } else {
+            mInUse.put(file.getName(), count - 1);
+        }
+        //counts as the last use
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the directory under its limits, in the background
+     */
+    public void trim() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    trimNow();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Trim failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete everything that's not in use
+     */
+    public void clear() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = mDirectory.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File file : files) {
+                    deleteUnlessInUse(file);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return bytes on disk, does I/O
+     */
+    public long getSize() {
+        long size = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    void trimNow() {
+        cleanUpLegacyFiles();
+        long maxBytes;
+        long oldest;
+        synchronized (this) {
+            maxBytes = mMaxBytes;
+            oldest = System.currentTimeMillis() - mMaxAge;
+        }
+        int deleted = FileLruCache.trim(mDirectory, maxBytes, oldest, new FileLruCache.Deleter() {
+            @Override
+            public boolean delete(File file) {
+                return deleteUnlessInUse(file);
+            }
+        });
+        if (deleted > 0) {
+            Log.i(TAG, "Trimmed " + deleted + " files, " + getSize() + " bytes left");
+        }
+    }
+
+    private boolean deleteUnlessInUse(File file) {
+        String name = file.getName();
+        if (name.endsWith(TMP_SUFFIX)) {
+            name = name.substring(0, name.length() - TMP_SUFFIX.length());
+        }
+        synchronized (this) {
+            return !mInUse.containsKey(name) && file.delete();
+        }
+    }
+
+    /**
+     * Speech files used to be written straight into the app cache directory, which was wiped on every start
+     */
+    private void cleanUpLegacyFiles() {
+        if (mLegacyDirectory == null) {
+            return;
+        }
+        File[] files = mLegacyDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.startsWith("speech-") && name.endsWith(".mp3")) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return a file name that is unique for the token, the token itself if it's short and harmless
+     */
+    static String fileNameFor(String token) {
+        if (token == null || token.length() == 0) {
+            //nothing to share the file with
+            return "audio-" + System.nanoTime();
+        }
+        if (token.length() <= MAX_NAME_LENGTH && token.matches("[A-Za-z0-9_-]+")) {
+            return token;
+        }
+        return RemoteAudioCache.keyFor(token);
+    }
+}
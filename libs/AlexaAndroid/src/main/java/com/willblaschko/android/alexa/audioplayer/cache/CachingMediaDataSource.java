@@ -0,0 +1,261 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link MediaDataSource} for a remote stream that goes through a {@link RemoteAudioCache}. The MediaPlayer's reads
+ * are served block by block, blocks that are not cached yet are downloaded with HTTP range requests (or by
+ * reading on from the open connection when the player reads sequentially) and stored for next time.
+ *
+ * Whether a stream is cached is decided from the Content-Type and length of its first response, see
+ * {@link RemoteAudioCache#isCacheable(String, long)}, the others (e.g. internet radio) are passed through uncached.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class CachingMediaDataSource extends MediaDataSource {
+
+    private static final String TAG = "CachingMediaDataSource";
+
+    private static final int BLOCK_SIZE = RemoteAudioCache.BLOCK_SIZE;
+    //how far we'd rather read on from the open connection than start a new request
+    private static final long MAX_SKIP = 2 * BLOCK_SIZE;
+    private static final long UNKNOWN = -2;
+
+    private final RemoteAudioCache mCache;
+    private final OkHttpClient mClient;
+    private final String mUrl;
+    private final String mKey;
+
+    //-1 if the server doesn't tell
+    private long mLength = UNKNOWN;
+    private boolean mRangeSupported = true;
+    private boolean mCacheable = false;
+
+    //the request in flight, close() cancels it without waiting for the read that's blocked on it
+    private volatile Call mCall;
+    private volatile boolean mClosed = false;
+
+    private Response mResponse;
+    private InputStream mStream;
+    private long mStreamPosition;
+
+    private final byte[] mBlock = new byte[BLOCK_SIZE];
+    private long mBlockIndex = -1;
+    private int mBlockLength;
+
+    public CachingMediaDataSource(RemoteAudioCache cache, OkHttpClient client, String url) {
+        mCache = cache;
+        mClient = client;
+        mUrl = url;
+        mKey = RemoteAudioCache.keyFor(url);
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        probe();
+        return mLength;
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (mClosed) {
+            throw new IOException("Closed");
+        }
+        probe();
+        if (size == 0) {
+            return 0;
+        }
+        if (mLength >= 0 && position >= mLength) {
+            return -1;
+        }
+        if (!isCacheable()) {
+            return readFromNetwork(position, buffer, offset, size);
+        }
+        long index = position / BLOCK_SIZE;
+        if (!loadBlock(index)) {
+            return -1;
+        }
+        int inBlock = (int) (position - index * BLOCK_SIZE);
+        if (inBlock >= mBlockLength) {
+            return -1;
+        }
+        int n = Math.min(size, mBlockLength - inBlock);
+        System.arraycopy(mBlock, inBlock, buffer, offset, n);
+        return n;
+    }
+
+    /**
+     * Not synchronized, a read holds the lock while it's blocked on the network. Cancelling the call makes that
+     * read fail right away, the rest is cleaned up once it let go of the lock.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        Call call = mCall;
+        if (call != null) {
+            call.cancel();
+        }
+        synchronized (this) {
+            closeStream();
+        }
+    }
+
+    private boolean isCacheable() {
+        return mCacheable;
+    }
+
+    /**
+     * Find out how long the stream is, from the cache if we've seen it before
+     */
+    private void probe() throws IOException {
+        if (mLength != UNKNOWN) {
+            return;
+        }
+        long cached = mCache.getLength(mKey);
+        if (cached >= 0) {
+            //it was cacheable when we stored it
+            mLength = cached;
+            mCacheable = true;
+            return;
+        }
+        //the stream we open here is the one the first reads are served from
+        openAt(0);
+        String contentRange = mResponse.header("Content-Range");
+        long length = -1;
+        if (mResponse.code() == 206 && contentRange != null && contentRange.lastIndexOf('/') >= 0) {
+            try {
+                length = Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+            } catch (NumberFormatException e) {
+                //"*", unknown
+            }
+        } else if (mResponse.code() == 200) {
+            length = mResponse.body().contentLength();
+        }
+        mLength = length;
+        mCacheable = mCache.isCacheable(mResponse.header("Content-Type"), length);
+        if (!mCacheable) {
+            Log.i(TAG, "Not caching " + mUrl + ": " + mResponse.header("Content-Type") + ", " + length + " bytes");
+        }
+    }
+
+    private boolean loadBlock(long index) throws IOException {
+        if (index == mBlockIndex) {
+            return true;
+        }
+        mBlockIndex = -1;
+        int cached = mCache.readBlock(mKey, index, mBlock);
+        if (cached >= 0) {
+            mBlockLength = cached;
+            mBlockIndex = index;
+            return true;
+        }
+        long start = index * BLOCK_SIZE;
+        int wanted = (int) Math.min(BLOCK_SIZE, mLength - start);
+        openAt(start);
+        int read = 0;
+        int n;
+        while (read < wanted && (n = mStream.read(mBlock, read, wanted - read)) != -1) {
+            read += n;
+        }
+        mStreamPosition += read;
+        if (read == 0) {
+            return false;
+        }
+        if (read == wanted) {
+            try {
+                mCache.writeBlock(mKey, mLength, index, mBlock, read);
+            } catch (IOException e) {
+                //still good for playing
+                Log.w(TAG, "Could not cache block " + index + " of " + mUrl, e);
+            }
+        }
+        mBlockLength = read;
+        mBlockIndex = index;
+        return true;
+    }
+
+    private int readFromNetwork(long position, byte[] buffer, int offset, int size) throws IOException {
+        openAt(position);
+        int n = mStream.read(buffer, offset, size);
+        if (n > 0) {
+            mStreamPosition += n;
+        }
+        return n;
+    }
+
+    /**
+     * Get mStream to the given position, reusing the open connection where we can
+     */
+    private void openAt(long position) throws IOException {
+        if (mStream != null) {
+            if (position == mStreamPosition) {
+                return;
+            }
+            if (position > mStreamPosition && position - mStreamPosition <= MAX_SKIP) {
+                skip(position - mStreamPosition);
+                return;
+            }
+        }
+        closeStream();
+        Request.Builder request = new Request.Builder().url(mUrl);
+        if (mRangeSupported) {
+            request.header("Range", "bytes=" + position + "-");
+        }
+        Call call = mClient.newCall(request.build());
+        mCall = call;
+        if (mClosed) {
+            //close() may have missed it
+            call.cancel();
+        }
+        mResponse = call.execute();
+        if (!mResponse.isSuccessful()) {
+            int code = mResponse.code();
+            closeStream();
+            throw new IOException("Unexpected response " + code + " for " + mUrl);
+        }
+        ResponseBody body = mResponse.body();
+        mStream = body.byteStream();
+        mStreamPosition = 0;
+        if (mResponse.code() == 206) {
+            mStreamPosition = position;
+        } else {
+            //the server ignored the range, read our way to the position
+            mRangeSupported = false;
+            skip(position);
+        }
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = mStream.skip(bytes);
+            if (skipped <= 0) {
+                if (mStream.read() == -1) {
+                    break;
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+            mStreamPosition += skipped;
+        }
+    }
+
+    private void closeStream() {
+        if (mResponse != null) {
+            mResponse.close();
+            mResponse = null;
+        }
+        mStream = null;
+        mCall = null;
+    }
+}
@@ -0,0 +1,313 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Disk cache for remote AudioPlayer streams, kept as fixed size blocks so a stream can be cached (and read back)
+ * piece by piece as it is played or seeked through. The least recently used blocks are evicted once the cache
+ * grows over its size limit.
+ *
+ * Block files are named {@code <url hash>-<stream length>-<block index>}, so the cache rebuilds itself from the
+ * directory listing on start. The LRU order survives restarts through the files' last modified times.
+ *
+ * Thread-safe, one instance per directory.
+ */
+public class RemoteAudioCache {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    //block file name -> size, in access order
+    private final LinkedHashMap<String, Long> mBlocks = new LinkedHashMap<>(16, .75f, true);
+    //url hash -> stream length, and how many blocks of it we have
+    private final Map<String, Long> mLengths = new HashMap<>();
+    private final Map<String, Integer> mBlockCounts = new HashMap<>();
+    private long mSize = 0;
+
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mBytesFromCache = 0;
+    private long mBytesFromNetwork = 0;
+
+    public RemoteAudioCache(File directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param directory where to keep the blocks, nothing else should be in there
+     * @param maxBytes  size limit of the cache
+     */
+    public RemoteAudioCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * @return the name a url's blocks are stored under
+     */
+    public static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Decide from the headers of a stream's response whether it goes through the cache: audio (or a server that
+     * doesn't say what it is) of a known length, no bigger than half the cache. Live streams and playlists don't.
+     *
+     * @param contentType   the Content-Type, can be null
+     * @param contentLength the whole length of the stream, -1 if unknown
+     */
+    public boolean isCacheable(String contentType, long contentLength) {
+        if (contentLength <= 0 || contentLength > mMaxBytes / 2) {
+            return false;
+        }
+        if (contentType == null || contentType.trim().length() == 0) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.US);
+        if (type.contains("mpegurl") || type.contains("scpls")) {
+            return false;
+        }
+        return type.startsWith("audio/") || type.startsWith("application/octet-stream");
+    }
+
+    /**
+     * @return bytes on disk
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the length of the stream, as seen when its blocks were cached, -1 if we don't have any
+     */
+    public synchronized long getLength(String key) {
+        Long length = mLengths.get(key);
+        return length == null ? -1 : length;
+    }
+
+    /**
+     * Copy a block into dst, which must hold {@link #BLOCK_SIZE} bytes. Counts as a hit or a miss.
+     *
+     * @return the size of the block (only the last block of a stream is shorter than {@link #BLOCK_SIZE}),
+     * -1 if it's not cached
+     */
+    public synchronized int readBlock(String key, long index, byte[] dst) {
+        Long length = mLengths.get(key);
+        String name = length == null ? null : blockName(key, length, index);
+        if (name == null || mBlocks.get(name) == null) {
+            mMisses++;
+            return -1;
+        }
+        File file = new File(mDirectory, name);
+        int read = 0;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                int n;
+                while (read < dst.length && (n = in.read(dst, read, dst.length - read)) != -1) {
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            //gone or broken, forget about it
+            remove(name);
+            mMisses++;
+            return -1;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        mHits++;
+        mBytesFromCache += read;
+        return read;
+    }
+
+    /**
+     * Store a block that was just downloaded, this also counts the bytes as coming from the network
+     *
+     * @param length the length of the whole stream
+     */
+    public synchronized void writeBlock(String key, long length, long index, byte[] data, int size) throws IOException {
+        mBytesFromNetwork += size;
+        if (size > mMaxBytes) {
+            return;
+        }
+        Long known = mLengths.get(key);
+        if (known != null && known != length) {
+            //the stream changed on the server, the old blocks are useless
+            removeKey(key);
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        String name = blockName(key, length, index);
+        File tmp = new File(mDirectory, name + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data, 0, size);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(mDirectory, name))) {
+            tmp.delete();
+            throw new IOException("Could not store " + name);
+        }
+        add(name, key, length, size);
+        evict();
+    }
+
+    /**
+     * @return share of the block reads that came from disk
+     */
+    public synchronized float getHitRate() {
+        long total = mHits + mMisses;
+        return total == 0 ? 0 : (float) mHits / total;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return bytes we didn't have to download again
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesFromCache;
+    }
+
+    public synchronized long getBytesDownloaded() {
+        return mBytesFromNetwork;
+    }
+
+    public synchronized void clear() {
+        for (String name : mBlocks.keySet()) {
+            new File(mDirectory, name).delete();
+        }
+        mBlocks.clear();
+        mLengths.clear();
+        mBlockCounts.clear();
+        mSize = 0;
+    }
+
+    private void load() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        //oldest first, so the access order ends up right
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            String[] parts = file.getName().split("-");
+            if (parts.length != 3) {
+                //leftover .tmp or someone else's file
+                file.delete();
+                continue;
+            }
+            try {
+                add(file.getName(), parts[0], Long.parseLong(parts[1]), file.length());
+            } catch (NumberFormatException e) {
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    private void add(String name, String key, long length, long size) {
+        Long old = mBlocks.put(name, size);
+        if (old != null) {
+            mSize -= old;
+        } else {
+            Integer count = mBlockCounts.get(key);
+            mBlockCounts.put(key, count == null ? 1 : count + 1);
+        }
+        mSize += size;
+        mLengths.put(key, length);
+    }
+
+    private void remove(String name) {
+        Long size = mBlocks.remove(name);
+        if (size == null) {
+            return;
+        }
+        new File(mDirectory, name).delete();
+        mSize -= size;
+        String key = name.substring(0, name.indexOf('-'));
+        Integer count = mBlockCounts.get(key);
+        if (count == null || count <= 1) {
+            mBlockCounts.remove(key);
+            mLengths.remove(key);
+        } else {
+            mBlockCounts.put(key, count - 1);
+        }
+    }
+
+    private void removeKey(String key) {
+        List<String> names = new ArrayList<>();
+        for (String name : mBlocks.keySet()) {
+            if (name.startsWith(key + "-")) {
+                names.add(name);
+            }
+        }
+        for (String name : names) {
+            remove(name);
+        }
+    }
+
+    private void evict() {
+        while (mSize > mMaxBytes && !mBlocks.isEmpty()) {
+            //the first one is the least recently used
+            remove(mBlocks.keySet().iterator().next());
+        }
+    }
+
+    private static String blockName(String key, long length, long index) {
+        return key + "-" + length + "-" + index;
+    }
+}
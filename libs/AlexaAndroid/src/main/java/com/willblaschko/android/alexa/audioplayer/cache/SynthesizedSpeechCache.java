@@ -0,0 +1,135 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import com.willblaschko.android.alexa.utility.FileLruCache;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps the audio the text to speech engine made for a text, so asking the same thing again doesn't run the
+ * engine again. Entries are found by a hash of everything that changes the audio: the text, pitch, rate, engine
+ * and voice, see {@link #keyFor(String, String, String, float, float, String)}.
+ *
+ * The most recently used entries are kept in memory, all of them on disk, both tiers are kept under a size limit,
+ * least recently used first.
+ *
+ * Thread-safe, {@link #get(String)} and {@link #put(String, byte[])} do disk I/O.
+ */
+public class SynthesizedSpeechCache {
+
+    public static final String DIRECTORY = "alexa-speech";
+    public static final int DEFAULT_MAX_MEMORY_BYTES = 2 * 1024 * 1024;
+    public static final long DEFAULT_MAX_DISK_BYTES = 16 * 1024 * 1024;
+
+    private static final String SUFFIX = ".pcm";
+
+    private final FileLruCache mDisk;
+    private final long mMaxMemoryBytes;
+    private final LinkedHashMap<String, byte[]> mMemory = new LinkedHashMap<>(16, .75f, true);
+    private long mMemoryBytes = 0;
+
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    public SynthesizedSpeechCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+        mDisk = new FileLruCache(directory, SUFFIX, maxDiskBytes);
+        mMaxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * @param format what the audio is, e.g. streamed PCM or a WAV file, the same text is cached for each
+     * @param engine package of the engine
+     * @param voice  name of the voice, null if unknown
+     * @return the key of the audio for this text, made by this engine, in this voice
+     */
+    public static String keyFor(String format, String engine, String voice, float pitch, float rate, String text) {
+        String description = format + "\n" + engine + "\n" + voice + "\n"
+                + String.format(Locale.US, "%.3f\n%.3f\n", pitch, rate) + text;
+        return RemoteAudioCache.keyFor(description);
+    }
+
+    /**
+     * @return the audio, null if it isn't cached
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            byte[] audio = mMemory.get(key);
+            if (audio != null) {
+                mHits++;
+                return audio;
+            }
+        }
+        byte[] audio = mDisk.get(key);
+        synchronized (this) {
+            if (audio == null) {
+                mMisses++;
+                return null;
+            }
+            mHits++;
+            putInMemory(key, audio);
+        }
+        return audio;
+    }
+
+    public boolean contains(String key) {
+        synchronized (this) {
+            if (mMemory.containsKey(key)) {
+                return true;
+            }
+        }
+        return mDisk.contains(key);
+    }
+
+    /**
+     * Keep the audio, in memory and on disk. The array mustn't be changed afterwards.
+     */
+    public void put(String key, byte[] audio) {
+        synchronized (this) {
+            putInMemory(key, audio);
+        }
+        mDisk.put(key, audio);
+    }
+
+    /**
+     * Drop everything, in memory and on disk
+     */
+    public void clear() {
+        synchronized (this) {
+            mMemory.clear();
+            mMemoryBytes = 0;
+        }
+        mDisk.clear();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getMemorySize() {
+        return mMemoryBytes;
+    }
+
+    private void putInMemory(String key, byte[] audio) {
+        if (audio.length > mMaxMemoryBytes) {
+            //would push everything else out
+            return;
+        }
+        byte[] previous = mMemory.put(key, audio);
+        if (previous != null) {
+            mMemoryBytes -= previous.length;
+        }
+        mMemoryBytes += audio.length;
+        Iterator<Map.Entry<String, byte[]>> eldest = mMemory.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && eldest.hasNext()) {
+            mMemoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.willblaschko.android.alexa.callbacks;
+
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+
+/**
+ * Told about the directives of one type that come in over the down channel, see
+ * {@link com.willblaschko.android.alexa.AlexaManager#addDirectiveListener(Class, DirectiveListener, java.util.concurrent.Executor)}
+ */
+public interface DirectiveListener<T extends AvsItem> {
+    void onDirective(T item);
+}
@@ -31,7 +31,7 @@ public class ClientUtil {
     private static OkHttpClient mClient;
     private static final long CONNECTION_POOL_TIMEOUT_MILLISECONDS = 60 * 60 * 1000;
 
-    public static OkHttpClient getTLS12OkHttpClient(){
+    public static synchronized OkHttpClient getTLS12OkHttpClient(){
         if(mClient == null) {
 
             ConnectionPool connectionPool = new ConnectionPool(5,
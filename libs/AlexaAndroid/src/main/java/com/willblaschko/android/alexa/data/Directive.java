@@ -176,7 +176,7 @@ public class Directive {
         String expiryTime;
         String token;
         String expectedPreviousToken;
-        //todo progressReport
+        ProgressReport progressReport;
 
 
         public String getUrl() {
@@ -202,6 +202,23 @@ public class Directive {
         public String getExpectedPreviousToken() {
             return expectedPreviousToken;
         }
+
+        public ProgressReport getProgressReport() {
+            return progressReport;
+        }
+    }
+
+    public static class ProgressReport{
+        long progressReportDelayInMilliseconds;
+        long progressReportIntervalInMilliseconds;
+
+        public long getProgressReportDelayInMilliseconds() {
+            return progressReportDelayInMilliseconds;
+        }
+
+        public long getProgressReportIntervalInMilliseconds() {
+            return progressReportIntervalInMilliseconds;
+        }
     }
 
     public static class DirectiveWrapper{
@@ -199,12 +199,19 @@ public class Event {
     }
 
     public static String getSpeechRecognizerEvent(){
+        return getSpeechRecognizerEvent("AUDIO_L16_RATE_16000_CHANNELS_1");
+    }
+
+    /**
+     * @param format the audio format of the attached speech, AUDIO_L16_RATE_16000_CHANNELS_1 or OPUS
+     */
+    public static String getSpeechRecognizerEvent(String format){
         Builder builder = new Builder();
         builder.setHeaderNamespace("SpeechRecognizer")
                 .setHeaderName("Recognize")
                 .setHeaderMessageId(getUuid())
                 .setHeaderDialogRequestId("dialogRequest-321")
-                .setPayloadFormat("AUDIO_L16_RATE_16000_CHANNELS_1")
+                .setPayloadFormat(format)
                 .setPayloadProfile("NEAR_FIELD");
         return builder.toJson();
     }
@@ -356,6 +363,24 @@ public class Event {
         return builder.toJson();
     }
 
+    public static String getProgressReportDelayElapsedEvent(String token, long offset){
+        return getProgressReportEvent(token, offset, "ProgressReportDelayElapsed");
+    }
+
+    public static String getProgressReportIntervalElapsedEvent(String token, long offset){
+        return getProgressReportEvent(token, offset, "ProgressReportIntervalElapsed");
+    }
+
+    private static String getProgressReportEvent(String token, long offset, String type){
+        Builder builder = new Builder();
+        builder.setHeaderNamespace("AudioPlayer")
+                .setHeaderName(type)
+                .setPlayloadOffsetInMilliseconds(offset)
+                .setHeaderMessageId(getUuid())
+                .setPayloadToken(token);
+        return builder.toJson();
+    }
+
     public static String getPlaybackFinishedEvent(String token){
         Builder builder = new Builder();
         builder.setHeaderNamespace("AudioPlayer")
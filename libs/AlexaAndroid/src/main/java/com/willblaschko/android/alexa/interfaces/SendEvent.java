@@ -26,7 +26,8 @@ public abstract class SendEvent {
     protected ByteArrayOutputStream mOutputStream = new ByteArrayOutputStream();
     protected AsyncCallback<Void, Exception> mCallback;
 
-    private Call currentCall;
+    //cancelled from other threads
+    private volatile Call currentCall;
 
     //OkHttpClient for transfer of data
     Request.Builder mRequestBuilder = new Request.Builder();
@@ -76,11 +77,19 @@ public abstract class SendEvent {
     }
 
     protected void cancelCall() {
-        if (currentCall != null && !currentCall.isCanceled()) {
-            currentCall.cancel();
+        Call call = currentCall;
+        if (call != null && !call.isCanceled()) {
+            call.cancel();
         }
     }
 
+    /**
+     * Cancel the request that's in flight, if any. Can be called from any thread.
+     */
+    public void cancelRequest() {
+        cancelCall();
+    }
+
     private Call parseResponse() throws IOException, AvsException, RuntimeException {
 
         Request request = mRequestBuilder.build();
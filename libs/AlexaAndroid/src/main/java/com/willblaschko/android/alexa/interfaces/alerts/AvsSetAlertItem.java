@@ -16,6 +16,8 @@ import java.util.Locale;
 public class AvsSetAlertItem extends AvsItem {
     private String type;
     private String scheduledTime;
+    //parsed scheduledTime, null until it's needed
+    private Date date;
 
     public static final String TIMER = "TIMER";
     public static final String ALARM = "ALARM";
@@ -39,6 +41,7 @@ public class AvsSetAlertItem extends AvsItem {
 
     public void setScheduledTime(String scheduledTime) {
         this.scheduledTime = scheduledTime;
+        this.date = null;
     }
 
     public long getScheduledTimeMillis() throws ParseException {
@@ -53,7 +56,11 @@ public class AvsSetAlertItem extends AvsItem {
     }
 
     private Date getDate() throws ParseException {
-        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US).parse(scheduledTime);
+        //only parsed once
+        if(date == null){
+            date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US).parse(scheduledTime);
+        }
+        return date;
     }
 
     public String getType() {
@@ -12,8 +12,11 @@ import com.willblaschko.android.alexa.interfaces.AvsItem;
  */
 public class AvsPlayRemoteItem extends AvsItem {
     private String mUrl;
+    private String mResolvedUrl;
     private String mStreamId;
     private long mStartOffset;
+    private long mProgressReportDelay;
+    private long mProgressReportInterval;
 
     public AvsPlayRemoteItem(String token, String url, long startOffset) {
         super(token);
@@ -24,8 +27,43 @@ public class AvsPlayRemoteItem extends AvsItem {
         return mUrl;
     }
 
+    /**
+     * @param resolvedUrl what a playlist url turned out to point at, see {@link com.willblaschko.android.alexa.audioplayer.PlaylistResolver}
+     */
+    public void setResolvedUrl(String resolvedUrl) {
+        mResolvedUrl = resolvedUrl;
+    }
+
+    public String getResolvedUrl() {
+        return mResolvedUrl;
+    }
+
+    /**
+     * @return the url to hand to the player, the resolved one if there is one
+     */
+    public String getStreamUrl() {
+        return (mResolvedUrl != null) ? mResolvedUrl : mUrl;
+    }
+
     public long getStartOffset() {
         return mStartOffset;
     }
 
+    /**
+     * @param delay    when to send ProgressReportDelayElapsed, 0 for never
+     * @param interval how often to send ProgressReportIntervalElapsed, 0 for never
+     */
+    public void setProgressReport(long delay, long interval) {
+        mProgressReportDelay = delay;
+        mProgressReportInterval = interval;
+    }
+
+    public long getProgressReportDelay() {
+        return mProgressReportDelay;
+    }
+
+    public long getProgressReportInterval() {
+        return mProgressReportInterval;
+    }
+
 }
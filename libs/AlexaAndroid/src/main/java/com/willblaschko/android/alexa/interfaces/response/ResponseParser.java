@@ -194,7 +194,13 @@ public class ResponseParser {
                 if(url.contains("cid:")){
                     return new AvsPlayAudioItem(directive.getPayload().getToken(), url, audio.get(url));
                 }else{
-                    return new AvsPlayRemoteItem(directive.getPayload().getToken(), url, directive.getPayload().getAudioItem().getStream().getOffsetInMilliseconds());
+                    Directive.Stream stream = directive.getPayload().getAudioItem().getStream();
+                    AvsPlayRemoteItem item = new AvsPlayRemoteItem(directive.getPayload().getToken(), url, stream.getOffsetInMilliseconds());
+                    if(stream.getProgressReport() != null){
+                        item.setProgressReport(stream.getProgressReport().getProgressReportDelayInMilliseconds(),
+                                stream.getProgressReport().getProgressReportIntervalInMilliseconds());
+                    }
+                    return item;
                 }
             case Directive.TYPE_STOP_CAPTURE:
                 return new AvsStopCaptureItem(directive.getPayload().getToken());
@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import com.willblaschko.android.alexa.callbacks.AsyncCallback;
 import com.willblaschko.android.alexa.interfaces.AvsException;
 import com.willblaschko.android.alexa.requestbody.DataRequestBody;
+import com.willblaschko.android.alexa.requestbody.EncodedDataRequestBody;
 
 import java.io.IOException;
 
@@ -63,10 +64,6 @@ public class SpeechSendAudio extends SpeechSendEvent {
         }
     }
 
-    public void cancelRequest() {
-        cancelCall();
-    }
-
     public void onError(final AsyncCallback<Call, Exception> callback, Exception e) {
         if(callback != null){
             callback.failure(e);
@@ -74,6 +71,15 @@ public class SpeechSendAudio extends SpeechSendEvent {
         }
     }
 
+    @NonNull
+    @Override
+    protected String getAudioFormat() {
+        if (requestBody instanceof EncodedDataRequestBody) {
+            return ((EncodedDataRequestBody) requestBody).getEncoder().getFormat();
+        }
+        return super.getAudioFormat();
+    }
+
     @NonNull
     @Override
     protected RequestBody getRequestBody() {
@@ -2,6 +2,7 @@ package com.willblaschko.android.alexa.interfaces.speechrecognizer;
 
 import androidx.annotation.NonNull;
 
+import com.willblaschko.android.alexa.audioencoder.PcmAudioEncoder;
 import com.willblaschko.android.alexa.data.Event;
 import com.willblaschko.android.alexa.interfaces.SendEvent;
 
@@ -19,7 +20,15 @@ public abstract class SpeechSendEvent extends SendEvent {
     @NonNull
     @Override
     protected String getEvent() {
-        return Event.getSpeechRecognizerEvent();
+        return Event.getSpeechRecognizerEvent(getAudioFormat());
+    }
+
+    /**
+     * @return the format of the audio in {@link #getRequestBody()}, raw 16kHz PCM unless overridden
+     */
+    @NonNull
+    protected String getAudioFormat() {
+        return PcmAudioEncoder.FORMAT;
     }
 
     @Override
@@ -10,6 +10,7 @@ import com.willblaschko.android.alexa.VoiceHelper;
 import com.willblaschko.android.alexa.callbacks.AsyncCallback;
 import com.willblaschko.android.alexa.interfaces.AvsException;
 import com.willblaschko.android.alexa.requestbody.DataRequestBody;
+import com.willblaschko.android.alexa.requestbody.PipedDataRequestBody;
 
 import java.io.IOException;
 
@@ -20,6 +21,9 @@ import okio.BufferedSink;
 /**
  * A subclass of {@link SpeechSendEvent} that allows an arbitrary text string to be sent to the AVS servers, translated through Google's text to speech engine
  * This speech is rendered using the VoiceHelper utility class, and is done on whatever thread this call is running
+ *
+ * Where the engine can hand out its audio as it goes ({@link VoiceHelper#canStream()}), the request is sent right away
+ * and the speech is streamed into it while it's being synthesized.
  */
 public class SpeechSendText extends SpeechSendEvent {
 
@@ -27,6 +31,20 @@ public class SpeechSendText extends SpeechSendEvent {
 
     long start = 0;
 
+    //what getRequestBody() sends, the streamed speech or the synthesized file
+    private RequestBody mRequestBody;
+
+    /**
+     * @return what's actually spoken for the text, e.g. to {@link VoiceHelper#preloadSpeech(java.util.List)} it
+     */
+    public static String getSpokenText(String text){
+        //add a pause to the end to be better understood
+        if(!TextUtils.isEmpty(text)){
+            return "... " + text + " ...";
+        }
+        return text;
+    }
+
     /**
      * Use VoiceHelper utility to create an audio file from arbitrary text using Text-To-Speech to be passed to the AVS servers
      * @param context local/application context
@@ -46,19 +64,19 @@ public class SpeechSendText extends SpeechSendEvent {
         Log.i(TAG, "Starting SpeechSendText procedure");
         start = System.currentTimeMillis();
 
-        //add a pause to the end to be better understood
-        if(!TextUtils.isEmpty(text)){
-            text = "... " + text + " ...";
-        }
-
-        final String input = text;
+        final String input = getSpokenText(text);
 
 
         //call the parent class's prepareConnection() in order to prepare our URL POST
         prepareConnection(url, accessToken);
 
-        //get our VoiceHelper and use an async callback to get the data and send it off to the AVS server via completePost()
         VoiceHelper voiceHelper = VoiceHelper.getInstance(context);
+        if(VoiceHelper.canStream()){
+            sendStreamed(voiceHelper, input, callback);
+            return;
+        }
+
+        //get our VoiceHelper and use an async callback to get the data and send it off to the AVS server via completePost()
         voiceHelper.getSpeechFromText(input, new VoiceHelper.SpeechFromTextCallback() {
             @Override
             public void onSuccess(final byte[] data){
@@ -66,7 +84,13 @@ public class SpeechSendText extends SpeechSendEvent {
                 Log.i(TAG, "We have audio");
 
                 try {
-                    mOutputStream.write(data);
+                    //sent as it is, no copies
+                    mRequestBody = new DataRequestBody() {
+                        @Override
+                        public void writeTo(BufferedSink sink) throws IOException {
+                            sink.write(data);
+                        }
+                    };
 
                     Log.i(TAG, "Audio sent");
                     Log.i(TAG, "Audio creation process took: " + (System.currentTimeMillis() - start));
@@ -94,15 +118,40 @@ public class SpeechSendText extends SpeechSendEvent {
 
     }
 
+    /**
+     * Send the request now, on a thread of its own, and fill it while the engine synthesizes
+     */
+    private void sendStreamed(VoiceHelper voiceHelper, String input, final AsyncCallback<Call, Exception> callback) {
+        PipedDataRequestBody body = new PipedDataRequestBody();
+        mRequestBody = body;
+        voiceHelper.streamSpeechFromText(input, body);
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Call call = completePost();
+                    if(callback != null) {
+                        //executes the call, which pulls the speech out of the body
+                        callback.success(call);
+                        callback.complete();
+                    }
+                    Log.i(TAG, "Streamed text request took: " + (System.currentTimeMillis() - start));
+                } catch (IOException | AvsException e) {
+                    if(callback != null){
+                        callback.failure(e);
+                        callback.complete();
+                    }
+                }
+            }
+        };
+        new Thread(runnable, TAG).start();
+    }
+
 
     @NonNull
     @Override
     protected RequestBody getRequestBody() {
-        return new DataRequestBody() {
-            @Override
-            public void writeTo(BufferedSink sink) throws IOException {
-                sink.write(mOutputStream.toByteArray());
-            }
-        };
+        return mRequestBody;
     }
 }
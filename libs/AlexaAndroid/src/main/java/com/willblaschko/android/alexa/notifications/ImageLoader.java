@@ -0,0 +1,288 @@
+package com.willblaschko.android.alexa.notifications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.willblaschko.android.alexa.audioplayer.cache.RemoteAudioCache;
+import com.willblaschko.android.alexa.connection.ClientUtil;
+import com.willblaschko.android.alexa.utility.FileLruCache;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Loads images for notifications, e.g. album art, off the main thread. Bitmaps are decoded no bigger than they're
+ * shown and kept in a memory LRU, what was downloaded is kept in a disk LRU, so the same artwork isn't fetched or
+ * decoded over and over. Downloads go through the shared OkHttp client, with timeouts.
+ *
+ * Loads http(s) URLs and anything the {@link android.content.ContentResolver} opens, e.g.
+ * {@link NotificationBuilder#getUriToDrawable(Context, int)}. Only downloads are cached on disk.
+ */
+public class ImageLoader {
+
+    public static final String DIRECTORY = "alexa-images";
+    public static final long DEFAULT_MAX_DISK_BYTES = 16 * 1024 * 1024;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int THREADS = 2;
+
+    private static ImageLoader sInstance;
+    private static OkHttpClient sClient;
+
+    private final Context mContext;
+    private final FileLruCache mDisk;
+    private final long mMaxMemoryBytes;
+    private final LinkedHashMap<String, Bitmap> mMemory = new LinkedHashMap<>(16, .75f, true);
+    private long mMemoryBytes = 0;
+    //loads in flight and who's waiting for them, by memory key
+    private final Map<String, List<ImageCallback>> mLoading = new HashMap<>();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREADS);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private ImageLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mDisk = new FileLruCache(new File(mContext.getCacheDir(), DIRECTORY), "", DEFAULT_MAX_DISK_BYTES);
+        //an eighth of the heap, decoded bitmaps are big
+        mMaxMemoryBytes = Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the image if it's in memory already, null otherwise, doesn't block
+     */
+    public synchronized Bitmap getCached(String uri, int width, int height) {
+        return mMemory.get(getMemoryKey(uri, width, height));
+    }
+
+    /**
+     * Load the image in the background
+     *
+     * @param width    how wide it's shown, in pixels, it's decoded at least this big if it's that big
+     * @param height   how high it's shown, in pixels
+     * @param callback called on the main thread, or right away on this one if it's in memory
+     */
+    public void load(final String uri, final int width, final int height, final ImageCallback callback) {
+        final String key = getMemoryKey(uri, width, height);
+        Bitmap cached;
+        synchronized (this) {
+            cached = mMemory.get(key);
+        }
+        if (cached != null) {
+            callback.onSuccess(cached);
+            return;
+        }
+        synchronized (this) {
+            List<ImageCallback> waiting = mLoading.get(key);
+            if (waiting != null) {
+                //already on its way
+                waiting.add(callback);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(callback);
+            mLoading.put(key, waiting);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                Exception error = null;
+                try {
+                    bitmap = load(uri, width, height);
+                } catch (IOException | RuntimeException e) {
+                    //e.g. a bad URL, the waiting callbacks get it either way
+                    error = e;
+                }
+                final List<ImageCallback> waiting;
+                synchronized (ImageLoader.this) {
+                    waiting = mLoading.remove(key);
+                }
+                final Bitmap result = bitmap;
+                final Exception failure = error;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (ImageCallback waiter : waiting) {
+                            if (result != null) {
+                                waiter.onSuccess(result);
+                            } else {
+                                waiter.onError(failure);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Load the image on this thread, don't call it on the main thread
+     *
+     * @param width  how wide it's shown, in pixels
+     * @param height how high it's shown, in pixels
+     */
+    public Bitmap load(String uri, int width, int height) throws IOException {
+        String key = getMemoryKey(uri, width, height);
+        synchronized (this) {
+            Bitmap bitmap = mMemory.get(key);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = decode(getBytes(uri), width, height);
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + uri);
+        }
+        synchronized (this) {
+            putInMemory(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Drop everything, in memory and on disk
+     */
+    public void clear() {
+        synchronized (this) {
+            mMemory.clear();
+            mMemoryBytes = 0;
+        }
+        mDisk.clear();
+    }
+
+    /**
+     * @return the largest power of two the image can be divided by and still be at least width x height, for
+     * {@link BitmapFactory.Options#inSampleSize}
+     */
+    static int calculateSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return sampleSize;
+        }
+        while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private byte[] getBytes(String uri) throws IOException {
+        String scheme = Uri.parse(uri).getScheme();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            InputStream in = mContext.getContentResolver().openInputStream(Uri.parse(uri));
+            if (in == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            try {
+                return IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        String key = RemoteAudioCache.keyFor(uri);
+        byte[] data = mDisk.get(key);
+        if (data != null) {
+            return data;
+        }
+        Response response = getClient().newCall(new Request.Builder().url(uri).build()).execute();
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("Could not download " + uri + ": " + response.code());
+            }
+            data = response.body().bytes();
+        } finally {
+            response.close();
+        }
+        mDisk.put(key, data);
+        return data;
+    }
+
+    private static Bitmap decode(byte[] data, int width, int height) {
+        //only look at the size first
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, width, height);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null || width <= 0 || height <= 0
+                || (bitmap.getWidth() <= width && bitmap.getHeight() <= height)) {
+            return bitmap;
+        }
+        //down the rest of the way, keeping the aspect ratio
+        float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private void putInMemory(String key, Bitmap bitmap) {
+        int size = bitmap.getByteCount();
+        if (size > mMaxMemoryBytes) {
+            return;
+        }
+        Bitmap previous = mMemory.put(key, bitmap);
+        if (previous != null) {
+            mMemoryBytes -= previous.getByteCount();
+        }
+        mMemoryBytes += size;
+        Iterator<Map.Entry<String, Bitmap>> eldest = mMemory.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && eldest.hasNext()) {
+            //not recycled, a notification may still show it
+            mMemoryBytes -= eldest.next().getValue().getByteCount();
+            eldest.remove();
+        }
+    }
+
+    private static String getMemoryKey(String uri, int width, int height) {
+        return width + "x" + height + " " + uri;
+    }
+
+    static synchronized OkHttpClient getClient() {
+        if (sClient == null) {
+            //shares the connections and threads of the AVS client, but with timeouts
+            sClient = ClientUtil.getTLS12OkHttpClient().newBuilder()
+                    .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .build();
+        }
+        return sClient;
+    }
+
+    public interface ImageCallback {
+        void onSuccess(Bitmap bitmap);
+
+        void onError(Exception e);
+    }
+}
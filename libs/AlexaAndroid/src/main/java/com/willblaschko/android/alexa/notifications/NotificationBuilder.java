@@ -8,6 +8,8 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
+import android.util.DisplayMetrics;
+import android.util.Log;
 
 import androidx.annotation.AnyRes;
 import androidx.annotation.DrawableRes;
@@ -15,21 +17,25 @@ import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import okhttp3.Request;
+import okhttp3.Response;
+
 /**
  * @author willb_000 on 12/29/2015.
  */
 public class NotificationBuilder {
 
+    private static final String TAG = "NotificationBuilder";
+
     String mTitle;
     String mDescription;
     String mImage;
     Bitmap mLargeImage;
+    //loaded with the ImageLoader when it's built
+    String mLargeImageUri;
     String mBackground;
     PendingIntent mIntent;
     int mSmallIcon;
@@ -62,15 +68,22 @@ public class NotificationBuilder {
 
     public NotificationBuilder setLargeImage(Bitmap bitmap) {
         mLargeImage = bitmap;
+        mLargeImageUri = null;
         return this;
     }
 
+    /**
+     * The image is loaded when the notification is built, through the {@link ImageLoader}, at the size it's shown
+     */
     public NotificationBuilder setLargeImage(String uri) {
-        mLargeImage = getBitmapFromURL(uri);
+        mLargeImage = null;
+        mLargeImageUri = uri;
         return this;
     }
 
-
+    /**
+     * The big picture on TV devices, loaded like {@link #setLargeImage(String)}
+     */
     public NotificationBuilder setBackground(String uri) {
         mBackground = uri;
         return this;
@@ -90,7 +103,78 @@ public class NotificationBuilder {
         return this;
     }
 
+    /**
+     * Build the notification, loading its images on this thread if they aren't in memory, so don't call it on the
+     * main thread. See {@link #build(Context, NotificationCallback)}.
+     */
     public Notification build(Context context) throws IOException {
+        ImageLoader loader = ImageLoader.getInstance(context);
+        Bitmap largeImage = mLargeImage;
+        if (largeImage == null && mLargeImageUri != null) {
+            try {
+                largeImage = loader.load(mLargeImageUri, getLargeImageWidth(context), getLargeImageHeight(context));
+            } catch (IOException e) {
+                Log.w(TAG, "Could not load " + mLargeImageUri, e);
+            }
+        }
+        Bitmap background = null;
+        if (mBackground != null && isDirectToTV(context)) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            try {
+                background = loader.load(mBackground, metrics.widthPixels, metrics.heightPixels);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not load " + mBackground, e);
+            }
+        }
+        return build(context, largeImage, background);
+    }
+
+    /**
+     * Build the notification once its images are loaded, in the background. Call it on the main thread.
+     *
+     * @param callback called on the main thread
+     */
+    public void build(final Context context, final NotificationCallback callback) {
+        final Bitmap[] images = new Bitmap[2];
+        final int[] pending = {0};
+        final Runnable done = new Runnable() {
+            @Override
+            public void run() {
+                if (--pending[0] == 0) {
+                    callback.onBuilt(build(context, images[0], images[1]));
+                }
+            }
+        };
+        images[0] = mLargeImage;
+        pending[0]++;
+        if (images[0] == null && mLargeImageUri != null) {
+            pending[0]++;
+            ImageLoader.getInstance(context).load(mLargeImageUri, getLargeImageWidth(context), getLargeImageHeight(context),
+                    new LoadedCallback(done) {
+                        @Override
+                        public void onSuccess(Bitmap bitmap) {
+                            images[0] = bitmap;
+                            super.onSuccess(bitmap);
+                        }
+                    });
+        }
+        if (mBackground != null && isDirectToTV(context)) {
+            pending[0]++;
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            ImageLoader.getInstance(context).load(mBackground, metrics.widthPixels, metrics.heightPixels,
+                    new LoadedCallback(done) {
+                        @Override
+                        public void onSuccess(Bitmap bitmap) {
+                            images[1] = bitmap;
+                            super.onSuccess(bitmap);
+                        }
+                    });
+        }
+        //the callbacks may have run already, if the images were in memory
+        done.run();
+    }
+
+    private Notification build(Context context, Bitmap largeImage, Bitmap background) {
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
                 .setContentTitle(mTitle)
@@ -100,7 +184,7 @@ public class NotificationBuilder {
                 .setOngoing(true)
                 .setAutoCancel(false)
                 .setCategory(Notification.CATEGORY_RECOMMENDATION)
-                .setLargeIcon(mLargeImage)
+                .setLargeIcon(largeImage)
                 .setSmallIcon(mSmallIcon)
                 .setContentIntent(mIntent);
 
@@ -110,7 +194,11 @@ public class NotificationBuilder {
 
         Notification notification;
         if(isDirectToTV(context)) {
-            notification = new NotificationCompat.BigPictureStyle(builder).build();
+            NotificationCompat.BigPictureStyle style = new NotificationCompat.BigPictureStyle(builder);
+            if(background != null){
+                style.bigPicture(background);
+            }
+            notification = style.build();
         }else{
             notification = builder.build();
         }
@@ -125,20 +213,31 @@ public class NotificationBuilder {
         return false;
     }
 
+    /**
+     * @deprecated decodes the full image, not cached, use the {@link ImageLoader}
+     */
+    @Deprecated
     public static Bitmap getBitmapFromURL(String src) {
         try {
-            URL url = new URL(src);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            InputStream input = connection.getInputStream();
-            Bitmap myBitmap = BitmapFactory.decodeStream(input);
-            return myBitmap;
-        } catch (IOException e) {
-            // Log exception
+            Response response = ImageLoader.getClient().newCall(new Request.Builder().url(src).build()).execute();
+            try {
+                return response.isSuccessful() ? BitmapFactory.decodeStream(response.body().byteStream()) : null;
+            } finally {
+                response.close();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not load " + src, e);
             return null;
         }
     }
+
+    private static int getLargeImageWidth(Context context) {
+        return context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+    }
+
+    private static int getLargeImageHeight(Context context) {
+        return context.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
     /**
      * get uri to drawable or any other resource type if u wish
      * @param context - context
@@ -153,4 +252,29 @@ public class NotificationBuilder {
         return imageUri;
     }
 
+    public interface NotificationCallback {
+        void onBuilt(Notification notification);
+    }
+
+    /**
+     * Counts the image as loaded either way, a notification without its picture beats none
+     */
+    private static class LoadedCallback implements ImageLoader.ImageCallback {
+        private final Runnable mDone;
+
+        LoadedCallback(Runnable done) {
+            mDone = done;
+        }
+
+        @Override
+        public void onSuccess(Bitmap bitmap) {
+            mDone.run();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            Log.w(TAG, "Could not load image", e);
+            mDone.run();
+        }
+    }
 }
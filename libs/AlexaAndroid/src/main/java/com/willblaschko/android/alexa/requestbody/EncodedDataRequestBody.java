@@ -0,0 +1,52 @@
+package com.willblaschko.android.alexa.requestbody;
+
+import com.willblaschko.android.alexa.audioencoder.AudioEncoder;
+
+import java.io.IOException;
+
+import okio.BufferedSink;
+
+/**
+ * A {@link DataRequestBody} that runs the recorded PCM through an {@link AudioEncoder} before it hits the wire.
+ * Subclasses write raw 16-bit PCM to the {@link PcmWriter}, the same way they would write to the sink in a
+ * plain {@link DataRequestBody}, and the format advertised to AVS is taken from the encoder.
+ */
+public abstract class EncodedDataRequestBody extends DataRequestBody {
+
+    private final AudioEncoder mEncoder;
+
+    public EncodedDataRequestBody(AudioEncoder encoder) {
+        mEncoder = encoder;
+    }
+
+    public AudioEncoder getEncoder() {
+        return mEncoder;
+    }
+
+    @Override
+    public final void writeTo(final BufferedSink sink) throws IOException {
+        mEncoder.start();
+        try {
+            writePcmTo(new PcmWriter() {
+                @Override
+                public void write(byte[] pcm, int offset, int length) throws IOException {
+                    mEncoder.encode(pcm, offset, length, sink);
+                }
+            });
+            mEncoder.finish(sink);
+        } finally {
+            mEncoder.release();
+        }
+    }
+
+    /**
+     * Write the raw PCM audio, either all at once or in a loop as it gets recorded
+     * @param writer the encoder input
+     * @throws IOException if the upload fails
+     */
+    protected abstract void writePcmTo(PcmWriter writer) throws IOException;
+
+    public interface PcmWriter {
+        void write(byte[] pcm, int offset, int length) throws IOException;
+    }
+}
@@ -0,0 +1,90 @@
+package com.willblaschko.android.alexa.requestbody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSink;
+
+/**
+ * A {@link DataRequestBody} that is filled while it's being sent, from another thread, e.g. by a text to speech
+ * engine that's still synthesizing. Chunks go out in the order they were written, the upload ends with
+ * {@link #finish()} and fails with {@link #fail(IOException)}.
+ */
+public class PipedDataRequestBody extends DataRequestBody {
+
+    private static final byte[] END = new byte[0];
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10 * 1000;
+
+    private final LinkedBlockingQueue<byte[]> mChunks = new LinkedBlockingQueue<>();
+    private final long mTimeoutMillis;
+    private volatile IOException mError;
+
+    public PipedDataRequestBody() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis the upload fails if nothing was written for this long
+     */
+    public PipedDataRequestBody(long timeoutMillis) {
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Queue a chunk, the array is handed over and mustn't be changed afterwards
+     */
+    public void write(byte[] chunk) {
+        if (chunk.length > 0) {
+            mChunks.add(chunk);
+        }
+    }
+
+    /**
+     * That was all of it
+     */
+    public void finish() {
+        mChunks.add(END);
+    }
+
+    /**
+     * Fail the upload, with what was written so far thrown away by the server
+     */
+    public void fail(IOException error) {
+        mError = error;
+        mChunks.add(END);
+    }
+
+    /**
+     * The chunks are gone once they're sent, there's no sending it twice
+     */
+    @Override
+    public boolean isOneShot() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        while (true) {
+            byte[] chunk;
+            try {
+                chunk = mChunks.poll(mTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for audio");
+            }
+            if (chunk == null) {
+                throw new IOException("No audio for " + mTimeoutMillis + "ms");
+            }
+            if (chunk == END) {
+                break;
+            }
+            sink.write(chunk);
+            //get it to the server while the rest is being made
+            sink.flush();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+}
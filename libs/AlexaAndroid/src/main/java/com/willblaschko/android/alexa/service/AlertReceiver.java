@@ -0,0 +1,20 @@
+package com.willblaschko.android.alexa.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.willblaschko.android.alexa.system.AlertScheduler;
+
+/**
+ * Woken up by the {@link AlertScheduler} when the next alert is due
+ */
+public class AlertReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (AlertScheduler.ACTION_ALERT.equals(intent.getAction())) {
+            AlertScheduler.getInstance(context).onAlarm();
+        }
+    }
+}
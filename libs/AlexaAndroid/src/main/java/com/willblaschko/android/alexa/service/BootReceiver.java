@@ -5,6 +5,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
+import com.willblaschko.android.alexa.system.AlertScheduler;
+
 /**
  * @author will on 4/17/2016.
  */
@@ -19,5 +21,8 @@ public class BootReceiver extends BroadcastReceiver {
         Intent stickyIntent = new Intent(context, DownChannelService.class);
         context.startService(stickyIntent);
         Log.i(TAG, "Started down channel service.");
+
+        //the alert wakeup doesn't survive a reboot
+        AlertScheduler.getInstance(context).rearm();
     }
 }
@@ -26,8 +26,6 @@ import com.willblaschko.android.alexa.interfaces.AvsResponse;
 import com.willblaschko.android.alexa.interfaces.response.ResponseParser;
 import com.willblaschko.android.alexa.system.AndroidSystemHandler;
 
-import org.greenrobot.eventbus.EventBus;
-
 import java.io.IOException;
 
 import okhttp3.Call;
@@ -159,14 +157,13 @@ public class DownChannelService extends Service {
                             String line = bufferedSource.readUtf8Line();
                             try {
                                 Directive directive = ResponseParser.getDirective(line);
-                                handler.handleDirective(directive);
-
-                                //surface to our UI if it's up
-                                try {
-                                    AvsItem item = ResponseParser.parseDirective(directive);
-                                    EventBus.getDefault().post(item);
-                                } catch (IOException e) {
-                                    e.printStackTrace();
+                                //parsed once, for the handler and the listeners
+                                AvsItem item = ResponseParser.parseDirective(directive);
+                                handler.handleItem(item);
+
+                                //surface to whoever is listening, e.g. our UI if it's up
+                                if (item != null) {
+                                    alexaManager.getDirectiveDispatcher().dispatch(item);
                                 }
                             } catch (Exception e) {
                                 Log.e(TAG, "Bad line");
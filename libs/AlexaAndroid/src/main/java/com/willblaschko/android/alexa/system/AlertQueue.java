@@ -0,0 +1,99 @@
+package com.willblaschko.android.alexa.system;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The scheduled alerts, ordered by when they go off and indexed by token, so adding, deleting and finding the next
+ * one are all O(log n) however many there are. Not thread-safe.
+ */
+class AlertQueue {
+
+    private final TreeSet<Alert> mByTime = new TreeSet<>(new Comparator<Alert>() {
+        @Override
+        public int compare(Alert a, Alert b) {
+            if (a.mTime != b.mTime) {
+                return a.mTime < b.mTime ? -1 : 1;
+            }
+            return a.mToken.compareTo(b.mToken);
+        }
+    });
+    private final Map<String, Alert> mByToken = new HashMap<>();
+
+    /**
+     * Add the alert, replacing the one with the same token
+     *
+     * @return the replaced alert, null if there was none
+     */
+    Alert put(Alert alert) {
+        Alert previous = remove(alert.mToken);
+        mByTime.add(alert);
+        mByToken.put(alert.mToken, alert);
+        return previous;
+    }
+
+    /**
+     * @return the removed alert, null if there was none
+     */
+    Alert remove(String token) {
+        Alert alert = mByToken.remove(token);
+        if (alert != null) {
+            mByTime.remove(alert);
+        }
+        return alert;
+    }
+
+    Alert get(String token) {
+        return mByToken.get(token);
+    }
+
+    /**
+     * @return the next alert to go off, null if there are none
+     */
+    Alert peek() {
+        return mByTime.isEmpty() ? null : mByTime.first();
+    }
+
+    /**
+     * Remove the alerts that go off at or before time
+     *
+     * @return them, earliest first
+     */
+    List<Alert> pollDue(long time) {
+        List<Alert> due = new ArrayList<>();
+        while (!mByTime.isEmpty() && mByTime.first().mTime <= time) {
+            Alert alert = mByTime.pollFirst();
+            mByToken.remove(alert.mToken);
+            due.add(alert);
+        }
+        return due;
+    }
+
+    /**
+     * @return all of them, earliest first
+     */
+    List<Alert> getAll() {
+        return new ArrayList<>(mByTime);
+    }
+
+    int size() {
+        return mByToken.size();
+    }
+
+    static class Alert {
+        final String mToken;
+        final String mType;
+        //when it goes off, in milliseconds since the epoch
+        final long mTime;
+
+        Alert(String token, String type, long time) {
+            mToken = token;
+            mType = type;
+            mTime = time;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.willblaschko.android.alexa.system;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import com.willblaschko.android.alexa.AlexaManager;
+import com.willblaschko.android.alexa.callbacks.ImplAsyncCallback;
+import com.willblaschko.android.alexa.data.Event;
+import com.willblaschko.android.alexa.interfaces.AvsResponse;
+import com.willblaschko.android.alexa.interfaces.alerts.AvsSetAlertItem;
+import com.willblaschko.android.alexa.service.AlertReceiver;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the timers and alarms AVS sets, on disk so they survive the process and a reboot, and tells AVS when they
+ * go off. Only one {@link AlarmManager} wakeup is armed at a time, for the next alert that's due, and alerts that are
+ * due within {@link #BATCH_WINDOW_MILLIS} of each other go off together, so hundreds of alerts don't mean hundreds of
+ * wakeups.
+ *
+ * Going off means AlertStarted is sent and the {@link AlertListener} is told, the app plays whatever it wants and
+ * calls {@link #stopAlert(String)} when the user stops it. Without a listener the alert is stopped right away.
+ * An alert stays on disk until AlertStopped was sent, so one that was going off when the process died is stopped
+ * the next time this is created.
+ */
+public class AlertScheduler {
+
+    private static final String TAG = "AlertScheduler";
+
+    private static final String PREFERENCES = "com.willblaschko.android.alexa.alerts";
+    public static final String ACTION_ALERT = "com.willblaschko.android.alexa.ACTION_ALERT";
+    //stored as type|time, with this appended while the alert is going off
+    private static final String ACTIVE = "active";
+
+    //alerts this close to the one that's due go off with it
+    static final long BATCH_WINDOW_MILLIS = 1000;
+    //AVS wants alerts that were missed by more than this dropped, e.g. the device was off
+    static final long MAX_LATENESS_MILLIS = 30 * 60 * 1000;
+
+    private static AlertScheduler sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+    private final AlertQueue mQueue = new AlertQueue();
+    //tokens of the alerts that went off and weren't stopped yet
+    private final Set<String> mActive = new LinkedHashSet<>();
+    private AlertListener mListener;
+
+    private AlertScheduler(Context context) {
+        mContext = context.getApplicationContext();
+        mPreferences = mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        load();
+    }
+
+    public static synchronized AlertScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlertScheduler(context);
+            sInstance.stopInterruptedAlerts();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param listener told when alerts go off, null to have them stopped right away
+     */
+    public synchronized void setAlertListener(AlertListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Schedule the alert, replacing the one with the same token, and tell AVS how it went
+     */
+    public void setAlert(AvsSetAlertItem item) {
+        long time;
+        try {
+            time = item.getScheduledTimeMillis();
+        } catch (ParseException e) {
+            Log.e(TAG, "Bad alert time: " + item.getScheduledTime(), e);
+            sendEvent(Event.getSetAlertFailedEvent(item.getToken()));
+            return;
+        }
+        synchronized (this) {
+            mQueue.put(new AlertQueue.Alert(item.getToken(), item.getType(), time));
+            mPreferences.edit().putString(item.getToken(), toValue(item.getType(), time, false)).apply();
+            arm();
+        }
+        sendEvent(Event.getSetAlertSucceededEvent(item.getToken()));
+    }
+
+    /**
+     * Delete the alert, stopping it if it's going off, and tell AVS how it went
+     */
+    public void deleteAlert(String token) {
+        boolean deleted;
+        boolean active;
+        synchronized (this) {
+            deleted = mQueue.remove(token) != null;
+            if (deleted) {
+                mPreferences.edit().remove(token).apply();
+                arm();
+            }
+            active = mActive.contains(token);
+        }
+        if (active) {
+            stopAlert(token);
+        }
+        sendEvent(deleted || active ? Event.getDeleteAlertSucceededEvent(token) : Event.getDeleteAlertFailedEvent(token));
+    }
+
+    /**
+     * Stop an alert that's going off, e.g. the user dismissed it
+     */
+    public void stopAlert(final String token) {
+        AlertListener listener;
+        synchronized (this) {
+            if (!mActive.remove(token)) {
+                return;
+            }
+            listener = mListener;
+        }
+        AlexaManager.getInstance(mContext).sendEvent(Event.getAlertStoppedEvent(token), new ImplAsyncCallback<AvsResponse, Exception>() {
+            @Override
+            public void success(AvsResponse result) {
+                //AVS knows, unless it failed it's sent again after a restart
+                synchronized (AlertScheduler.this) {
+                    if (mQueue.get(token) == null && !mActive.contains(token)) {
+                        //and it wasn't set again in the meantime
+                        mPreferences.edit().remove(token).apply();
+                    }
+                }
+            }
+        });
+        if (listener != null) {
+            listener.onAlertStopped(token);
+        }
+    }
+
+    /**
+     * The wakeup went off, start whatever is due and arm the next one. Called by {@link AlertReceiver}.
+     */
+    public void onAlarm() {
+        long now = System.currentTimeMillis();
+        List<AlertQueue.Alert> due;
+        synchronized (this) {
+            due = mQueue.pollDue(now + BATCH_WINDOW_MILLIS);
+            SharedPreferences.Editor editor = mPreferences.edit();
+            for (AlertQueue.Alert alert : due) {
+                if (now - alert.mTime > MAX_LATENESS_MILLIS) {
+                    editor.remove(alert.mToken);
+                } else {
+                    //kept until it's stopped
+                    editor.putString(alert.mToken, toValue(alert.mType, alert.mTime, true));
+                }
+            }
+            editor.apply();
+            arm();
+        }
+        for (AlertQueue.Alert alert : due) {
+            if (now - alert.mTime > MAX_LATENESS_MILLIS) {
+                Log.w(TAG, "Dropping alert missed by " + (now - alert.mTime) + "ms: " + alert.mToken);
+                continue;
+            }
+            start(alert);
+        }
+    }
+
+    /**
+     * Arm the wakeup again, it's gone after a reboot. Called by {@link com.willblaschko.android.alexa.service.BootReceiver}.
+     */
+    public void rearm() {
+        AlertQueue.Alert next;
+        synchronized (this) {
+            next = mQueue.peek();
+        }
+        if (next != null && next.mTime <= System.currentTimeMillis()) {
+            //went off while we were down
+            onAlarm();
+            return;
+        }
+        synchronized (this) {
+            arm();
+        }
+    }
+
+    /**
+     * @return the tokens of the scheduled alerts, earliest first
+     */
+    public synchronized List<String> getScheduledAlerts() {
+        List<String> tokens = new ArrayList<>();
+        for (AlertQueue.Alert alert : mQueue.getAll()) {
+            tokens.add(alert.mToken);
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the tokens of the alerts that are going off
+     */
+    public synchronized List<String> getActiveAlerts() {
+        return new ArrayList<>(mActive);
+    }
+
+    private void start(final AlertQueue.Alert alert) {
+        final AlertListener listener;
+        synchronized (this) {
+            mActive.add(alert.mToken);
+            listener = mListener;
+        }
+        Log.i(TAG, "Alert going off: " + alert.mToken);
+        AlexaManager.getInstance(mContext).sendEvent(Event.getAlertStartedEvent(alert.mToken), new ImplAsyncCallback<AvsResponse, Exception>() {
+            @Override
+            public void complete() {
+                if (listener == null) {
+                    //nobody to play it
+                    stopAlert(alert.mToken);
+                }
+            }
+        });
+        if (listener != null) {
+            listener.onAlertStarted(alert.mToken, alert.mType);
+        }
+    }
+
+    /**
+     * Arm the wakeup for the next alert, or cancel it if there's none. Call with the lock held.
+     */
+    private void arm() {
+        AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent intent = PendingIntent.getBroadcast(mContext, 0,
+                new Intent(mContext, AlertReceiver.class).setAction(ACTION_ALERT), PendingIntent.FLAG_UPDATE_CURRENT);
+        AlertQueue.Alert next = mQueue.peek();
+        if (next == null) {
+            alarmManager.cancel(intent);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            //goes off in doze too
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next.mTime, intent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, next.mTime, intent);
+        }
+    }
+
+    /**
+     * Alerts that were going off when the process died were never stopped, tell AVS they are
+     */
+    private void stopInterruptedAlerts() {
+        for (String token : getActiveAlerts()) {
+            Log.i(TAG, "Stopping alert that was going off before the restart: " + token);
+            stopAlert(token);
+        }
+    }
+
+    private static String toValue(String type, long time, boolean active) {
+        return type + "|" + time + (active ? "|" + ACTIVE : "");
+    }
+
+    private void load() {
+        for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+            String value = String.valueOf(entry.getValue());
+            String[] parts = value.split("\\|");
+            try {
+                long time = Long.parseLong(parts[1]);
+                if (parts.length > 2 && ACTIVE.equals(parts[2])) {
+                    mActive.add(entry.getKey());
+                } else {
+                    mQueue.put(new AlertQueue.Alert(entry.getKey(), parts[0], time));
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                Log.w(TAG, "Dropping bad alert " + entry.getKey() + ": " + value);
+                mPreferences.edit().remove(entry.getKey()).apply();
+            }
+        }
+    }
+
+    private void sendEvent(String event) {
+        AlexaManager.getInstance(mContext).sendEvent(event, null);
+    }
+
+    /**
+     * Told about alerts going off and being stopped, on the thread that started or stopped them
+     */
+    public interface AlertListener {
+        void onAlertStarted(String token, String type);
+
+        void onAlertStopped(String token);
+    }
+}
@@ -6,7 +6,6 @@ import android.content.Intent;
 import android.media.AudioManager;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.AlarmClock;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.widget.Toast;
@@ -14,9 +13,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 
 import com.willblaschko.android.alexa.AlexaManager;
-import com.willblaschko.android.alexa.callbacks.ImplAsyncCallback;
 import com.willblaschko.android.alexa.data.Directive;
-import com.willblaschko.android.alexa.data.Event;
 import com.willblaschko.android.alexa.interfaces.AvsItem;
 import com.willblaschko.android.alexa.interfaces.AvsResponse;
 import com.willblaschko.android.alexa.interfaces.alerts.AvsDeleteAlertItem;
@@ -33,7 +30,6 @@ import com.willblaschko.android.alexa.interfaces.system.AvsSetEndpointItem;
 import com.willblaschko.android.alexa.service.DownChannelService;
 
 import java.io.IOException;
-import java.text.ParseException;
 
 import static android.content.Context.AUDIO_SERVICE;
 
@@ -91,13 +87,10 @@ public class AndroidSystemHandler {
                 sendMediaButton(KeyEvent.KEYCODE_MEDIA_PREVIOUS);
                 Log.i(TAG, "Media previous command issued");
             }else if (current instanceof AvsSetAlertItem){
-                if(((AvsSetAlertItem) current).isAlarm()){
-                    setAlarm((AvsSetAlertItem) current);
-                }else if(((AvsSetAlertItem) current).isTimer()){
-                    setTimer((AvsSetAlertItem) current);
-                }
+                //timers and alarms alike
+                AlertScheduler.getInstance(context).setAlert((AvsSetAlertItem) current);
             }else if (current instanceof AvsDeleteAlertItem){
-
+                AlertScheduler.getInstance(context).deleteAlert(current.getToken());
             }
         }
     }
@@ -120,52 +113,6 @@ public class AndroidSystemHandler {
         handleItems(response);
     }
 
-    private void setTimer(final AvsSetAlertItem item){
-        Intent i = new Intent(AlarmClock.ACTION_SET_TIMER);
-        try {
-            int time = (int) ((item.getScheduledTimeMillis() - System.currentTimeMillis()) / 1000);
-            i.putExtra(AlarmClock.EXTRA_LENGTH, time);
-            i.putExtra(AlarmClock.EXTRA_SKIP_UI, true);
-            context.startActivity(i);
-            AlexaManager.getInstance(context)
-                    .sendEvent(Event.getSetAlertSucceededEvent(item.getToken()), null);
-
-            //cheating way to tell Alexa that the timer happened successfully--this SHOULD be improved
-            //todo make this better
-            new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    AlexaManager.getInstance(context)
-                            .sendEvent(Event.getAlertStartedEvent(item.getToken()), new ImplAsyncCallback<AvsResponse, Exception>() {
-                                @Override
-                                public void complete() {
-                                    AlexaManager.getInstance(context)
-                                            .sendEvent(Event.getAlertStoppedEvent(item.getToken()), null);
-                                }
-                            });
-                }
-            }, time * 1000);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-    }
-    private void setAlarm(AvsSetAlertItem item){
-        Intent i = new Intent(AlarmClock.ACTION_SET_ALARM);
-        try {
-            i.putExtra(AlarmClock.EXTRA_HOUR, item.getHour());
-            i.putExtra(AlarmClock.EXTRA_MINUTES, item.getMinutes());
-            i.putExtra(AlarmClock.EXTRA_SKIP_UI, true);
-            context.startActivity(i);
-            AlexaManager.getInstance(context)
-                    .sendEvent(Event.getSetAlertSucceededEvent(item.getToken()), null);
-
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-    }
-
-
     /**
      * Force the device to think that a hardware button has been pressed, this is used for Play/Pause/Previous/Next Media commands
      * @param keyCode keycode for the hardware button we're emulating
@@ -0,0 +1,178 @@
+package com.willblaschko.android.alexa.system;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.willblaschko.android.alexa.callbacks.DirectiveListener;
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Hands directives to the listeners registered for their type, or a supertype, on the executor each one asked for.
+ *
+ * Listeners are only weakly referenced, so one that's left registered doesn't leak e.g. an Activity, but whoever
+ * registers one has to keep a reference to it. Which listeners get which type is worked out once per type and
+ * cached until the listeners change, a dispatch with no listeners allocates nothing.
+ *
+ * Thread-safe.
+ */
+public class DirectiveDispatcher {
+
+    private static final Registration[] NONE = new Registration[0];
+
+    /**
+     * Delivers on the thread that dispatches, e.g. the down channel's, the listener has to be quick
+     */
+    public static final Executor POSTING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Executor sMainThread;
+
+    //copied on every change, read without the lock
+    private volatile Registration[] mRegistrations = NONE;
+    //the registrations for each item type, worked out on its first dispatch
+    private final Map<Class<?>, Registration[]> mByType = new ConcurrentHashMap<>();
+
+    /**
+     * Delivers on the main thread
+     */
+    public static synchronized Executor mainThread() {
+        if (sMainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThread;
+    }
+
+    /**
+     * @param type     the items it wants, subclasses included, {@link AvsItem} for all of them
+     * @param listener weakly referenced
+     * @param executor where it's called, e.g. {@link #mainThread()} or {@link #POSTING_THREAD}
+     */
+    public synchronized <T extends AvsItem> void addListener(Class<T> type, DirectiveListener<? super T> listener, Executor executor) {
+        List<Registration> registrations = getLive();
+        registrations.add(new Registration(type, listener, executor));
+        update(registrations);
+    }
+
+    /**
+     * Remove the listener, for every type it was added for
+     */
+    public synchronized void removeListener(DirectiveListener<?> listener) {
+        List<Registration> registrations = getLive();
+        for (int i = registrations.size() - 1; i >= 0; i--) {
+            if (registrations.get(i).mListener.get() == listener) {
+                registrations.remove(i);
+            }
+        }
+        update(registrations);
+    }
+
+    public boolean hasListeners() {
+        return mRegistrations.length > 0;
+    }
+
+    /**
+     * Hand the item to its listeners
+     */
+    public void dispatch(AvsItem item) {
+        if (mRegistrations.length == 0) {
+            return;
+        }
+        Registration[] registrations = mByType.get(item.getClass());
+        if (registrations == null) {
+            registrations = match(item.getClass());
+        }
+        boolean collected = false;
+        for (Registration registration : registrations) {
+            collected |= !registration.deliver(item);
+        }
+        if (collected) {
+            prune();
+        }
+    }
+
+    private synchronized Registration[] match(Class<?> type) {
+        List<Registration> matching = new ArrayList<>();
+        for (Registration registration : mRegistrations) {
+            if (registration.mType.isAssignableFrom(type)) {
+                matching.add(registration);
+            }
+        }
+        Registration[] registrations = matching.isEmpty() ? NONE : matching.toArray(new Registration[matching.size()]);
+        mByType.put(type, registrations);
+        return registrations;
+    }
+
+    /**
+     * Drop the listeners that were garbage collected
+     */
+    private synchronized void prune() {
+        update(getLive());
+    }
+
+    private List<Registration> getLive() {
+        List<Registration> registrations = new ArrayList<>();
+        for (Registration registration : mRegistrations) {
+            if (registration.mListener.get() != null) {
+                registrations.add(registration);
+            }
+        }
+        return registrations;
+    }
+
+    private void update(List<Registration> registrations) {
+        mRegistrations = registrations.isEmpty() ? NONE : registrations.toArray(new Registration[registrations.size()]);
+        mByType.clear();
+    }
+
+    private static class Registration {
+        final Class<?> mType;
+        final WeakReference<DirectiveListener<?>> mListener;
+        final Executor mExecutor;
+
+        Registration(Class<?> type, DirectiveListener<?> listener, Executor executor) {
+            mType = type;
+            mListener = new WeakReference<DirectiveListener<?>>(listener);
+            mExecutor = executor;
+        }
+
+        /**
+         * @return false if the listener is gone
+         */
+        @SuppressWarnings("unchecked")
+        boolean deliver(final AvsItem item) {
+            final DirectiveListener<AvsItem> listener = (DirectiveListener<AvsItem>) mListener.get();
+            if (listener == null) {
+                return false;
+            }
+            if (mExecutor == POSTING_THREAD) {
+                //no need for a Runnable
+                listener.onDirective(item);
+            } else {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDirective(item);
+                    }
+                });
+            }
+            return true;
+        }
+    }
+}
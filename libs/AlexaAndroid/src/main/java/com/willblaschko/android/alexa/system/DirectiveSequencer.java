@@ -0,0 +1,408 @@
+package com.willblaschko.android.alexa.system;
+
+import android.util.Log;
+
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+import com.willblaschko.android.alexa.interfaces.alerts.AvsDeleteAlertItem;
+import com.willblaschko.android.alexa.interfaces.alerts.AvsSetAlertItem;
+import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayContentItem;
+import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayRemoteItem;
+import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceAllItem;
+import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceEnqueuedItem;
+import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsStopItem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the items of {@link com.willblaschko.android.alexa.interfaces.AvsResponse}s one at a time, so every app
+ * doesn't have to keep its own queue.
+ *
+ * Items go into one of three channels: dialog (speech, ExpectSpeech, speaker and playback controls), alerts and
+ * content (AudioPlayer). Whenever nothing is active, the head of the highest priority channel that has something
+ * in it is handed to the {@link ItemHandler}. A content item that is still playing is not interrupted by dialog
+ * items that come in, they go next.
+ *
+ * AudioPlayer.Play's REPLACE_ALL stops the active content item and clears the content channel, REPLACE_ENQUEUED
+ * only clears the content channel, the dialog and alerts channels are left alone in both cases.
+ *
+ * All state is confined to the executor given to the constructor, the public methods can be called from any
+ * thread and the {@link ItemHandler} is always called on that executor.
+ */
+public class DirectiveSequencer {
+
+    private static final String TAG = "DirectiveSequencer";
+
+    /**
+     * In priority order
+     */
+    public enum Channel {
+        DIALOG, ALERTS, CONTENT
+    }
+
+    public interface ItemHandler {
+        /**
+         * Do what the item says.
+         *
+         * @return true if the item keeps going after this returns (e.g. audio playing), {@link #complete(AvsItem)}
+         * has to be called once it's done then. False if it's done already.
+         */
+        boolean handleItem(AvsItem item, Channel channel);
+
+        /**
+         * The active item was cleared from its channel, stop it. There's no need to call {@link #complete(AvsItem)}.
+         */
+        void cancelItem(AvsItem item, Channel channel);
+
+        /**
+         * All channels are empty and nothing is active
+         */
+        void onIdle();
+    }
+
+    private final Executor mExecutor;
+    private final ItemHandler mHandler;
+    private final Map<Channel, ArrayDeque<Entry>> mQueues = new EnumMap<>(Channel.class);
+    private final Metrics mMetrics = new Metrics();
+
+    private Entry mActive;
+    private boolean mDispatching = false;
+    private boolean mIdle = true;
+
+    /**
+     * Runs on a thread of its own
+     */
+    public DirectiveSequencer(ItemHandler handler) {
+        this(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, TAG);
+            }
+        }), handler);
+    }
+
+    /**
+     * @param executor runs everything, one task at a time, e.g. one that posts to the main thread
+     */
+    public DirectiveSequencer(Executor executor, ItemHandler handler) {
+        mExecutor = executor;
+        mHandler = handler;
+        for (Channel channel : Channel.values()) {
+            mQueues.put(channel, new ArrayDeque<Entry>());
+        }
+    }
+
+    /**
+     * @return the channel an item belongs in
+     */
+    public static Channel getChannel(AvsItem item) {
+        if (item instanceof AvsPlayRemoteItem || item instanceof AvsPlayContentItem || item instanceof AvsStopItem) {
+            return Channel.CONTENT;
+        }
+        if (item instanceof AvsSetAlertItem || item instanceof AvsDeleteAlertItem) {
+            return Channel.ALERTS;
+        }
+        return Channel.DIALOG;
+    }
+
+    /**
+     * Queue the items of a response, in order, and start the next one if nothing is active
+     */
+    public void enqueue(final List<? extends AvsItem> items) {
+        final List<AvsItem> copy = new ArrayList<AvsItem>(items);
+        final long now = System.currentTimeMillis();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (AvsItem item : copy) {
+                    if (item instanceof AvsReplaceAllItem) {
+                        clearNow(Channel.CONTENT, true);
+                    } else if (item instanceof AvsReplaceEnqueuedItem) {
+                        clearNow(Channel.CONTENT, false);
+                    } else {
+                        mQueues.get(getChannel(item)).addLast(new Entry(item, getChannel(item), now));
+                    }
+                }
+                dispatchNext();
+            }
+        });
+    }
+
+    /**
+     * The item the {@link ItemHandler} kept going is done, on to the next one. Ignored if the item isn't active
+     * (anymore).
+     */
+    public void complete(final AvsItem item) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mActive == null || mActive.mItem != item) {
+                    return;
+                }
+                mMetrics.onCompleted(mActive, System.currentTimeMillis());
+                mActive = null;
+                dispatchNext();
+            }
+        });
+    }
+
+    /**
+     * Drop everything, the active item included
+     */
+    public void clear() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Channel channel : Channel.values()) {
+                    clearNow(channel, true);
+                }
+                dispatchNext();
+            }
+        });
+    }
+
+    /**
+     * Drop what's queued in a channel
+     *
+     * @param includingActive also stop the active item if it's from this channel
+     */
+    public void clear(final Channel channel, final boolean includingActive) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                clearNow(channel, includingActive);
+                dispatchNext();
+            }
+        });
+    }
+
+    /**
+     * Drop everything that's queued, right away, the active item keeps going. Only call this on the executor, e.g.
+     * from the {@link ItemHandler} when ExpectSpeech comes up, nothing that was queued is handed out after this
+     * returns.
+     *
+     * @param notifyIdle false if the dialog goes on, e.g. the handler starts listening, {@link ItemHandler#onIdle()}
+     *                   isn't called for running out of items then, only once the next response is done
+     */
+    public void clearQueued(boolean notifyIdle) {
+        for (Channel channel : Channel.values()) {
+            clearNow(channel, false);
+        }
+        if (!notifyIdle) {
+            mIdle = true;
+        }
+        dispatchNext();
+    }
+
+    /**
+     * Drop what's queued in the channels and their active items, right away. Only call this on the executor, e.g.
+     * from a task given to {@link #execute(Runnable)}, nothing that was in them is handed out after this returns.
+     *
+     * @param notifyIdle same as for {@link #clearQueued(boolean)}
+     */
+    public void clearNow(boolean notifyIdle, Channel... channels) {
+        for (Channel channel : channels) {
+            clearNow(channel, true);
+        }
+        if (!notifyIdle) {
+            mIdle = true;
+        }
+        dispatchNext();
+    }
+
+    /**
+     * Run a task on the executor, after whatever is waiting there already, e.g. to call the methods that may only
+     * be called on it together with something that has to happen before the next item is handed out
+     */
+    public void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Only call this on the executor, e.g. from the {@link ItemHandler}
+     *
+     * @return what's waiting in the channel, in order, without the active item
+     */
+    public List<AvsItem> getQueued(Channel channel) {
+        List<AvsItem> items = new ArrayList<>();
+        for (Entry entry : mQueues.get(channel)) {
+            items.add(entry.mItem);
+        }
+        return items;
+    }
+
+    /**
+     * Only call this on the executor, e.g. from the {@link ItemHandler}
+     *
+     * @return the item being handled, null if there is none
+     */
+    public AvsItem getActive() {
+        return (mActive == null) ? null : mActive.mItem;
+    }
+
+    public Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    private void clearNow(Channel channel, boolean includingActive) {
+        ArrayDeque<Entry> queue = mQueues.get(channel);
+        if (!queue.isEmpty()) {
+            Log.i(TAG, "Clearing " + queue.size() + " " + channel + " items");
+            mMetrics.onCleared(channel, queue.size());
+            queue.clear();
+        }
+        if (includingActive && mActive != null && mActive.mChannel == channel) {
+            Entry active = mActive;
+            mActive = null;
+            mMetrics.onCleared(channel, 1);
+            mHandler.cancelItem(active.mItem, channel);
+        }
+    }
+
+    private Entry pollNext() {
+        for (Channel channel : Channel.values()) {
+            Entry entry = mQueues.get(channel).pollFirst();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void dispatchNext() {
+        if (mDispatching) {
+            //called back from the handler, the loop below picks the change up
+            return;
+        }
+        mDispatching = true;
+        try {
+            while (mActive == null) {
+                Entry entry = pollNext();
+                if (entry == null) {
+                    if (mIdle) {
+                        break;
+                    }
+                    mIdle = true;
+                    mHandler.onIdle();
+                    //the handler may have queued something
+                    continue;
+                }
+                mIdle = false;
+                mActive = entry;
+                long now = System.currentTimeMillis();
+                entry.mStarted = now;
+                mMetrics.onDispatched(entry, now);
+                Log.i(TAG, "Handling " + entry.mItem.getClass().getSimpleName() + " on " + entry.mChannel
+                        + " after " + (now - entry.mEnqueued) + "ms in the queue");
+                boolean async;
+                try {
+                    async = mHandler.handleItem(entry.mItem, entry.mChannel);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Handling " + entry.mItem.getClass().getSimpleName() + " failed", e);
+                    async = false;
+                }
+                if (!async && mActive == entry) {
+                    mMetrics.onCompleted(entry, System.currentTimeMillis());
+                    mActive = null;
+                }
+            }
+        } finally {
+            mDispatching = false;
+        }
+    }
+
+    private static class Entry {
+        final AvsItem mItem;
+        final Channel mChannel;
+        final long mEnqueued;
+        long mStarted;
+
+        Entry(AvsItem item, Channel channel, long enqueued) {
+            mItem = item;
+            mChannel = channel;
+            mEnqueued = enqueued;
+        }
+    }
+
+    /**
+     * Per channel counts and timings. Queue latency is the time from {@link #enqueue(List)} until the item was
+     * handed to the {@link ItemHandler}, handling time from then until it completed.
+     */
+    public static class Metrics {
+        private final long[] mDispatched = new long[Channel.values().length];
+        private final long[] mCleared = new long[Channel.values().length];
+        private final long[] mTotalLatency = new long[Channel.values().length];
+        private final long[] mMaxLatency = new long[Channel.values().length];
+        private final long[] mLastLatency = new long[Channel.values().length];
+        private final long[] mCompleted = new long[Channel.values().length];
+        private final long[] mTotalHandling = new long[Channel.values().length];
+
+        synchronized void onDispatched(Entry entry, long now) {
+            int i = entry.mChannel.ordinal();
+            long latency = now - entry.mEnqueued;
+            mDispatched[i]++;
+            mTotalLatency[i] += latency;
+            mMaxLatency[i] = Math.max(mMaxLatency[i], latency);
+            mLastLatency[i] = latency;
+        }
+
+        synchronized void onCompleted(Entry entry, long now) {
+            int i = entry.mChannel.ordinal();
+            mCompleted[i]++;
+            mTotalHandling[i] += now - entry.mStarted;
+        }
+
+        synchronized void onCleared(Channel channel, int count) {
+            mCleared[channel.ordinal()] += count;
+        }
+
+        public synchronized long getDispatched(Channel channel) {
+            return mDispatched[channel.ordinal()];
+        }
+
+        /**
+         * @return items dropped by ReplaceAll/ReplaceEnqueued or {@link DirectiveSequencer#clear()}
+         */
+        public synchronized long getCleared(Channel channel) {
+            return mCleared[channel.ordinal()];
+        }
+
+        public synchronized long getAverageQueueLatency(Channel channel) {
+            int i = channel.ordinal();
+            return mDispatched[i] == 0 ? 0 : mTotalLatency[i] / mDispatched[i];
+        }
+
+        public synchronized long getMaxQueueLatency(Channel channel) {
+            return mMaxLatency[channel.ordinal()];
+        }
+
+        public synchronized long getLastQueueLatency(Channel channel) {
+            return mLastLatency[channel.ordinal()];
+        }
+
+        public synchronized long getAverageHandlingTime(Channel channel) {
+            int i = channel.ordinal();
+            return mCompleted[i] == 0 ? 0 : mTotalHandling[i] / mCompleted[i];
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Channel channel : Channel.values()) {
+                int i = channel.ordinal();
+                builder.append(channel).append(": ").append(mDispatched[i]).append(" handled, ")
+                        .append(mCleared[i]).append(" cleared, queue latency avg ")
+                        .append(mDispatched[i] == 0 ? 0 : mTotalLatency[i] / mDispatched[i])
+                        .append("ms max ").append(mMaxLatency[i]).append("ms; ");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.willblaschko.android.alexa.system;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs startup work in stages, each one as soon as the stages it depends on are done, on the main thread or in the
+ * background, so only what's needed right away has to hold up the first frame.
+ *
+ * Stages are added before {@link #start()}. A stage that throws counts as done (the error is logged), so the stages
+ * after it and whoever waits on it aren't stuck. Every stage is recorded in the {@link StartupTracer}, with the time
+ * it waited to be run.
+ */
+public class StagedInitializer {
+
+    private static final String TAG = "StagedInitializer";
+
+    private final Executor mMainExecutor;
+    private final Executor mBackgroundExecutor;
+    private final StartupTracer mTracer;
+    private final Map<String, Stage> mStages = new LinkedHashMap<>();
+    private boolean mStarted = false;
+
+    /**
+     * @param mainExecutor       runs the main thread stages
+     * @param backgroundExecutor runs the rest, can run several at once
+     */
+    public StagedInitializer(Executor mainExecutor, Executor backgroundExecutor, StartupTracer tracer) {
+        mMainExecutor = mainExecutor;
+        mBackgroundExecutor = backgroundExecutor;
+        mTracer = tracer;
+    }
+
+    /**
+     * @param name      unique name of the stage
+     * @param onMain    run it on the main thread
+     * @param task      the work
+     * @param dependsOn stages that have to be done first, they have to be added before this one
+     */
+    public synchronized StagedInitializer addStage(String name, boolean onMain, Runnable task, String... dependsOn) {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
+        }
+        if (mStages.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate stage " + name);
+        }
+        Stage stage = new Stage(name, onMain, task);
+        for (String dependency : dependsOn) {
+            Stage before = mStages.get(dependency);
+            if (before == null) {
+                throw new IllegalArgumentException(name + " depends on unknown stage " + dependency);
+            }
+            stage.mPending++;
+            before.mDependents.add(stage);
+        }
+        mStages.put(name, stage);
+        return this;
+    }
+
+    /**
+     * Kick off every stage that doesn't depend on anything
+     */
+    public void start() {
+        List<Stage> ready = new ArrayList<>();
+        synchronized (this) {
+            if (mStarted) {
+                return;
+            }
+            mStarted = true;
+            for (Stage stage : mStages.values()) {
+                if (stage.mPending == 0) {
+                    ready.add(stage);
+                }
+            }
+        }
+        for (Stage stage : ready) {
+            schedule(stage);
+        }
+    }
+
+    public boolean isDone(String name) {
+        return getStage(name).mDone.getCount() == 0;
+    }
+
+    /**
+     * Wait for a stage, returns right away if it's done. Don't call this on the main thread for a stage that
+     * runs there.
+     *
+     * @return false if it timed out
+     */
+    public boolean await(String name, long timeout, TimeUnit unit) throws InterruptedException {
+        return getStage(name).mDone.await(timeout, unit);
+    }
+
+    /**
+     * Run then once the stage is done, on the main thread, or on the calling thread if it's done already
+     */
+    public void whenDone(String name, Runnable then) {
+        Stage stage = getStage(name);
+        synchronized (this) {
+            if (stage.mDone.getCount() > 0) {
+                stage.mCallbacks.add(then);
+                return;
+            }
+        }
+        then.run();
+    }
+
+    public StartupTracer getTracer() {
+        return mTracer;
+    }
+
+    private synchronized Stage getStage(String name) {
+        Stage stage = mStages.get(name);
+        if (stage == null) {
+            throw new IllegalArgumentException("Unknown stage " + name);
+        }
+        return stage;
+    }
+
+    private void schedule(final Stage stage) {
+        final long scheduled = mTracer.begin();
+        (stage.mOnMain ? mMainExecutor : mBackgroundExecutor).execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = mTracer.begin();
+                if (start - scheduled > 0) {
+                    mTracer.record(stage.mName + " (waiting)", scheduled, start, Thread.currentThread().getName());
+                }
+                try {
+                    stage.mTask.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Stage " + stage.mName + " failed", e);
+                    mTracer.mark(stage.mName + " failed");
+                }
+                mTracer.end(stage.mName, start);
+                finish(stage);
+            }
+        });
+    }
+
+    private void finish(Stage stage) {
+        List<Stage> ready = new ArrayList<>();
+        List<Runnable> callbacks;
+        synchronized (this) {
+            stage.mDone.countDown();
+            for (Stage dependent : stage.mDependents) {
+                if (--dependent.mPending == 0) {
+                    ready.add(dependent);
+                }
+            }
+            callbacks = new ArrayList<>(stage.mCallbacks);
+            stage.mCallbacks.clear();
+        }
+        for (Stage next : ready) {
+            schedule(next);
+        }
+        for (final Runnable callback : callbacks) {
+            mMainExecutor.execute(callback);
+        }
+    }
+
+    private static class Stage {
+        final String mName;
+        final boolean mOnMain;
+        final Runnable mTask;
+        final List<Stage> mDependents = new ArrayList<>();
+        final List<Runnable> mCallbacks = new ArrayList<>();
+        final CountDownLatch mDone = new CountDownLatch(1);
+        //dependencies that aren't done yet
+        int mPending = 0;
+
+        Stage(String name, boolean onMain, Runnable task) {
+            mName = name;
+            mOnMain = onMain;
+            mTask = task;
+        }
+    }
+}
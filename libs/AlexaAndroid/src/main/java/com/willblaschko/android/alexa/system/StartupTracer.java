@@ -0,0 +1,122 @@
+package com.willblaschko.android.alexa.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects what happened during startup, and when, so a slow cold start can be pinned on something.
+ *
+ * Times are relative to the creation of the tracer. {@link #toJson()} exports the timeline in the Chrome trace event
+ * format, it can be opened in chrome://tracing or Perfetto.
+ *
+ * Thread-safe.
+ */
+public class StartupTracer {
+
+    private final long mOrigin = System.nanoTime();
+    private final List<Span> mSpans = new ArrayList<>();
+
+    /**
+     * @return the start time to hand to {@link #end(String, long)}
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a span that started at startNanos and ends now, on the calling thread
+     */
+    public void end(String name, long startNanos) {
+        record(name, startNanos, System.nanoTime(), Thread.currentThread().getName());
+    }
+
+    /**
+     * Record something that happened at one point in time
+     */
+    public void mark(String name) {
+        long now = System.nanoTime();
+        record(name, now, now, Thread.currentThread().getName());
+    }
+
+    public synchronized void record(String name, long startNanos, long endNanos, String thread) {
+        mSpans.add(new Span(name, thread, (startNanos - mOrigin) / 1000, (endNanos - startNanos) / 1000));
+    }
+
+    /**
+     * @return what was recorded so far, in the order it was recorded
+     */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(mSpans);
+    }
+
+    /**
+     * @return the timeline as a Chrome trace
+     */
+    public synchronized String toJson() {
+        StringBuilder builder = new StringBuilder("{\"traceEvents\":[");
+        for (int i = 0; i < mSpans.size(); i++) {
+            Span span = mSpans.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"name\":\"").append(escape(span.mName))
+                    .append("\",\"cat\":\"startup\",\"ph\":\"X\",\"pid\":1,\"tid\":\"").append(escape(span.mThread))
+                    .append("\",\"ts\":").append(span.mStartMicros)
+                    .append(",\"dur\":").append(span.mDurationMicros)
+                    .append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Span span : mSpans) {
+            builder.append(span).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    public static class Span {
+        private final String mName;
+        private final String mThread;
+        private final long mStartMicros;
+        private final long mDurationMicros;
+
+        Span(String name, String thread, long startMicros, long durationMicros) {
+            mName = name;
+            mThread = thread;
+            mStartMicros = startMicros;
+            mDurationMicros = durationMicros;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getThread() {
+            return mThread;
+        }
+
+        /**
+         * @return since the tracer was created
+         */
+        public long getStartMicros() {
+            return mStartMicros;
+        }
+
+        public long getDurationMicros() {
+            return mDurationMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US, "%8.1fms %8.1fms %s [%s]",
+                    mStartMicros / 1000f, mDurationMicros / 1000f, mName, mThread);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.willblaschko.android.alexa.utility;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A directory of byte arrays, one file each, kept under a size limit by deleting the least recently used ones, by
+ * last modified time. Survives the process, the files are written atomically so a crash doesn't leave half of one.
+ *
+ * Thread-safe, every call does disk I/O.
+ */
+public class FileLruCache {
+
+    private static final String TAG = "FileLruCache";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final Deleter DELETE = new Deleter() {
+        @Override
+        public boolean delete(File file) {
+            return file.delete();
+        }
+    };
+
+    private final File mDirectory;
+    private final String mSuffix;
+    private final long mMaxBytes;
+
+    /**
+     * @param suffix   of the files, e.g. ".pcm"
+     * @param maxBytes the files are trimmed to this size after every {@link #put(String, byte[])}
+     */
+    public FileLruCache(File directory, String suffix, long maxBytes) {
+        mDirectory = directory;
+        mSuffix = suffix;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the data, null if it isn't cached or can't be read
+     */
+    public byte[] get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] data = read(file);
+            //counts as a use
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file, e);
+            return null;
+        }
+    }
+
+    public boolean contains(String key) {
+        return getFile(key).isFile();
+    }
+
+    /**
+     * Store the data, failures are logged
+     */
+    public void put(String key, byte[] data) {
+        try {
+            write(key, data);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not store " + key, e);
+        }
+        trim();
+    }
+
+    /**
+     * Delete all of it
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key + mSuffix);
+    }
+
+    private void write(String key, byte[] data) throws IOException {
+        File file = getFile(key);
+        if (file.isFile() && file.length() == data.length) {
+            file.setLastModified(System.currentTimeMillis());
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        //unique, two threads may store the same key
+        File tmp = new File(mDirectory, key + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not store " + file);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void trim() {
+        trim(mDirectory, mMaxBytes, 0, DELETE);
+    }
+
+    /**
+     * Delete the least recently used files of a directory, by last modified time, until it's under a size limit
+     * and no file is older than a given time. Shared with caches that manage their files themselves.
+     *
+     * @param oldest  files last modified before this go too, 0 for no age limit
+     * @param deleter does the deleting, e.g. skips files that are in use
+     * @return how many files were deleted
+     */
+    public static int trim(File directory, long maxBytes, long oldest, Deleter deleter) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long size = 0;
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+            size += files[i].length();
+        }
+        //least recently used first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long diff = lastModified[a] - lastModified[b];
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        int deleted = 0;
+        for (Integer i : order) {
+            if (size <= maxBytes && lastModified[i] >= oldest) {
+                break;
+            }
+            long length = files[i].length();
+            if (deleter.delete(files[i])) {
+                size -= length;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes files, or decides not to, for {@link #trim(File, long, long, Deleter)}
+     */
+    public interface Deleter {
+        /**
+         * @return true if the file was deleted
+         */
+        boolean delete(File file);
+    }
+}
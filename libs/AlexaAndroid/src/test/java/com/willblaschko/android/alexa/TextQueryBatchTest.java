@@ -0,0 +1,208 @@
+package com.willblaschko.android.alexa;
+
+import com.willblaschko.android.alexa.callbacks.AsyncCallback;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TextQueryBatchTest {
+
+    private static final String TOKEN = "token";
+
+    private final FakeSenders mSenders = new FakeSenders();
+
+    @Test
+    public void neverHasMoreThanTheConcurrencyInFlight() throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            texts.add("slow " + i);
+        }
+        List<TextQueryBatch.Result> results = new TextQueryBatch(mSenders, 3, 5000).run(TOKEN, texts);
+
+        assertEquals(12, results.size());
+        for (TextQueryBatch.Result result : results) {
+            assertTrue(result.toString(), result.isSuccessful());
+            assertEquals(204, result.getResponseCode());
+        }
+        assertEquals(12, mSenders.mSent.get());
+        assertTrue("max in flight " + mSenders.mMaxInFlight.get(), mSenders.mMaxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void timesOutAQueryThatHangs() throws Exception {
+        List<TextQueryBatch.Result> results = new TextQueryBatch(mSenders, 2, 200)
+                .run(TOKEN, Arrays.asList("hang", "ok"));
+
+        TextQueryBatch.Result hung = results.get(0);
+        assertFalse(hung.isSuccessful());
+        assertTrue(hung.getError() instanceof IOException);
+        assertTrue(hung.getTotalMillis() >= 200);
+        assertEquals(1, mSenders.mCancelled.get());
+        assertTrue(results.get(1).isSuccessful());
+    }
+
+    @Test
+    public void keepsFailuresToTheirOwnQuery() throws Exception {
+        List<TextQueryBatch.Result> results = new TextQueryBatch(mSenders, 2, 5000)
+                .run(TOKEN, Arrays.asList("ok", "fail", "throw", "crash", "ok"));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals("failed", results.get(1).getError().getMessage());
+        assertEquals("thrown", results.get(2).getError().getMessage());
+        assertTrue(results.get(3).getError() instanceof IllegalStateException);
+        assertTrue(results.get(4).isSuccessful());
+        assertNull(results.get(4).getError());
+    }
+
+    @Test
+    public void returnsResultsInInputOrder() throws Exception {
+        //the first ones take the longest, so they finish last
+        List<String> texts = Arrays.asList("slow 3", "slow 2", "slow 1", "ok", "fail");
+        List<TextQueryBatch.Result> results = new TextQueryBatch(mSenders, 5, 5000).run(TOKEN, texts);
+
+        assertEquals(texts.size(), results.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), results.get(i).getText());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsSomeConcurrency() {
+        new TextQueryBatch(mSenders, 0, 5000);
+    }
+
+    /**
+     * Answers right away with a 204 for "ok", after a while for "slow n", fails "fail" through the callback,
+     * "throw" with an IOException from send(), "crash" with a RuntimeException, and never answers "hang"
+     */
+    private static class FakeSenders implements TextQueryBatch.SenderFactory {
+        final AtomicInteger mSent = new AtomicInteger();
+        final AtomicInteger mInFlight = new AtomicInteger();
+        final AtomicInteger mMaxInFlight = new AtomicInteger();
+        final AtomicInteger mCancelled = new AtomicInteger();
+
+        @Override
+        public TextQueryBatch.Sender create() {
+            return new TextQueryBatch.Sender() {
+                @Override
+                public void send(String accessToken, String text, AsyncCallback<Call, Exception> callback) throws IOException {
+                    mSent.incrementAndGet();
+                    int inFlight = mInFlight.incrementAndGet();
+                    while (true) {
+                        int max = mMaxInFlight.get();
+                        if (inFlight <= max || mMaxInFlight.compareAndSet(max, inFlight)) {
+                            break;
+                        }
+                    }
+                    try {
+                        answer(text, callback);
+                    } finally {
+                        mInFlight.decrementAndGet();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    mCancelled.incrementAndGet();
+                }
+            };
+        }
+
+        private void answer(String text, AsyncCallback<Call, Exception> callback) throws IOException {
+            if (text.equals("hang")) {
+                return;
+            }
+            if (text.equals("throw")) {
+                throw new IOException("thrown");
+            }
+            if (text.equals("crash")) {
+                throw new IllegalStateException("crashed");
+            }
+            callback.start();
+            if (text.equals("fail")) {
+                callback.failure(new IOException("failed"));
+            } else {
+                if (text.startsWith("slow ")) {
+                    sleep(20 * Integer.parseInt(text.substring(5)) + 20);
+                }
+                callback.success(new NoContentCall());
+            }
+            callback.complete();
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class NoContentCall implements Call {
+        private final Request mRequest = new Request.Builder().url("https://example.com/v20160207/events").build();
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() {
+            return new Response.Builder()
+                    .request(mRequest)
+                    .protocol(Protocol.HTTP_2)
+                    .code(204)
+                    .message("No Content")
+                    .body(ResponseBody.create(null, new byte[0]))
+                    .build();
+        }
+
+        @Override
+        public void enqueue(Callback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return false;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public Call clone() {
+            return new NoContentCall();
+        }
+    }
+}
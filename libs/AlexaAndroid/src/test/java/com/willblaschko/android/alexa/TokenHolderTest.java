@@ -0,0 +1,82 @@
+package com.willblaschko.android.alexa;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TokenHolderTest {
+
+    private static final TokenManager.TokenCallback NOTHING = new TokenManager.TokenCallback() {
+        @Override
+        public void onSuccess(String token) {
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+        }
+    };
+
+    @Test
+    public void loadOnlyOnce() {
+        TokenHolder holder = new TokenHolder();
+        assertFalse(holder.isLoaded());
+        TokenHolder.Tokens stored = new TokenHolder.Tokens("a", "r", 1000);
+        holder.load(stored);
+        holder.load(new TokenHolder.Tokens("b", "r", 2000));
+        assertTrue(holder.isLoaded());
+        assertSame(stored, holder.get());
+    }
+
+    @Test
+    public void validUntilExpiry() {
+        TokenHolder.Tokens tokens = new TokenHolder.Tokens("a", "r", 1000);
+        assertTrue(tokens.isValid(999));
+        assertFalse(tokens.isValid(1000));
+        assertFalse(new TokenHolder.Tokens(null, "r", 1000).isValid(0));
+    }
+
+    @Test
+    public void concurrentCallersShareOneRefresh() {
+        TokenHolder holder = new TokenHolder();
+        holder.load(new TokenHolder.Tokens("old", "r", 0));
+        assertTrue(holder.joinRefresh(NOTHING));
+        assertFalse(holder.joinRefresh(NOTHING));
+        assertFalse(holder.joinRefresh(NOTHING));
+        assertTrue(holder.isRefreshing());
+
+        TokenHolder.Tokens fresh = new TokenHolder.Tokens("new", "r", 1000);
+        List<TokenManager.TokenCallback> waiters = holder.finishRefresh(fresh);
+        assertEquals(3, waiters.size());
+        assertSame(fresh, holder.get());
+        assertFalse(holder.isRefreshing());
+
+        //the next one starts a refresh of its own
+        assertTrue(holder.joinRefresh(NOTHING));
+    }
+
+    @Test
+    public void failedRefreshKeepsTokens() {
+        TokenHolder holder = new TokenHolder();
+        TokenHolder.Tokens old = new TokenHolder.Tokens("old", "r", 0);
+        holder.load(old);
+        holder.joinRefresh(NOTHING);
+        assertEquals(1, holder.finishRefresh(null).size());
+        assertSame(old, holder.get());
+    }
+
+    @Test
+    public void refreshAfterClearIsDropped() {
+        TokenHolder holder = new TokenHolder();
+        holder.load(new TokenHolder.Tokens("old", "r", 0));
+        holder.joinRefresh(NOTHING);
+        holder.clear();
+        holder.finishRefresh(new TokenHolder.Tokens("new", "r", 1000));
+        assertNull(holder.get());
+    }
+}
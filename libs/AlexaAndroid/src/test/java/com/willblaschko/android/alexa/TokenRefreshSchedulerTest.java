@@ -0,0 +1,237 @@
+package com.willblaschko.android.alexa;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenRefreshSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private FakeClock mClock;
+    private FakeTokenSource mTokens;
+    private TokenRefreshScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mTokens = new FakeTokenSource(mClock);
+        mScheduler = new TokenRefreshScheduler(null, mTokens, mClock);
+    }
+
+    @Test
+    public void refreshesAheadOfExpiry() {
+        assertEquals(55 * 60 * 1000, TokenRefreshScheduler.delayUntilRefresh(0, 60 * 60 * 1000, 5 * 60 * 1000));
+        //due already
+        assertEquals(0, TokenRefreshScheduler.delayUntilRefresh(58 * 60 * 1000, 60 * 60 * 1000, 5 * 60 * 1000));
+        assertEquals(0, TokenRefreshScheduler.delayUntilRefresh(2 * 60 * 60 * 1000, 60 * 60 * 1000, 5 * 60 * 1000));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMax() {
+        assertEquals(TokenRefreshScheduler.MIN_BACKOFF_MILLIS, TokenRefreshScheduler.backoffDelay(1));
+        assertEquals(2 * TokenRefreshScheduler.MIN_BACKOFF_MILLIS, TokenRefreshScheduler.backoffDelay(2));
+        assertEquals(4 * TokenRefreshScheduler.MIN_BACKOFF_MILLIS, TokenRefreshScheduler.backoffDelay(3));
+        assertEquals(TokenRefreshScheduler.MAX_BACKOFF_MILLIS, TokenRefreshScheduler.backoffDelay(10));
+        assertEquals(TokenRefreshScheduler.MAX_BACKOFF_MILLIS, TokenRefreshScheduler.backoffDelay(1000));
+    }
+
+    @Test
+    public void reschedulesAfterARefresh() {
+        mTokens.mLifetime = 60 * MINUTE;
+        mTokens.issue();
+        mScheduler.start();
+
+        mClock.advance(55 * MINUTE - 1);
+        assertEquals(0, mTokens.mRefreshes);
+        mClock.advance(1);
+        assertEquals(1, mTokens.mRefreshes);
+
+        //the new token is good for another hour
+        mClock.advance(55 * MINUTE - 1);
+        assertEquals(1, mTokens.mRefreshes);
+        mClock.advance(1);
+        assertEquals(2, mTokens.mRefreshes);
+    }
+
+    @Test
+    public void doesNotRefreshInALoop() {
+        //the margin is longer than the tokens live
+        mTokens.mLifetime = MINUTE;
+        mTokens.issue();
+        mScheduler.start();
+
+        mClock.advance(0);
+        assertEquals(1, mTokens.mRefreshes);
+        mClock.advance(TokenRefreshScheduler.MAX_BACKOFF_MILLIS - 1);
+        assertEquals(1, mTokens.mRefreshes);
+        mClock.advance(1);
+        assertEquals(2, mTokens.mRefreshes);
+    }
+
+    @Test
+    public void backsOffAfterFailures() {
+        mTokens.mLifetime = 60 * MINUTE;
+        mTokens.issue();
+        mTokens.mFail = true;
+        mScheduler.start();
+
+        mClock.advance(55 * MINUTE);
+        assertEquals(1, mTokens.mRefreshes);
+        mClock.advance(TokenRefreshScheduler.MIN_BACKOFF_MILLIS);
+        assertEquals(2, mTokens.mRefreshes);
+        //twice as long this time
+        mClock.advance(2 * TokenRefreshScheduler.MIN_BACKOFF_MILLIS - 1);
+        assertEquals(2, mTokens.mRefreshes);
+        mClock.advance(1);
+        assertEquals(3, mTokens.mRefreshes);
+
+        //works again, back to the regular schedule
+        mTokens.mFail = false;
+        mClock.advance(4 * TokenRefreshScheduler.MIN_BACKOFF_MILLIS);
+        assertEquals(4, mTokens.mRefreshes);
+        mClock.advance(55 * MINUTE - 1);
+        assertEquals(4, mTokens.mRefreshes);
+        mClock.advance(1);
+        assertEquals(5, mTokens.mRefreshes);
+    }
+
+    @Test
+    public void resumesWhenBackOnline() {
+        mTokens.mLifetime = 60 * MINUTE;
+        mTokens.issue();
+        mScheduler.start();
+        mClock.advance(0);
+        mScheduler.onNetworkLost(false);
+
+        mClock.advance(56 * MINUTE);
+        assertEquals(0, mTokens.mRefreshes);
+
+        mScheduler.onNetworkAvailable();
+        mClock.advance(0);
+        assertEquals(1, mTokens.mRefreshes);
+    }
+
+    @Test
+    public void skipsTheBackoffWhenANetworkComesUp() {
+        mTokens.mLifetime = 60 * MINUTE;
+        mTokens.issue();
+        mTokens.mFail = true;
+        mScheduler.start();
+        mClock.advance(55 * MINUTE);
+        assertEquals(1, mTokens.mRefreshes);
+
+        mTokens.mFail = false;
+        mScheduler.onNetworkAvailable();
+        mClock.advance(0);
+        assertEquals(2, mTokens.mRefreshes);
+    }
+
+    @Test
+    public void leavesLoggedOutUsersAlone() {
+        mScheduler.start();
+        mClock.advance(24 * 60 * MINUTE);
+        assertEquals(0, mTokens.mRefreshes);
+    }
+
+    /**
+     * Runs what's posted when the time comes, on the test thread
+     */
+    private static class FakeClock implements TokenRefreshScheduler.Clock {
+        private final List<Task> mTasks = new ArrayList<>();
+        private long mNow = 0;
+
+        @Override
+        public long now() {
+            return mNow;
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            postDelayed(runnable, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis) {
+            mTasks.add(new Task(mNow + delayMillis, runnable));
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            Iterator<Task> tasks = mTasks.iterator();
+            while (tasks.hasNext()) {
+                if (tasks.next().mRunnable == runnable) {
+                    tasks.remove();
+                }
+            }
+        }
+
+        void advance(long millis) {
+            long until = mNow + millis;
+            while (true) {
+                Task next = null;
+                for (Task task : mTasks) {
+                    //the earliest, in the order they were posted
+                    if (task.mTime <= until && (next == null || task.mTime < next.mTime)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                mTasks.remove(next);
+                mNow = next.mTime;
+                next.mRunnable.run();
+            }
+            mNow = until;
+        }
+
+        private static class Task {
+            final long mTime;
+            final Runnable mRunnable;
+
+            Task(long time, Runnable runnable) {
+                mTime = time;
+                mRunnable = runnable;
+            }
+        }
+    }
+
+    private static class FakeTokenSource implements TokenRefreshScheduler.TokenSource {
+        private final FakeClock mClock;
+        private TokenHolder.Tokens mTokens;
+        long mLifetime;
+        boolean mFail = false;
+        int mRefreshes = 0;
+
+        FakeTokenSource(FakeClock clock) {
+            mClock = clock;
+        }
+
+        void issue() {
+            mTokens = new TokenHolder.Tokens("access" + mRefreshes, "refresh", mClock.now() + mLifetime);
+        }
+
+        @Override
+        public TokenHolder.Tokens getTokens() {
+            return mTokens;
+        }
+
+        @Override
+        public void refresh(TokenManager.TokenCallback callback) {
+            mRefreshes++;
+            if (mFail) {
+                callback.onFailure(new IOException("offline"));
+                return;
+            }
+            issue();
+            callback.onSuccess(mTokens.mAccessToken);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlacAudioEncoderTest {
+
+    @Test
+    public void writesStreamHeader() throws Exception {
+        byte[] flac = encode(new FlacAudioEncoder(), new short[0], 4096);
+        assertEquals('f', flac[0]);
+        assertEquals('L', flac[1]);
+        assertEquals('a', flac[2]);
+        assertEquals('C', flac[3]);
+        //marker + STREAMINFO block
+        assertEquals(4 + 4 + 34, flac.length);
+    }
+
+    @Test
+    public void silenceCompresses() throws Exception {
+        short[] pcm = new short[16000];
+        byte[] flac = encode(new FlacAudioEncoder(), pcm, 4096);
+        assertTrue(flac.length < 200);
+        assertArrayEquals(pcm, new Decoder(flac).decode());
+    }
+
+    @Test
+    public void roundTripSpeechLikeSignal() throws Exception {
+        short[] pcm = new short[16000 * 2 + 123];
+        Random random = new Random(42);
+        for (int i = 0; i < pcm.length; i++) {
+            double tone = 6000 * Math.sin(i * 2 * Math.PI * 220 / 16000) + 2000 * Math.sin(i * 2 * Math.PI * 1250 / 16000);
+            pcm[i] = (short) (tone + random.nextGaussian() * 200);
+        }
+        FlacAudioEncoder encoder = new FlacAudioEncoder();
+        //odd chunk sizes to make sure samples split across calls are put back together
+        byte[] flac = encode(encoder, pcm, 333);
+        assertEquals(pcm.length, encoder.getSamplesEncoded());
+        assertTrue(flac.length < pcm.length * 2);
+        assertArrayEquals(pcm, new Decoder(flac).decode());
+    }
+
+    @Test
+    public void roundTripNoiseAndExtremes() throws Exception {
+        short[] pcm = new short[5000];
+        Random random = new Random(7);
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) random.nextInt();
+        }
+        pcm[10] = Short.MAX_VALUE;
+        pcm[11] = Short.MIN_VALUE;
+        assertArrayEquals(pcm, new Decoder(encode(new FlacAudioEncoder(16000, 1024), pcm, 4096)).decode());
+    }
+
+    @Test
+    public void encoderIsReusable() throws Exception {
+        short[] pcm = new short[3000];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (i * 7);
+        }
+        FlacAudioEncoder encoder = new FlacAudioEncoder();
+        byte[] first = encode(encoder, pcm, 1000);
+        byte[] second = encode(encoder, pcm, 1000);
+        assertArrayEquals(first, second);
+    }
+
+    private static byte[] encode(AudioEncoder encoder, short[] pcm, int chunkBytes) throws Exception {
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[i * 2] = (byte) pcm[i];
+            bytes[i * 2 + 1] = (byte) (pcm[i] >> 8);
+        }
+        Buffer sink = new Buffer();
+        encoder.start();
+        for (int i = 0; i < bytes.length; i += chunkBytes) {
+            encoder.encode(bytes, i, Math.min(chunkBytes, bytes.length - i), sink);
+        }
+        encoder.finish(sink);
+        encoder.release();
+        return sink.readByteArray();
+    }
+
+    /**
+     * Just enough of a FLAC decoder to read back what {@link FlacAudioEncoder} writes, it checks both CRCs
+     */
+    private static class Decoder {
+        private final byte[] mData;
+        private int mBit;
+
+        Decoder(byte[] data) {
+            mData = data;
+        }
+
+        short[] decode() {
+            assertEquals(0x664c6143, read(32));
+            assertEquals(0x80, read(8));
+            assertEquals(34, read(24));
+            int blockSize = read(16);
+            read(16);
+            read(24);
+            read(24);
+            assertEquals(16000, read(20));
+            assertEquals(0, read(3));
+            assertEquals(15, read(5));
+            mBit += 36 + 128;
+
+            short[] out = new short[0];
+            while (mBit / 8 < mData.length) {
+                int frameStart = mBit / 8;
+                assertEquals(0x3ffe, read(14));
+                read(2);
+                int sizeCode = read(4);
+                read(4);
+                assertEquals(0, read(4));
+                assertEquals(4, read(3));
+                read(1);
+                int first = read(8);
+                int extra = 0;
+                while ((first & (0x80 >> extra)) != 0 && first >= 0xc0) {
+                    extra++;
+                }
+                for (int i = 1; i < extra; i++) {
+                    read(8);
+                }
+                int count = sizeCode == 7 ? read(16) + 1 : sizeCode >= 8 ? 256 << (sizeCode - 8) : blockSize;
+                int crc8 = FlacAudioEncoder.crc8(copy(frameStart, mBit / 8), mBit / 8 - frameStart);
+                assertEquals(crc8, read(8));
+
+                int[] samples = readSubframe(count);
+                mBit = (mBit + 7) & ~7;
+                int crc16 = FlacAudioEncoder.crc16(copy(frameStart, mBit / 8), mBit / 8 - frameStart);
+                assertEquals(crc16, read(16));
+
+                short[] grown = new short[out.length + count];
+                System.arraycopy(out, 0, grown, 0, out.length);
+                for (int i = 0; i < count; i++) {
+                    grown[out.length + i] = (short) samples[i];
+                }
+                out = grown;
+            }
+            return out;
+        }
+
+        private int[] readSubframe(int count) {
+            int[] x = new int[count];
+            assertEquals(0, read(1));
+            int type = read(6);
+            assertEquals(0, read(1));
+            if (type == 0) {
+                int value = signed(read(16));
+                for (int i = 0; i < count; i++) {
+                    x[i] = value;
+                }
+            } else if (type == 1) {
+                for (int i = 0; i < count; i++) {
+                    x[i] = signed(read(16));
+                }
+            } else {
+                int order = type & 0x7;
+                for (int i = 0; i < order; i++) {
+                    x[i] = signed(read(16));
+                }
+                assertEquals(0, read(2));
+                assertEquals(0, read(4));
+                int k = read(4);
+                for (int i = order; i < count; i++) {
+                    int q = 0;
+                    while (read(1) == 0) {
+                        q++;
+                    }
+                    int u = (q << k) | (k > 0 ? read(k) : 0);
+                    int r = (u >>> 1) ^ -(u & 1);
+                    switch (order) {
+                        case 0:
+                            x[i] = r;
+                            break;
+                        case 1:
+                            x[i] = r + x[i - 1];
+                            break;
+                        case 2:
+                            x[i] = r + 2 * x[i - 1] - x[i - 2];
+                            break;
+                        case 3:
+                            x[i] = r + 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                            break;
+                        default:
+                            x[i] = r + 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                            break;
+                    }
+                }
+            }
+            return x;
+        }
+
+        private byte[] copy(int from, int to) {
+            byte[] out = new byte[to - from];
+            System.arraycopy(mData, from, out, 0, out.length);
+            return out;
+        }
+
+        private int read(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                int b = (mData[mBit >> 3] >> (7 - (mBit & 7))) & 1;
+                value = (value << 1) | b;
+                mBit++;
+            }
+            return (int) value;
+        }
+
+        private static int signed(int value) {
+            return (short) value;
+        }
+    }
+}
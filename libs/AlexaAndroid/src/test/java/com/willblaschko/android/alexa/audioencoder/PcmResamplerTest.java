@@ -0,0 +1,73 @@
+package com.willblaschko.android.alexa.audioencoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PcmResamplerTest {
+
+    private static byte[] pcm(int... samples) {
+        byte[] bytes = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return bytes;
+    }
+
+    private static short[] samples(byte[] pcm) {
+        short[] samples = new short[pcm.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((pcm[2 * i + 1] << 8) | (pcm[2 * i] & 0xff));
+        }
+        return samples;
+    }
+
+    @Test
+    public void passesThrough16kMono() {
+        byte[] input = pcm(1, -2, 300, -32768, 32767);
+        assertArrayEquals(input, new PcmResampler(16000, 1).process(input, 0, input.length));
+    }
+
+    @Test
+    public void halvesTheRate() {
+        short[] output = samples(new PcmResampler(32000, 1).process(pcm(0, 10, 20, 30, 40, 50, 60), 0, 14));
+        assertArrayEquals(new short[]{0, 20, 40}, output);
+    }
+
+    @Test
+    public void interpolates() {
+        short[] output = samples(new PcmResampler(8000, 1).process(pcm(0, 100, 200), 0, 6));
+        assertArrayEquals(new short[]{0, 50, 100, 150}, output);
+    }
+
+    @Test
+    public void averagesChannels() {
+        short[] output = samples(new PcmResampler(16000, 2).process(pcm(100, 300, -100, -300), 0, 8));
+        assertArrayEquals(new short[]{200, -200}, output);
+    }
+
+    @Test
+    public void chunksGiveTheSameResult() {
+        int[] ramp = new int[2205];
+        for (int i = 0; i < ramp.length; i++) {
+            ramp[i] = (i * 7) % 20000 - 10000;
+        }
+        byte[] input = pcm(ramp);
+        byte[] whole = new PcmResampler(22050, 1).process(input, 0, input.length);
+
+        //odd chunk sizes split samples in half
+        PcmResampler resampler = new PcmResampler(22050, 1);
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        for (int offset = 0; offset < input.length; offset += 333) {
+            byte[] part = resampler.process(input, offset, Math.min(333, input.length - offset));
+            chunked.write(part, 0, part.length);
+        }
+        assertArrayEquals(whole, chunked.toByteArray());
+        //100ms in, about 100ms out
+        assertEquals(1600, whole.length / 2, 2);
+    }
+}
@@ -0,0 +1,207 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import android.media.MediaPlayer;
+
+import com.willblaschko.android.alexa.audioplayer.cache.AudioCacheManagers;
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayRemoteItem;
+import com.willblaschko.android.alexa.system.DirectiveSequencer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AlexaAudioPlayerTest {
+
+    private final List<FakePlayer> mPlayers = new ArrayList<>();
+    private final List<AvsItem> mPrepared = new ArrayList<>();
+    private AlexaAudioPlayer mAudioPlayer;
+    private DirectiveSequencer mSequencer;
+
+    /**
+     * Does what the platform does, as far as the listeners can tell
+     */
+    private static class FakePlayer extends MediaPlayer {
+        OnCompletionListener mOnCompletion;
+        OnPreparedListener mOnPrepared;
+        MediaPlayer mNext;
+        int mPrepares = 0;
+        int mResets = 0;
+        boolean mPlaying = false;
+
+        @Override
+        public void setOnCompletionListener(OnCompletionListener listener) {
+            mOnCompletion = listener;
+        }
+
+        @Override
+        public void setOnPreparedListener(OnPreparedListener listener) {
+            mOnPrepared = listener;
+        }
+
+        @Override
+        public void setNextMediaPlayer(MediaPlayer next) {
+            mNext = next;
+        }
+
+        @Override
+        public void prepareAsync() {
+            mPrepares++;
+        }
+
+        @Override
+        public void reset() {
+            mResets++;
+            mPlaying = false;
+        }
+
+        @Override
+        public void start() {
+            mPlaying = true;
+        }
+
+        @Override
+        public void stop() {
+            mPlaying = false;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return mPlaying;
+        }
+
+        void prepared() {
+            mOnPrepared.onPrepared(this);
+        }
+
+        void completed() {
+            mPlaying = false;
+            if (mNext != null) {
+                mNext.start();
+            }
+            mOnCompletion.onCompletion(this);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        File cache = new File(System.getProperty("java.io.tmpdir"), "alexa-audio-player-test");
+        mAudioPlayer = new AlexaAudioPlayer(null, AudioCacheManagers.create(cache), null, new AlexaAudioPlayer.PlayerFactory() {
+            @Override
+            public MediaPlayer create() {
+                FakePlayer player = new FakePlayer();
+                mPlayers.add(player);
+                return player;
+            }
+        });
+        //runs everything right away, on the test thread
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        //wired up like the apps do
+        mSequencer = new DirectiveSequencer(direct, new DirectiveSequencer.ItemHandler() {
+            @Override
+            public boolean handleItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mAudioPlayer.playItem((AvsPlayRemoteItem) item);
+                return true;
+            }
+
+            @Override
+            public void cancelItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mAudioPlayer.stop();
+            }
+
+            @Override
+            public void onIdle() {
+
+            }
+        });
+        mAudioPlayer.addCallback(new AlexaAudioPlayer.Callback() {
+            @Override
+            public void playerPrepared(AvsItem pendingItem) {
+                mPrepared.add(pendingItem);
+            }
+
+            @Override
+            public void playerProgress(AvsItem currentItem, long offsetInMilliseconds, float percent) {
+
+            }
+
+            @Override
+            public void itemComplete(AvsItem completedItem) {
+                mSequencer.complete(completedItem);
+            }
+
+            @Override
+            public boolean playerError(AvsItem item, int what, int extra) {
+                return false;
+            }
+
+            @Override
+            public void dataError(AvsItem item, Exception e) {
+                mSequencer.complete(item);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mAudioPlayer.release();
+    }
+
+    private static AvsPlayRemoteItem play(String token) {
+        return new AvsPlayRemoteItem(token, "https://example.com/" + token + ".mp3", 0);
+    }
+
+    @Test
+    public void chainedItemIsNotPreparedAgain() {
+        AvsPlayRemoteItem first = play("1");
+        AvsPlayRemoteItem second = play("2");
+        mSequencer.enqueue(Arrays.asList(first, second));
+        mAudioPlayer.prefetch(mSequencer.getQueued(DirectiveSequencer.getChannel(second)));
+        assertEquals(2, mPlayers.size());
+        FakePlayer current = mPlayers.get(0);
+        FakePlayer next = mPlayers.get(1);
+
+        current.prepared();
+        next.prepared();
+        assertSame(next, current.mNext);
+
+        current.completed();
+        assertSame(second, mSequencer.getActive());
+        assertSame(second, mAudioPlayer.getCurrentItem());
+        assertSame(next, mAudioPlayer.getMediaPlayer());
+        //the platform started it, nobody prepared it again
+        assertTrue(next.isPlaying());
+        assertEquals(1, next.mPrepares);
+        assertEquals(0, next.mResets);
+        assertEquals(2, mPlayers.size());
+        assertEquals(Arrays.asList((AvsItem) first, second), mPrepared);
+    }
+
+    @Test
+    public void playingTheCurrentItemAgainStartsOver() {
+        AvsPlayRemoteItem first = play("1");
+        mAudioPlayer.playItem(first);
+        FakePlayer player = mPlayers.get(0);
+        player.prepared();
+
+        mAudioPlayer.playItem(first);
+        assertFalse(player.isPlaying());
+        assertEquals(2, player.mPrepares);
+    }
+}
@@ -0,0 +1,202 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackProgressSchedulerTest {
+
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void firesOnlyAtTheMarks() throws Exception {
+        FakePlayer player = new FakePlayer(500);
+        RecordingListener listener = new RecordingListener();
+        PlaybackProgressScheduler scheduler = new PlaybackProgressScheduler(mExecutor, player, listener);
+        scheduler.setProgressReport(100, 150);
+        player.play();
+        scheduler.start();
+        Thread.sleep(550);
+        scheduler.stop();
+
+        assertEquals(1, listener.count("started"));
+        assertEquals(1, listener.count("delay"));
+        //150, 300, 450
+        assertEquals(3, listener.count("interval"));
+        assertEquals(1, listener.count("nearlyFinished"));
+        assertEquals(0, listener.count("tick"));
+        assertEquals("started", listener.mEvents.get(0));
+        for (long position : listener.positions("interval")) {
+            assertTrue("fired early at " + position, position >= 150);
+        }
+        assertTrue(listener.positions("nearlyFinished").get(0) > 400);
+        //what BaseActivity checks before it sends PlaybackNearlyFinished
+        assertTrue(listener.mNearlyFinishedPercent > PlaybackProgressScheduler.NEARLY_FINISHED_PERCENT);
+        //one wakeup per mark, not one every few ms
+        assertTrue("woke up " + scheduler.getWakeups() + " times", scheduler.getWakeups() <= 10);
+    }
+
+    @Test
+    public void liveStreamHasNoNearlyFinished() throws Exception {
+        FakePlayer player = new FakePlayer(-1);
+        RecordingListener listener = new RecordingListener();
+        PlaybackProgressScheduler scheduler = new PlaybackProgressScheduler(mExecutor, player, listener);
+        player.play();
+        scheduler.start();
+        Thread.sleep(100);
+        assertEquals(1, listener.count("started"));
+        assertEquals(0, listener.count("nearlyFinished"));
+        //nothing left to wait for
+        assertEquals(1, scheduler.getWakeups());
+    }
+
+    @Test
+    public void nothingFiresWhilePaused() throws Exception {
+        FakePlayer player = new FakePlayer(300);
+        RecordingListener listener = new RecordingListener();
+        PlaybackProgressScheduler scheduler = new PlaybackProgressScheduler(mExecutor, player, listener);
+        player.play();
+        scheduler.start();
+        Thread.sleep(50);
+        player.pause();
+        scheduler.pause();
+        Thread.sleep(300);
+        assertEquals(0, listener.count("nearlyFinished"));
+
+        player.play();
+        scheduler.resume();
+        Thread.sleep(300);
+        assertEquals(1, listener.count("started"));
+        assertEquals(1, listener.count("nearlyFinished"));
+    }
+
+    @Test
+    public void ticksWhenAskedTo() throws Exception {
+        FakePlayer player = new FakePlayer(-1);
+        RecordingListener listener = new RecordingListener();
+        PlaybackProgressScheduler scheduler = new PlaybackProgressScheduler(mExecutor, player, listener);
+        scheduler.setTickInterval(100);
+        player.play();
+        scheduler.start();
+        Thread.sleep(350);
+        scheduler.stop();
+        int ticks = listener.count("tick");
+        assertTrue("ticks: " + ticks, ticks >= 3 && ticks <= 5);
+    }
+
+    @Test
+    public void releasedPlayerEndsTheSchedule() throws Exception {
+        FakePlayer player = new FakePlayer(1000);
+        player.mReleased = true;
+        RecordingListener listener = new RecordingListener();
+        PlaybackProgressScheduler scheduler = new PlaybackProgressScheduler(mExecutor, player, listener);
+        scheduler.start();
+        Thread.sleep(100);
+        assertTrue(listener.mEvents.isEmpty());
+        assertEquals(1, scheduler.getWakeups());
+    }
+
+    /**
+     * Plays in real time from 0
+     */
+    private static class FakePlayer implements PlaybackProgressScheduler.PositionSource {
+        private final long mDuration;
+        private long mPosition = 0;
+        private long mPlayingSince = -1;
+        private volatile boolean mReleased = false;
+
+        FakePlayer(long duration) {
+            mDuration = duration;
+        }
+
+        synchronized void play() {
+            mPlayingSince = System.currentTimeMillis();
+        }
+
+        synchronized void pause() {
+            mPosition = getPositionMillis();
+            mPlayingSince = -1;
+        }
+
+        @Override
+        public synchronized long getPositionMillis() {
+            if (mReleased) {
+                throw new IllegalStateException();
+            }
+            return mPlayingSince < 0 ? mPosition : mPosition + System.currentTimeMillis() - mPlayingSince;
+        }
+
+        @Override
+        public long getDurationMillis() {
+            return mDuration;
+        }
+    }
+
+    private static class RecordingListener implements PlaybackProgressScheduler.Listener {
+        private final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Long> mPositions = Collections.synchronizedList(new ArrayList<Long>());
+        private volatile float mNearlyFinishedPercent;
+
+        int count(String event) {
+            return Collections.frequency(mEvents, event);
+        }
+
+        List<Long> positions(String event) {
+            List<Long> positions = new ArrayList<>();
+            synchronized (mEvents) {
+                for (int i = 0; i < mEvents.size(); i++) {
+                    if (mEvents.get(i).equals(event)) {
+                        positions.add(mPositions.get(i));
+                    }
+                }
+            }
+            return positions;
+        }
+
+        private void add(String event, long position) {
+            synchronized (mEvents) {
+                mEvents.add(event);
+                mPositions.add(position);
+            }
+        }
+
+        @Override
+        public void onStarted(long positionMillis) {
+            add("started", positionMillis);
+        }
+
+        @Override
+        public void onNearlyFinished(long positionMillis, float percent) {
+            mNearlyFinishedPercent = percent;
+            add("nearlyFinished", positionMillis);
+        }
+
+        @Override
+        public void onProgressReportDelayElapsed(long positionMillis) {
+            add("delay", positionMillis);
+        }
+
+        @Override
+        public void onProgressReportIntervalElapsed(long positionMillis) {
+            add("interval", positionMillis);
+        }
+
+        @Override
+        public void onTick(long positionMillis, float percent) {
+            add("tick", positionMillis);
+        }
+    }
+}
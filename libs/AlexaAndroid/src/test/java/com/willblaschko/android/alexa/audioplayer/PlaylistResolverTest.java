@@ -0,0 +1,185 @@
+package com.willblaschko.android.alexa.audioplayer;
+
+import com.willblaschko.android.alexa.callbacks.ImplAsyncCallback;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlaylistResolverTest {
+
+    @Test
+    public void recognizesPlaylistUrls() {
+        assertTrue(PlaylistResolver.isPlaylistUrl("http://radio.example.com/listen.pls"));
+        assertTrue(PlaylistResolver.isPlaylistUrl("https://radio.example.com/live.M3U?token=1"));
+        assertTrue(PlaylistResolver.isPlaylistUrl("https://cdn.example.com/hls/master.m3u8"));
+        assertFalse(PlaylistResolver.isPlaylistUrl("https://cdn.example.com/news.mp3"));
+        assertFalse(PlaylistResolver.isPlaylistUrl("https://cdn.example.com/stream?format=m3u"));
+    }
+
+    @Test
+    public void parsesM3u() {
+        String body = "#EXTM3U\n#EXTINF:-1,Station\nhttp://a.example.com/stream\n\n# comment\r\nrelative/stream.mp3\r\n";
+        assertEquals(Arrays.asList("http://a.example.com/stream", "http://base.example.com/dir/relative/stream.mp3"),
+                PlaylistResolver.parseM3u(body, "http://base.example.com/dir/list.m3u"));
+    }
+
+    @Test
+    public void parsesPlsInEntryOrder() {
+        String body = "[playlist]\nNumberOfEntries=2\nFile2=http://two.example.com/\nTitle1=One\nFile1=http://one.example.com/\nVersion=2\n";
+        assertEquals(Arrays.asList("http://one.example.com/", "http://two.example.com/"),
+                PlaylistResolver.parsePls(body, "http://base.example.com/list.pls"));
+    }
+
+    @Test
+    public void parsesHlsVariants() {
+        String master = "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=64000,CODECS=\"mp4a.40.5\"\nlow/index.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=128000\nhttps://other.example.com/high.m3u8\n";
+        assertEquals(Arrays.asList("https://cdn.example.com/hls/low/index.m3u8", "https://other.example.com/high.m3u8"),
+                PlaylistResolver.parseHlsVariants(master, "https://cdn.example.com/hls/master.m3u8"));
+        String media = "#EXTM3U\n#EXT-X-TARGETDURATION:10\n#EXTINF:10,\nseg1.aac\n";
+        assertTrue(PlaylistResolver.parseHlsVariants(media, "https://cdn.example.com/hls/low/index.m3u8").isEmpty());
+    }
+
+    @Test
+    public void takesFirstWorkingEntryInOrder() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.playlist("http://radio.example.com/listen.pls",
+                "[playlist]\nFile1=http://dead.example.com/\nFile2=http://slow.example.com/\nFile3=http://fast.example.com/\n");
+        fetcher.fail("http://dead.example.com/");
+        fetcher.audio("http://slow.example.com/", 200);
+        fetcher.audio("http://fast.example.com/", 0);
+        PlaylistResolver resolver = new PlaylistResolver(fetcher, 60000);
+
+        long start = System.currentTimeMillis();
+        assertEquals("http://slow.example.com/", resolver.resolve("http://radio.example.com/listen.pls"));
+        //the entries were tried at the same time
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void followsNestedPlaylistsAndHls() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.playlist("http://radio.example.com/outer.m3u", "http://radio.example.com/inner.m3u8\n");
+        fetcher.playlist("http://radio.example.com/inner.m3u8",
+                "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=48000\naac/48.m3u8\n#EXT-X-STREAM-INF:BANDWIDTH=96000\naac/96.m3u8\n");
+        PlaylistResolver resolver = new PlaylistResolver(fetcher, 60000);
+        assertEquals("http://radio.example.com/aac/48.m3u8", resolver.resolve("http://radio.example.com/outer.m3u"));
+    }
+
+    @Test
+    public void cachesUntilTheTtlRunsOut() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.playlist("http://radio.example.com/a.m3u", "http://stream.example.com/a\n");
+        fetcher.audio("http://stream.example.com/a", 0);
+        PlaylistResolver resolver = new PlaylistResolver(fetcher, 100);
+
+        resolver.resolve("http://radio.example.com/a.m3u");
+        int fetches = fetcher.mFetches.get();
+        assertEquals("http://stream.example.com/a", resolver.resolve("http://radio.example.com/a.m3u"));
+        assertEquals(fetches, fetcher.mFetches.get());
+
+        Thread.sleep(150);
+        assertNull(resolver.getCached("http://radio.example.com/a.m3u"));
+        resolver.resolve("http://radio.example.com/a.m3u");
+        assertTrue(fetcher.mFetches.get() > fetches);
+    }
+
+    @Test
+    public void failsWhenNothingWorks() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.playlist("http://radio.example.com/a.m3u", "http://dead.example.com/1\nhttp://dead.example.com/2\n");
+        fetcher.fail("http://dead.example.com/1");
+        fetcher.fail("http://dead.example.com/2");
+        PlaylistResolver resolver = new PlaylistResolver(fetcher, 60000);
+        try {
+            resolver.resolve("http://radio.example.com/a.m3u");
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+        assertNull(resolver.getCached("http://radio.example.com/a.m3u"));
+    }
+
+    @Test
+    public void reportsABadUrlToTheCallback() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher();
+        fetcher.malformed("htp:/not a url");
+        PlaylistResolver resolver = new PlaylistResolver(fetcher, 60000);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        resolver.resolve("htp:/not a url", new ImplAsyncCallback<String, Exception>() {
+            @Override
+            public void failure(Exception error) {
+                failure.set(error);
+            }
+
+            @Override
+            public void complete() {
+                completed.countDown();
+            }
+        });
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof IllegalArgumentException);
+    }
+
+    private static class FakeFetcher implements PlaylistResolver.Fetcher {
+        private final Map<String, String> mPlaylists = new HashMap<>();
+        private final Map<String, Long> mAudio = new HashMap<>();
+        private final List<String> mFailing = new ArrayList<>();
+        private final List<String> mMalformed = new ArrayList<>();
+        private final AtomicInteger mFetches = new AtomicInteger();
+
+        void playlist(String url, String body) {
+            mPlaylists.put(url, body);
+        }
+
+        void audio(String url, long delay) {
+            mAudio.put(url, delay);
+        }
+
+        void fail(String url) {
+            mFailing.add(url);
+        }
+
+        void malformed(String url) {
+            mMalformed.add(url);
+        }
+
+        @Override
+        public PlaylistResolver.Page fetch(String url) throws IOException {
+            mFetches.incrementAndGet();
+            if (mMalformed.contains(url)) {
+                //what OkHttp does with a URL it can't parse
+                throw new IllegalArgumentException("Expected URL scheme 'http' or 'https' but was 'htp'");
+            }
+            if (mPlaylists.containsKey(url)) {
+                return new PlaylistResolver.Page(url, mPlaylists.get(url));
+            }
+            if (mAudio.containsKey(url)) {
+                try {
+                    Thread.sleep(mAudio.get(url));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new PlaylistResolver.Page(url, null);
+            }
+            throw new IOException("404 " + url);
+        }
+    }
+}
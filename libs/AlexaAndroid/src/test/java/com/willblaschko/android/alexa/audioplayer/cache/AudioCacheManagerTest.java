@@ -0,0 +1,114 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioCacheManagerTest {
+
+    private File mRoot;
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mRoot = File.createTempFile("cache", "");
+        mRoot.delete();
+        mRoot.mkdirs();
+        mDirectory = new File(mRoot, AudioCacheManager.DIRECTORY);
+    }
+
+    @After
+    public void tearDown() {
+        delete(mRoot);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static File file(File dir, String name, int size, long lastModified) throws Exception {
+        dir.mkdirs();
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[size]);
+        out.close();
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+    @Test
+    public void namesFilesByToken() {
+        assertEquals("amzn1-as-ct-v1_abc", AudioCacheManager.fileNameFor("amzn1-as-ct-v1_abc"));
+        String odd = "amzn1.as-ct.v1.#ACRI#url#ACRI#https://example.com/a.mp3";
+        assertEquals(RemoteAudioCache.keyFor(odd), AudioCacheManager.fileNameFor(odd));
+        assertTrue(AudioCacheManager.fileNameFor("").startsWith("audio-"));
+    }
+
+    @Test
+    public void writesEachTokenOnce() throws Exception {
+        AudioCacheManager cache = new AudioCacheManager(mDirectory, null, 1024, 60000);
+        File first = cache.write("token", "mp3", new byte[10]);
+        first.setLastModified(1000);
+        File second = cache.write("token", "mp3", new byte[10]);
+        assertEquals(first, second);
+        //not rewritten, only touched
+        assertTrue(second.lastModified() > 1000);
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverTheSizeLimit() throws Exception {
+        long now = System.currentTimeMillis();
+        File old = file(mDirectory, "a.mp3", 100, now - 3000);
+        File middle = file(mDirectory, "b.mp3", 100, now - 2000);
+        File recent = file(mDirectory, "c.mp3", 100, now - 1000);
+        AudioCacheManager cache = new AudioCacheManager(mDirectory, null, 250, 60000);
+        cache.trimNow();
+        assertFalse(old.exists());
+        assertTrue(middle.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void evictsOldFilesButNotTheOnesInUse() throws Exception {
+        long now = System.currentTimeMillis();
+        File stale = file(mDirectory, "a.mp3", 10, now - 120000);
+        File playing = file(mDirectory, "b.mp3", 10, now - 120000);
+        File fresh = file(mDirectory, "c.mp3", 10, now);
+        AudioCacheManager cache = new AudioCacheManager(mDirectory, null, 1024, 60000);
+        cache.acquire(playing);
+        cache.trimNow();
+        assertFalse(stale.exists());
+        assertTrue(playing.exists());
+        assertTrue(fresh.exists());
+
+        cache.release(playing);
+        playing.setLastModified(now - 120000);
+        cache.trimNow();
+        assertFalse(playing.exists());
+    }
+
+    @Test
+    public void leavesOtherCachesAlone() throws Exception {
+        File legacy = file(mRoot, "speech-12345.mp3", 10, System.currentTimeMillis());
+        File someoneElses = file(mRoot, "image.png", 10, 0);
+        File otherDir = file(new File(mRoot, "remote-audio"), "block", 10, 0);
+        new AudioCacheManager(mDirectory, mRoot, 0, 0).trimNow();
+        assertFalse(legacy.exists());
+        assertTrue(someoneElses.exists());
+        assertTrue(otherDir.exists());
+    }
+}
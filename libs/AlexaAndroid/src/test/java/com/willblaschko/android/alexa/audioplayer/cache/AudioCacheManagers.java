@@ -0,0 +1,14 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import java.io.File;
+
+/**
+ * Lets tests outside this package have an {@link AudioCacheManager} of their own
+ */
+public class AudioCacheManagers {
+
+    public static AudioCacheManager create(File directory) {
+        return new AudioCacheManager(directory, directory, AudioCacheManager.DEFAULT_MAX_BYTES,
+                AudioCacheManager.DEFAULT_MAX_AGE_MILLIS);
+    }
+}
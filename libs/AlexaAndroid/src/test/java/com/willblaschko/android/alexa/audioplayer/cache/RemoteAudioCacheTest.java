@@ -0,0 +1,148 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteAudioCacheTest {
+
+    private static final int BLOCK = RemoteAudioCache.BLOCK_SIZE;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("remote-audio", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void storesAndReadsBlocks() throws Exception {
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        String key = RemoteAudioCache.keyFor("https://example.com/news.mp3");
+        byte[] block = block(1, BLOCK);
+        byte[] dst = new byte[BLOCK];
+
+        assertEquals(-1, cache.readBlock(key, 0, dst));
+        cache.writeBlock(key, BLOCK + 100, 0, block, BLOCK);
+        cache.writeBlock(key, BLOCK + 100, 1, block(2, 100), 100);
+        assertEquals(BLOCK + 100, cache.getLength(key));
+
+        assertEquals(BLOCK, cache.readBlock(key, 0, dst));
+        assertArrayEquals(block, dst);
+        assertEquals(100, cache.readBlock(key, 1, dst));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2f / 3, cache.getHitRate(), 0.001);
+        assertEquals(BLOCK + 100, cache.getBytesSaved());
+        assertEquals(BLOCK + 100, cache.getBytesDownloaded());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 3 * BLOCK);
+        String key = RemoteAudioCache.keyFor("https://example.com/ambient.mp3");
+        long length = 10L * BLOCK;
+        byte[] dst = new byte[BLOCK];
+        for (int i = 0; i < 3; i++) {
+            cache.writeBlock(key, length, i, block(i, BLOCK), BLOCK);
+        }
+        //touch block 0 so block 1 is the oldest
+        assertEquals(BLOCK, cache.readBlock(key, 0, dst));
+        cache.writeBlock(key, length, 3, block(3, BLOCK), BLOCK);
+
+        assertEquals(3L * BLOCK, cache.getSize());
+        assertEquals(-1, cache.readBlock(key, 1, dst));
+        assertEquals(BLOCK, cache.readBlock(key, 0, dst));
+        assertEquals(BLOCK, cache.readBlock(key, 3, dst));
+        assertEquals(3, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void survivesRestart() throws Exception {
+        String key = RemoteAudioCache.keyFor("https://example.com/loop.mp3");
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        cache.writeBlock(key, 2L * BLOCK, 0, block(5, BLOCK), BLOCK);
+        //a half written block from a crash
+        new File(mDirectory, "junk.tmp").createNewFile();
+
+        RemoteAudioCache reopened = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        byte[] dst = new byte[BLOCK];
+        assertEquals(2L * BLOCK, reopened.getLength(key));
+        assertEquals(BLOCK, reopened.readBlock(key, 0, dst));
+        assertArrayEquals(block(5, BLOCK), dst);
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void changedLengthDropsOldBlocks() throws Exception {
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        String key = RemoteAudioCache.keyFor("https://example.com/daily.mp3");
+        byte[] dst = new byte[BLOCK];
+        cache.writeBlock(key, 2L * BLOCK, 0, block(1, BLOCK), BLOCK);
+        cache.writeBlock(key, 2L * BLOCK, 1, block(2, BLOCK), BLOCK);
+        //today's episode is a different file under the same url
+        cache.writeBlock(key, 3L * BLOCK, 0, block(3, BLOCK), BLOCK);
+
+        assertEquals(3L * BLOCK, cache.getLength(key));
+        assertEquals(-1, cache.readBlock(key, 1, dst));
+        assertEquals(BLOCK, cache.readBlock(key, 0, dst));
+        assertArrayEquals(block(3, BLOCK), dst);
+        assertEquals((long) BLOCK, cache.getSize());
+    }
+
+    @Test
+    public void decidesCachingFromTheResponseHeaders() {
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        assertTrue(cache.isCacheable("audio/mpeg", BLOCK));
+        assertTrue(cache.isCacheable("Application/Octet-Stream", BLOCK));
+        assertTrue(cache.isCacheable(null, BLOCK));
+        //live streams and too big
+        assertFalse(cache.isCacheable("audio/mpeg", -1));
+        assertFalse(cache.isCacheable("audio/mpeg", 5 * BLOCK + 1));
+        //playlists and whatever else
+        assertFalse(cache.isCacheable("audio/x-mpegurl", BLOCK));
+        assertFalse(cache.isCacheable("application/vnd.apple.mpegurl", BLOCK));
+        assertFalse(cache.isCacheable("audio/x-scpls", BLOCK));
+        assertFalse(cache.isCacheable("text/html; charset=utf-8", BLOCK));
+    }
+
+    @Test
+    public void clearEmptiesTheDirectory() throws Exception {
+        RemoteAudioCache cache = new RemoteAudioCache(mDirectory, 10 * BLOCK);
+        String key = RemoteAudioCache.keyFor("https://example.com/a.mp3");
+        cache.writeBlock(key, BLOCK, 0, block(1, BLOCK), BLOCK);
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(-1, cache.getLength(key));
+        assertTrue(mDirectory.listFiles().length == 0);
+    }
+
+    private static byte[] block(int seed, int size) {
+        byte[] block = new byte[size];
+        for (int i = 0; i < size; i++) {
+            block[i] = (byte) (seed * 13 + i);
+        }
+        return block;
+    }
+}
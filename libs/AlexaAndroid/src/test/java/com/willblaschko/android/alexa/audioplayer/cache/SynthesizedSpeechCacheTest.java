@@ -0,0 +1,119 @@
+package com.willblaschko.android.alexa.audioplayer.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SynthesizedSpeechCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("synthesized-speech", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void keyDependsOnEverythingThatChangesTheAudio() {
+        String key = SynthesizedSpeechCache.keyFor("pcm", "engine", "voice", .8f, 1.3f, "what time is it");
+        assertEquals(key, SynthesizedSpeechCache.keyFor("pcm", "engine", "voice", .8f, 1.3f, "what time is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("pcm", "engine", "voice", .8f, 1.3f, "what day is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("pcm", "engine", "voice", 1f, 1.3f, "what time is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("pcm", "engine", "voice", .8f, 1f, "what time is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("pcm", "engine", null, .8f, 1.3f, "what time is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("pcm", "other", "voice", .8f, 1.3f, "what time is it"));
+        assertNotEquals(key, SynthesizedSpeechCache.keyFor("wav", "engine", "voice", .8f, 1.3f, "what time is it"));
+    }
+
+    @Test
+    public void storesAndReads() {
+        SynthesizedSpeechCache cache = new SynthesizedSpeechCache(mDirectory, 1000, 1000);
+        assertNull(cache.get("a"));
+        assertFalse(cache.contains("a"));
+
+        cache.put("a", audio(1, 100));
+        assertTrue(cache.contains("a"));
+        assertArrayEquals(audio(1, 100), cache.get("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void survivesOnDisk() {
+        new SynthesizedSpeechCache(mDirectory, 1000, 1000).put("a", audio(1, 100));
+
+        SynthesizedSpeechCache cache = new SynthesizedSpeechCache(mDirectory, 1000, 1000);
+        assertEquals(0, cache.getMemorySize());
+        assertArrayEquals(audio(1, 100), cache.get("a"));
+        //now in memory too
+        assertEquals(100, cache.getMemorySize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFromMemory() {
+        SynthesizedSpeechCache cache = new SynthesizedSpeechCache(mDirectory, 250, 1000);
+        cache.put("a", audio(1, 100));
+        cache.put("b", audio(2, 100));
+        cache.get("a");
+        cache.put("c", audio(3, 100));
+        assertEquals(200, cache.getMemorySize());
+
+        //b is only on disk now
+        new File(mDirectory, "b.pcm").delete();
+        assertNull(cache.get("b"));
+        assertArrayEquals(audio(1, 100), cache.get("a"));
+        assertArrayEquals(audio(3, 100), cache.get("c"));
+    }
+
+    @Test
+    public void trimsTheDisk() {
+        SynthesizedSpeechCache cache = new SynthesizedSpeechCache(mDirectory, 1000, 250);
+        cache.put("a", audio(1, 100));
+        new File(mDirectory, "a.pcm").setLastModified(System.currentTimeMillis() - 60000);
+        cache.put("b", audio(2, 100));
+        cache.put("c", audio(3, 100));
+
+        assertFalse(new File(mDirectory, "a.pcm").exists());
+        assertTrue(new File(mDirectory, "b.pcm").exists());
+        assertTrue(new File(mDirectory, "c.pcm").exists());
+    }
+
+    @Test
+    public void clears() {
+        SynthesizedSpeechCache cache = new SynthesizedSpeechCache(mDirectory, 1000, 1000);
+        cache.put("a", audio(1, 100));
+        cache.clear();
+        assertFalse(cache.contains("a"));
+        assertEquals(0, cache.getMemorySize());
+    }
+
+    private static byte[] audio(int value, int length) {
+        byte[] audio = new byte[length];
+        for (int i = 0; i < length; i++) {
+            audio[i] = (byte) (value + i);
+        }
+        return audio;
+    }
+}
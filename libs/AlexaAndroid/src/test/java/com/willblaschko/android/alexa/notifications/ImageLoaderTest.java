@@ -0,0 +1,32 @@
+package com.willblaschko.android.alexa.notifications;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageLoaderTest {
+
+    @Test
+    public void keepsSmallImages() {
+        assertEquals(1, ImageLoader.calculateSampleSize(100, 100, 128, 128));
+        assertEquals(1, ImageLoader.calculateSampleSize(200, 200, 128, 128));
+    }
+
+    @Test
+    public void downsamplesToAtLeastTheShownSize() {
+        assertEquals(2, ImageLoader.calculateSampleSize(256, 256, 128, 128));
+        assertEquals(8, ImageLoader.calculateSampleSize(3000, 3000, 256, 256));
+        //3000 / 16 would be too small
+        assertEquals(8, ImageLoader.calculateSampleSize(3000, 3000, 300, 300));
+    }
+
+    @Test
+    public void keepsTheShorterSideBigEnough() {
+        assertEquals(2, ImageLoader.calculateSampleSize(4000, 600, 256, 256));
+    }
+
+    @Test
+    public void doesNothingWithoutASize() {
+        assertEquals(1, ImageLoader.calculateSampleSize(4000, 4000, 0, 0));
+    }
+}
@@ -0,0 +1,81 @@
+package com.willblaschko.android.alexa.system;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AlertQueueTest {
+
+    private static AlertQueue.Alert alert(String token, long time) {
+        return new AlertQueue.Alert(token, "TIMER", time);
+    }
+
+    @Test
+    public void ordersByTime() {
+        AlertQueue queue = new AlertQueue();
+        queue.put(alert("c", 300));
+        queue.put(alert("a", 100));
+        queue.put(alert("b", 200));
+
+        assertEquals("a", queue.peek().mToken);
+        List<AlertQueue.Alert> all = queue.getAll();
+        assertEquals("a", all.get(0).mToken);
+        assertEquals("b", all.get(1).mToken);
+        assertEquals("c", all.get(2).mToken);
+    }
+
+    @Test
+    public void keepsAlertsAtTheSameTime() {
+        AlertQueue queue = new AlertQueue();
+        queue.put(alert("a", 100));
+        queue.put(alert("b", 100));
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.pollDue(100).size());
+    }
+
+    @Test
+    public void replacesByToken() {
+        AlertQueue queue = new AlertQueue();
+        AlertQueue.Alert first = alert("a", 100);
+        queue.put(first);
+        queue.put(alert("b", 200));
+
+        assertSame(first, queue.put(alert("a", 300)));
+        assertEquals(2, queue.size());
+        assertEquals("b", queue.peek().mToken);
+        assertEquals(300, queue.get("a").mTime);
+    }
+
+    @Test
+    public void removesByToken() {
+        AlertQueue queue = new AlertQueue();
+        queue.put(alert("a", 100));
+        queue.put(alert("b", 200));
+
+        assertEquals("a", queue.remove("a").mToken);
+        assertNull(queue.remove("a"));
+        assertNull(queue.get("a"));
+        assertEquals("b", queue.peek().mToken);
+    }
+
+    @Test
+    public void pollsWhatIsDue() {
+        AlertQueue queue = new AlertQueue();
+        for (int i = 0; i < 500; i++) {
+            queue.put(alert("alert" + i, 1000 - i));
+        }
+
+        List<AlertQueue.Alert> due = queue.pollDue(600);
+        assertEquals(100, due.size());
+        assertEquals(501, due.get(0).mTime);
+        assertEquals(600, due.get(99).mTime);
+        assertEquals(400, queue.size());
+        assertEquals(601, queue.peek().mTime);
+        assertNull(queue.get("alert400"));
+        assertEquals(0, queue.pollDue(600).size());
+    }
+}
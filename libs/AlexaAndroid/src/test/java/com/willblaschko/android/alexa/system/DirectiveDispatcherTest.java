@@ -0,0 +1,104 @@
+package com.willblaschko.android.alexa.system;
+
+import com.willblaschko.android.alexa.callbacks.DirectiveListener;
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+import com.willblaschko.android.alexa.interfaces.speaker.AvsAdjustVolumeItem;
+import com.willblaschko.android.alexa.interfaces.speaker.AvsSetVolumeItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectiveDispatcherTest {
+
+    private final DirectiveDispatcher mDispatcher = new DirectiveDispatcher();
+
+    private static class Recorder<T extends AvsItem> implements DirectiveListener<T> {
+        final List<AvsItem> mItems = new ArrayList<>();
+
+        @Override
+        public void onDirective(T item) {
+            mItems.add(item);
+        }
+    }
+
+    @Test
+    public void deliversByType() {
+        Recorder<AvsSetVolumeItem> volume = new Recorder<>();
+        Recorder<AvsItem> all = new Recorder<>();
+        mDispatcher.addListener(AvsSetVolumeItem.class, volume, DirectiveDispatcher.POSTING_THREAD);
+        mDispatcher.addListener(AvsItem.class, all, DirectiveDispatcher.POSTING_THREAD);
+
+        AvsItem set = new AvsSetVolumeItem("set", 50);
+        AvsItem adjust = new AvsAdjustVolumeItem("adjust", 10);
+        mDispatcher.dispatch(set);
+        mDispatcher.dispatch(adjust);
+        mDispatcher.dispatch(set);
+
+        assertEquals(Arrays.asList(set, set), volume.mItems);
+        assertEquals(Arrays.asList(set, adjust, set), all.mItems);
+    }
+
+    @Test
+    public void deliversOnTheListenersExecutor() {
+        final List<Runnable> queued = new ArrayList<>();
+        Executor later = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        Recorder<AvsItem> recorder = new Recorder<>();
+        mDispatcher.addListener(AvsItem.class, recorder, later);
+
+        AvsItem item = new AvsSetVolumeItem("set", 50);
+        mDispatcher.dispatch(item);
+        assertTrue(recorder.mItems.isEmpty());
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+        assertEquals(Arrays.asList(item), recorder.mItems);
+    }
+
+    @Test
+    public void removesListeners() {
+        Recorder<AvsItem> recorder = new Recorder<>();
+        mDispatcher.addListener(AvsItem.class, recorder, DirectiveDispatcher.POSTING_THREAD);
+        mDispatcher.addListener(AvsSetVolumeItem.class, recorder, DirectiveDispatcher.POSTING_THREAD);
+        mDispatcher.dispatch(new AvsSetVolumeItem("set", 50));
+        assertEquals(2, recorder.mItems.size());
+
+        mDispatcher.removeListener(recorder);
+        assertFalse(mDispatcher.hasListeners());
+        mDispatcher.dispatch(new AvsSetVolumeItem("set", 50));
+        assertEquals(2, recorder.mItems.size());
+    }
+
+    @Test
+    public void picksUpListenersAddedAfterADispatch() {
+        AvsItem item = new AvsSetVolumeItem("set", 50);
+        Recorder<AvsItem> first = new Recorder<>();
+        mDispatcher.addListener(AvsItem.class, first, DirectiveDispatcher.POSTING_THREAD);
+        mDispatcher.dispatch(item);
+
+        Recorder<AvsSetVolumeItem> second = new Recorder<>();
+        mDispatcher.addListener(AvsSetVolumeItem.class, second, DirectiveDispatcher.POSTING_THREAD);
+        mDispatcher.dispatch(item);
+
+        assertEquals(2, first.mItems.size());
+        assertEquals(1, second.mItems.size());
+    }
+
+    @Test
+    public void dispatchesWithoutListeners() {
+        assertFalse(mDispatcher.hasListeners());
+        mDispatcher.dispatch(new AvsSetVolumeItem("set", 50));
+    }
+}
@@ -0,0 +1,219 @@
+package com.willblaschko.android.alexa.system;
+
+import com.willblaschko.android.alexa.interfaces.AvsItem;
+import com.willblaschko.android.alexa.interfaces.audioplayer.AvsPlayRemoteItem;
+import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceAllItem;
+import com.willblaschko.android.alexa.interfaces.playbackcontrol.AvsReplaceEnqueuedItem;
+import com.willblaschko.android.alexa.interfaces.speaker.AvsSetVolumeItem;
+import com.willblaschko.android.alexa.interfaces.speechrecognizer.AvsExpectSpeechItem;
+import com.willblaschko.android.alexa.interfaces.speechsynthesizer.AvsSpeakItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectiveSequencerTest {
+
+    private final List<AvsItem> mHandled = new ArrayList<>();
+    private final List<AvsItem> mCancelled = new ArrayList<>();
+    private int mIdle = 0;
+    private DirectiveSequencer mSequencer;
+
+    @Before
+    public void setUp() {
+        //runs everything right away, on the test thread
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        mSequencer = new DirectiveSequencer(direct, new DirectiveSequencer.ItemHandler() {
+            @Override
+            public boolean handleItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mHandled.add(item);
+                if (item instanceof AvsExpectSpeechItem) {
+                    //starts listening, like the apps do
+                    mSequencer.clearQueued(false);
+                }
+                //audio keeps going, everything else is done right away
+                return item instanceof AvsSpeakItem || item instanceof AvsPlayRemoteItem;
+            }
+
+            @Override
+            public void cancelItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mCancelled.add(item);
+            }
+
+            @Override
+            public void onIdle() {
+                mIdle++;
+            }
+        });
+    }
+
+    private static AvsSpeakItem speak(String token) {
+        return new AvsSpeakItem(token, "cid", new byte[0]);
+    }
+
+    private static AvsPlayRemoteItem play(String token) {
+        return new AvsPlayRemoteItem(token, "https://example.com/" + token + ".mp3", 0);
+    }
+
+    @Test
+    public void runsOneItemAtATime() {
+        AvsItem first = speak("1");
+        AvsItem volume = new AvsSetVolumeItem("v", 50);
+        AvsItem second = speak("2");
+        mSequencer.enqueue(Arrays.asList(first, volume, second));
+        assertEquals(Arrays.asList(first), mHandled);
+
+        mSequencer.complete(first);
+        assertEquals(Arrays.asList(first, volume, second), mHandled);
+        assertEquals(0, mIdle);
+
+        //completing something that's not active does nothing
+        mSequencer.complete(first);
+        assertEquals(3, mHandled.size());
+
+        mSequencer.complete(second);
+        assertEquals(1, mIdle);
+    }
+
+    @Test
+    public void dialogGoesBeforeQueuedContent() {
+        AvsItem song = play("song");
+        AvsItem next = play("next");
+        mSequencer.enqueue(Arrays.asList(song, next));
+        AvsItem answer = speak("answer");
+        mSequencer.enqueue(Arrays.<AvsItem>asList(answer));
+        //the playing song is not interrupted
+        assertEquals(Arrays.<AvsItem>asList(song), mHandled);
+
+        mSequencer.complete(song);
+        assertEquals(Arrays.asList(song, answer), mHandled);
+        mSequencer.complete(answer);
+        assertEquals(Arrays.asList(song, answer, next), mHandled);
+    }
+
+    @Test
+    public void replaceAllStopsContentButNotDialog() {
+        AvsItem song = play("song");
+        AvsItem queued = play("queued");
+        mSequencer.enqueue(Arrays.asList(song, queued));
+
+        AvsItem answer = speak("answer");
+        AvsItem replacement = play("replacement");
+        mSequencer.enqueue(Arrays.asList(new AvsReplaceAllItem("r"), answer, replacement));
+        assertEquals(Arrays.<AvsItem>asList(song), mCancelled);
+        assertEquals(Arrays.asList(song, answer), mHandled);
+
+        mSequencer.complete(answer);
+        assertEquals(Arrays.asList(song, answer, replacement), mHandled);
+        assertEquals(2, mSequencer.getMetrics().getCleared(DirectiveSequencer.Channel.CONTENT));
+    }
+
+    @Test
+    public void replaceEnqueuedKeepsThePlayingItem() {
+        AvsItem song = play("song");
+        AvsItem queued = play("queued");
+        mSequencer.enqueue(Arrays.asList(song, queued));
+
+        AvsItem replacement = play("replacement");
+        mSequencer.enqueue(Arrays.asList(new AvsReplaceEnqueuedItem("r"), replacement));
+        assertTrue(mCancelled.isEmpty());
+        assertEquals(Arrays.asList(replacement), mSequencer.getQueued(DirectiveSequencer.Channel.CONTENT));
+
+        mSequencer.complete(song);
+        assertEquals(Arrays.asList(song, replacement), mHandled);
+    }
+
+    @Test
+    public void expectSpeechDropsTheRestWithoutGoingIdle() {
+        AvsItem question = speak("question");
+        AvsItem listen = new AvsExpectSpeechItem("listen", 8000);
+        AvsItem song = play("song");
+        mSequencer.enqueue(Arrays.asList(question, listen, song));
+
+        mSequencer.complete(question);
+        //nothing plays while the mic is open and the dialog isn't over
+        assertEquals(Arrays.asList(question, listen), mHandled);
+        assertTrue(mSequencer.getQueued(DirectiveSequencer.Channel.CONTENT).isEmpty());
+        assertEquals(0, mIdle);
+
+        //the answer to what was heard
+        AvsItem answer = speak("answer");
+        mSequencer.enqueue(Arrays.asList(answer));
+        mSequencer.complete(answer);
+        assertEquals(Arrays.asList(question, listen, answer), mHandled);
+        assertEquals(1, mIdle);
+    }
+
+    @Test
+    public void bargeInFlushesAndCapturesInOneTask() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final DirectiveSequencer sequencer = new DirectiveSequencer(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, new DirectiveSequencer.ItemHandler() {
+            @Override
+            public boolean handleItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mHandled.add(item);
+                return true;
+            }
+
+            @Override
+            public void cancelItem(AvsItem item, DirectiveSequencer.Channel channel) {
+                mCancelled.add(item);
+            }
+
+            @Override
+            public void onIdle() {
+                mIdle++;
+            }
+        });
+        final AvsItem answer = speak("answer");
+        final AvsItem song = play("song");
+        sequencer.enqueue(Arrays.asList(answer, song));
+        sequencer.complete(answer);
+        final List<AvsItem> activeWhenCapturing = new ArrayList<>();
+        sequencer.execute(new Runnable() {
+            @Override
+            public void run() {
+                sequencer.clearNow(false, DirectiveSequencer.Channel.DIALOG, DirectiveSequencer.Channel.CONTENT);
+                activeWhenCapturing.add(sequencer.getActive());
+            }
+        });
+        //what was posted before the barge-in still runs first
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+
+        assertEquals(Arrays.asList(answer, song), mHandled);
+        assertEquals(Arrays.asList(song), mCancelled);
+        assertEquals(Arrays.asList((AvsItem) null), activeWhenCapturing);
+        //the dialog goes on with the capture
+        assertEquals(0, mIdle);
+    }
+
+    @Test
+    public void countsQueueLatency() {
+        AvsItem first = speak("1");
+        AvsItem second = speak("2");
+        mSequencer.enqueue(Arrays.asList(first, second));
+        mSequencer.complete(first);
+        DirectiveSequencer.Metrics metrics = mSequencer.getMetrics();
+        assertEquals(2, metrics.getDispatched(DirectiveSequencer.Channel.DIALOG));
+        assertEquals(0, metrics.getDispatched(DirectiveSequencer.Channel.CONTENT));
+        assertTrue(metrics.getMaxQueueLatency(DirectiveSequencer.Channel.DIALOG) >= 0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.willblaschko.android.alexa.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StagedInitializerTest {
+
+    //runs everything right away, on the test thread
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Runnable log(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void dependenciesRunFirst() {
+        List<String> order = new ArrayList<>();
+        StagedInitializer initializer = new StagedInitializer(DIRECT, DIRECT, new StartupTracer())
+                .addStage("a", false, log(order, "a"))
+                .addStage("b", false, log(order, "b"), "a")
+                .addStage("c", true, log(order, "c"), "a", "b");
+        assertFalse(initializer.isDone("a"));
+        initializer.start();
+        assertEquals(3, order.size());
+        assertTrue(order.indexOf("a") < order.indexOf("b"));
+        assertTrue(order.indexOf("b") < order.indexOf("c"));
+        assertTrue(initializer.isDone("c"));
+    }
+
+    @Test
+    public void failedStageDoesNotBlockTheRest() throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        StagedInitializer initializer = new StagedInitializer(DIRECT, DIRECT, new StartupTracer())
+                .addStage("broken", false, new Runnable() {
+                    @Override
+                    public void run() {
+                        throw new IllegalStateException("broken");
+                    }
+                })
+                .addStage("after", false, log(order, "after"), "broken");
+        initializer.start();
+        assertTrue(initializer.await("after", 1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("after"), order);
+    }
+
+    @Test
+    public void whenDoneRunsOnceTheStageIs() {
+        List<String> order = new ArrayList<>();
+        StagedInitializer initializer = new StagedInitializer(DIRECT, DIRECT, new StartupTracer())
+                .addStage("a", false, log(order, "a"));
+        initializer.whenDone("a", log(order, "then"));
+        assertTrue(order.isEmpty());
+        initializer.start();
+        assertEquals(2, order.size());
+        assertEquals("then", order.get(1));
+        //done already, runs right away
+        initializer.whenDone("a", log(order, "again"));
+        assertEquals("again", order.get(2));
+    }
+
+    @Test
+    public void backgroundStagesRunInParallelAndAreTraced() throws InterruptedException {
+        ExecutorService background = Executors.newFixedThreadPool(2);
+        StartupTracer tracer = new StartupTracer();
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        StagedInitializer initializer = new StagedInitializer(DIRECT, background, tracer)
+                .addStage("a", false, log(order, "a"))
+                .addStage("b", false, log(order, "b"))
+                .addStage("c", false, log(order, "c"), "a", "b");
+        initializer.start();
+        assertTrue(initializer.await("c", 5, TimeUnit.SECONDS));
+        background.shutdown();
+        assertEquals("c", order.get(2));
+
+        List<String> names = new ArrayList<>();
+        for (StartupTracer.Span span : tracer.getSpans()) {
+            names.add(span.getName());
+        }
+        assertTrue(names.contains("a"));
+        assertTrue(names.contains("c"));
+        assertTrue(tracer.toJson().startsWith("{\"traceEvents\":[{\"name\":"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDependency() {
+        new StagedInitializer(DIRECT, DIRECT, new StartupTracer()).addStage("a", false, log(new ArrayList<String>(), "a"), "missing");
+    }
+}
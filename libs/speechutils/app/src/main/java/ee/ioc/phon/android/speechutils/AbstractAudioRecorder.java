@@ -20,6 +20,8 @@ import android.media.AudioFormat;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+import ee.ioc.phon.android.speechutils.dsp.PolyphaseResampler;
+import ee.ioc.phon.android.speechutils.dsp.ProcessingChain;
 import ee.ioc.phon.android.speechutils.utils.AudioUtils;
 
 public abstract class AbstractAudioRecorder implements AudioRecorder {
@@ -27,12 +29,15 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
     private static final int RESOLUTION = AudioFormat.ENCODING_PCM_16BIT;
     private static final int BUFFER_SIZE_MULTIPLIER = 4; // was: 2
     private static final int DEFAULT_BUFFER_LENGTH_IN_MILLIS = 35000;
+    private static final int DEFAULT_BUS_LENGTH_IN_MILLIS = 5000;
 
     private SpeechRecord mRecorder = null;
 
     private double mAvgEnergy = 0;
 
     private final int mSampleRate;
+    // Rate at which the mic is opened, differs from mSampleRate if we resample ourselves
+    private final int mCaptureRate;
     private final int mSamplesInOneSec;
     private final int mSamplesInOneMilliSec;
     private final boolean mAlwaysListen;
@@ -60,8 +65,30 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
     // Buffer for output
     private byte[] mBuffer;
 
+    // Created on demand, shares every read buffer with all of its subscribers
+    private volatile AudioBus mAudioBus;
+
+    // Only used if the capture rate differs from the sample rate
+    private final PolyphaseResampler mResampler;
+    private short[] mCaptureBuffer;
+    private short[] mResampledBuffer;
+
+    // Optional pre-processing (high-pass, AGC, noise gate...), runs on every read buffer
+    private volatile ProcessingChain mProcessingChain;
+    private short[] mProcessingBuffer;
+
     protected AbstractAudioRecorder(int audioSource, int sampleRate, int recordingBufferLengthMillis, boolean alwaysListen) {
+        this(audioSource, sampleRate, sampleRate, recordingBufferLengthMillis, alwaysListen);
+    }
+
+    /**
+     * @param captureRate rate at which the microphone is opened, e.g. the native rate of the device (48000).
+     *                    The audio is resampled to sampleRate before it is stored.
+     */
+    protected AbstractAudioRecorder(int audioSource, int sampleRate, int captureRate, int recordingBufferLengthMillis, boolean alwaysListen) {
         mSampleRate = sampleRate;
+        mCaptureRate = captureRate;
+        mResampler = (captureRate == sampleRate) ? null : new PolyphaseResampler(captureRate, sampleRate, CHANNELS);
         // E.g. 1 second of 16kHz 16-bit mono audio takes 32000 bytes.
         mSamplesInOneSec = RESOLUTION_IN_BYTES * CHANNELS * mSampleRate;
         mSamplesInOneMilliSec = (int) ((double) mSamplesInOneSec / 1000.0);
@@ -74,9 +101,14 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
         this(audioSource, sampleRate, DEFAULT_BUFFER_LENGTH_IN_MILLIS, false);
     }
 
+    protected AbstractAudioRecorder(int audioSource, int sampleRate, int captureRate) {
+        this(audioSource, sampleRate, captureRate, DEFAULT_BUFFER_LENGTH_IN_MILLIS, false);
+    }
+
     protected SpeechRecord createRecorder(int audioSource, int sampleRate, int bufferSize) {
+        // not release(), the audio bus stays open when the recorder is recreated
         if (mRecorder != null)
-            release();
+            releaseSpeechRecord();
 
         mRecorder = new SpeechRecord(audioSource, sampleRate, AudioFormat.CHANNEL_IN_MONO, RESOLUTION, bufferSize, false, false, false);
         if (getSpeechRecordState() != SpeechRecord.STATE_INITIALIZED) {
@@ -92,12 +124,12 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
     }
 
     protected int getBufferSize() {
-        int minBufferSizeInBytes = SpeechRecord.getMinBufferSize(mSampleRate, AudioFormat.CHANNEL_IN_MONO, RESOLUTION);
+        int minBufferSizeInBytes = SpeechRecord.getMinBufferSize(mCaptureRate, AudioFormat.CHANNEL_IN_MONO, RESOLUTION);
         if (minBufferSizeInBytes == SpeechRecord.ERROR_BAD_VALUE) {
             throw new IllegalArgumentException("SpeechRecord.getMinBufferSize: parameters not supported by hardware");
         } else if (minBufferSizeInBytes == SpeechRecord.ERROR) {
             Log.e("SpeechRecord.getMinBufferSize: unable to query hardware for output properties");
-            minBufferSizeInBytes = mSampleRate * (120 / 1000) * RESOLUTION_IN_BYTES * CHANNELS;
+            minBufferSizeInBytes = mCaptureRate * (120 / 1000) * RESOLUTION_IN_BYTES * CHANNELS;
         }
         int bufferSize = BUFFER_SIZE_MULTIPLIER * minBufferSizeInBytes;
         Log.i("SpeechRecord buffer size: " + bufferSize + ", min size = " + minBufferSizeInBytes);
@@ -121,6 +153,13 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
         return mSampleRate;
     }
 
+    /**
+     * @return the rate at which the microphone is opened
+     */
+    public int getCaptureRate() {
+        return mCaptureRate;
+    }
+
     protected int getNumOfSamplesIn(int millis) {
         return Math.abs(millis) * mSamplesInOneMilliSec;
     }
@@ -178,6 +217,10 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
                         (reachedTheEndOfRecordingBuffer && mConsumedLength < mRecordedLength));
     }
 
+    protected long getRecordedSessionId() {
+        return mRecordedSessionId.get();
+    }
+
     public long markNewRecordingSession() {
         return mRecordedSessionId.incrementAndGet();
     }
@@ -188,13 +231,25 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
      */
     protected int read(SpeechRecord recorder, byte[] buffer) {
         int len = buffer.length;
-        int numOfBytes = recorder.read(buffer, 0, len);
+        int numOfBytes;
+        ProcessingChain processingChain = mProcessingChain;
+        if (mResampler == null) {
+            numOfBytes = recorder.read(buffer, 0, len);
+            if (processingChain != null && numOfBytes > 0) {
+                process(processingChain, buffer, numOfBytes);
+            }
+        } else {
+            numOfBytes = readResampled(recorder, buffer, processingChain);
+        }
         // handling mediaserver crashes here
         // it doesn't happen a lot but it happens and the way to handle it is to fully restart
         // the audio recorder
         if (numOfBytes == 0 && mAlwaysListen) {
             consumeRecordingAndTruncate();
             mBuffer = new byte[mBuffer.length];
+            if (mResampler != null) {
+                mResampler.reset();
+            }
             createRecorder(recorder.getAudioSource(), recorder.getSampleRate(), getBufferSize());
             start();
         }
@@ -225,6 +280,11 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
                 mRecordedLength = numOfBytes - numOfBytesBeforeCyclic;
             }
 
+            AudioBus audioBus = mAudioBus;
+            if (audioBus != null) {
+                audioBus.write(buffer, 0, numOfBytes);
+            }
+
             // increment the recorded session id in case that the consume pointer was crossed
             if (isConsumePointerCrossed(reachedTheEndOfRecordingBuffer, numOfBytes)) {
                 Log.i("recorder session changed. mRecordedLength was: " + (mRecordedLength - numOfBytes) + " and now it is: " + mRecordedLength + " while the mConsumedLength is: " + mConsumedLength);
@@ -235,6 +295,96 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
         return mAlwaysListen ? 0 : status;
     }
 
+    /**
+     * Read at the capture rate and fill the given buffer with audio resampled to the sample rate.
+     * The scratch arrays are allocated once, the resampler itself does not allocate.
+     *
+     * @return number of bytes written to buffer (more than 0), or what the SpeechRecord returned if it read nothing
+     */
+    private int readResampled(SpeechRecord recorder, byte[] buffer, ProcessingChain processingChain) {
+        int maxSamples = buffer.length / RESOLUTION_IN_BYTES;
+        int frames = mResampler.getMaxInputFrames(maxSamples);
+        if (mCaptureBuffer == null || mCaptureBuffer.length != frames * CHANNELS) {
+            mCaptureBuffer = new short[frames * CHANNELS];
+            mResampledBuffer = new short[maxSamples];
+        }
+        // a short read may not add up to an output sample yet, read on, read() takes 0 for a mediaserver crash
+        int numOfSamples = 0;
+        while (numOfSamples == 0) {
+            int numOfShorts = recorder.read(mCaptureBuffer, 0, mCaptureBuffer.length);
+            if (numOfShorts <= 0) {
+                return numOfShorts;
+            }
+            numOfSamples = mResampler.process(mCaptureBuffer, 0, numOfShorts / CHANNELS, mResampledBuffer, 0);
+        }
+        if (processingChain != null) {
+            processingChain.process(mResampledBuffer, 0, numOfSamples);
+        }
+        for (int i = 0; i < numOfSamples; i++) {
+            short sample = mResampledBuffer[i];
+            buffer[2 * i] = (byte) sample;
+            buffer[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return numOfSamples * RESOLUTION_IN_BYTES;
+    }
+
+    /**
+     * <p>Returns the bus that fans the recorded audio out to independent consumers, creating it
+     * (with room for 5 seconds of audio) on first use. Unlike {@link #consumeRecording()}, subscribers
+     * of the bus do not affect each other.</p>
+     * <p/>
+     * <p>Subscribe before calling {@link #start()} to get the audio from the very beginning.</p>
+     */
+    public AudioBus getAudioBus() {
+        return getAudioBus(DEFAULT_BUS_LENGTH_IN_MILLIS);
+    }
+
+    /**
+     * @param lengthInMillis capacity of the bus if it needs to be created, ignored otherwise
+     */
+    public synchronized AudioBus getAudioBus(int lengthInMillis) {
+        if (mAudioBus == null) {
+            mAudioBus = new AudioBus(getNumOfSamplesIn(lengthInMillis));
+        }
+        return mAudioBus;
+    }
+
+    /**
+     * Run the processing chain on the little endian bytes, in place
+     */
+    private void process(ProcessingChain processingChain, byte[] buffer, int numOfBytes) {
+        int numOfSamples = numOfBytes / RESOLUTION_IN_BYTES;
+        if (mProcessingBuffer == null || mProcessingBuffer.length < numOfSamples) {
+            mProcessingBuffer = new short[numOfSamples];
+        }
+        short[] samples = mProcessingBuffer;
+        for (int i = 0; i < numOfSamples; i++) {
+            samples[i] = (short) ((buffer[2 * i] & 0xff) | (buffer[2 * i + 1] << 8));
+        }
+        processingChain.process(samples, 0, numOfSamples);
+        for (int i = 0; i < numOfSamples; i++) {
+            buffer[2 * i] = (byte) samples[i];
+            buffer[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+    }
+
+    /**
+     * <p>Set the DSP stages that are run on the audio before it is stored, published on the
+     * {@link AudioBus} or encoded. Can be changed while recording, null turns processing off.</p>
+     *
+     * @param processingChain e.g. {@link ProcessingChain#createDefault(int)} with the sample rate of this recorder
+     */
+    public void setProcessingChain(ProcessingChain processingChain) {
+        if (processingChain != null && processingChain.getSampleRate() != mSampleRate) {
+            throw new IllegalArgumentException("Processing chain sample rate " + processingChain.getSampleRate()
+                    + " does not match the recorder sample rate " + mSampleRate);
+        }
+        mProcessingChain = processingChain;
+    }
+
+    public ProcessingChain getProcessingChain() {
+        return mProcessingChain;
+    }
 
     /**
      * @return recorder state
@@ -357,6 +507,13 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
      * set to null after a call to release().</p>
      */
     public synchronized void release() {
+        if (mAudioBus != null) {
+            mAudioBus.close();
+        }
+        releaseSpeechRecord();
+    }
+
+    private void releaseSpeechRecord() {
         if (mRecorder != null) {
             if (mRecorder.getRecordingState() == SpeechRecord.RECORDSTATE_RECORDING) {
                 stop();
@@ -371,6 +528,13 @@ public abstract class AbstractAudioRecorder implements AudioRecorder {
      */
     public void start() {
         if (getSpeechRecordState() == SpeechRecord.STATE_INITIALIZED) {
+            if (mResampler != null) {
+                mResampler.reset();
+            }
+            ProcessingChain processingChain = mProcessingChain;
+            if (processingChain != null) {
+                processingChain.reset();
+            }
             mRecorder.startRecording();
             if (mRecorder.getRecordingState() == SpeechRecord.RECORDSTATE_RECORDING) {
                 setState(State.RECORDING);
@@ -0,0 +1,290 @@
+package ee.ioc.phon.android.speechutils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Fan-out of the recorded audio to any number of consumers (uploader, VAD, hotword, level meter,
+ * file sink...). There is a single ring buffer written by the recorder thread, and every
+ * {@link Subscription} has its own read cursor into it, so consumers never steal audio from each other
+ * and there are no per-consumer buffers.</p>
+ * <p/>
+ * <p>A subscriber that falls more than the ring capacity behind has overrun, what happens then is decided by
+ * its {@link OverrunPolicy}.</p>
+ * <p/>
+ * <p>Positions are absolute byte counts since the bus was created. The monitor is only held while bytes are
+ * copied in or out of the ring (never while a consumer does I/O), so a slow consumer cannot block the
+ * recorder.</p>
+ */
+public class AudioBus {
+
+    public enum OverrunPolicy {
+        /**
+         * Keep reading from the oldest audio still in the ring, the overwritten part is lost.
+         * Best for consumers that want as much continuous audio as possible (file sink).
+         */
+        DROP_OLDEST,
+        /**
+         * Jump to the newest audio, everything that was not read yet is dropped.
+         * Best for consumers that only care about the present (level meter, VAD).
+         */
+        SKIP_TO_LATEST,
+        /**
+         * Disconnect the subscriber, reads return -1 from then on.
+         * Best for consumers that cannot deal with a gap in the audio (uploader).
+         */
+        DISCONNECT
+    }
+
+    private final byte[] mRing;
+    private final int mCapacity;
+    private final List<Subscription> mSubscriptions = new ArrayList<>();
+
+    private long mWritePosition = 0;
+    private boolean mClosed = false;
+
+    /**
+     * @param capacity size of the ring in bytes, i.e. how far a subscriber can fall behind before it overruns
+     */
+    public AudioBus(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mRing = new byte[capacity];
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return number of bytes written since the bus was created
+     */
+    public synchronized long getWritePosition() {
+        return mWritePosition;
+    }
+
+    public synchronized int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+
+    /**
+     * Subscribe at the current write position, i.e. the subscriber gets the audio recorded from now on.
+     */
+    public Subscription subscribe(String name, OverrunPolicy policy) {
+        return subscribe(name, policy, 0);
+    }
+
+    /**
+     * @param backlog number of bytes (recorded before this call) that the subscriber wants to get as well,
+     *                limited to what is still in the ring
+     */
+    public synchronized Subscription subscribe(String name, OverrunPolicy policy, int backlog) {
+        long oldest = Math.max(0, mWritePosition - mCapacity);
+        return subscribeAt(name, policy, Math.max(oldest, mWritePosition - Math.max(0, backlog)));
+    }
+
+    /**
+     * Subscribe at an absolute position, e.g. where an earlier subscriber of the same session stopped
+     * (see {@link Subscription#getPosition()}). A position in the future is fine, reads return nothing
+     * until the recorder gets there. A position that is no longer in the ring is an overrun from the start.
+     */
+    public synchronized Subscription subscribeAt(String name, OverrunPolicy policy, long position) {
+        // keep the cursor sample-aligned
+        position += Math.abs(mWritePosition - position) % 2;
+        Subscription subscription = new Subscription(name, policy, position);
+        if (mClosed) {
+            subscription.mConnected = false;
+        } else {
+            mSubscriptions.add(subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Append audio to the ring, called by the recorder thread. Never blocks on subscribers.
+     */
+    public synchronized void write(byte[] src, int offset, int length) {
+        if (mClosed || length <= 0) {
+            return;
+        }
+        if (length > mCapacity) {
+            // only the tail fits, the head counts as written (and immediately overwritten)
+            mWritePosition += length - mCapacity;
+            offset += length - mCapacity;
+            length = mCapacity;
+        }
+        int pos = (int) (mWritePosition % mCapacity);
+        int first = Math.min(length, mCapacity - pos);
+        System.arraycopy(src, offset, mRing, pos, first);
+        if (first < length) {
+            System.arraycopy(src, offset + first, mRing, 0, length - first);
+        }
+        mWritePosition += length;
+        if (!mSubscriptions.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * End of stream, subscribers can read what is left and then get -1
+     */
+    public synchronized void close() {
+        mClosed = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Must be called with the monitor held
+     */
+    private boolean handleOverrun(Subscription subscription) {
+        long oldest = mWritePosition - mCapacity;
+        if (subscription.mCursor >= oldest) {
+            return true;
+        }
+        switch (subscription.mPolicy) {
+            case DROP_OLDEST:
+                subscription.mDropped += oldest - subscription.mCursor;
+                subscription.mCursor = oldest;
+                return true;
+            case SKIP_TO_LATEST:
+                subscription.mDropped += mWritePosition - subscription.mCursor;
+                subscription.mCursor = mWritePosition;
+                return true;
+            default:
+                Log.i("AudioBus: disconnecting " + subscription.mName + " after overrun");
+                subscription.mDropped += mWritePosition - subscription.mCursor;
+                subscription.mConnected = false;
+                mSubscriptions.remove(subscription);
+                return false;
+        }
+    }
+
+    private synchronized int read(Subscription subscription, byte[] dst, int offset, int length) {
+        if (!subscription.mConnected || !handleOverrun(subscription)) {
+            return -1;
+        }
+        int available = (int) (mWritePosition - subscription.mCursor);
+        if (available <= 0) {
+            return mClosed ? -1 : 0;
+        }
+        int n = Math.min(length, available);
+        int pos = (int) (subscription.mCursor % mCapacity);
+        int first = Math.min(n, mCapacity - pos);
+        System.arraycopy(mRing, pos, dst, offset, first);
+        if (first < n) {
+            System.arraycopy(mRing, 0, dst, offset + first, n - first);
+        }
+        subscription.mCursor += n;
+        return n;
+    }
+
+    private synchronized int read(Subscription subscription, byte[] dst, int offset, int length, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (subscription.mConnected && !mClosed && subscription.mCursor >= mWritePosition) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return 0;
+            }
+            wait(wait);
+        }
+        return read(subscription, dst, offset, length);
+    }
+
+    private synchronized int available(Subscription subscription) {
+        if (!subscription.mConnected) {
+            return 0;
+        }
+        handleOverrun(subscription);
+        return subscription.mConnected ? (int) Math.max(0, mWritePosition - subscription.mCursor) : 0;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        subscription.mConnected = false;
+        mSubscriptions.remove(subscription);
+        notifyAll();
+    }
+
+    /**
+     * A read cursor into the bus. Reads are meant to be done by a single consumer thread.
+     */
+    public final class Subscription {
+        private final String mName;
+        private final OverrunPolicy mPolicy;
+        private long mCursor;
+        private long mDropped = 0;
+        private boolean mConnected = true;
+
+        private Subscription(String name, OverrunPolicy policy, long cursor) {
+            mName = name;
+            mPolicy = policy;
+            mCursor = cursor;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public OverrunPolicy getPolicy() {
+            return mPolicy;
+        }
+
+        /**
+         * Copy the unread audio (up to length bytes) into dst, without waiting.
+         *
+         * @return number of bytes read, 0 if there is nothing new, -1 if disconnected or the bus is closed
+         * and everything has been read
+         */
+        public int read(byte[] dst, int offset, int length) {
+            return AudioBus.this.read(this, dst, offset, length);
+        }
+
+        /**
+         * Same as {@link #read(byte[], int, int)} but waits up to timeoutMillis for new audio.
+         */
+        public int read(byte[] dst, int offset, int length, long timeoutMillis) throws InterruptedException {
+            return AudioBus.this.read(this, dst, offset, length, timeoutMillis);
+        }
+
+        /**
+         * @return number of bytes that can be read right now (after applying the overrun policy)
+         */
+        public int available() {
+            return AudioBus.this.available(this);
+        }
+
+        /**
+         * @return the absolute position of the next byte this subscriber reads
+         */
+        public long getPosition() {
+            synchronized (AudioBus.this) {
+                return mCursor;
+            }
+        }
+
+        /**
+         * @return number of bytes this subscriber lost to overruns
+         */
+        public long getDroppedBytes() {
+            synchronized (AudioBus.this) {
+                return mDropped;
+            }
+        }
+
+        public boolean isConnected() {
+            synchronized (AudioBus.this) {
+                return mConnected;
+            }
+        }
+
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
@@ -5,21 +5,24 @@ import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.SystemClock;
 
-// TODO: add a method that calls back when audio is finished
+/**
+ * Start, stop and error beeps. They are played by the {@link EarconPlayer}, which decodes them once,
+ * the MediaPlayer is only used while that is still going on.
+ */
 public class AudioCue {
 
     private static final int DELAY_AFTER_START_BEEP = 200;
+    // Upper bound for waiting on the start beep, in case it is long or never reports completion
+    private static final int MAX_WAIT_FOR_START_BEEP = 1000;
 
     private final Context mContext;
+    private final EarconPlayer mEarconPlayer;
     private final int mStartSound;
     private final int mStopSound;
     private final int mErrorSound;
 
     public AudioCue(Context context) {
-        mContext = context;
-        mStartSound = R.raw.explore_begin;
-        mStopSound = R.raw.explore_end;
-        mErrorSound = R.raw.error;
+        this(context, R.raw.explore_begin, R.raw.explore_end, R.raw.error);
     }
 
     public AudioCue(Context context, int startSound, int stopSound, int errorSound) {
@@ -27,22 +30,50 @@ public class AudioCue {
         mStartSound = startSound;
         mStopSound = stopSound;
         mErrorSound = errorSound;
+        mEarconPlayer = EarconPlayer.getInstance(context);
+        mEarconPlayer.load(startSound, stopSound, errorSound);
     }
 
-    public void playStartSoundAndSleep() {
-        if (playSound(mStartSound)) {
+    /**
+     * Play the start beep and return once it has been played, so that it does not end up in the recording
+     */
+    public void playStartSoundAndWait() {
+        if (!mEarconPlayer.playAndWait(mStartSound, MAX_WAIT_FOR_START_BEEP) && playSound(mStartSound)) {
             SystemClock.sleep(DELAY_AFTER_START_BEEP);
         }
     }
 
+    /**
+     * @deprecated use {@link #playStartSoundAndWait()}, which no longer sleeps for a fixed time
+     */
+    @Deprecated
+    public void playStartSoundAndSleep() {
+        playStartSoundAndWait();
+    }
+
+    /**
+     * Play the start beep without blocking
+     *
+     * @param listener called once the beep is done, or right away if it could not be played
+     */
+    public void playStartSound(EarconPlayer.Listener listener) {
+        if (!mEarconPlayer.play(mStartSound, listener)) {
+            playSound(mStartSound);
+            listener.onCompletion(mStartSound);
+        }
+    }
 
     public void playStopSound() {
-        playSound(mStopSound);
+        if (!mEarconPlayer.play(mStopSound, null)) {
+            playSound(mStopSound);
+        }
     }
 
 
     public void playErrorSound() {
-        playSound(mErrorSound);
+        if (!mEarconPlayer.play(mErrorSound, null)) {
+            playSound(mErrorSound);
+        }
     }
 
 
@@ -1,6 +1,10 @@
 package ee.ioc.phon.android.speechutils;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import ee.ioc.phon.android.speechutils.utils.AudioUtils;
 
@@ -43,9 +47,15 @@ public class ContinuousRawAudioRecorder extends AbstractAudioRecorder {
 
     private static final int DEFAULT_BUFFER_LENGTH_IN_MILLIS = 2000;
     private static final String LOG_FILTER = "continuous-recorder: ";
+    private static final int FILE_CHUNK_LENGTH_IN_MILLIS = 50;
 
     private SessionStartPointer mSessionStartPointer = SessionStartPointer.beginningOfBuffer();
-    private final AtomicBoolean mRecordingToFile = new AtomicBoolean(false);
+    private final Object mFileSinkLock = new Object();
+    // the subscription of the running file sink, null if there is none
+    private AudioBus.Subscription mFileSink;
+    // where the last file sink stopped and in which recording session, -1 if there was none
+    private long mFileSinkPosition = -1;
+    private long mFileSinkSessionId = -1;
 
     public static class SessionStartPointer {
 
@@ -116,6 +126,10 @@ public class ContinuousRawAudioRecorder extends AbstractAudioRecorder {
         // this is very important. We introduce the buffer length to the SessionStartPointer object
         SessionStartPointer.setRecordingBufferLengthMillis(recordingBufferLengthMillis);
 
+        // the file sink can start in the past, so the bus needs to exist (and be as long as the
+        // recording buffer) from the start
+        getAudioBus(recordingBufferLengthMillis);
+
         try {
             int bufferSize = getBufferSize();
             int framePeriod = bufferSize / (2 * RESOLUTION_IN_BYTES * CHANNELS);
@@ -243,43 +257,53 @@ public class ContinuousRawAudioRecorder extends AbstractAudioRecorder {
         setSessionStartPointer(sessionStartPointer);
     }
 
+    /**
+     * Record to a wav file on a background thread until {@link #stopRecording()} is called. The file sink has
+     * its own subscription on the {@link AudioBus}, so it does not take audio away from
+     * {@link #consumeRecording()} callers. Like {@link #consumeRecording()}, it carries on from where the
+     * previous file sink stopped as long as the recording session is the same (and that audio is still on
+     * the bus), otherwise it starts according to the session start pointer, as far back as the bus allows.
+     */
     public void startRecording(final String wavFileFullPath) {
-        if (!mRecordingToFile.compareAndSet(false, true))
-            return;
+        final AudioBus.Subscription subscription;
+        synchronized (mFileSinkLock) {
+            if (mFileSink != null)
+                return;
+            subscription = getAudioBus().subscribeAt("wav-file",
+                    AudioBus.OverrunPolicy.DROP_OLDEST, getFileSinkStartPosition());
+            mFileSink = subscription;
+        }
 
         new Thread(new Runnable() {
             @Override
             public void run() {
-                // in case that someone stopped the recording before the thread could start
-                if (!mRecordingToFile.get())
-                    return;
-
                 int pcmDataLength = 0;
-                byte[] pcmData;
-                AtomicBoolean firstBuffer = new AtomicBoolean(true);
-
-                while(mRecordingToFile.get()) {
+                byte[] pcmData = new byte[getNumOfSamplesIn(FILE_CHUNK_LENGTH_IN_MILLIS)];
+                OutputStream out = null;
 
-                    // No need to endlessly poll the recording. It will work without the sleep well but
-                    // every 50ms is also good (keeps the CPU happier than without the sleep)
-                    try {
-                        Thread.sleep(50L);
-                    }
-                    catch (InterruptedException e) {
-                        mRecordingToFile.set(false);
-                        return;
+                try {
+                    out = new FileOutputStream(wavFileFullPath);
+                    out.write(createWavHeader(0));
+                    // stopping closes the subscription, after that (or once the bus is closed) reads return -1
+                    int numOfBytes;
+                    while ((numOfBytes = subscription.read(pcmData, 0, pcmData.length, FILE_CHUNK_LENGTH_IN_MILLIS)) >= 0) {
+                        out.write(pcmData, 0, numOfBytes);
+                        pcmDataLength += numOfBytes;
                     }
-
-                    pcmData = consumeRecording();
-                    if (pcmData == null || pcmData.length == 0)
-                        continue;
-
-                    pcmDataLength += pcmData.length;
-                    if (firstBuffer.compareAndSet(true, false))
-                        AudioUtils.saveWavToFile(wavFileFullPath, pcmToWav(pcmData), false);
-                    else
-                        AudioUtils.saveWavToFile(wavFileFullPath, pcmData, true);
                 }
+                catch (IOException e) {
+                    Log.e(LOG_FILTER + "Could not save a recording to " + wavFileFullPath + " due to: " + e.getMessage());
+                }
+                catch (InterruptedException e) {
+                    Log.i(LOG_FILTER + "Recording to file interrupted");
+                }
+                finally {
+                    endFileSink(subscription);
+                    IOUtils.closeQuietly(out);
+                }
+
+                if (subscription.getDroppedBytes() > 0)
+                    Log.i(LOG_FILTER + "File sink fell behind, dropped bytes: " + subscription.getDroppedBytes());
 
                 //now rewrite the wav header according to the new size
                 AudioUtils.saveWavHeaderToFile(wavFileFullPath, createWavHeader(pcmDataLength));
@@ -287,7 +311,51 @@ public class ContinuousRawAudioRecorder extends AbstractAudioRecorder {
         }).start();
     }
 
+    /**
+     * Must be called with mFileSinkLock held
+     */
+    private long getFileSinkStartPosition() {
+        AudioBus audioBus = getAudioBus();
+        long writePosition = audioBus.getWritePosition();
+        long oldest = Math.max(0, writePosition - audioBus.getCapacity());
+
+        if (mFileSinkSessionId == getRecordedSessionId()) {
+            if (mFileSinkPosition >= oldest && mFileSinkPosition <= writePosition) {
+                Log.i(LOG_FILTER + "File sink is still in the same session. Carrying on from position: " + mFileSinkPosition);
+                return mFileSinkPosition;
+            }
+            // the bus overwrote what the last sink did not get to, there is a gap either way
+            Log.i(LOG_FILTER + "File sink position is no longer on the bus");
+        }
+
+        // a new session, a positive start pointer is in the future
+        int startMillis = mSessionStartPointer.getSessionStartPointerMillis();
+        Log.i(LOG_FILTER + "File sink starts a new session, " + startMillis + " ms from now");
+        if (startMillis > 0)
+            return writePosition + getNumOfSamplesIn(startMillis);
+        return Math.max(oldest, writePosition - getNumOfSamplesIn(startMillis));
+    }
+
+    /**
+     * Stop the given file sink and remember where it stopped, unless it has been stopped already (and another
+     * one may have taken its place)
+     */
+    private void endFileSink(AudioBus.Subscription subscription) {
+        synchronized (mFileSinkLock) {
+            if (mFileSink != subscription)
+                return;
+            // no reads after this, so the position is final
+            subscription.close();
+            mFileSink = null;
+            mFileSinkPosition = subscription.getPosition();
+            mFileSinkSessionId = getRecordedSessionId();
+        }
+    }
+
     public void stopRecording() {
-        mRecordingToFile.compareAndSet(true, false);
+        synchronized (mFileSinkLock) {
+            if (mFileSink != null)
+                endFileSink(mFileSink);
+        }
     }
 }
@@ -0,0 +1,439 @@
+package ee.ioc.phon.android.speechutils;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Plays short sounds (earcons) with low latency. Every sound is decoded to 16-bit PCM once and written into
+ * a static {@link AudioTrack} of its own, so playing it is a matter of rewinding the track, there is no
+ * MediaPlayer to create and prepare each time.</p>
+ * <p/>
+ * <p>Completion is reported when the track reaches its last frame, so callers that must not record the
+ * sound can wait exactly as long as it takes instead of sleeping for a fixed time.</p>
+ * <p/>
+ * <p>Decoding and the callbacks happen on a thread of the player. WAV is read directly, everything else needs
+ * MediaCodec (Jelly Bean), on older devices {@link #play} simply returns false.</p>
+ */
+public class EarconPlayer {
+
+    public interface Listener {
+        /**
+         * Called on the player thread when the sound has played to the end, or on the calling thread of
+         * {@link #play} when it was cut off by playing it again
+         */
+        void onCompletion(int resId);
+    }
+
+    // Extra time before we give up on the end-of-sound marker, some devices never deliver it
+    private static final int MARKER_GRACE_MILLIS = 150;
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    private static EarconPlayer sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Map<Integer, Earcon> mEarcons = new HashMap<>();
+
+    public static synchronized EarconPlayer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarconPlayer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private EarconPlayer(Context context) {
+        mContext = context;
+        HandlerThread thread = new HandlerThread("EarconPlayer");
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Decode the given raw resources in the background, the ones that are already loaded are skipped
+     */
+    public void load(int... resIds) {
+        for (final int resId : resIds) {
+            final Earcon earcon;
+            synchronized (mEarcons) {
+                if (mEarcons.containsKey(resId)) {
+                    continue;
+                }
+                earcon = new Earcon(resId);
+                mEarcons.put(resId, earcon);
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.currentTimeMillis();
+                    try {
+                        earcon.setPcm(decode(mContext, resId));
+                        earcon.createTrack();
+                        Log.i("EarconPlayer: loaded " + resId + " (" + earcon.getDurationMillis() + " ms) in "
+                                + (System.currentTimeMillis() - start) + " ms");
+                    } catch (IOException | RuntimeException e) {
+                        Log.e("EarconPlayer: could not load " + resId + ": " + e);
+                    }
+                    earcon.mLoaded.countDown();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if the sound is decoded and ready to play
+     */
+    public boolean isLoaded(int resId) {
+        Earcon earcon = getEarcon(resId);
+        return earcon != null && earcon.mLoaded.getCount() == 0 && earcon.mTrack != null;
+    }
+
+    /**
+     * Start playing a loaded sound, without waiting for anything.
+     *
+     * @param listener called when the sound is done, can be null
+     * @return false if the sound is not loaded (yet), in which case the listener is not called
+     */
+    public boolean play(int resId, Listener listener) {
+        Earcon earcon = getEarcon(resId);
+        return earcon != null && earcon.mLoaded.getCount() == 0 && earcon.play(listener);
+    }
+
+    /**
+     * Play a sound and block until it is done. Waits for the sound to be loaded if that is still going on.
+     *
+     * @param timeoutMillis max time to wait for the loading and the playing together
+     * @return false if the sound could not be played, true if it played (or timed out while playing)
+     */
+    public boolean playAndWait(int resId, long timeoutMillis) {
+        Earcon earcon = getEarcon(resId);
+        if (earcon == null) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        final CountDownLatch done = new CountDownLatch(1);
+        try {
+            if (!earcon.mLoaded.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            if (!earcon.play(new Listener() {
+                @Override
+                public void onCompletion(int resId) {
+                    done.countDown();
+                }
+            })) {
+                return false;
+            }
+            done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    private Earcon getEarcon(int resId) {
+        synchronized (mEarcons) {
+            return mEarcons.get(resId);
+        }
+    }
+
+    private static Decoded decode(Context context, int resId) throws IOException {
+        InputStream is = context.getResources().openRawResource(resId);
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(is);
+        } finally {
+            is.close();
+        }
+        Decoded pcm = parseWav(bytes);
+        if (pcm != null) {
+            return pcm;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            throw new IOException("Cannot decode compressed audio before Jelly Bean");
+        }
+        return decodeCompressed(context, resId);
+    }
+
+    /**
+     * @return the samples of a 16-bit PCM WAV file, null if it is something else
+     */
+    static Decoded parseWav(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 12 || buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157) {
+            // not RIFF/WAVE
+            return null;
+        }
+        int channels = 0;
+        int sampleRate = 0;
+        int pos = 12;
+        while (pos + 8 <= bytes.length) {
+            int id = buffer.getInt(pos);
+            int size = buffer.getInt(pos + 4);
+            int body = pos + 8;
+            if (size < 0 || body + size > bytes.length) {
+                size = bytes.length - body;
+            }
+            if (id == 0x20746d66 && size >= 16) {
+                // "fmt "
+                int format = buffer.getShort(body) & 0xffff;
+                int bits = buffer.getShort(body + 14);
+                if (format != 1 || bits != 16) {
+                    return null;
+                }
+                channels = buffer.getShort(body + 2);
+                sampleRate = buffer.getInt(body + 4);
+            } else if (id == 0x61746164) {
+                // "data"
+                if (channels < 1 || channels > 2 || sampleRate <= 0) {
+                    return null;
+                }
+                int length = size - size % (2 * channels);
+                byte[] samples = new byte[length];
+                System.arraycopy(bytes, body, samples, 0, length);
+                return new Decoded(samples, sampleRate, channels);
+            }
+            // chunks are word aligned
+            pos = body + size + (size & 1);
+        }
+        return null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Decoded decodeCompressed(Context context, int resId) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            AssetFileDescriptor afd = context.getResources().openRawResourceFd(resId);
+            try {
+                extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } finally {
+                afd.close();
+            }
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                if (trackFormat.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio in " + resId);
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[0];
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[index], 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer buffer = outputBuffers[index];
+                        buffer.position(info.offset);
+                        buffer.limit(info.offset + info.size);
+                        if (chunk.length < info.size) {
+                            chunk = new byte[info.size];
+                        }
+                        buffer.get(chunk, 0, info.size);
+                        out.write(chunk, 0, info.size);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            if (channels < 1 || channels > 2) {
+                throw new IOException("Unsupported channel count " + channels + " in " + resId);
+            }
+            byte[] samples = out.toByteArray();
+            int length = samples.length - samples.length % (2 * channels);
+            if (length != samples.length) {
+                byte[] whole = new byte[length];
+                System.arraycopy(samples, 0, whole, 0, length);
+                samples = whole;
+            }
+            return new Decoded(samples, sampleRate, channels);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // was not started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    /**
+     * Decoded sound, interleaved 16-bit little endian samples
+     */
+    static class Decoded {
+        final byte[] mSamples;
+        final int mSampleRate;
+        final int mChannels;
+
+        Decoded(byte[] samples, int sampleRate, int channels) {
+            mSamples = samples;
+            mSampleRate = sampleRate;
+            mChannels = channels;
+        }
+
+        int getFrames() {
+            return mSamples.length / (2 * mChannels);
+        }
+    }
+
+    private class Earcon implements AudioTrack.OnPlaybackPositionUpdateListener {
+        private final int mResId;
+        private final CountDownLatch mLoaded = new CountDownLatch(1);
+        private Decoded mPcm;
+        private volatile AudioTrack mTrack;
+        private Listener mListener;
+        // bumped on every play, so that a late marker or timeout of an earlier play is ignored
+        private int mGeneration = 0;
+
+        Earcon(int resId) {
+            mResId = resId;
+        }
+
+        void setPcm(Decoded pcm) {
+            mPcm = pcm;
+        }
+
+        long getDurationMillis() {
+            return (mPcm == null) ? 0 : 1000L * mPcm.getFrames() / mPcm.mSampleRate;
+        }
+
+        @SuppressWarnings("deprecation")
+        void createTrack() {
+            if (mPcm.getFrames() == 0) {
+                return;
+            }
+            int channelConfig = (mPcm.mChannels == 1) ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, mPcm.mSampleRate, channelConfig,
+                    AudioFormat.ENCODING_PCM_16BIT, mPcm.mSamples.length, AudioTrack.MODE_STATIC);
+            if (track.getState() == AudioTrack.STATE_UNINITIALIZED) {
+                track.release();
+                return;
+            }
+            track.write(mPcm.mSamples, 0, mPcm.mSamples.length);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                track.release();
+                return;
+            }
+            track.setPlaybackPositionUpdateListener(this, mHandler);
+            mTrack = track;
+        }
+
+        synchronized boolean play(Listener listener) {
+            AudioTrack track = mTrack;
+            if (track == null) {
+                return false;
+            }
+            finish();
+            final int generation = ++mGeneration;
+            mListener = listener;
+            try {
+                if (track.getPlayState() != AudioTrack.PLAYSTATE_STOPPED) {
+                    track.stop();
+                }
+                // rewinds the static buffer
+                track.reloadStaticData();
+                track.setNotificationMarkerPosition(mPcm.getFrames() - 1);
+                track.play();
+            } catch (IllegalStateException e) {
+                Log.e("EarconPlayer: could not play " + mResId + ": " + e);
+                mListener = null;
+                return false;
+            }
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Earcon.this) {
+                        if (generation == mGeneration) {
+                            finish();
+                        }
+                    }
+                }
+            }, getDurationMillis() + MARKER_GRACE_MILLIS);
+            return true;
+        }
+
+        /**
+         * Must be called with the monitor held
+         */
+        private void finish() {
+            Listener listener = mListener;
+            mListener = null;
+            if (listener != null) {
+                listener.onCompletion(mResId);
+            }
+        }
+
+        @Override
+        public synchronized void onMarkerReached(AudioTrack track) {
+            // a marker of the play that was just cut off can still be on its way
+            if (track.getPlaybackHeadPosition() >= mPcm.getFrames() - 1) {
+                finish();
+            }
+        }
+
+        @Override
+        public void onPeriodicNotification(AudioTrack track) {
+            // not used
+        }
+    }
+}
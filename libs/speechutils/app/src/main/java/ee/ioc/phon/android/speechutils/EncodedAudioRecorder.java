@@ -21,6 +21,8 @@ import android.media.MediaCodec;
 import android.media.MediaFormat;
 import android.os.Build;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -41,16 +43,23 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
     private static final long DEQUEUE_INPUT_BUFFER_TIMEOUT = 10000;
     private static final long DEQUEUE_OUTPUT_BUFFER_TIMEOUT = 10000;
 
-    // TODO: Use queue of byte[]
-    private final byte[] mRecordingEnc;
-    private int mRecordedEncLength = 0;
-    private int mConsumedEncLength = 0;
+    // Encoded audio that has not been consumed yet, grows in chunks as the encoder produces output
+    private final SegmentedByteBuffer mRecordingEnc;
 
     private int mNumBytesSubmitted = 0;
     private int mNumBytesDequeued = 0;
 
     public EncodedAudioRecorder(int audioSource, int sampleRate) {
+        this(audioSource, sampleRate, 0, false);
+    }
+
+    /**
+     * @param maxEncodedBytes max amount of encoded audio kept before it is consumed, 0 for no limit
+     * @param ring            if true, drop the oldest encoded audio instead of failing when the limit is reached
+     */
+    public EncodedAudioRecorder(int audioSource, int sampleRate, int maxEncodedBytes, boolean ring) {
         super(audioSource, sampleRate);
+        mRecordingEnc = new SegmentedByteBuffer(SegmentedByteBuffer.DEFAULT_CHUNK_SIZE, maxEncodedBytes, ring);
         try {
             int bufferSize = getBufferSize();
             createRecorder(audioSource, sampleRate, bufferSize);
@@ -64,8 +73,6 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
                 handleError(e.getMessage());
             }
         }
-        // TODO: replace 35 with the max length of the recording
-        mRecordingEnc = new byte[RESOLUTION_IN_BYTES * CHANNELS * sampleRate * 35]; // 35 sec raw
     }
 
     public EncodedAudioRecorder(int sampleRate) {
@@ -87,10 +94,8 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
     }
 
     public synchronized byte[] consumeRecordingEncAndTruncate() {
-        int len = getConsumedEncLength();
-        byte[] bytes = getCurrentRecordingEnc(len);
-        setRecordedEncLength(0);
-        setConsumedEncLength(0);
+        byte[] bytes = mRecordingEnc.drain();
+        mRecordingEnc.clear();
         return bytes;
     }
 
@@ -98,11 +103,28 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
      * @return bytes that have been recorded and encoded since this method was last called
      */
     public synchronized byte[] consumeRecordingEnc() {
-        byte[] bytes = getCurrentRecordingEnc(getConsumedEncLength());
-        setConsumedEncLength(getRecordedEncLength());
+        byte[] bytes = mRecordingEnc.drain();
+        Log.i("Consumed (enc) bytes: " + bytes.length);
         return bytes;
     }
 
+    /**
+     * Stream the encoded audio that has not been consumed yet to the given output,
+     * without copying it into a new array first.
+     *
+     * @return number of bytes written
+     */
+    public synchronized int consumeRecordingEnc(OutputStream out) throws IOException {
+        return mRecordingEnc.drainTo(out);
+    }
+
+    /**
+     * @return number of encoded bytes dropped because the buffer was full (ring mode only)
+     */
+    public long getDroppedEncLength() {
+        return mRecordingEnc.getDropped();
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     protected void recorderLoop(SpeechRecord speechRecord) {
@@ -138,40 +160,13 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
         return null;
     }
 
-    private int getConsumedEncLength() {
-        return mConsumedEncLength;
-    }
-
-    private void setConsumedEncLength(int len) {
-        mConsumedEncLength = len;
-    }
-
-    private void setRecordedEncLength(int len) {
-        mRecordedEncLength = len;
-    }
-
-    private int getRecordedEncLength() {
-        return mRecordedEncLength;
-    }
-
-    private void addEncoded(byte[] buffer) {
-        int len = buffer.length;
-        if (mRecordingEnc.length >= mRecordedEncLength + len) {
-            System.arraycopy(buffer, 0, mRecordingEnc, mRecordedEncLength, len);
-            mRecordedEncLength += len;
-        } else {
-            handleError("RecorderEnc buffer overflow: " + mRecordedEncLength);
+    private void addEncoded(ByteBuffer buffer) {
+        int len = buffer.remaining();
+        if (!mRecordingEnc.write(buffer)) {
+            handleError("RecorderEnc buffer overflow: " + mRecordingEnc.size() + " + " + len);
         }
     }
 
-    private byte[] getCurrentRecordingEnc(int startPos) {
-        int len = getRecordedEncLength() - startPos;
-        byte[] bytes = new byte[len];
-        System.arraycopy(mRecordingEnc, startPos, bytes, 0, len);
-        Log.i("Copied (enc) from pos: " + startPos + ", bytes: " + bytes.length);
-        return bytes;
-    }
-
     /**
      * Copy audio from the recorder into the encoder.
      */
@@ -200,7 +195,6 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
 
     /**
      * Save the encoded (output) buffer into the complete encoded recording.
-     * TODO: copy directly (without the intermediate byte array)
      */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     private void dequeueOutputBuffer(MediaCodec codec, ByteBuffer[] outputBuffers, int index, MediaCodec.BufferInfo info) {
@@ -208,18 +202,17 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
             ByteBuffer buffer = outputBuffers[index];
             Log.i("size/remaining: " + info.size + "/" + buffer.remaining());
             if (info.size <= buffer.remaining()) {
-                final byte[] bufferCopied = new byte[info.size];
-                buffer.get(bufferCopied); // TODO: catch BufferUnderflow
                 // TODO: do we need to clear?
                 // on N5: always size == remaining(), clearing is not needed
                 // on SGS2: remaining decreases until it becomes less than size, which results in BufferUnderflow
                 // (but SGS2 records only zeros anyway)
                 //buffer.clear();
-                codec.releaseOutputBuffer(index, false);
-                addEncoded(bufferCopied);
                 if (Log.DEBUG) {
-                    AudioUtils.showSomeBytes("out", bufferCopied);
+                    AudioUtils.showSomeBytes("out", copyOf(buffer, info.size));
                 }
+                buffer.limit(buffer.position() + info.size);
+                addEncoded(buffer);
+                codec.releaseOutputBuffer(index, false);
             } else {
                 Log.e("size > remaining");
                 codec.releaseOutputBuffer(index, false);
@@ -227,6 +220,12 @@ public class EncodedAudioRecorder extends AbstractAudioRecorder {
         }
     }
 
+    private static byte[] copyOf(ByteBuffer buffer, int size) {
+        byte[] bytes = new byte[size];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
     /**
      * Reads bytes from the given recorder and encodes them with the given encoder.
      * Uses the (deprecated) Synchronous Processing using Buffer Arrays.
@@ -50,11 +50,25 @@ public class RawAudioRecorder extends AbstractAudioRecorder {
      * @param sampleRate  Sample rate (e.g. 16000)
      */
     public RawAudioRecorder(int audioSource, int sampleRate) {
-        super(audioSource, sampleRate);
+        this(audioSource, sampleRate, sampleRate);
+    }
+
+    /**
+     * <p>Opens the microphone at captureRate and resamples to sampleRate in software. Use the native
+     * rate of the device (typically 48000) as the capture rate to avoid the resampling (and the extra
+     * buffering) in the audio HAL.</p>
+     *
+     * @param audioSource Identifier of the audio source (e.g. microphone)
+     * @param sampleRate  Sample rate of the recording (e.g. 16000)
+     * @param captureRate Sample rate at which the microphone is opened (e.g. 48000)
+     */
+    public RawAudioRecorder(int audioSource, int sampleRate, int captureRate) {
+        super(audioSource, sampleRate, captureRate);
         try {
             int bufferSize = getBufferSize();
-            int framePeriod = bufferSize / (2 * RESOLUTION_IN_BYTES * CHANNELS);
-            createRecorder(audioSource, sampleRate, bufferSize);
+            // The output buffer holds the same duration as the capture buffer, at the (lower) sample rate
+            int framePeriod = (int) ((long) bufferSize * sampleRate / captureRate) / (2 * RESOLUTION_IN_BYTES * CHANNELS);
+            createRecorder(audioSource, captureRate, bufferSize);
             createBuffer(framePeriod);
             setState(State.READY);
         } catch (Exception e) {
@@ -0,0 +1,262 @@
+package ee.ioc.phon.android.speechutils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Byte FIFO made of fixed size chunks. Memory grows with what has actually been written (rather than with
+ * the longest recording we expect), drained chunks are kept in a small pool and reused.
+ * <p/>
+ * The buffer is either unbounded, bounded (writes that do not fit are rejected), or a bounded ring
+ * that drops the oldest unread bytes to make room for the new ones.
+ * <p/>
+ * All methods are synchronized, the typical use is one writer (the encoder thread) and one reader.
+ */
+public class SegmentedByteBuffer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    // Number of free chunks we hang on to, enough to absorb a couple of drain cycles.
+    private static final int MAX_POOLED_CHUNKS = 4;
+
+    private final int mChunkSize;
+    private final int mMaxSize;
+    private final boolean mRing;
+
+    private final ArrayDeque<byte[]> mChunks = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> mPool = new ArrayDeque<>();
+
+    // Read position in the first chunk and fill level of the last chunk
+    private int mHeadOffset = 0;
+    private int mTailFill = 0;
+    private int mSize = 0;
+
+    private long mTotalWritten = 0;
+    private long mDropped = 0;
+
+    /**
+     * Unbounded buffer with the default chunk size
+     */
+    public SegmentedByteBuffer() {
+        this(DEFAULT_CHUNK_SIZE, 0, false);
+    }
+
+    /**
+     * @param chunkSize size of each allocation
+     * @param maxSize   max number of unread bytes, 0 for unbounded
+     * @param ring      if true (and bounded) the oldest unread bytes are dropped when full,
+     *                  otherwise writes that do not fit are rejected
+     */
+    public SegmentedByteBuffer(int chunkSize, int maxSize, boolean ring) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        mChunkSize = chunkSize;
+        mMaxSize = maxSize;
+        mRing = ring && maxSize > 0;
+    }
+
+    /**
+     * @return false if the buffer is bounded (not a ring) and the bytes did not fit, in which case nothing was written
+     */
+    public synchronized boolean write(byte[] src, int offset, int length) {
+        if (!makeRoom(length)) {
+            return false;
+        }
+        if (mRing && length > mMaxSize) {
+            // Only the tail of the input can survive
+            mDropped += length - mMaxSize;
+            mTotalWritten += length - mMaxSize;
+            offset += length - mMaxSize;
+            length = mMaxSize;
+        }
+        while (length > 0) {
+            byte[] tail = getWritableTail();
+            int n = Math.min(length, mChunkSize - mTailFill);
+            System.arraycopy(src, offset, tail, mTailFill, n);
+            mTailFill += n;
+            mSize += n;
+            mTotalWritten += n;
+            offset += n;
+            length -= n;
+        }
+        return true;
+    }
+
+    public boolean write(byte[] src) {
+        return write(src, 0, src.length);
+    }
+
+    /**
+     * Copy the remaining bytes of the given buffer (e.g. a codec output buffer) without going
+     * through an intermediate array. The position of src is advanced.
+     *
+     * @return false if the buffer is bounded (not a ring) and the bytes did not fit
+     */
+    public synchronized boolean write(ByteBuffer src) {
+        int length = src.remaining();
+        if (!makeRoom(length)) {
+            return false;
+        }
+        if (mRing && length > mMaxSize) {
+            mDropped += length - mMaxSize;
+            mTotalWritten += length - mMaxSize;
+            src.position(src.position() + length - mMaxSize);
+            length = mMaxSize;
+        }
+        while (length > 0) {
+            byte[] tail = getWritableTail();
+            int n = Math.min(length, mChunkSize - mTailFill);
+            src.get(tail, mTailFill, n);
+            mTailFill += n;
+            mSize += n;
+            mTotalWritten += n;
+            length -= n;
+        }
+        return true;
+    }
+
+    /**
+     * Read and remove up to length bytes.
+     *
+     * @return number of bytes copied into dst
+     */
+    public synchronized int read(byte[] dst, int offset, int length) {
+        int copied = 0;
+        while (copied < length && mSize > 0) {
+            byte[] head = mChunks.peekFirst();
+            int n = Math.min(length - copied, getHeadAvailable());
+            System.arraycopy(head, mHeadOffset, dst, offset + copied, n);
+            copied += n;
+            skipHead(n);
+        }
+        return copied;
+    }
+
+    /**
+     * @return all unread bytes, which are removed from the buffer
+     */
+    public synchronized byte[] drain() {
+        byte[] bytes = new byte[mSize];
+        read(bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Stream all unread bytes to the given output, chunk by chunk and without an intermediate copy.
+     * Bytes are only removed from the buffer after they were written.
+     *
+     * @return number of bytes written
+     */
+    public synchronized int drainTo(OutputStream out) throws IOException {
+        int written = 0;
+        while (mSize > 0) {
+            int n = getHeadAvailable();
+            out.write(mChunks.peekFirst(), mHeadOffset, n);
+            written += n;
+            skipHead(n);
+        }
+        return written;
+    }
+
+    /**
+     * Drop all unread bytes, chunks go back to the pool
+     */
+    public synchronized void clear() {
+        while (!mChunks.isEmpty()) {
+            recycle(mChunks.pollFirst());
+        }
+        mHeadOffset = 0;
+        mTailFill = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @return number of unread bytes
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return number of bytes currently allocated for unread data, excluding the pool
+     */
+    public synchronized int capacity() {
+        return mChunks.size() * mChunkSize;
+    }
+
+    /**
+     * @return number of bytes ever accepted by the buffer (including the ones later dropped)
+     */
+    public synchronized long getTotalWritten() {
+        return mTotalWritten;
+    }
+
+    /**
+     * @return number of bytes dropped in ring mode before they were read
+     */
+    public synchronized long getDropped() {
+        return mDropped;
+    }
+
+    private boolean makeRoom(int length) {
+        if (mMaxSize == 0 || mSize + length <= mMaxSize) {
+            return true;
+        }
+        if (!mRing) {
+            return false;
+        }
+        int drop = Math.min(mSize, mSize + length - mMaxSize);
+        mDropped += drop;
+        while (drop > 0) {
+            int n = Math.min(drop, getHeadAvailable());
+            skipHead(n);
+            drop -= n;
+        }
+        return true;
+    }
+
+    private int getHeadAvailable() {
+        int end = (mChunks.size() == 1) ? mTailFill : mChunkSize;
+        return end - mHeadOffset;
+    }
+
+    private void skipHead(int n) {
+        mHeadOffset += n;
+        mSize -= n;
+        if (mSize == 0) {
+            // Keep the last chunk around to avoid bouncing through the pool on every write/read pair
+            while (mChunks.size() > 1) {
+                recycle(mChunks.pollFirst());
+            }
+            mHeadOffset = 0;
+            mTailFill = 0;
+        } else if (mHeadOffset == mChunkSize) {
+            recycle(mChunks.pollFirst());
+            mHeadOffset = 0;
+        }
+    }
+
+    private byte[] getWritableTail() {
+        if (mChunks.isEmpty() || mTailFill == mChunkSize) {
+            byte[] chunk = mPool.pollFirst();
+            if (chunk == null) {
+                chunk = new byte[mChunkSize];
+            }
+            mChunks.addLast(chunk);
+            mTailFill = 0;
+        }
+        return mChunks.peekLast();
+    }
+
+    private void recycle(byte[] chunk) {
+        if (mPool.size() < MAX_POOLED_CHUNKS) {
+            mPool.addFirst(chunk);
+        }
+    }
+}
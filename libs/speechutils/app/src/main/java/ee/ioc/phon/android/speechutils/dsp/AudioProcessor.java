@@ -0,0 +1,24 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * A stage of the capture pre-processing {@link ProcessingChain}. Works in place on 16-bit mono PCM.
+ * Implementations keep their state between calls (the audio is a stream) and must not allocate in
+ * {@link #process(short[], int, int)}, it runs on the recorder thread for every buffer.
+ */
+public interface AudioProcessor {
+
+    /**
+     * @return short name used in the metrics and logs
+     */
+    String getName();
+
+    /**
+     * Process the samples in place
+     */
+    void process(short[] samples, int offset, int length);
+
+    /**
+     * Forget the stream state, e.g. when a new recording starts
+     */
+    void reset();
+}
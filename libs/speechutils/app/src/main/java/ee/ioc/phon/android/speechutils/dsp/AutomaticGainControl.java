@@ -0,0 +1,87 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * Slow automatic gain control that brings speech to a target peak level. The gain follows a peak envelope,
+ * drops quickly (so loud speech does not clip) and rises slowly (so it does not pump between words). Below the
+ * noise floor the gain is frozen, otherwise it would blow up the background noise in every pause.
+ */
+public class AutomaticGainControl implements AudioProcessor {
+
+    public static final float DEFAULT_TARGET_DBFS = -12;
+    public static final float DEFAULT_MAX_GAIN_DB = 24;
+    public static final float DEFAULT_NOISE_FLOOR_DBFS = -50;
+
+    private static final float ENVELOPE_ATTACK_MS = 2;
+    private static final float ENVELOPE_RELEASE_MS = 300;
+    private static final float GAIN_RELEASE_MS = 1500;
+
+    private final float mTarget;
+    private final float mMaxGain;
+    private final float mNoiseFloor;
+    private final float mEnvelopeAttack;
+    private final float mEnvelopeRelease;
+    private final float mGainRelease;
+
+    private float mEnvelope;
+    private float mGain = 1;
+
+    public AutomaticGainControl(int sampleRate) {
+        this(sampleRate, DEFAULT_TARGET_DBFS, DEFAULT_MAX_GAIN_DB, DEFAULT_NOISE_FLOOR_DBFS);
+    }
+
+    /**
+     * @param targetDbfs     peak level that speech should reach
+     * @param maxGainDb      max boost
+     * @param noiseFloorDbfs signals below this level do not change the gain
+     */
+    public AutomaticGainControl(int sampleRate, float targetDbfs, float maxGainDb, float noiseFloorDbfs) {
+        mTarget = Pcm.dbToLinear(targetDbfs) * Short.MAX_VALUE;
+        mMaxGain = Pcm.dbToLinear(maxGainDb);
+        mNoiseFloor = Pcm.dbToLinear(noiseFloorDbfs) * Short.MAX_VALUE;
+        mEnvelopeAttack = Pcm.timeConstant(sampleRate, ENVELOPE_ATTACK_MS);
+        mEnvelopeRelease = Pcm.timeConstant(sampleRate, ENVELOPE_RELEASE_MS);
+        mGainRelease = Pcm.timeConstant(sampleRate, GAIN_RELEASE_MS);
+    }
+
+    @Override
+    public String getName() {
+        return "agc";
+    }
+
+    /**
+     * @return the current gain in dB
+     */
+    public float getGainDb() {
+        return (float) (20 * Math.log10(mGain));
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        float envelope = mEnvelope;
+        float gain = mGain;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            float x = samples[i];
+            float level = Math.abs(x);
+            float coefficient = level > envelope ? mEnvelopeAttack : mEnvelopeRelease;
+            envelope = coefficient * envelope + (1 - coefficient) * level;
+
+            if (envelope > mNoiseFloor) {
+                float desired = Math.min(mMaxGain, mTarget / envelope);
+                if (desired < gain) {
+                    gain = desired;
+                } else {
+                    gain = mGainRelease * gain + (1 - mGainRelease) * desired;
+                }
+            }
+            samples[i] = Pcm.clip(x * gain);
+        }
+        mEnvelope = envelope;
+        mGain = gain;
+    }
+
+    @Override
+    public void reset() {
+        mEnvelope = 0;
+        mGain = 1;
+    }
+}
@@ -0,0 +1,66 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * Second order Butterworth high-pass (RBJ biquad). Removes the DC offset that some microphones have,
+ * as well as rumble and handling noise below the speech band.
+ */
+public class HighPassFilter implements AudioProcessor {
+
+    public static final float DEFAULT_CUTOFF_HZ = 80;
+
+    private final float mB0;
+    private final float mB1;
+    private final float mB2;
+    private final float mA1;
+    private final float mA2;
+
+    private float mX1;
+    private float mX2;
+    private float mY1;
+    private float mY2;
+
+    public HighPassFilter(int sampleRate) {
+        this(sampleRate, DEFAULT_CUTOFF_HZ);
+    }
+
+    public HighPassFilter(int sampleRate, float cutoffHz) {
+        double w0 = 2 * Math.PI * cutoffHz / sampleRate;
+        double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+        double cos = Math.cos(w0);
+        double a0 = 1 + alpha;
+        mB0 = (float) ((1 + cos) / 2 / a0);
+        mB1 = (float) (-(1 + cos) / a0);
+        mB2 = mB0;
+        mA1 = (float) (-2 * cos / a0);
+        mA2 = (float) ((1 - alpha) / a0);
+    }
+
+    @Override
+    public String getName() {
+        return "highpass";
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        float x1 = mX1, x2 = mX2, y1 = mY1, y2 = mY2;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            float x = samples[i];
+            float y = mB0 * x + mB1 * x1 + mB2 * x2 - mA1 * y1 - mA2 * y2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            samples[i] = Pcm.clip(y);
+        }
+        // flush denormals, the filter decays towards zero on silence
+        mX1 = x1;
+        mX2 = x2;
+        mY1 = Math.abs(y1) < 1e-10f ? 0 : y1;
+        mY2 = Math.abs(y2) < 1e-10f ? 0 : y2;
+    }
+
+    @Override
+    public void reset() {
+        mX1 = mX2 = mY1 = mY2 = 0;
+    }
+}
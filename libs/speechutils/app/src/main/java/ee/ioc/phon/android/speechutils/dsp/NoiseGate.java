@@ -0,0 +1,105 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * Attenuates the signal while its level stays below a threshold, e.g. fan or street noise in the pauses between
+ * words. Opens fast, stays open for a hold time and then closes smoothly, so word endings are not clipped.
+ */
+public class NoiseGate implements AudioProcessor {
+
+    public static final float DEFAULT_THRESHOLD_DBFS = -45;
+    public static final float DEFAULT_ATTENUATION_DB = -30;
+    public static final int DEFAULT_HOLD_MS = 150;
+
+    private static final float ENVELOPE_ATTACK_MS = 1;
+    private static final float ENVELOPE_RELEASE_MS = 50;
+    private static final float GAIN_ATTACK_MS = 2;
+    private static final float GAIN_RELEASE_MS = 80;
+    // the gate closes at a lower level than it opens, so it does not chatter around the threshold
+    private static final float HYSTERESIS_DB = 6;
+
+    private final float mOpenThreshold;
+    private final float mCloseThreshold;
+    private final float mFloorGain;
+    private final int mHoldSamples;
+    private final float mEnvelopeAttack;
+    private final float mEnvelopeRelease;
+    private final float mGainAttack;
+    private final float mGainRelease;
+
+    private float mEnvelope;
+    private float mGain;
+    private boolean mOpen;
+    private int mHoldCounter;
+
+    public NoiseGate(int sampleRate) {
+        this(sampleRate, DEFAULT_THRESHOLD_DBFS, DEFAULT_ATTENUATION_DB, DEFAULT_HOLD_MS);
+    }
+
+    /**
+     * @param thresholdDbfs level above which the gate opens
+     * @param attenuationDb gain applied while closed (negative)
+     * @param holdMs        how long the gate stays open after the level drops below the threshold
+     */
+    public NoiseGate(int sampleRate, float thresholdDbfs, float attenuationDb, int holdMs) {
+        mOpenThreshold = Pcm.dbToLinear(thresholdDbfs) * Short.MAX_VALUE;
+        mCloseThreshold = Pcm.dbToLinear(thresholdDbfs - HYSTERESIS_DB) * Short.MAX_VALUE;
+        mFloorGain = Pcm.dbToLinear(attenuationDb);
+        mHoldSamples = sampleRate * holdMs / 1000;
+        mEnvelopeAttack = Pcm.timeConstant(sampleRate, ENVELOPE_ATTACK_MS);
+        mEnvelopeRelease = Pcm.timeConstant(sampleRate, ENVELOPE_RELEASE_MS);
+        mGainAttack = Pcm.timeConstant(sampleRate, GAIN_ATTACK_MS);
+        mGainRelease = Pcm.timeConstant(sampleRate, GAIN_RELEASE_MS);
+        reset();
+    }
+
+    @Override
+    public String getName() {
+        return "gate";
+    }
+
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public void process(short[] samples, int offset, int length) {
+        float envelope = mEnvelope;
+        float gain = mGain;
+        boolean open = mOpen;
+        int hold = mHoldCounter;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            float x = samples[i];
+            float level = Math.abs(x);
+            float coefficient = level > envelope ? mEnvelopeAttack : mEnvelopeRelease;
+            envelope = coefficient * envelope + (1 - coefficient) * level;
+
+            if (envelope > mOpenThreshold) {
+                open = true;
+                hold = mHoldSamples;
+            } else if (open && envelope < mCloseThreshold) {
+                if (hold > 0) {
+                    hold--;
+                } else {
+                    open = false;
+                }
+            }
+
+            float target = open ? 1 : mFloorGain;
+            float smoothing = target > gain ? mGainAttack : mGainRelease;
+            gain = smoothing * gain + (1 - smoothing) * target;
+            samples[i] = Pcm.clip(x * gain);
+        }
+        mEnvelope = envelope;
+        mGain = gain;
+        mOpen = open;
+        mHoldCounter = hold;
+    }
+
+    @Override
+    public void reset() {
+        mEnvelope = 0;
+        mGain = mFloorGain;
+        mOpen = false;
+        mHoldCounter = 0;
+    }
+}
@@ -0,0 +1,35 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * Small helpers shared by the DSP stages
+ */
+final class Pcm {
+
+    private Pcm() {
+    }
+
+    static short clip(float value) {
+        int rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (rounded < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) rounded;
+    }
+
+    static float dbToLinear(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+
+    /**
+     * One-pole smoothing coefficient for the given time constant
+     */
+    static float timeConstant(int sampleRate, float millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return (float) Math.exp(-1000.0 / (sampleRate * millis));
+    }
+}
@@ -0,0 +1,232 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+/**
+ * <p>Rational (L/M) sample rate converter for 16-bit PCM, e.g. 48000 or 44100 Hz coming from the
+ * microphone down to the 16000 Hz that speech recognizers expect. Interleaved multi-channel input is
+ * downmixed to mono on the way in.</p>
+ * <p/>
+ * <p>The anti-aliasing filter is a Kaiser-windowed sinc, split into L polyphase branches so that only the
+ * taps contributing to an output sample are evaluated. The stopband starts at the lower of the two Nyquist
+ * frequencies, so nothing above it folds back into the output band.</p>
+ * <p/>
+ * <p>The resampler is stateful (it keeps the tail of the previous block), so a stream can be fed in blocks of
+ * any size and gives the same result as a single call. {@link #process} does not allocate.
+ * Not thread-safe, use one instance per stream.</p>
+ */
+public class PolyphaseResampler {
+
+    public static final int DEFAULT_TAPS_PER_PHASE = 128;
+    public static final double DEFAULT_ATTENUATION_DB = 80;
+
+    private final int mInRate;
+    private final int mOutRate;
+    private final int mChannels;
+    private final int mUp;
+    private final int mDown;
+    private final int mTaps;
+
+    // Polyphase coefficients, phase-major: mCoefficients[phase * mTaps + k]
+    private final float[] mCoefficients;
+
+    // Delay line written twice (at i and i + mTaps) so that the last mTaps samples are always contiguous
+    private final float[] mHistory;
+    private int mHistoryPos;
+
+    // Position of the next output sample relative to the newest input sample, in 1/mUp input samples
+    private int mPhase;
+
+    public PolyphaseResampler(int inRate, int outRate, int channels) {
+        this(inRate, outRate, channels, DEFAULT_TAPS_PER_PHASE, DEFAULT_ATTENUATION_DB);
+    }
+
+    /**
+     * @param inRate       input sample rate in Hz
+     * @param outRate      output sample rate in Hz
+     * @param channels     number of interleaved input channels, the output is always mono
+     * @param tapsPerPhase filter length per polyphase branch, i.e. the number of input samples per output sample,
+     *                     larger values give a narrower transition band at a higher CPU cost
+     * @param attenuationDb stopband attenuation
+     */
+    public PolyphaseResampler(int inRate, int outRate, int channels, int tapsPerPhase, double attenuationDb) {
+        if (inRate <= 0 || outRate <= 0 || channels <= 0 || tapsPerPhase <= 0) {
+            throw new IllegalArgumentException("Invalid resampler parameters: " + inRate + " -> " + outRate
+                    + ", channels " + channels + ", taps " + tapsPerPhase);
+        }
+        int gcd = gcd(inRate, outRate);
+        mInRate = inRate;
+        mOutRate = outRate;
+        mChannels = channels;
+        mUp = outRate / gcd;
+        mDown = inRate / gcd;
+        mTaps = tapsPerPhase;
+        mCoefficients = designFilter(mUp, mTaps, inRate, outRate, attenuationDb);
+        mHistory = new float[2 * mTaps];
+        reset();
+    }
+
+    public int getInRate() {
+        return mInRate;
+    }
+
+    public int getOutRate() {
+        return mOutRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return the filter delay in output samples
+     */
+    public int getDelay() {
+        return (int) Math.round((mUp * mTaps - 1) / 2.0 / mDown);
+    }
+
+    /**
+     * @param inFrames number of input frames (samples per channel)
+     * @return the max number of mono samples that {@link #process} can produce for that many frames
+     */
+    public int getMaxOutputSize(int inFrames) {
+        return (int) (((long) inFrames * mUp + mDown - 1) / mDown) + 1;
+    }
+
+    /**
+     * @param outSamples number of mono output samples wanted
+     * @return the max number of input frames that is guaranteed to produce at most outSamples
+     */
+    public int getMaxInputFrames(int outSamples) {
+        if (outSamples <= 1) {
+            return 0;
+        }
+        return (int) ((long) (outSamples - 1) * mDown / mUp);
+    }
+
+    /**
+     * Forget the stream history, the next call starts from silence
+     */
+    public void reset() {
+        for (int i = 0; i < mHistory.length; i++) {
+            mHistory[i] = 0;
+        }
+        mHistoryPos = 0;
+        mPhase = 0;
+    }
+
+    /**
+     * @param in        interleaved input samples
+     * @param inOffset  offset in samples
+     * @param inFrames  number of frames, i.e. inFrames * channels samples are read
+     * @param out       mono output, must have room for {@link #getMaxOutputSize(int)} samples
+     * @param outOffset offset in samples
+     * @return number of samples written to out
+     */
+    public int process(short[] in, int inOffset, int inFrames, short[] out, int outOffset) {
+        final float[] history = mHistory;
+        final float[] coefficients = mCoefficients;
+        final int taps = mTaps;
+        final int channels = mChannels;
+        final float channelScale = 1f / channels;
+        int pos = mHistoryPos;
+        int phase = mPhase;
+        int o = outOffset;
+        int i = inOffset;
+
+        for (int frame = 0; frame < inFrames; frame++) {
+            float sample;
+            if (channels == 1) {
+                sample = in[i++];
+            } else {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += in[i++];
+                }
+                sample = sum * channelScale;
+            }
+            history[pos] = sample;
+            history[pos + taps] = sample;
+            // history[pos + taps] is now the newest sample and history[pos + 1] the oldest
+            while (phase < mUp) {
+                int c = phase * taps;
+                float acc = 0;
+                for (int k = 0, h = pos + taps; k < taps; k++, h--) {
+                    acc += coefficients[c + k] * history[h];
+                }
+                out[o++] = Pcm.clip(acc);
+                phase += mDown;
+            }
+            phase -= mUp;
+            if (++pos == taps) {
+                pos = 0;
+            }
+        }
+
+        mHistoryPos = pos;
+        mPhase = phase;
+        return o - outOffset;
+    }
+
+    private static float[] designFilter(int up, int taps, int inRate, int outRate, double attenuationDb) {
+        int length = up * taps;
+        // Kaiser's formulas for the window shape and the achievable transition width
+        double beta;
+        if (attenuationDb > 50) {
+            beta = 0.1102 * (attenuationDb - 8.7);
+        } else if (attenuationDb >= 21) {
+            beta = 0.5842 * Math.pow(attenuationDb - 21, 0.4) + 0.07886 * (attenuationDb - 21);
+        } else {
+            beta = 0;
+        }
+        double transition = (attenuationDb - 7.95) / (14.36 * taps) * inRate;
+        double nyquist = Math.min(inRate, outRate) / 2.0;
+        // Put the stopband edge on the Nyquist frequency, but keep at least half of the band
+        double cutoff = Math.max(nyquist - transition / 2, nyquist / 2);
+
+        // The prototype runs at the upsampled rate
+        double fc = cutoff / ((double) inRate * up);
+        double center = (length - 1) / 2.0;
+        double i0Beta = besselI0(beta);
+        double[] prototype = new double[length];
+        double sum = 0;
+        for (int j = 0; j < length; j++) {
+            double x = j - center;
+            double sinc = (x == 0) ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+            double r = 2.0 * j / (length - 1) - 1;
+            double window = (length == 1) ? 1 : besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            prototype[j] = sinc * window;
+            sum += prototype[j];
+        }
+
+        // Unity DC gain per phase, i.e. the whole prototype sums to up. Reorder into polyphase branches.
+        float[] coefficients = new float[length];
+        for (int phase = 0; phase < up; phase++) {
+            for (int k = 0; k < taps; k++) {
+                coefficients[phase * taps + k] = (float) (prototype[k * up + phase] * up / sum);
+            }
+        }
+        return coefficients;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
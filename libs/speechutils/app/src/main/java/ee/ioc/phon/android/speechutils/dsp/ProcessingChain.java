@@ -0,0 +1,186 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Ordered list of {@link AudioProcessor}s that is run on every buffer in the recorder loop, before the audio
+ * is stored or published. A pure Java replacement for the platform NoiseSuppressor/AutomaticGainControl
+ * effects, which are missing or poor on many devices.</p>
+ * <p/>
+ * <p>Every stage is timed with {@link System#nanoTime()} so that its CPU cost can be checked against the
+ * duration of the audio it processed, see {@link StageMetrics#getRealTimeFactor()}.</p>
+ */
+public class ProcessingChain {
+
+    private final int mSampleRate;
+    private final AudioProcessor[] mStages;
+    private final StageMetrics[] mMetrics;
+
+    private ProcessingChain(int sampleRate, List<AudioProcessor> stages) {
+        mSampleRate = sampleRate;
+        mStages = stages.toArray(new AudioProcessor[stages.size()]);
+        mMetrics = new StageMetrics[mStages.length];
+        for (int i = 0; i < mStages.length; i++) {
+            mMetrics[i] = new StageMetrics(mStages[i].getName(), sampleRate);
+        }
+    }
+
+    /**
+     * @return high-pass, noise gate and AGC with their default settings, in that order
+     */
+    public static ProcessingChain createDefault(int sampleRate) {
+        return new Builder(sampleRate)
+                .add(new HighPassFilter(sampleRate))
+                .add(new NoiseGate(sampleRate))
+                .add(new AutomaticGainControl(sampleRate))
+                .build();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Run all the stages in place
+     */
+    public void process(short[] samples, int offset, int length) {
+        for (int i = 0; i < mStages.length; i++) {
+            long start = System.nanoTime();
+            mStages[i].process(samples, offset, length);
+            mMetrics[i].add(System.nanoTime() - start, length);
+        }
+    }
+
+    public void reset() {
+        for (AudioProcessor stage : mStages) {
+            stage.reset();
+        }
+    }
+
+    public List<AudioProcessor> getStages() {
+        List<AudioProcessor> stages = new ArrayList<>(mStages.length);
+        Collections.addAll(stages, mStages);
+        return stages;
+    }
+
+    /**
+     * @return the metrics of every stage, in the order of the stages
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>(mMetrics.length);
+        Collections.addAll(metrics, mMetrics);
+        return metrics;
+    }
+
+    public void resetMetrics() {
+        for (StageMetrics metrics : mMetrics) {
+            metrics.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ProcessingChain");
+        for (StageMetrics metrics : mMetrics) {
+            sb.append(' ').append(metrics);
+        }
+        return sb.toString();
+    }
+
+    public static class Builder {
+        private final int mSampleRate;
+        private final List<AudioProcessor> mStages = new ArrayList<>();
+
+        public Builder(int sampleRate) {
+            mSampleRate = sampleRate;
+        }
+
+        public Builder add(AudioProcessor stage) {
+            mStages.add(stage);
+            return this;
+        }
+
+        public ProcessingChain build() {
+            return new ProcessingChain(mSampleRate, mStages);
+        }
+    }
+
+    /**
+     * CPU time spent in one stage. Written by the recorder thread, the readers get a (possibly slightly
+     * inconsistent) snapshot.
+     */
+    public static class StageMetrics {
+        private final String mName;
+        private final int mSampleRate;
+        private volatile long mCalls;
+        private volatile long mSamples;
+        private volatile long mNanos;
+        private volatile long mMaxNanos;
+
+        StageMetrics(String name, int sampleRate) {
+            mName = name;
+            mSampleRate = sampleRate;
+        }
+
+        void add(long nanos, int samples) {
+            mCalls++;
+            mSamples += samples;
+            mNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        void clear() {
+            mCalls = 0;
+            mSamples = 0;
+            mNanos = 0;
+            mMaxNanos = 0;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getCalls() {
+            return mCalls;
+        }
+
+        public long getSamples() {
+            return mSamples;
+        }
+
+        public long getTotalNanos() {
+            return mNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public long getAverageNanos() {
+            long calls = mCalls;
+            return calls == 0 ? 0 : mNanos / calls;
+        }
+
+        /**
+         * @return CPU time divided by the duration of the processed audio, e.g. 0.001 means 0.1% of one core
+         */
+        public double getRealTimeFactor() {
+            long samples = mSamples;
+            if (samples == 0) {
+                return 0;
+            }
+            return mNanos / (samples * 1e9 / mSampleRate);
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": calls=" + getCalls() + ", avg=" + getAverageNanos() / 1000 + "us, max="
+                    + getMaxNanos() / 1000 + "us, rtf=" + String.format(Locale.US, "%.5f", getRealTimeFactor());
+        }
+    }
+}
@@ -239,7 +239,7 @@ public abstract class AbstractRecognitionService extends RecognitionService {
     }
 
     protected void onReadyForSpeech(Bundle bundle) {
-        if (mAudioCue != null) mAudioCue.playStartSoundAndSleep();
+        if (mAudioCue != null) mAudioCue.playStartSoundAndWait();
         try {
             mListener.readyForSpeech(bundle);
         } catch (RemoteException e) {
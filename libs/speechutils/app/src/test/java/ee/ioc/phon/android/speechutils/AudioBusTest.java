@@ -0,0 +1,139 @@
+package ee.ioc.phon.android.speechutils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioBusTest {
+
+    private static byte[] bytes(int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (from + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(AudioBus.Subscription subscription) {
+        byte[] buffer = new byte[1024];
+        int n = subscription.read(buffer, 0, buffer.length);
+        byte[] result = new byte[Math.max(0, n)];
+        System.arraycopy(buffer, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void subscribersHaveIndependentCursors() {
+        AudioBus bus = new AudioBus(16);
+        AudioBus.Subscription upload = bus.subscribe("upload", AudioBus.OverrunPolicy.DISCONNECT);
+        AudioBus.Subscription meter = bus.subscribe("meter", AudioBus.OverrunPolicy.SKIP_TO_LATEST);
+        bus.write(bytes(0, 6), 0, 6);
+        assertArrayEquals(bytes(0, 6), readAll(upload));
+        bus.write(bytes(6, 4), 0, 4);
+        assertArrayEquals(bytes(6, 4), readAll(upload));
+        // the meter did not lose anything to the uploader
+        assertArrayEquals(bytes(0, 10), readAll(meter));
+        assertEquals(0, upload.read(new byte[4], 0, 4));
+    }
+
+    @Test
+    public void subscribeWithBacklog() {
+        AudioBus bus = new AudioBus(8);
+        bus.write(bytes(0, 12), 0, 12);
+        assertArrayEquals(bytes(8, 4), readAll(bus.subscribe("a", AudioBus.OverrunPolicy.DROP_OLDEST, 4)));
+        // only what is still in the ring
+        assertArrayEquals(bytes(4, 8), readAll(bus.subscribe("b", AudioBus.OverrunPolicy.DROP_OLDEST, 100)));
+        assertEquals(0, readAll(bus.subscribe("c", AudioBus.OverrunPolicy.DROP_OLDEST)).length);
+    }
+
+    @Test
+    public void subscribeAtCarriesOnFromAnEarlierSubscriber() {
+        AudioBus bus = new AudioBus(8);
+        AudioBus.Subscription first = bus.subscribe("file", AudioBus.OverrunPolicy.DROP_OLDEST);
+        bus.write(bytes(0, 4), 0, 4);
+        assertArrayEquals(bytes(0, 4), readAll(first));
+        long position = first.getPosition();
+        first.close();
+        assertEquals(4, position);
+
+        // same session, nothing is lost or read twice
+        bus.write(bytes(4, 4), 0, 4);
+        AudioBus.Subscription second = bus.subscribeAt("file", AudioBus.OverrunPolicy.DROP_OLDEST, position);
+        assertArrayEquals(bytes(4, 4), readAll(second));
+
+        // the session is broken once the position is no longer in the ring
+        bus.write(bytes(8, 10), 0, 10);
+        AudioBus.Subscription third = bus.subscribeAt("file", AudioBus.OverrunPolicy.DROP_OLDEST, position);
+        assertArrayEquals(bytes(10, 8), readAll(third));
+        assertEquals(6, third.getDroppedBytes());
+    }
+
+    @Test
+    public void subscribeAtAFuturePosition() {
+        AudioBus bus = new AudioBus(8);
+        bus.write(bytes(0, 2), 0, 2);
+        AudioBus.Subscription subscription = bus.subscribeAt("file", AudioBus.OverrunPolicy.DROP_OLDEST, 6);
+        bus.write(bytes(2, 2), 0, 2);
+        assertEquals(0, subscription.available());
+        assertEquals(0, readAll(subscription).length);
+        bus.write(bytes(4, 4), 0, 4);
+        assertArrayEquals(bytes(6, 2), readAll(subscription));
+    }
+
+    @Test
+    public void overrunPolicies() {
+        AudioBus bus = new AudioBus(8);
+        AudioBus.Subscription dropOldest = bus.subscribe("file", AudioBus.OverrunPolicy.DROP_OLDEST);
+        AudioBus.Subscription skip = bus.subscribe("vad", AudioBus.OverrunPolicy.SKIP_TO_LATEST);
+        AudioBus.Subscription disconnect = bus.subscribe("upload", AudioBus.OverrunPolicy.DISCONNECT);
+        bus.write(bytes(0, 6), 0, 6);
+        bus.write(bytes(6, 6), 0, 6);
+
+        assertArrayEquals(bytes(4, 8), readAll(dropOldest));
+        assertEquals(4, dropOldest.getDroppedBytes());
+
+        assertEquals(0, skip.available());
+        assertEquals(12, skip.getDroppedBytes());
+        bus.write(bytes(12, 2), 0, 2);
+        assertArrayEquals(bytes(12, 2), readAll(skip));
+
+        assertEquals(-1, disconnect.read(new byte[8], 0, 8));
+        assertFalse(disconnect.isConnected());
+        assertEquals(2, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void closeEndsTheStream() throws Exception {
+        AudioBus bus = new AudioBus(8);
+        AudioBus.Subscription subscription = bus.subscribe("a", AudioBus.OverrunPolicy.DISCONNECT);
+        bus.write(bytes(0, 3), 0, 3);
+        bus.close();
+        assertArrayEquals(bytes(0, 3), readAll(subscription));
+        assertEquals(-1, subscription.read(new byte[8], 0, 8, 1000));
+    }
+
+    @Test
+    public void blockingReadWakesUpOnWrite() throws Exception {
+        final AudioBus bus = new AudioBus(64);
+        AudioBus.Subscription subscription = bus.subscribe("a", AudioBus.OverrunPolicy.DISCONNECT);
+        assertEquals(0, subscription.read(new byte[8], 0, 8, 10));
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                bus.write(bytes(1, 4), 0, 4);
+            }
+        }.start();
+        byte[] dst = new byte[8];
+        long start = System.currentTimeMillis();
+        assertEquals(4, subscription.read(dst, 0, 8, 5000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, dst[0]);
+    }
+}
@@ -0,0 +1,55 @@
+package ee.ioc.phon.android.speechutils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EarconPlayerTest {
+
+    private static byte[] wav(int format, int channels, int sampleRate, int bits, byte[] extraChunk, byte[] data) {
+        int extra = (extraChunk == null) ? 0 : extraChunk.length;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + extra + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + extra + data.length).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) format).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * channels * bits / 8)
+                .putShort((short) (channels * bits / 8)).putShort((short) bits);
+        if (extraChunk != null) {
+            buffer.put(extraChunk);
+        }
+        buffer.put("data".getBytes()).putInt(data.length).put(data);
+        return buffer.array();
+    }
+
+    @Test
+    public void parsesPcmWav() {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        EarconPlayer.Decoded decoded = EarconPlayer.parseWav(wav(1, 2, 22050, 16, null, data));
+        assertEquals(22050, decoded.mSampleRate);
+        assertEquals(2, decoded.mChannels);
+        assertEquals(2, decoded.getFrames());
+        assertArrayEquals(data, decoded.mSamples);
+    }
+
+    @Test
+    public void skipsUnknownChunksAndPartialFrames() {
+        // an odd sized LIST chunk is padded to a word boundary
+        byte[] list = {'L', 'I', 'S', 'T', 3, 0, 0, 0, 'a', 'b', 'c', 0};
+        byte[] data = {1, 2, 3, 4, 5};
+        EarconPlayer.Decoded decoded = EarconPlayer.parseWav(wav(1, 1, 16000, 16, list, data));
+        assertEquals(16000, decoded.mSampleRate);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, decoded.mSamples);
+    }
+
+    @Test
+    public void leavesOtherFormatsToTheDecoder() {
+        assertNull(EarconPlayer.parseWav(wav(1, 1, 8000, 8, null, new byte[4])));
+        assertNull(EarconPlayer.parseWav(wav(3, 1, 8000, 16, null, new byte[4])));
+        assertNull(EarconPlayer.parseWav("OggS and then some".getBytes()));
+        assertNull(EarconPlayer.parseWav(new byte[3]));
+    }
+}
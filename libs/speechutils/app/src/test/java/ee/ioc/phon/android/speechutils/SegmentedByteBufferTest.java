@@ -0,0 +1,96 @@
+package ee.ioc.phon.android.speechutils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedByteBufferTest {
+
+    private static byte[] bytes(int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (from + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void writeAndDrainAcrossChunks() {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(16, 0, false);
+        assertTrue(buffer.write(bytes(0, 10)));
+        assertTrue(buffer.write(ByteBuffer.wrap(bytes(10, 30))));
+        assertEquals(40, buffer.size());
+        assertEquals(48, buffer.capacity());
+        assertArrayEquals(bytes(0, 40), buffer.drain());
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drain().length);
+    }
+
+    @Test
+    public void incrementalDrainOnlyReturnsNewBytes() throws Exception {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(8, 0, false);
+        buffer.write(bytes(0, 5));
+        assertArrayEquals(bytes(0, 5), buffer.drain());
+        buffer.write(bytes(5, 20));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(20, buffer.drainTo(out));
+        assertArrayEquals(bytes(5, 20), out.toByteArray());
+        // Drained chunks are released, only one is kept for the next write
+        assertEquals(8, buffer.capacity());
+        assertEquals(25, buffer.getTotalWritten());
+    }
+
+    @Test
+    public void partialReads() {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(4, 0, false);
+        buffer.write(bytes(0, 11));
+        byte[] dst = new byte[6];
+        assertEquals(6, buffer.read(dst, 0, 6));
+        assertArrayEquals(bytes(0, 6), dst);
+        assertEquals(5, buffer.read(dst, 1, 5));
+        assertEquals(6, dst[1]);
+        assertEquals(10, dst[5]);
+        assertEquals(0, buffer.read(dst, 0, 6));
+    }
+
+    @Test
+    public void boundedRejectsOverflow() {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(4, 10, false);
+        assertTrue(buffer.write(bytes(0, 8)));
+        assertFalse(buffer.write(bytes(8, 3)));
+        assertEquals(8, buffer.size());
+        assertArrayEquals(bytes(0, 8), buffer.drain());
+        assertTrue(buffer.write(bytes(8, 3)));
+    }
+
+    @Test
+    public void ringDropsOldest() {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(4, 10, true);
+        assertTrue(buffer.write(bytes(0, 8)));
+        assertTrue(buffer.write(bytes(8, 5)));
+        assertEquals(10, buffer.size());
+        assertEquals(3, buffer.getDropped());
+        assertArrayEquals(bytes(3, 10), buffer.drain());
+
+        assertTrue(buffer.write(bytes(0, 25)));
+        assertEquals(15, buffer.getDropped() - 3);
+        assertArrayEquals(bytes(15, 10), buffer.drain());
+    }
+
+    @Test
+    public void clearReleasesEverything() {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(4, 0, false);
+        buffer.write(bytes(0, 13));
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.capacity());
+        buffer.write(bytes(1, 2));
+        assertArrayEquals(bytes(1, 2), buffer.drain());
+    }
+}
@@ -0,0 +1,157 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolyphaseResamplerTest {
+
+    private static final double AMPLITUDE = 10000;
+
+    private static short[] sine(int rate, double frequency, int frames, int channels) {
+        short[] pcm = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            short s = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / rate));
+            for (int c = 0; c < channels; c++) {
+                pcm[i * channels + c] = s;
+            }
+        }
+        return pcm;
+    }
+
+    private static short[] resample(PolyphaseResampler resampler, short[] in, int chunkFrames) {
+        int channels = resampler.getChannels();
+        int frames = in.length / channels;
+        short[] out = new short[resampler.getMaxOutputSize(frames) + frames];
+        int n = 0;
+        for (int f = 0; f < frames; f += chunkFrames) {
+            int count = Math.min(chunkFrames, frames - f);
+            n += resampler.process(in, f * channels, count, out, n);
+        }
+        short[] result = new short[n];
+        System.arraycopy(out, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Fits a sinusoid of the given frequency to the steady part of the signal
+     *
+     * @return {amplitude, signal to residual ratio in dB}
+     */
+    private static double[] analyze(short[] signal, int rate, double frequency, int skip) {
+        double ss = 0, cc = 0, sc = 0, ys = 0, yc = 0;
+        int end = signal.length - skip;
+        for (int i = skip; i < end; i++) {
+            double s = Math.sin(2 * Math.PI * frequency * i / rate);
+            double c = Math.cos(2 * Math.PI * frequency * i / rate);
+            ss += s * s;
+            cc += c * c;
+            sc += s * c;
+            ys += signal[i] * s;
+            yc += signal[i] * c;
+        }
+        double det = ss * cc - sc * sc;
+        double a = (ys * cc - yc * sc) / det;
+        double b = (yc * ss - ys * sc) / det;
+        double signalPower = 0, noisePower = 0;
+        for (int i = skip; i < end; i++) {
+            double fit = a * Math.sin(2 * Math.PI * frequency * i / rate) + b * Math.cos(2 * Math.PI * frequency * i / rate);
+            signalPower += fit * fit;
+            noisePower += (signal[i] - fit) * (signal[i] - fit);
+        }
+        return new double[]{Math.sqrt(a * a + b * b), 10 * Math.log10(signalPower / noisePower)};
+    }
+
+    private static double rms(short[] signal, int skip) {
+        double sum = 0;
+        for (int i = skip; i < signal.length - skip; i++) {
+            sum += signal[i] * (double) signal[i];
+        }
+        return Math.sqrt(sum / (signal.length - 2 * skip));
+    }
+
+    @Test
+    public void outputLength() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1);
+        assertEquals(16000, resample(resampler, new short[48000], 480).length);
+        resampler = new PolyphaseResampler(44100, 16000, 1);
+        short[] out = resample(resampler, new short[44100], 441);
+        assertEquals(16000, out.length);
+    }
+
+    @Test
+    public void passbandTone48k() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1);
+        short[] out = resample(resampler, sine(48000, 1000, 48000, 1), 960);
+        double[] result = analyze(out, 16000, 1000, 2 * resampler.getDelay());
+        assertEquals(AMPLITUDE, result[0], AMPLITUDE * 0.01);
+        assertTrue("SNR " + result[1], result[1] > 60);
+    }
+
+    @Test
+    public void passbandTone44k() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000, 1);
+        short[] out = resample(resampler, sine(44100, 3000, 44100, 1), 1024);
+        double[] result = analyze(out, 16000, 3000, 2 * resampler.getDelay());
+        assertEquals(AMPLITUDE, result[0], AMPLITUDE * 0.01);
+        assertTrue("SNR " + result[1], result[1] > 60);
+    }
+
+    @Test
+    public void stopbandIsRejected() {
+        // Would alias to 4kHz and 2kHz without the filter
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1);
+        short[] out = resample(resampler, sine(48000, 12000, 48000, 1), 480);
+        assertTrue(rms(out, 2 * resampler.getDelay()) < AMPLITUDE * 1e-3);
+
+        resampler = new PolyphaseResampler(44100, 16000, 1);
+        out = resample(resampler, sine(44100, 14000, 44100, 1), 441);
+        assertTrue(rms(out, 2 * resampler.getDelay()) < AMPLITUDE * 1e-3);
+    }
+
+    @Test
+    public void blockSizeDoesNotMatter() {
+        short[] in = sine(44100, 440, 10000, 1);
+        for (int i = 0; i < in.length; i += 7) {
+            in[i] = (short) (in[i] / 2 + i);
+        }
+        short[] whole = resample(new PolyphaseResampler(44100, 16000, 1), in, in.length);
+        assertArrayEquals(whole, resample(new PolyphaseResampler(44100, 16000, 1), in, 1));
+        assertArrayEquals(whole, resample(new PolyphaseResampler(44100, 16000, 1), in, 333));
+    }
+
+    @Test
+    public void stereoIsDownmixed() {
+        short[] mono = sine(48000, 500, 4800, 1);
+        short[] stereo = sine(48000, 500, 4800, 2);
+        assertArrayEquals(resample(new PolyphaseResampler(48000, 16000, 1), mono, 480),
+                resample(new PolyphaseResampler(48000, 16000, 2), stereo, 480));
+
+        for (int i = 1; i < stereo.length; i += 2) {
+            stereo[i] = (short) -stereo[i];
+        }
+        short[] out = resample(new PolyphaseResampler(48000, 16000, 2), stereo, 480);
+        assertEquals(0, rms(out, 0), 1);
+    }
+
+    @Test
+    public void resetClearsHistory() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1);
+        short[] first = resample(resampler, sine(48000, 700, 4800, 1), 480);
+        resample(resampler, sine(48000, 300, 1234, 1), 480);
+        resampler.reset();
+        assertArrayEquals(first, resample(resampler, sine(48000, 700, 4800, 1), 480));
+    }
+
+    @Test
+    public void maxInputFramesFitsOutput() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000, 1);
+        short[] out = new short[256];
+        short[] in = new short[resampler.getMaxInputFrames(out.length)];
+        for (int i = 0; i < 50; i++) {
+            assertTrue(resampler.process(in, 0, in.length, out, 0) <= out.length);
+        }
+    }
+}
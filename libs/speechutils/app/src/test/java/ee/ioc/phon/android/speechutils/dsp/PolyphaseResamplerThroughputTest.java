@@ -0,0 +1,71 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * How much faster than real time the resampler runs on the JVM, in 10 ms blocks like the recorder loop. Not a
+ * substitute for a proper benchmark harness, but it prints the numbers and catches a big regression. The floor is
+ * kept far below what a desktop JVM does, so a slow CI machine doesn't fail it.
+ */
+public class PolyphaseResamplerThroughputTest {
+
+    private static final int SECONDS = 20;
+    private static final int WARMUP_SECONDS = 5;
+    private static final double MIN_REAL_TIME_FACTOR = 20;
+
+    private static short[] noise(int frames, int channels) {
+        short[] pcm = new short[frames * channels];
+        long seed = 42;
+        for (int i = 0; i < pcm.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            pcm[i] = (short) (seed >>> 48);
+        }
+        return pcm;
+    }
+
+    /**
+     * @return seconds of audio resampled per second of wall time
+     */
+    private static double measure(int inRate, int channels) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inRate, 16000, channels);
+        int blockFrames = inRate / 100;
+        short[] in = noise(blockFrames, channels);
+        short[] out = new short[resampler.getMaxOutputSize(blockFrames)];
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_SECONDS * 100; i++) {
+            checksum += resampler.process(in, 0, blockFrames, out, 0);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < SECONDS * 100; i++) {
+            checksum += resampler.process(in, 0, blockFrames, out, 0);
+            checksum += out[0];
+        }
+        long elapsed = System.nanoTime() - start;
+        double factor = SECONDS / (elapsed / 1e9);
+        System.out.println(String.format(Locale.US, "PolyphaseResampler %d Hz x%d -> 16000 Hz: %.0fx real time, %.1f us per 10 ms block (%d)",
+                inRate, channels, factor, elapsed / 1e3 / (SECONDS * 100), checksum));
+        return factor;
+    }
+
+    @Test
+    public void from48k() {
+        double factor = measure(48000, 1);
+        assertTrue("Only " + factor + "x real time", factor > MIN_REAL_TIME_FACTOR);
+    }
+
+    @Test
+    public void from44k() {
+        double factor = measure(44100, 1);
+        assertTrue("Only " + factor + "x real time", factor > MIN_REAL_TIME_FACTOR);
+    }
+
+    @Test
+    public void from48kStereo() {
+        double factor = measure(48000, 2);
+        assertTrue("Only " + factor + "x real time", factor > MIN_REAL_TIME_FACTOR);
+    }
+}
@@ -0,0 +1,138 @@
+package ee.ioc.phon.android.speechutils.dsp;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingChainTest {
+
+    private static final int RATE = 16000;
+
+    private static short[] tone(double frequency, double amplitude, double offset, int length) {
+        short[] pcm = new short[length];
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) Math.round(offset + amplitude * Math.sin(2 * Math.PI * frequency * i / RATE));
+        }
+        return pcm;
+    }
+
+    private static double rms(short[] pcm, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += pcm[i] * (double) pcm[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    private static double mean(short[] pcm, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += pcm[i];
+        }
+        return sum / (to - from);
+    }
+
+    private static void processInBlocks(AudioProcessor processor, short[] pcm, int block) {
+        for (int i = 0; i < pcm.length; i += block) {
+            processor.process(pcm, i, Math.min(block, pcm.length - i));
+        }
+    }
+
+    @Test
+    public void highPassRemovesDcAndKeepsSpeech() {
+        short[] pcm = tone(1000, 5000, 3000, RATE);
+        processInBlocks(new HighPassFilter(RATE), pcm, 320);
+        assertEquals(0, mean(pcm, RATE / 2, RATE), 5);
+        assertEquals(5000 / Math.sqrt(2), rms(pcm, RATE / 2, RATE), 50);
+
+        short[] rumble = tone(20, 5000, 0, RATE);
+        processInBlocks(new HighPassFilter(RATE), rumble, 320);
+        assertTrue(rms(rumble, RATE / 2, RATE) < 5000 / Math.sqrt(2) / 10);
+    }
+
+    @Test
+    public void noiseGateAttenuatesQuietNoiseOnly() {
+        Random random = new Random(1);
+        short[] pcm = new short[RATE * 2];
+        for (int i = 0; i < RATE; i++) {
+            pcm[i] = (short) (random.nextGaussian() * 50);
+        }
+        short[] speech = tone(300, 8000, 0, RATE);
+        System.arraycopy(speech, 0, pcm, RATE, RATE);
+        double noise = rms(pcm, 0, RATE);
+
+        NoiseGate gate = new NoiseGate(RATE);
+        processInBlocks(gate, pcm, 320);
+        assertTrue(rms(pcm, RATE / 2, RATE) < noise / 10);
+        assertEquals(8000 / Math.sqrt(2), rms(pcm, RATE + RATE / 10, 2 * RATE), 100);
+        assertTrue(gate.isOpen());
+    }
+
+    @Test
+    public void agcBringsQuietSpeechUp() {
+        short[] pcm = tone(300, 800, 0, RATE * 4);
+        AutomaticGainControl agc = new AutomaticGainControl(RATE);
+        processInBlocks(agc, pcm, 320);
+        double targetPeak = Math.pow(10, AutomaticGainControl.DEFAULT_TARGET_DBFS / 20) * Short.MAX_VALUE;
+        assertEquals(targetPeak / Math.sqrt(2), rms(pcm, RATE * 3, RATE * 4), targetPeak * 0.1);
+    }
+
+    @Test
+    public void agcDoesNotClipLoudSpeech() {
+        short[] pcm = tone(300, 30000, 0, RATE);
+        processInBlocks(new AutomaticGainControl(RATE), pcm, 320);
+        int clipped = 0;
+        for (int i = RATE / 10; i < RATE; i++) {
+            if (Math.abs(pcm[i]) >= Short.MAX_VALUE) {
+                clipped++;
+            }
+        }
+        assertEquals(0, clipped);
+        assertTrue(agcGainDb(30000) < 0);
+    }
+
+    private static float agcGainDb(double amplitude) {
+        AutomaticGainControl agc = new AutomaticGainControl(RATE);
+        agc.process(tone(300, amplitude, 0, RATE), 0, RATE);
+        return agc.getGainDb();
+    }
+
+    @Test
+    public void chainCollectsMetricsPerStage() {
+        ProcessingChain chain = ProcessingChain.createDefault(RATE);
+        short[] pcm = tone(300, 5000, 0, 320);
+        for (int i = 0; i < 50; i++) {
+            chain.process(pcm, 0, pcm.length);
+        }
+        List<ProcessingChain.StageMetrics> metrics = chain.getMetrics();
+        assertEquals(3, metrics.size());
+        assertEquals("highpass", metrics.get(0).getName());
+        for (ProcessingChain.StageMetrics stage : metrics) {
+            assertEquals(50, stage.getCalls());
+            assertEquals(50 * 320, stage.getSamples());
+            assertTrue(stage.getTotalNanos() > 0);
+            assertTrue(stage.getRealTimeFactor() > 0);
+        }
+        chain.resetMetrics();
+        assertEquals(0, chain.getMetrics().get(0).getCalls());
+    }
+
+    @Test
+    public void formatsMetricsTheSameInEveryLocale() {
+        ProcessingChain.StageMetrics metrics = new ProcessingChain.StageMetrics("agc", RATE);
+        //half a millisecond for a second of audio
+        metrics.add(500000, RATE);
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            assertTrue(metrics.toString(), metrics.toString().endsWith("rtf=0.00050"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}